@@ -2,11 +2,17 @@ package com.project.searchengine.config;
 
 import com.project.searchengine.server.model.InvertedIndex;
 import jakarta.annotation.PostConstruct;
+import java.util.HexFormat;
+import java.util.List;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
 import org.springframework.data.mongodb.core.index.*;
 
 @Configuration
@@ -15,6 +21,26 @@ public class MongoConfig {
     @Autowired
     private MongoTemplate mongoTemplate;
 
+    /**
+     * Reads the content hashes stored as SHA-256 hex strings, before they were stored as
+     * fingerprint bytes, as the bytes of the hex digest. They never equal a fingerprint, so the
+     * page of such a document is reindexed once.
+     */
+    @ReadingConverter
+    static class HexHashReadingConverter implements Converter<String, byte[]> {
+
+        @Override
+        public byte[] convert(String hash) {
+            return HexFormat.of().parseHex(hash);
+        }
+    }
+
+    // Static, the converters are needed to create the MongoTemplate injected above
+    @Bean
+    public static MongoCustomConversions mongoCustomConversions() {
+        return new MongoCustomConversions(List.of(new HexHashReadingConverter()));
+    }
+
     @PostConstruct
     public void initIndexes() {
         IndexOperations indexOps = mongoTemplate.indexOps(InvertedIndex.class);
@@ -2,26 +2,33 @@ package com.project.searchengine.crawler;
 
 import com.project.searchengine.crawler.preprocessing.*;
 import com.project.searchengine.utils.CompressionUtil;
+import com.project.searchengine.utils.Fingerprint;
 import com.project.searchengine.utils.HashManager;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class Crawler {
 
     private final UrlsFrontier urlsFrontier;
     private RobotsHandler robotsHandler;
-    private static int currentBatch = 1;
     private int numThreads; 
+    // File of the robots.txt rules cache for a warm start, none if empty
+    private final String robotsCache;
 
     @Autowired
-    public Crawler(UrlsFrontier urlsFrontier) {
+    public Crawler(UrlsFrontier urlsFrontier, @Value("${crawler.robots.cache:}") String robotsCache) {
         this.urlsFrontier = urlsFrontier;
         this.robotsHandler = new RobotsHandler();
+        this.robotsCache = robotsCache;
     }
 
     public void setNumThreads(int numThreads) {
@@ -32,38 +39,91 @@ public class Crawler {
      * Handles the initialization of the crawling process: seeding, preparing caches, etc.
      */
     public void initCrawling() {
+        urlsFrontier.loadFrontier();
         if (urlsFrontier.shouldInitializeFrontier()) seed();
         urlsFrontier.getAllHashedDocContent(); // Prepare the cache
+        loadRobotsCache();
+    }
+
+    private void loadRobotsCache() {
+        if (robotsCache.isEmpty() || !Files.exists(Paths.get(robotsCache))) return;
+        try {
+            int loaded = RobotsHandler.loadSharedCache(Paths.get(robotsCache));
+            System.out.println("Loaded robots.txt rules of " + loaded + " domains");
+        } catch (IOException e) {
+            System.err.println("Error reading robots cache: " + e.getMessage());
+        }
+    }
+
+    private void saveRobotsCache() {
+        if (robotsCache.isEmpty()) return;
+        try {
+            RobotsHandler.saveSharedCache(Paths.get(robotsCache));
+        } catch (IOException e) {
+            System.err.println("Error saving robots cache: " + e.getMessage());
+        }
     }
 
     /**
-     * Crawls the URLs managed by the frontier using multiple threads.
-     * It processes each URL in the current batch concurrently, fetches its content,
-     * checks for duplicates, and handles linked pages.
+     * Crawls the URLs managed by the frontier without batch barriers: a URL is dispatched as soon
+     * as one of the numThreads fetch slots is free and its host may be fetched, so a slow host only
+     * holds its own slot. The fetches run on virtual threads when the runtime supports them.
+     * The crawl ends when the frontier has no URL left and no fetch is in flight, since a fetch
+     * can still add URLs to the frontier.
      */
     public void crawl() {
         System.out.println("Starting the crawling process...");
         initCrawling();
 
-        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
-
-        while (urlsFrontier.getNextUrlsBatch()) {
-            System.out.println("\nProcessing batch of URLs number: " + currentBatch++);
-            System.out.println("Current batch size: " + urlsFrontier.currentUrlBatch.size());
+        ExecutorService executor = newFetchExecutor(numThreads);
+        Semaphore fetchSlots = new Semaphore(numThreads);
+        // Released by every finished fetch, wakes the dispatcher up while no host can be fetched
+        Semaphore finishedFetches = new Semaphore(0);
+        AtomicInteger inFlight = new AtomicInteger();
+        long dispatched = 0;
 
-            List<Future<?>> futures = new ArrayList<>();
-            for (String url : urlsFrontier.currentUrlBatch) {
-                futures.add(executor.submit(() -> processUrl(url)));
-            }
+        try {
+            while (true) {
+                // Read before polling: with nothing in flight, the poll saw every discovered URL
+                boolean idle = inFlight.get() == 0;
+                String url = urlsFrontier.nextUrl();
+                if (url == null) {
+                    if (idle && !urlsFrontier.hasScheduledUrls()) break;
+                    // Until a fetch ends or the next host is allowed, and at least once a second
+                    long wait = urlsFrontier.millisUntilNextUrl();
+                    finishedFetches.tryAcquire(wait < 0 ? 1000 : Math.max(1, Math.min(wait, 1000)), TimeUnit.MILLISECONDS);
+                    finishedFetches.drainPermits();
+                    continue;
+                }
 
-            // Wait for all tasks in the batch to complete
-            for (Future<?> future : futures) {
-                try {
-                    future.get();
-                } catch (Exception e) {
-                    System.err.println("Error processing URL: " + e.getMessage());
+                fetchSlots.acquire();
+                inFlight.incrementAndGet();
+                executor.execute(() -> {
+                    boolean fetched = true;
+                    try {
+                        fetched = processUrl(url);
+                    } catch (Exception e) {
+                        // The URL stays claimed so it is not retried in this crawl
+                        System.err.println("Error processing URL: " + url + " - " + e.getMessage());
+                    } finally {
+                        // A URL rejected before its fetch does not charge the delay of its host
+                        if (fetched) {
+                            urlsFrontier.finishFetch(url, robotsHandler.getCrawlDelay(url));
+                        } else {
+                            urlsFrontier.skipFetch(url);
+                        }
+                        inFlight.decrementAndGet();
+                        fetchSlots.release();
+                        finishedFetches.release();
+                    }
+                });
+
+                if (++dispatched % UrlsFrontier.BATCH_SIZE == 0) {
+                    System.out.println("\nDispatched " + dispatched + " URLs, " + inFlight.get() + " in flight");
                 }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
 
         executor.shutdown();
@@ -75,12 +135,38 @@ public class Crawler {
             executor.shutdownNow();
         }
 
-        System.out.println("Finished processing total batch of URLs of count: " + (currentBatch - 1));
+        urlsFrontier.saveHashedDocsSnapshot();
+        saveRobotsCache();
+        urlsFrontier.closeFrontier();
+        System.out.println("Finished processing total URLs of count: " + dispatched);
         System.out.println("Crawling process completed.");
     }
 
-    private void processUrl(String url) {
-        System.out.println("Crawling URL: " + url + " on thread " + Thread.currentThread().getName());
+    /**
+     * @return A virtual thread per fetch on Java 21 and later, where numThreads only bounds the
+     * fetches in flight; a pool of numThreads platform threads otherwise.
+     */
+    private static ExecutorService newFetchExecutor(int numThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads are not available, fetching on " + numThreads + " threads");
+            return Executors.newFixedThreadPool(numThreads);
+        }
+    }
+
+    /**
+     * @return false if the URL was rejected before its page was fetched, true otherwise
+     */
+    private boolean processUrl(String url) {
+        // Checked when the URL is crawled rather than when it is found, for the domains crawled only
+        if (!robotsHandler.isUrlAllowed(url)) {
+            System.out.println("Disallowed by robots.txt. Skipping URL: " + url);
+            urlsFrontier.removeUrl(url);
+            return false;
+        }
+
+        System.out.println("Crawling URL: " + url + " on thread " + Thread.currentThread());
 
         Document pageContent = URLExtractor.getDocument(url);
         String stringifiedPage = pageContent != null ? pageContent.toString() : null;
@@ -88,15 +174,15 @@ public class Crawler {
         if (pageContent == null) {
             System.out.println("Failed to fetch content for URL: " + url);
             urlsFrontier.removeUrl(url);
-            return;
+            return true;
         }
 
-        String hashedDocument = HashManager.hash(stringifiedPage);
+        Fingerprint hashedDocument = HashManager.fingerprint(stringifiedPage);
 
         if (urlsFrontier.isDuplicate(hashedDocument)) {
             System.out.println("Duplicate document found. Skipping URL: " + url);
             urlsFrontier.removeUrl(url);
-            return;
+            return true;
         }
 
         List<String> linkedPages = new ArrayList<>(URLExtractor.getURLs(pageContent));
@@ -106,9 +192,10 @@ public class Crawler {
         urlsFrontier.saveCrawledDocument(
             url,
             CompressionUtil.compress(stringifiedPage),
-            hashedDocument,
+            hashedDocument.toBytes(),
             linkedPages
         );
+        return true;
     }
 
     /**
@@ -122,20 +209,21 @@ public class Crawler {
 
     /**
      * Handles the linked pages extracted from the crawled document.
-     * It checks if each linked page is allowed to be crawled based on robots.txt rules.
+     * It adds the valid ones to the frontier in one call, their robots.txt rules are checked when
+     * they are crawled.
      *
      * @param linkedPages List of linked pages to handle
      */
     private void handleLinkedPages(List<String> linkedPages) {
-        if (!urlsFrontier.hasReachedThreshold()) {
-            for (String linkedUrl : linkedPages) {
-                String normalizedUrl = URLNormalizer.normalizeUrl(linkedUrl);
-                if (normalizedUrl == null) continue; // Skip invalid or non-English URLs
-    
-                if (!robotsHandler.isUrlAllowed(normalizedUrl)) continue;
-    
-                if (!urlsFrontier.handleUrl(normalizedUrl)) break;
-            }
+        if (urlsFrontier.hasReachedThreshold()) return;
+
+        List<String> normalizedUrls = new ArrayList<>(linkedPages.size());
+        for (String linkedUrl : linkedPages) {
+            String normalizedUrl = URLNormalizer.normalizeUrl(linkedUrl);
+            if (normalizedUrl == null) continue; // Skip invalid or non-English URLs
+
+            normalizedUrls.add(normalizedUrl);
         }
+        urlsFrontier.handleUrls(normalizedUrls);
     }
 }
\ No newline at end of file
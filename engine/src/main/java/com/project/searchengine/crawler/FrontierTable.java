@@ -0,0 +1,299 @@
+package com.project.searchengine.crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The URLs of the frontier held in memory, so discovering a link does not wait for the database.
+ *
+ * 1. Seen URLs: every URL with its frequency and crawled status, by normalized URL. A removed
+ *    URL (disallowed, failed or duplicate) stays as a tombstone: it is ignored when found again
+ *    and still counts toward the maximum size.
+ * 2. Ready URLs: the URLs not crawled, removed nor claimed by the crawler, ordered by frequency.
+ * 3. Changes: the frequency increments of the URLs added or counted again since the last sync,
+ *    and the removed URLs, for the UrlsFrontier to write them to the database in batches.
+ *
+ * The number of URLs is an atomic counter, read without locking by every crawled page. The table
+ * can be written to a checkpoint file with its unsynced changes, and read back on the next start.
+ * All the other methods are synchronized, it is shared by the crawler threads.
+ */
+class FrontierTable {
+
+    private static final int SNAPSHOT_VERSION = 3;
+
+    static final class Entry {
+
+        private final String url;
+        private long frequency;
+        private boolean crawled;
+        private boolean removed;
+
+        private Entry(String url, long frequency, boolean crawled) {
+            this.url = url;
+            this.frequency = frequency;
+            this.crawled = crawled;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        long getFrequency() {
+            return frequency;
+        }
+    }
+
+    private static final Comparator<Entry> BY_FREQUENCY = Comparator
+        .comparingLong((Entry entry) -> -entry.frequency)
+        .thenComparing(entry -> entry.url);
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ready = new TreeSet<>(BY_FREQUENCY);
+    // Frequency increments since the last sync, null for a removed URL
+    private final Map<String, Long> changes = new LinkedHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Adds a URL with frequency 1, or increments its frequency if it was seen.
+     *
+     * @param url The normalized URL.
+     * @param maxSize The number of URLs above which new URLs are rejected.
+     * @return false if the URL is new and the table is full or it was removed, true otherwise
+     */
+    synchronized boolean add(String url, int maxSize) {
+        return addUrl(url, maxSize);
+    }
+
+    /**
+     * Adds the URLs of a page in one call, see add.
+     *
+     * @param urls The normalized URLs.
+     * @param maxSize The number of URLs above which new URLs are rejected.
+     * @return The number of URLs added or counted again
+     */
+    synchronized int addAll(Collection<String> urls, int maxSize) {
+        int accepted = 0;
+        for (String url : urls) {
+            if (addUrl(url, maxSize)) accepted++;
+        }
+        return accepted;
+    }
+
+    private boolean addUrl(String url, int maxSize) {
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            if (size.get() >= maxSize) return false;
+            entry = new Entry(url, 1, false);
+            entries.put(url, entry);
+            ready.add(entry);
+            size.incrementAndGet();
+        } else if (entry.removed) {
+            return false;
+        } else if (ready.remove(entry)) {
+            entry.frequency++;
+            ready.add(entry);
+        } else {
+            entry.frequency++;
+        }
+        changes.merge(url, 1L, Long::sum);
+        return true;
+    }
+
+    /**
+     * Adds a URL read from the database, without recording a change.
+     */
+    synchronized void load(String url, long frequency, boolean crawled) {
+        Entry entry = new Entry(url, frequency, crawled);
+        if (entries.put(url, entry) == null) size.incrementAndGet();
+        if (!crawled) ready.add(entry);
+    }
+
+    /**
+     * Claims the ready URLs with the highest frequencies, they are not returned again.
+     *
+     * @param limit The maximum number of URLs to claim.
+     * @return Copies of the claimed entries by frequency in descending order
+     */
+    synchronized List<Entry> claimTop(int limit) {
+        List<Entry> claimed = new ArrayList<>();
+        while (claimed.size() < limit && !ready.isEmpty()) {
+            Entry entry = ready.pollFirst();
+            claimed.add(new Entry(entry.url, entry.frequency, entry.crawled));
+        }
+        return claimed;
+    }
+
+    /**
+     * @return The frequency of a URL, 0 if it is not in the table
+     */
+    synchronized long getFrequency(String url) {
+        Entry entry = entries.get(url);
+        return entry == null ? 0 : entry.frequency;
+    }
+
+    synchronized void markCrawled(String url) {
+        Entry entry = entries.get(url);
+        if (entry == null) return;
+        entry.crawled = true;
+        ready.remove(entry);
+    }
+
+    /**
+     * Removes a URL from the frontier, keeping it as a tombstone so it is not added again.
+     */
+    synchronized void remove(String url) {
+        Entry entry = entries.get(url);
+        if (entry == null || entry.removed) return;
+        entry.removed = true;
+        ready.remove(entry);
+        changes.put(url, null);
+    }
+
+    synchronized boolean isRemoved(String url) {
+        Entry entry = entries.get(url);
+        return entry != null && entry.removed;
+    }
+
+    /**
+     * @return The number of URLs with the removed ones, without locking
+     */
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Takes the oldest changes to write to the database.
+     *
+     * @param limit The maximum number of changes.
+     * @return The changed URLs with their frequency increment, null for a removed URL
+     */
+    synchronized Map<String, Long> drainChanges(int limit) {
+        Map<String, Long> drained = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Long>> changed = changes.entrySet().iterator();
+        while (drained.size() < limit && changed.hasNext()) {
+            Map.Entry<String, Long> change = changed.next();
+            drained.put(change.getKey(), change.getValue());
+            changed.remove();
+        }
+        return drained;
+    }
+
+    /**
+     * Records changes again after they failed to be written, merged with the changes made since.
+     *
+     * @param failed Changes returned by drainChanges.
+     */
+    synchronized void restoreChanges(Map<String, Long> failed) {
+        failed.forEach((url, increment) -> {
+            if (increment == null) {
+                changes.put(url, null);
+            } else if (!isRemoved(url)) {
+                // A URL removed since has its removal recorded instead
+                changes.merge(url, increment, Long::sum);
+            }
+        });
+    }
+
+    synchronized boolean hasChanges() {
+        return !changes.isEmpty();
+    }
+
+    /**
+     * Writes the table with its unsynced changes to a checkpoint file, replaced atomically. The
+     * claims are not written, the URLs are ready again on the next start.
+     *
+     * @param path The checkpoint file.
+     */
+    void writeSnapshot(Path path) throws IOException {
+        List<Entry> snapshot = new ArrayList<>();
+        Map<String, Long> unsynced;
+        synchronized (this) {
+            for (Entry entry : entries.values()) {
+                Entry copy = new Entry(entry.url, entry.frequency, entry.crawled);
+                copy.removed = entry.removed;
+                snapshot.add(copy);
+            }
+            unsynced = new HashMap<>(changes);
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)
+            )
+        ) {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(snapshot.size());
+            for (Entry entry : snapshot) {
+                writeUrl(out, entry.url);
+                out.writeLong(entry.frequency);
+                out.writeBoolean(entry.crawled);
+                out.writeBoolean(entry.removed);
+                // A pending removal is written with the removed URLs below
+                Long increment = unsynced.get(entry.url);
+                if (increment != null) unsynced.remove(entry.url);
+                out.writeLong(increment == null ? 0 : increment);
+            }
+            // The tombstones still to be deleted from the database
+            out.writeInt(unsynced.size());
+            for (String url : unsynced.keySet()) {
+                writeUrl(out, url);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a table from a checkpoint file written by writeSnapshot.
+     *
+     * @param path The checkpoint file.
+     * @return The table
+     */
+    static FrontierTable readSnapshot(Path path) throws IOException {
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16)
+            )
+        ) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported frontier checkpoint version " + version + ": " + path);
+            }
+
+            FrontierTable table = new FrontierTable();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String url = readUrl(in);
+                table.load(url, in.readLong(), in.readBoolean());
+                if (in.readBoolean()) {
+                    Entry entry = table.entries.get(url);
+                    entry.removed = true;
+                    table.ready.remove(entry);
+                }
+                long increment = in.readLong();
+                if (increment != 0) table.changes.put(url, increment);
+            }
+            int removed = in.readInt();
+            for (int i = 0; i < removed; i++) {
+                table.changes.put(readUrl(in), null);
+            }
+            return table;
+        }
+    }
+
+    // URLs can be longer than the 64 KB of writeUTF
+    private static void writeUrl(DataOutputStream out, String url) throws IOException {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readUrl(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
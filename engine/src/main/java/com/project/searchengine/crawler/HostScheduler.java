@@ -0,0 +1,169 @@
+package com.project.searchengine.crawler;
+
+import java.net.URI;
+import java.util.*;
+
+/**
+ * Mercator style scheduler of the URLs to crawl, polite to every host.
+ *
+ * 1. Front queues: the URLs wait in FRONT_QUEUES queues by priority, from the log2 of their
+ *    frequency, so popular pages are still crawled first.
+ * 2. Back queues: up to maxBackQueues hosts have a queue of their own URLs, filled from the
+ *    front queues by priority. A URL of a host that has a back queue goes straight to it.
+ * 3. Host heap: the hosts with a back queue are kept in a heap by the time of their next allowed
+ *    fetch, the URL to crawl comes from the host at the top once that time has passed.
+ *
+ * A host has one fetch in flight at most: it leaves the heap when one of its URLs is polled and
+ * is pushed back when the fetch is finished, with a delay from its Crawl-delay. The next allowed
+ * times of the hosts without back queue are kept until they pass.
+ *
+ * Not thread safe, the UrlsFrontier synchronizes its calls.
+ */
+class HostScheduler {
+
+    static final int FRONT_QUEUES = 8;
+
+    private static class HostTime {
+
+        private final String host;
+        private final long time;
+
+        HostTime(String host, long time) {
+            this.host = host;
+            this.time = time;
+        }
+    }
+
+    private final int maxBackQueues;
+    private final List<Deque<String>> frontQueues = new ArrayList<>();
+    private final Map<String, Deque<String>> backQueues = new HashMap<>();
+    private final PriorityQueue<HostTime> hostHeap = new PriorityQueue<>(
+        Comparator.comparingLong((HostTime hostTime) -> hostTime.time)
+    );
+    // Next allowed fetch times of the hosts without back queue, in the order they were finished
+    private final Map<String, Long> idleHosts = new LinkedHashMap<>();
+    private int size;
+
+    /**
+     * @param maxBackQueues The maximum number of hosts with a back queue.
+     */
+    HostScheduler(int maxBackQueues) {
+        this.maxBackQueues = maxBackQueues;
+        for (int i = 0; i < FRONT_QUEUES; i++) {
+            frontQueues.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * @return The front queue of a frequency, 0 being the highest priority
+     */
+    static int priorityOf(long frequency) {
+        int level = 63 - Long.numberOfLeadingZeros(Math.max(1, frequency));
+        return Math.max(0, FRONT_QUEUES - 1 - level);
+    }
+
+    /**
+     * @return The lower cased host of a URL, the URL itself if it has none
+     */
+    static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host == null ? url : host.toLowerCase(Locale.ROOT);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Adds a URL to the front queue of its frequency.
+     */
+    void add(String url, long frequency) {
+        frontQueues.get(priorityOf(frequency)).add(url);
+        size++;
+    }
+
+    /**
+     * Retrieves the next URL of the host with the earliest allowed fetch time, if it has passed.
+     * The host waits for finished before its next URL.
+     *
+     * @param now The current time in milliseconds.
+     * @return The URL, null if no host can be fetched now
+     */
+    String poll(long now) {
+        fillBackQueues(now);
+
+        HostTime next = hostHeap.peek();
+        if (next == null || next.time > now) return null;
+        hostHeap.poll();
+        size--;
+        return backQueues.get(next.host).poll();
+    }
+
+    /**
+     * Ends the fetch of a URL returned by poll.
+     *
+     * @param url The URL.
+     * @param nextFetchTime The time in milliseconds before which its host must not be fetched.
+     */
+    void finished(String url, long nextFetchTime) {
+        String host = hostOf(url);
+        Deque<String> queue = backQueues.get(host);
+        if (queue == null || queue.isEmpty()) {
+            backQueues.remove(host);
+            idleHosts.remove(host);
+            idleHosts.put(host, nextFetchTime);
+        } else {
+            hostHeap.add(new HostTime(host, nextFetchTime));
+        }
+    }
+
+    /**
+     * @return The milliseconds until the next host can be fetched, -1 if every host with URLs
+     * is being fetched
+     */
+    long millisUntilNext(long now) {
+        fillBackQueues(now);
+        HostTime next = hostHeap.peek();
+        return next == null ? -1 : Math.max(0, next.time - now);
+    }
+
+    /**
+     * @return The number of URLs waiting in the queues
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Moves the URLs of the front queues to the back queues by priority, until a URL needs a new
+     * back queue and there are maxBackQueues of them.
+     */
+    private void fillBackQueues(long now) {
+        pruneIdleHosts(now);
+
+        for (Deque<String> frontQueue : frontQueues) {
+            while (!frontQueue.isEmpty()) {
+                String host = hostOf(frontQueue.peek());
+                Deque<String> backQueue = backQueues.get(host);
+                if (backQueue == null) {
+                    if (backQueues.size() >= maxBackQueues) return;
+                    backQueue = new ArrayDeque<>();
+                    backQueues.put(host, backQueue);
+                    Long nextFetchTime = idleHosts.remove(host);
+                    hostHeap.add(new HostTime(host, nextFetchTime == null ? now : nextFetchTime));
+                }
+                backQueue.add(frontQueue.poll());
+            }
+        }
+    }
+
+    /**
+     * Forgets the idle hosts whose next allowed fetch time has passed, from the oldest finished.
+     */
+    private void pruneIdleHosts(long now) {
+        Iterator<Long> times = idleHosts.values().iterator();
+        while (times.hasNext() && times.next() <= now) {
+            times.remove();
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package com.project.searchengine.crawler;
 
 import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRules;
+import crawlercommons.robots.SimpleRobotRules.RobotRulesMode;
 import crawlercommons.robots.SimpleRobotRulesParser;
-import java.io.IOException;
+import java.io.*;
 import java.net.URI;
-import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.*;
 import java.util.concurrent.*;
 import org.jsoup.Connection;
 import org.jsoup.Jsoup;
@@ -14,16 +17,101 @@ import org.jsoup.Jsoup;
  * It checks if a given URL is allowed to be crawled based on the rules defined
  * in the robots.txt file of the domain.
  * Assumes that the passed url is already normalized.
+ *
+ * The shared cache keeps the rules of MAX_CACHE_SIZE domains, evicting the least recently used
+ * one, for RULES_TTL_MS. A failed fetch is cached as allow-all rules for FAILURE_TTL_MS only, so
+ * the domain is tried again soon. A domain has one fetch in flight at most: the other threads
+ * missing it wait for its result instead of fetching it again.
+ * The cache can be saved to a file and loaded on the next start, without the failed fetches.
+ *
+ * It is safe to call from concurrent fetches: the parser and the session are thread safe and the
+ * cache is locked.
  */
 public class RobotsHandler {
 
     private static final String USER_AGENT = "*";
-    private final SimpleRobotRulesParser parser = new SimpleRobotRulesParser();
+    private static final SimpleRobotRulesParser PARSER = new SimpleRobotRulesParser();
+    private static final BaseRobotRules ALLOW_ALL = new SimpleRobotRules(RobotRulesMode.ALLOW_ALL);
+    // Every robots.txt fetch starts its own request from the shared session
+    private static final Connection SESSION = Jsoup.newSession()
+        .ignoreContentType(true)
+        .ignoreHttpErrors(true)
+        .userAgent(USER_AGENT)
+        .timeout(10_000);
 
-    // Static shared cache across all instances
-    private static final ConcurrentMap<String, BaseRobotRules> SHARED_CACHE =
-        new ConcurrentHashMap<>();
     private static final int MAX_CACHE_SIZE = 7000;
+    static final long RULES_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    static final long FAILURE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+    private static final int CACHE_FILE_VERSION = 1;
+
+    /**
+     * The response to a robots.txt request.
+     */
+    static final class RobotsTxt {
+
+        private final int status;
+        private final byte[] content;
+        private final String contentType;
+
+        RobotsTxt(int status, byte[] content, String contentType) {
+            this.status = status;
+            this.content = content;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * Fetches a robots.txt file.
+     */
+    @FunctionalInterface
+    interface RobotsFetcher {
+        RobotsTxt fetch(String robotsTxtUrl) throws IOException;
+    }
+
+    private static final class CachedRules {
+
+        private final BaseRobotRules rules;
+        private final long expiresAt;
+        // The robots.txt the rules are parsed from, null for allow-all rules
+        private final byte[] content;
+        private final String contentType;
+        private final boolean failed;
+
+        private CachedRules(
+            BaseRobotRules rules,
+            long expiresAt,
+            byte[] content,
+            String contentType,
+            boolean failed
+        ) {
+            this.rules = rules;
+            this.expiresAt = expiresAt;
+            this.content = content;
+            this.contentType = contentType;
+            this.failed = failed;
+        }
+    }
+
+    // Static shared cache across all instances, in least recently used order
+    private static final Map<String, CachedRules> SHARED_CACHE = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedRules> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
+    // The fetches in flight by domain key
+    private static final ConcurrentMap<String, CompletableFuture<BaseRobotRules>> IN_FLIGHT =
+        new ConcurrentHashMap<>();
+
+    private final RobotsFetcher fetcher;
+
+    public RobotsHandler() {
+        this(RobotsHandler::fetchRobotsTxt);
+    }
+
+    RobotsHandler(RobotsFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
 
     /**
      * @param url the URL to check
@@ -46,25 +134,29 @@ public class RobotsHandler {
     }
 
     /**
-     * @param robotsTxtUrl the constructed URL for the robots.txt file
-     * @return the HTTP response from the robots.txt URL reading request
-     * @throws IOException to be handled by @see isUrlAllowed
-     *                     It fetches non-html(plain text) content with maximum
-     *                     timeout of 10 seconds.
+     * @param url the URL whose host is crawled
+     * @return the Crawl-delay of the host in milliseconds from its robots.txt rules, 0 if it has
+     *         none or they cannot be read
      */
-    private Connection.Response fetchRobotsTxt(String robotsTxtUrl) throws IOException {
-        return Jsoup.connect(robotsTxtUrl)
-            .ignoreContentType(true)
-            .userAgent(USER_AGENT)
-            .timeout(10_000)
-            .execute();
+    public long getCrawlDelay(String url) {
+        try {
+            long crawlDelay = getRules(getDomainKey(new URI(url))).getCrawlDelay();
+            return Math.max(0, crawlDelay); // UNSET_CRAWL_DELAY is negative
+        } catch (Exception e) {
+            return 0;
+        }
     }
 
     /**
-     * Generates the robots.txt URL from a given URI
+     * @param robotsTxtUrl the constructed URL for the robots.txt file
+     * @return the status, body and content type of the robots.txt response
+     * @throws IOException to be handled by @see fetchRules
+     *                     It fetches non-html(plain text) content with maximum
+     *                     timeout of 10 seconds.
      */
-    private String getRobotsTxtUrl(URI uri) {
-        return uri.getScheme() + "://" + uri.getAuthority() + "/robots.txt";
+    private static RobotsTxt fetchRobotsTxt(String robotsTxtUrl) throws IOException {
+        Connection.Response response = SESSION.newRequest().url(robotsTxtUrl).execute();
+        return new RobotsTxt(response.statusCode(), response.bodyAsBytes(), response.contentType());
     }
 
     /**
@@ -77,42 +169,75 @@ public class RobotsHandler {
     /**
      * @param domainKey the domain key for the robots.txt file
      * @return the BaseRobotRules object for the domain
-     *         Checks if the rules are already cached and if not, fetches, caches
-     *         and parses.
+     *         Returns the cached rules, or waits for the fetch of the domain in
+     *         flight, or fetches, parses and caches them.
      */
     BaseRobotRules getRules(String domainKey) {
-        BaseRobotRules rules = SHARED_CACHE.get(domainKey);
-        if (rules == null) {
-            try {
-                URI uri = new URI(domainKey);
-                String robotsTxtUrl = getRobotsTxtUrl(uri);
-                Connection.Response response = fetchRobotsTxt(robotsTxtUrl);
-                rules = parser.parseContent(
+        BaseRobotRules rules = getCachedRules(domainKey);
+        if (rules != null) return rules;
+
+        CompletableFuture<BaseRobotRules> fetch = new CompletableFuture<>();
+        CompletableFuture<BaseRobotRules> inFlight = IN_FLIGHT.putIfAbsent(domainKey, fetch);
+        if (inFlight != null) return inFlight.join();
+
+        try {
+            // Another thread may have fetched them since the cache miss
+            rules = getCachedRules(domainKey);
+            if (rules == null) rules = fetchRules(domainKey);
+            return rules;
+        } finally {
+            fetch.complete(rules != null ? rules : ALLOW_ALL);
+            IN_FLIGHT.remove(domainKey, fetch);
+        }
+    }
+
+    /**
+     * Fetches and parses the rules of a domain and caches them. A domain without robots.txt
+     * (4xx response) allows everything, other errors are cached as allow-all rules with the
+     * short failure TTL.
+     */
+    private BaseRobotRules fetchRules(String domainKey) {
+        String robotsTxtUrl = domainKey + "/robots.txt";
+        long now = System.currentTimeMillis();
+        try {
+            RobotsTxt response = fetcher.fetch(robotsTxtUrl);
+            if (response.status >= 200 && response.status < 300) {
+                BaseRobotRules rules = PARSER.parseContent(
                     robotsTxtUrl,
-                    response.bodyAsBytes(),
-                    response.contentType(),
+                    response.content,
+                    response.contentType,
                     USER_AGENT
                 );
+                cache(domainKey, new CachedRules(rules, now + RULES_TTL_MS, response.content, response.contentType, false));
+                return rules;
+            }
+            if (response.status >= 400 && response.status < 500) {
+                cache(domainKey, new CachedRules(ALLOW_ALL, now + RULES_TTL_MS, null, null, false));
+                return ALLOW_ALL;
+            }
+        } catch (Exception e) {
+            // Cached as a failure below
+        }
+        // Return default permissive rules if fetch fails
+        cache(domainKey, new CachedRules(ALLOW_ALL, now + FAILURE_TTL_MS, null, null, true));
+        return ALLOW_ALL;
+    }
 
-                addToCache(domainKey, rules);
-            } catch (IOException | URISyntaxException e) {
-                // Return default permissive rules if fetch fails
-                rules = parser.parseContent("", new byte[0], "text/plain", USER_AGENT);
+    private static BaseRobotRules getCachedRules(String domainKey) {
+        synchronized (SHARED_CACHE) {
+            CachedRules cached = SHARED_CACHE.get(domainKey);
+            if (cached == null) return null;
+            if (cached.expiresAt <= System.currentTimeMillis()) {
+                SHARED_CACHE.remove(domainKey);
+                return null;
             }
+            return cached.rules;
         }
-        return rules;
     }
 
-    /**
-     * @param key   the domain key for the robots.txt file
-     * @param rules the BaseRobotRules object to cache
-     *              Works as a cache manager for the class
-     */
-    public static void addToCache(String key, BaseRobotRules rules) {
-        if (SHARED_CACHE.size() < MAX_CACHE_SIZE) SHARED_CACHE.putIfAbsent(key, rules);
-        else {
-            clearSharedCache();
-            SHARED_CACHE.putIfAbsent(key, rules);
+    private static void cache(String domainKey, CachedRules rules) {
+        synchronized (SHARED_CACHE) {
+            SHARED_CACHE.put(domainKey, rules);
         }
     }
 
@@ -120,6 +245,92 @@ public class RobotsHandler {
      * Clears the shared cache (available to all instances)
      */
     public static void clearSharedCache() {
-        SHARED_CACHE.clear();
+        synchronized (SHARED_CACHE) {
+            SHARED_CACHE.clear();
+        }
+    }
+
+    /**
+     * Saves the unexpired rules of the shared cache to a file, replaced atomically, in least
+     * recently used order. The failed fetches are not saved.
+     *
+     * @param path The cache file.
+     */
+    public static void saveSharedCache(Path path) throws IOException {
+        List<Map.Entry<String, CachedRules>> entries;
+        synchronized (SHARED_CACHE) {
+            entries = new ArrayList<>(SHARED_CACHE.entrySet());
+        }
+
+        long now = System.currentTimeMillis();
+        entries.removeIf(entry -> entry.getValue().failed || entry.getValue().expiresAt <= now);
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)
+            )
+        ) {
+            out.writeInt(CACHE_FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, CachedRules> entry : entries) {
+                CachedRules cached = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeLong(cached.expiresAt);
+                out.writeBoolean(cached.content != null);
+                if (cached.content != null) {
+                    out.writeUTF(cached.contentType == null ? "" : cached.contentType);
+                    out.writeInt(cached.content.length);
+                    out.write(cached.content);
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Loads the rules saved by saveSharedCache into the shared cache, parsing their robots.txt
+     * again. The rules expired since are skipped.
+     *
+     * @param path The cache file.
+     * @return The number of loaded rules
+     */
+    public static int loadSharedCache(Path path) throws IOException {
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16)
+            )
+        ) {
+            int version = in.readInt();
+            if (version != CACHE_FILE_VERSION) {
+                throw new IOException("Unsupported robots cache version " + version + ": " + path);
+            }
+
+            long now = System.currentTimeMillis();
+            int count = in.readInt();
+            int loaded = 0;
+            for (int i = 0; i < count; i++) {
+                String domainKey = in.readUTF();
+                long expiresAt = in.readLong();
+                CachedRules cached = new CachedRules(ALLOW_ALL, expiresAt, null, null, false);
+                if (in.readBoolean()) {
+                    String contentType = in.readUTF();
+                    byte[] content = new byte[in.readInt()];
+                    in.readFully(content);
+                    BaseRobotRules rules = PARSER.parseContent(
+                        domainKey + "/robots.txt",
+                        content,
+                        contentType.isEmpty() ? null : contentType,
+                        USER_AGENT
+                    );
+                    cached = new CachedRules(rules, expiresAt, content, contentType, false);
+                }
+                if (expiresAt > now) {
+                    cache(domainKey, cached);
+                    loaded++;
+                }
+            }
+            return loaded;
+        }
     }
 }
@@ -2,12 +2,16 @@ package com.project.searchengine.crawler;
 
 import com.project.searchengine.server.model.UrlDocument;
 import com.project.searchengine.server.service.UrlsFrontierService;
+import com.project.searchengine.utils.Fingerprint;
+import com.project.searchengine.utils.FingerprintSet;
 import java.io.*;
-import java.nio.file.Paths;
+import java.nio.file.*;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.*;
 
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -18,17 +22,50 @@ public class UrlsFrontier {
     private final String SEEDS_FILE_PATH = Paths.get("src/main/resources/seeds-cartoons.txt").toString();
     public static final int BATCH_SIZE = 100;
     public static final int MAX_URLS = 6000;
-    public List<String> currentUrlBatch = Collections.synchronizedList(new ArrayList<>());
-    public Set<String> hashedDocsCache = ConcurrentHashMap.newKeySet();
+    // URLs waiting in the host scheduler above which it is not refilled
+    public static final int MAX_QUEUED_URLS = 10 * BATCH_SIZE;
+    // Changes of the frontier table written per bulk, and how often they are synced
+    public static final int SYNC_BATCH_SIZE = 1000;
+    private static final long SYNC_INTERVAL_MS = 1000;
+    private static final long CHECKPOINT_INTERVAL_MS = 30_000;
+    // The URLs of the frontier, synced to the database in the background
+    private volatile FrontierTable frontierTable = new FrontierTable();
+    // Checkpoint of the frontier table for a warm start, none if empty
+    private final String frontierCheckpoint;
+    private ScheduledExecutorService syncExecutor;
+    private final Object syncLock = new Object();
+    private long lastCheckpoint;
+    // URLs claimed from the frontier table and not yet handed to the crawler
+    private final HostScheduler hostScheduler;
+    // Minimum delay between two fetches of a host, in milliseconds
+    private final long hostDelay;
+    private FingerprintSet hashedDocsCache = new FingerprintSet();
+    // Snapshot of the hashed docs cache for a warm start, none if empty
+    private final String hashedDocsSnapshot;
 
     /**
      * Constructor for UrlsFrontier.
      *
      * @param urlsFrontierService Service to manage URLs in the frontier.
+     * @param hashedDocsSnapshot File of the snapshot of the hashed docs cache, disabled if empty.
+     * @param frontierCheckpoint File of the checkpoint of the frontier table, disabled if empty.
+     * @param hostDelay Minimum delay between two fetches of a host in milliseconds, a longer
+     * Crawl-delay of its robots.txt is used instead.
+     * @param hostQueues Maximum number of hosts the scheduler crawls from at the same time.
      */
     @Autowired
-    public UrlsFrontier(UrlsFrontierService urlsFrontierService) {
+    public UrlsFrontier(
+        UrlsFrontierService urlsFrontierService,
+        @Value("${crawler.dedup.snapshot:}") String hashedDocsSnapshot,
+        @Value("${crawler.frontier.checkpoint:}") String frontierCheckpoint,
+        @Value("${crawler.host.delay:1000}") long hostDelay,
+        @Value("${crawler.host.queues:100}") int hostQueues
+    ) {
         this.urlsFrontierService = urlsFrontierService;
+        this.hashedDocsSnapshot = hashedDocsSnapshot;
+        this.frontierCheckpoint = frontierCheckpoint;
+        this.hostDelay = hostDelay;
+        this.hostScheduler = new HostScheduler(hostQueues);
     }
 
     /**
@@ -39,7 +76,111 @@ public class UrlsFrontier {
     public void seedFrontier() {
         List<String> seedUrls = readSeeds();
         System.out.println("Seeding the frontier with " + seedUrls.size() + " URLs." + seedUrls);
-        urlsFrontierService.initializeFrontier(seedUrls, MAX_URLS);
+        handleUrls(seedUrls);
+    }
+
+    /**
+     * Loads the frontier table from its checkpoint file if there is one, otherwise from the
+     * database, and starts writing its changes to the database every SYNC_INTERVAL_MS.
+     */
+    public synchronized void loadFrontier() {
+        long start = System.nanoTime();
+        FrontierTable loaded = null;
+        String source = "checkpoint";
+        if (!frontierCheckpoint.isEmpty() && Files.exists(Paths.get(frontierCheckpoint))) {
+            try {
+                loaded = FrontierTable.readSnapshot(Paths.get(frontierCheckpoint));
+            } catch (IOException e) {
+                System.err.println("Error reading frontier checkpoint, loading from database: " + e.getMessage());
+            }
+        }
+        if (loaded == null) {
+            FrontierTable table = new FrontierTable();
+            urlsFrontierService.forEachUrl(urlDocument ->
+                table.load(urlDocument.getNormalizedUrl(), urlDocument.getFrequency(), urlDocument.isCrawled())
+            );
+            loaded = table;
+            source = "database";
+        }
+        frontierTable = loaded;
+        System.out.println(
+            "Loaded " +
+            loaded.size() +
+            " frontier URLs from " +
+            source +
+            " in " +
+            (System.nanoTime() - start) / 1_000_000 +
+            " ms"
+        );
+
+        if (syncExecutor == null) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "frontier-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncExecutor.scheduleWithFixedDelay(
+                () -> syncFrontier(false),
+                SYNC_INTERVAL_MS,
+                SYNC_INTERVAL_MS,
+                TimeUnit.MILLISECONDS
+            );
+        }
+    }
+
+    /**
+     * Writes the changes of the frontier table to the database in bulks of SYNC_BATCH_SIZE, then
+     * writes its checkpoint at most every CHECKPOINT_INTERVAL_MS. The checkpoint is only written
+     * with no bulk in flight, so the changes it records as synced are in the database.
+     * A failed bulk is retried by the next sync.
+     *
+     * @param force Writes the checkpoint whatever the time of the last one.
+     */
+    private void syncFrontier(boolean force) {
+        synchronized (syncLock) {
+            FrontierTable table = frontierTable;
+            Map<String, Long> changes;
+            do {
+                changes = table.drainChanges(SYNC_BATCH_SIZE);
+                try {
+                    urlsFrontierService.syncUrls(changes);
+                } catch (RuntimeException e) {
+                    table.restoreChanges(changes);
+                    System.err.println("Error syncing the frontier, retrying on the next sync: " + e.getMessage());
+                    break;
+                }
+            } while (changes.size() == SYNC_BATCH_SIZE);
+
+            long now = System.currentTimeMillis();
+            if (frontierCheckpoint.isEmpty() || (!force && now - lastCheckpoint < CHECKPOINT_INTERVAL_MS)) return;
+            try {
+                table.writeSnapshot(Paths.get(frontierCheckpoint));
+                lastCheckpoint = now;
+            } catch (IOException e) {
+                System.err.println("Error writing frontier checkpoint: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Stops the background sync, then writes the remaining changes and the checkpoint.
+     */
+    @PreDestroy
+    public void closeFrontier() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = syncExecutor;
+            syncExecutor = null;
+        }
+        if (executor == null) return;
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(60, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        syncFrontier(true);
     }
 
     /**
@@ -62,69 +203,170 @@ public class UrlsFrontier {
     }
 
     /**
-     * Retrieves the next batch of URLs from the frontier.
+     * Retrieves the next URL to crawl from the HostScheduler, so that no host is fetched more
+     * often than its delay allows. When no host can be fetched, the scheduler is refilled with
+     * the BATCH_SIZE URLs of the frontier table with the highest frequencies, unless it already
+     * holds MAX_QUEUED_URLS. A URL is claimed by the refill and never returned again in the crawl.
      *
-     * @return true if the batch was successfully retrieved, false if no more URLs are available.
+     * @return The next URL, its host busy until finishFetch is called, or null if no URL is
+     * available now. Scheduled URLs may be available later (see millisUntilNextUrl), so may the
+     * URLs discovered by the pages being crawled.
      */
-    public synchronized boolean getNextUrlsBatch() {
-        List<String> urls = urlsFrontierService.getTop100UrlsByFrequency();
-        if (urls.isEmpty()) {
-            return false;
+    public synchronized String nextUrl() {
+        long now = System.currentTimeMillis();
+        String url = hostScheduler.poll(now);
+        if (url != null || hostScheduler.size() >= MAX_QUEUED_URLS) return url;
+
+        List<FrontierTable.Entry> urls = frontierTable.claimTop(BATCH_SIZE);
+        for (FrontierTable.Entry entry : urls) {
+            hostScheduler.add(entry.getUrl(), entry.getFrequency());
         }
-        currentUrlBatch.clear();
-        currentUrlBatch.addAll(urls);
-        return true;
+        return urls.isEmpty() ? null : hostScheduler.poll(now);
     }
 
     /**
-     * Retrieves all hashed document contents from the database.
+     * @return The milliseconds until a scheduled URL can be fetched, -1 if the hosts of all the
+     * scheduled URLs are being fetched
+     */
+    public synchronized long millisUntilNextUrl() {
+        return hostScheduler.millisUntilNext(System.currentTimeMillis());
+    }
+
+    /**
+     * @return true if URLs are waiting in the scheduler for their host
+     */
+    public synchronized boolean hasScheduledUrls() {
+        return hostScheduler.size() > 0;
+    }
+
+    /**
+     * Lets the host of a URL returned by nextUrl be fetched again after the host delay, or after
+     * its Crawl-delay if longer.
+     *
+     * @param normalizedUrl The fetched URL.
+     * @param crawlDelay The Crawl-delay of its host in milliseconds, 0 if none.
+     */
+    public synchronized void finishFetch(String normalizedUrl, long crawlDelay) {
+        hostScheduler.finished(normalizedUrl, System.currentTimeMillis() + Math.max(hostDelay, crawlDelay));
+    }
+
+    /**
+     * Lets the host of a URL returned by nextUrl be fetched again right away, for a URL rejected
+     * before any request to its host, such as one disallowed by robots.txt.
+     *
+     * @param normalizedUrl The rejected URL.
+     */
+    public synchronized void skipFetch(String normalizedUrl) {
+        hostScheduler.finished(normalizedUrl, System.currentTimeMillis());
+    }
+
+    /**
+     * Retrieves all hashed document contents from the snapshot file if there is one, otherwise
+     * from the database.
      * Sets the allHashedDocs Cache.
      * This is used to check for duplicates in the frontier.
      */
     public void getAllHashedDocContent() {
-        hashedDocsCache.addAll(urlsFrontierService.findAllHashedDocContent());
+        long start = System.nanoTime();
+        if (!hashedDocsSnapshot.isEmpty() && Files.exists(Paths.get(hashedDocsSnapshot))) {
+            try {
+                hashedDocsCache = FingerprintSet.readSnapshot(Paths.get(hashedDocsSnapshot));
+                System.out.println(
+                    "Loaded " +
+                    hashedDocsCache.size() +
+                    " hashed docs from snapshot in " +
+                    (System.nanoTime() - start) / 1_000_000 +
+                    " ms"
+                );
+                return;
+            } catch (IOException e) {
+                System.err.println("Error reading hashed docs snapshot, loading from database: " + e.getMessage());
+            }
+        }
+
+        FingerprintSet loaded = new FingerprintSet(urlsFrontierService.count());
+        urlsFrontierService.forEachHashedDocContent(hashedDocContent -> {
+            // SHA-256 hashes of documents crawled before fingerprints cannot match a new document
+            if (hashedDocContent.length == Fingerprint.BYTES) {
+                loaded.add(Fingerprint.fromBytes(hashedDocContent));
+            }
+        });
+        hashedDocsCache = loaded;
+        System.out.println(
+            "Loaded " +
+            loaded.size() +
+            " hashed docs from database in " +
+            (System.nanoTime() - start) / 1_000_000 +
+            " ms"
+        );
+    }
+
+    /**
+     * Saves the hashed docs cache to its snapshot file, if enabled, for the next crawl to start
+     * from. Documents crawled after the snapshot are missing from it until the next save, which
+     * at worst lets one of their duplicates through.
+     */
+    public void saveHashedDocsSnapshot() {
+        if (hashedDocsSnapshot.isEmpty()) return;
+        try {
+            hashedDocsCache.writeSnapshot(Paths.get(hashedDocsSnapshot));
+        } catch (IOException e) {
+            System.err.println("Error saving hashed docs snapshot: " + e.getMessage());
+        }
     }
 
     /**
      * Handles processed URL by updating its frequency in the frontier or adding it if it doesn't exist.
+     * The change is written to the database by the next sync.
      * @param url The URL to handle
-     * @return true if the URL was newly added, false if it already existed and was updated
+     * @return false if the URL is new and the frontier is full, true otherwise
      */
     public boolean handleUrl(String url) {
-        return urlsFrontierService.upsertUrl(url, MAX_URLS);
+        return frontierTable.add(url, MAX_URLS);
+    }
+
+    /**
+     * Handles the linked pages of a crawled page in one call to the frontier, see handleUrl.
+     * @param urls The URLs to handle
+     * @return The number of URLs added or updated, new URLs are rejected once the frontier is full
+     */
+    public int handleUrls(Collection<String> urls) {
+        return frontierTable.addAll(urls, MAX_URLS);
     }
 
     /**
-     * Checks if the frontier should be initialized.
+     * Checks if the frontier should be initialized, once it is loaded.
      *
      * @return true if the frontier is empty, false otherwise
      */
     public boolean shouldInitializeFrontier() {
-        return urlsFrontierService.isEmpty();
+        return frontierTable.size() == 0;
     }
 
     /**
      * Updates a normalized URL's document after being crawled in the database.
      * @param normalizedUrl the crawled url.
      * @param document URL's page content.
-     * @param hashedContent URL's page content hash.
+     * @param hashedContent URL's page content fingerprint bytes.
      * @param linkedPages URL's linked pages.
      */
     public void saveCrawledDocument(
         String normalizedUrl,
         byte[] document,
-        String hashedContent,
+        byte[] hashedContent,
         List<String> linkedPages
     ) {
+        frontierTable.markCrawled(normalizedUrl);
+        // A document created here gets its frequency from the increments of the next sync
         UrlDocument urlDocument = new UrlDocument(
             normalizedUrl,
-            1,
+            0,
             true,
             document,
             hashedContent,
             linkedPages,
             new Date().toString()
-        ); // dummy frequency
+        );
         urlsFrontierService.updateUrlDocument(urlDocument);
     }
 
@@ -134,24 +376,25 @@ public class UrlsFrontier {
      * @return true if the threshold is reached, false otherwise.
      */
     public boolean hasReachedThreshold() {
-        return urlsFrontierService.count() >= MAX_URLS;
+        return frontierTable.size() >= MAX_URLS;
     }
 
     /**
-     * Removes a URL from the frontier if it proves to be un-crawlable.
+     * Removes a URL from the frontier if it proves to be un-crawlable. It is deleted from the
+     * database but stays in the frontier table, so it is ignored when found again in this crawl.
      * @param normalizedUrl the URL to be removed.
      */
     public void removeUrl(String normalizedUrl) {
-        urlsFrontierService.deleteByNormalizedUrl(normalizedUrl);
+        frontierTable.remove(normalizedUrl);
     }
 
     /**
      * Checks if a page content is already in the frontier by checking the hash cache.
      *
-     * @param normalizedUrl The normalized URL to check.
-     * @return true if the URL exists, false otherwise.
+     * @param hashedDocContent The fingerprint of the page content.
+     * @return true if the content was already crawled, false otherwise.
      */
-    public boolean isDuplicate(String hashedDocContent) {
+    public boolean isDuplicate(Fingerprint hashedDocContent) {
         return !hashedDocsCache.add(hashedDocContent);
     }
 }
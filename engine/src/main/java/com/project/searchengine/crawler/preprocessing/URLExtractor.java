@@ -8,23 +8,22 @@ import org.jsoup.select.Elements;
 
 public class URLExtractor {
     /**
-     * A reusable connection to be used for fetching documents.
-     * This is a static field to avoid creating a new connection for each request.
+     * A session shared by all the fetches, holding the request settings.
+     * Every fetch starts its own request from it, which is thread safe, so the fetches do not
+     * need a connection per thread when they run on virtual threads.
      */
-    private static final ThreadLocal<Connection> threadLocalConnection = ThreadLocal.withInitial(
-        () -> Jsoup.newSession()
-            .timeout(10_000)
-            .ignoreHttpErrors(true)
-            .followRedirects(true)
-            .maxBodySize(2_000_000)
-    );
+    private static final Connection session = Jsoup.newSession()
+        .timeout(10_000)
+        .ignoreHttpErrors(true)
+        .followRedirects(true)
+        .maxBodySize(2_000_000);
 
     /**
-     * Fetches the document from the passed URL using a reusable connection.
+     * Fetches the document from the passed URL with a new request of the shared session.
      */
     public static Document getDocument(String url) {
         try {
-            Connection connection = threadLocalConnection.get().url(url);
+            Connection connection = session.newRequest().url(url);
             Connection.Response res = connection.execute();
             
             // Only accept successful (200) responses with HTML content
@@ -0,0 +1,109 @@
+package com.project.searchengine.indexer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache from a lower cased surface word to its analyzed term, shared by all threads.
+ *
+ * Direct mapped: a word has a single slot chosen by its hash, a miss replaces whatever the slot
+ * held. Entries are immutable and published through an AtomicReferenceArray, so lookups take no
+ * lock and a hit allocates nothing. Hits and misses are counted to size the cache.
+ */
+public class AnalysisCache {
+
+    /**
+     * An analyzed word, term is null when the word is not indexed (stop word or too short).
+     */
+    static final class Entry {
+
+        final String surface;
+        final char[] term;
+        final boolean stopWord;
+
+        Entry(String surface, char[] term, boolean stopWord) {
+            this.surface = surface;
+            this.term = term;
+            this.stopWord = stopWord;
+        }
+    }
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param capacity The maximum number of cached words, rounded up to a power of two.
+     */
+    public AnalysisCache(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * @return The cached entry of the word, null on a miss
+     */
+    Entry get(char[] buffer, int length, int hash) {
+        Entry entry = slots.get(hash & mask);
+        if (entry != null && matches(entry.surface, buffer, length)) {
+            hits.increment();
+            return entry;
+        }
+        misses.increment();
+        return null;
+    }
+
+    void put(Entry entry, int hash) {
+        slots.set(hash & mask, entry);
+    }
+
+    static int hash(char[] buffer, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String surface, char[] buffer, int length) {
+        if (surface.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (surface.charAt(i) != buffer[i]) return false;
+        }
+        return true;
+    }
+
+    public int capacity() {
+        return slots.length();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return The ratio of lookups served from the cache, 0 before any lookup
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "AnalysisCache{capacity=%d, hits=%d, misses=%d, hitRate=%.3f}",
+            capacity(),
+            getHits(),
+            getMisses(),
+            getHitRate()
+        );
+    }
+}
@@ -0,0 +1,209 @@
+package com.project.searchengine.indexer;
+
+import java.util.*;
+import opennlp.tools.stemmer.PorterStemmer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns text into index terms in a single pass over its chars, shared by the indexer, the
+ * query tokenizer and the snippet highlighting so they always agree on tokens and positions.
+ *
+ * Tokens are split like OpenNLP's SimpleTokenizer: runs of letters, runs of digits, runs of the
+ * same other char, separated by whitespace. Every token takes a position. Letter tokens are
+ * lowercased into a reused buffer, dropped if they are stop words, stripped of non a-z chars and
+ * stemmed into the stemmer's own buffer. Terms shorter than 2 chars are dropped.
+ *
+ * No String is created per token, the buffers are per thread. The analysis of every distinct
+ * word is kept in a bounded AnalysisCache shared by all threads (size analyzer.cache.size), so
+ * frequent words are stemmed once.
+ */
+@Component
+public class Analyzer {
+
+    private static final int WHITESPACE = 0;
+    private static final int ALPHABETIC = 1;
+    private static final int NUMERIC = 2;
+    private static final int OTHER = 3;
+
+    /**
+     * Receives every token of an analyzed text.
+     */
+    @FunctionalInterface
+    public interface TokenConsumer {
+        /**
+         * @param start The start of the token in the text.
+         * @param end The end (exclusive) of the token in the text.
+         * @param position The position of the token.
+         * @param term The buffer holding the analyzed term, only valid during the call.
+         * @param termLength The length of the term, 0 if the token is not indexed.
+         */
+        void accept(int start, int end, int position, char[] term, int termLength);
+    }
+
+    /**
+     * Reused buffers of a thread, PorterStemmer keeps internal state.
+     */
+    private static class State {
+
+        final PorterStemmer stemmer = new PorterStemmer();
+        char[] buffer = new char[32];
+        char[] term;
+    }
+
+    private static final int DEFAULT_CACHE_SIZE = 1 << 16;
+
+    private final StopWordFilter stopWordFilter;
+    private final AnalysisCache cache;
+    private final ThreadLocal<State> state = ThreadLocal.withInitial(State::new);
+
+    public Analyzer(StopWordFilter stopWordFilter) {
+        this(stopWordFilter, DEFAULT_CACHE_SIZE);
+    }
+
+    @Autowired
+    public Analyzer(
+        StopWordFilter stopWordFilter,
+        @Value("${analyzer.cache.size:65536}") int cacheSize
+    ) {
+        this.stopWordFilter = stopWordFilter;
+        this.cache = new AnalysisCache(cacheSize);
+    }
+
+    /**
+     * @return The cache of analyzed words, for its hit and miss metrics
+     */
+    public AnalysisCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Analyzes a text, calling the consumer for every token in order.
+     *
+     * @param text The text to analyze.
+     * @param consumer The token consumer.
+     * @return The number of tokens (positions) in the text.
+     */
+    public int analyze(CharSequence text, TokenConsumer consumer) {
+        State current = state.get();
+        int length = text.length();
+        int position = 0;
+        int i = 0;
+
+        while (i < length) {
+            char c = text.charAt(i);
+            int type = charType(c);
+            if (type == WHITESPACE) {
+                i++;
+                continue;
+            }
+
+            int start = i++;
+            if (type == OTHER) {
+                while (i < length && text.charAt(i) == c) i++;
+            } else {
+                while (i < length && charType(text.charAt(i)) == type) i++;
+            }
+
+            if (type == ALPHABETIC) {
+                int termLength = analyzeWord(current, text, start, i);
+                char[] term = termLength > 0 ? current.term : current.buffer;
+                consumer.accept(start, i, position++, term, termLength);
+            } else {
+                consumer.accept(start, i, position++, current.buffer, 0);
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Splits a text into its raw tokens, the token at index i has position i.
+     *
+     * @param text The text to split.
+     * @return The tokens as they appear in the text.
+     */
+    public String[] tokenize(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        analyze(text, (start, end, position, term, termLength) ->
+            tokens.add(text.subSequence(start, end).toString())
+        );
+        return tokens.toArray(new String[0]);
+    }
+
+    /**
+     * Analyzes a single token.
+     *
+     * @param token The raw token.
+     * @return The index term of the token, null if it is not indexed.
+     */
+    public String analyzeToken(CharSequence token) {
+        String[] result = new String[1];
+        analyze(token, (start, end, position, term, termLength) -> {
+            if (result[0] == null && termLength > 0) {
+                result[0] = new String(term, 0, termLength);
+            }
+        });
+        return result[0];
+    }
+
+    /**
+     * Lowercases a run of letters and looks it up in the cache, analyzing it on a miss.
+     *
+     * @return The length of the term, set in current.term, 0 if it is dropped.
+     */
+    private int analyzeWord(State current, CharSequence text, int start, int end) {
+        int length = end - start;
+        if (current.buffer.length < length) {
+            current.buffer = new char[Math.max(length, current.buffer.length * 2)];
+        }
+        char[] buffer = current.buffer;
+        for (int i = 0; i < length; i++) {
+            buffer[i] = Character.toLowerCase(text.charAt(start + i));
+        }
+
+        int hash = AnalysisCache.hash(buffer, length);
+        AnalysisCache.Entry entry = cache.get(buffer, length, hash);
+        if (entry == null) {
+            entry = analyzeUncached(current, buffer, length);
+            cache.put(entry, hash);
+        }
+
+        current.term = entry.term;
+        return entry.term == null ? 0 : entry.term.length;
+    }
+
+    /**
+     * Filters and stems a lower cased word, the buffer is modified in place.
+     */
+    private AnalysisCache.Entry analyzeUncached(State current, char[] buffer, int length) {
+        String surface = new String(buffer, 0, length);
+        if (stopWordFilter.isStopWord(buffer, length)) {
+            return new AnalysisCache.Entry(surface, null, true);
+        }
+
+        // Keep a-z only, in place
+        int kept = 0;
+        for (int i = 0; i < length; i++) {
+            char c = buffer[i];
+            if (c >= 'a' && c <= 'z') buffer[kept++] = c;
+        }
+        if (kept < 2) return new AnalysisCache.Entry(surface, null, false);
+
+        current.stemmer.stem(buffer, kept);
+        int termLength = current.stemmer.getResultLength();
+        char[] term = termLength < 2
+            ? null
+            : Arrays.copyOf(current.stemmer.getResultBuffer(), termLength);
+        return new AnalysisCache.Entry(surface, term, false);
+    }
+
+    private static int charType(char c) {
+        if (Character.isWhitespace(c) || Character.getType(c) == Character.SPACE_SEPARATOR) {
+            return WHITESPACE;
+        }
+        if (Character.isLetter(c)) return ALPHABETIC;
+        if (Character.isDigit(c)) return NUMERIC;
+        return OTHER;
+    }
+}
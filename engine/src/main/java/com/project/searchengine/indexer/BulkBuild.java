@@ -0,0 +1,174 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.indexer.storage.SegmentStore;
+import com.project.searchengine.server.model.*;
+import com.project.searchengine.server.service.InvertedIndexService;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A bulk build of the index: the workers spill their postings as sorted runs instead of handing
+ * them to the writer, and the runs of the whole indexing pass are k-way merged and written once
+ * at the end, as a single segment or as a few large bulk writes of the words.
+ *
+ * The batches of the pass write their pages as usual but stay pending in the IndexCommitLog until
+ * the merged postings are written, so a crash before the end rolls the whole pass back. In the
+ * segment store every batch is logged with the name reserved for the final segment.
+ *
+ * Batches are added by the concurrent flushes, finish runs once they are all done.
+ */
+class BulkBuild {
+
+    // Postings per bulk write of the words, and per upsert of a single word
+    static final int POSTINGS_PER_WRITE = 50_000;
+    static final int POSTINGS_PER_WORD = 10_000;
+
+    private final SegmentStore segmentStore;
+    private final InvertedIndexService invertedIndexService;
+    private final IndexCommitLog indexCommitLog;
+
+    private final List<String> batchIds = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final Map<String, Integer> pageDocIds = new HashMap<>();
+    private String segmentName;
+
+    BulkBuild(
+        SegmentStore segmentStore,
+        InvertedIndexService invertedIndexService,
+        IndexCommitLog indexCommitLog
+    ) {
+        this.segmentStore = segmentStore;
+        this.invertedIndexService = invertedIndexService;
+        this.indexCommitLog = indexCommitLog;
+    }
+
+    /**
+     * @return The name of the segment the pass writes, null without segment store
+     */
+    synchronized String getSegmentName() {
+        if (segmentName == null && segmentStore.isEnabled()) {
+            segmentName = segmentStore.reserveSegmentName();
+        }
+        return segmentName;
+    }
+
+    /**
+     * Adds a batch whose pages are written, its postings are written by finish.
+     *
+     * @param batchId The id of the batch in the IndexCommitLog.
+     * @param batch The batch with its spilled runs.
+     */
+    synchronized void add(String batchId, IndexedBatch batch) {
+        batchIds.add(batchId);
+        runs.addAll(batch.getRuns());
+        for (Page page : batch.getSavedPages()) {
+            pageDocIds.put(page.getId(), page.getDocId());
+        }
+        for (Page page : batch.getReindexedPages()) {
+            pageDocIds.put(page.getId(), page.getDocId());
+        }
+    }
+
+    /**
+     * Merges the runs of the pass, writes the postings and commits its batches. On failure the
+     * whole pass is rolled back.
+     */
+    synchronized void finish() {
+        if (batchIds.isEmpty()) return;
+
+        long start = System.nanoTime();
+        long[] postingsCount = new long[1];
+        try {
+            if (segmentName != null) {
+                segmentStore.writeSegment(segmentName, pageDocIds, writer ->
+                    PostingsRun.merge(runs, (word, pages) -> {
+                        writer.addTerm(word, pages);
+                        postingsCount[0] += pages.size();
+                    })
+                );
+            } else {
+                writeWords(postingsCount);
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error writing the bulk build, rolling it back: " + e.getMessage());
+            batchIds.forEach(indexCommitLog::rollback);
+            deleteRuns();
+            return;
+        }
+
+        batchIds.forEach(indexCommitLog::commit);
+        if (segmentName != null) segmentStore.releaseSegment(segmentName);
+        deleteRuns();
+
+        System.out.println(
+            "Bulk build merged " +
+            runs.size() +
+            " runs into " +
+            postingsCount[0] +
+            " postings of " +
+            pageDocIds.size() +
+            " pages in " +
+            (System.nanoTime() - start) / 1_000_000 +
+            " ms"
+        );
+    }
+
+    /**
+     * Writes the merged postings to the words in bulk writes of about POSTINGS_PER_WRITE postings,
+     * the pages of a very frequent word are split across writes.
+     */
+    private void writeWords(long[] postingsCount) throws IOException {
+        Map<String, InvertedIndex> chunk = new HashMap<>();
+        int[] chunkPostings = new int[1];
+
+        PostingsRun.merge(runs, (word, pages) -> {
+            for (int from = 0; from < pages.size(); from += POSTINGS_PER_WORD) {
+                // A word appears once per bulk write
+                if (chunk.containsKey(word)) {
+                    invertedIndexService.saveTokensInBulk(chunk);
+                    chunkPostings[0] = 0;
+                }
+
+                InvertedIndex index = new InvertedIndex(word);
+                index.setPages(
+                    new ArrayList<>(pages.subList(from, Math.min(pages.size(), from + POSTINGS_PER_WORD)))
+                );
+                chunk.put(word, index);
+                chunkPostings[0] += index.getPageCount();
+                postingsCount[0] += index.getPageCount();
+
+                if (chunkPostings[0] >= POSTINGS_PER_WRITE) {
+                    invertedIndexService.saveTokensInBulk(chunk);
+                    chunkPostings[0] = 0;
+                }
+            }
+        });
+        invertedIndexService.saveTokensInBulk(chunk);
+    }
+
+    private void deleteRuns() {
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException e) {
+                System.err.println("Error deleting postings run " + run + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Creates the spill directory and removes the runs of a pass that did not finish.
+     *
+     * @param directory The spill directory.
+     */
+    static void prepareSpillDirectory(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            PostingsRun.deleteStaleRuns(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to prepare spill directory " + directory, e);
+        }
+    }
+}
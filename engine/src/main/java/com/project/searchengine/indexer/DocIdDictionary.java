@@ -0,0 +1,431 @@
+package com.project.searchengine.indexer;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.project.searchengine.server.model.Page;
+import com.project.searchengine.server.service.PageService;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+/**
+ * Memory resident dictionary of the dense int doc ids assigned to pages by the indexer.
+ *
+ * Doc ids are assigned in increasing order starting at 0, so per-page data can be kept in
+ * arrays indexed by doc id instead of maps keyed by the 64 char page id. The doc id of a page
+ * is persisted in its "pages" document, the dictionary is loaded from there on first use.
+ *
+ * Only the indexer assigns doc ids, from blocks of ID_BLOCK_SIZE reserved with an atomic
+ * increment of the "docId" counter document, so they never collide with the ids of another
+ * indexer run. The ids left in a block when the indexer stops are never used. Pages indexed
+ * before doc ids existed are given one on the first assignment. The other processes (the query
+ * server) only load the doc ids, a page without one is unknown to them until it gets one.
+ *
+ * Concurrent flushes commit their doc ids out of order, so a refresh loads the doc ids above
+ * the highest loaded one and the missing doc ids below it. A doc id still missing after
+ * MISSING_TIMEOUT_NANOS is given up: its page was rolled back or never saved.
+ *
+ * Page ranks are kept alongside so the ranker does not need a database round trip per query.
+ * They are reloaded when a PageRank run bumps the rank generation, checked at most once per
+ * RANK_REFRESH_INTERVAL_NANOS.
+ *
+ * Lookups never lock: they read an immutable Snapshot of the arrays, replaced after every
+ * change. The arrays are only written under the lock, in place above the size of the published
+ * snapshot and on a copy below it. Refreshes and rank reloads query the database outside the
+ * lock, one at a time, and only take it to apply their results.
+ */
+@Component
+public class DocIdDictionary {
+
+    public static final int NO_DOC_ID = -1;
+
+    private static final long REFRESH_INTERVAL_NANOS = 1_000_000_000L;
+    private static final String DOC_ID_COUNTER = "docId";
+    static final int ID_BLOCK_SIZE = 256;
+    private static final long MISSING_TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(10);
+    private static final int MISSING_BATCH_SIZE = 1000;
+    private static final long RANK_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PageService pageService;
+
+    /**
+     * The doc ids below size with their page ids, URLs and ranks, never modified once published.
+     */
+    private static final class Snapshot {
+
+        private final String[] pageIds;
+        private final String[] urls;
+        private final double[] ranks;
+        private final int size;
+
+        private Snapshot(String[] pageIds, String[] urls, double[] ranks, int size) {
+            this.pageIds = pageIds;
+            this.urls = urls;
+            this.ranks = ranks;
+            this.size = size;
+        }
+
+        private boolean isLoaded(int docId) {
+            return docId >= 0 && docId < size && pageIds[docId] != null;
+        }
+    }
+
+    private final Map<String, Integer> docIds = new ConcurrentHashMap<>();
+    private volatile Snapshot snapshot = new Snapshot(new String[0], new String[0], new double[0], 0);
+
+    // The arrays being written, guarded by this. Shared with the snapshot until they are copied
+    private String[] pageIds = new String[1024];
+    private String[] urls = new String[1024];
+    private double[] ranks = new double[1024];
+    private int size = 0;
+    private boolean shared = false;
+    // The doc ids put since the last publish, added to docIds once their snapshot is published
+    private final List<Integer> unpublished = new ArrayList<>();
+    // The doc ids below size that are not loaded, with the time they were found missing
+    private final Map<Integer, Long> missingDocIds = new LinkedHashMap<>();
+
+    private volatile boolean loaded = false;
+    private volatile long lastRefresh = 0;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // The doc ids reserved by this process and not assigned yet, from nextDocId to reservedEnd
+    private int nextDocId = 0;
+    private int reservedEnd = 0;
+    private boolean assigning = false;
+    private volatile long rankGeneration = 0;
+    private volatile long lastRankRefresh = 0;
+    private final AtomicBoolean reloadingRanks = new AtomicBoolean();
+
+    /**
+     * Returns the doc id of a page, assigning the next one if the page has none yet. Only called
+     * by the indexer.
+     *
+     * @param pageId The page id.
+     * @param url The normalized URL of the page.
+     * @return The doc id of the page.
+     */
+    public synchronized int assign(String pageId, String url) {
+        ensureLoaded();
+        if (!assigning) {
+            assigning = true;
+            assignMissingDocIds();
+        }
+
+        Integer docId = docIds.get(pageId);
+        if (docId != null) return docId;
+
+        int newDocId = reserveDocId();
+        put(newDocId, pageId, url, 0.0);
+        publish();
+        return newDocId;
+    }
+
+    /**
+     * @return The doc id of a page, NO_DOC_ID if the page is unknown
+     */
+    public int getDocId(String pageId) {
+        ensureLoaded();
+
+        Integer docId = docIds.get(pageId);
+        if (docId == null && refresh()) {
+            docId = docIds.get(pageId);
+        }
+        return docId == null ? NO_DOC_ID : docId;
+    }
+
+    public String getPageId(int docId) {
+        Snapshot current = loadedSnapshot(docId);
+        return current.isLoaded(docId) ? current.pageIds[docId] : null;
+    }
+
+    public String getUrl(int docId) {
+        Snapshot current = loadedSnapshot(docId);
+        return current.isLoaded(docId) ? current.urls[docId] : null;
+    }
+
+    /**
+     * Looks up the ranks of many pages at once.
+     *
+     * @param docIds The doc ids.
+     * @return The ranks aligned with the given doc ids, 0 for unknown pages.
+     */
+    public double[] getRanks(int[] docIds) {
+        ensureLoaded();
+        maybeReloadRanks();
+
+        Snapshot current = snapshot;
+        for (int docId : docIds) {
+            if (docId >= 0 && !current.isLoaded(docId)) {
+                if (refresh()) current = snapshot;
+                break;
+            }
+        }
+
+        double[] result = new double[docIds.length];
+        for (int i = 0; i < docIds.length; i++) {
+            int docId = docIds[i];
+            result[i] = current.isLoaded(docId) ? current.ranks[docId] : 0.0;
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of doc ids assigned, every doc id is smaller than it
+     */
+    public int size() {
+        ensureLoaded();
+        return snapshot.size;
+    }
+
+    /**
+     * @return The snapshot to look up a doc id in, refreshed first if the doc id is not loaded
+     */
+    private Snapshot loadedSnapshot(int docId) {
+        ensureLoaded();
+        Snapshot current = snapshot;
+        if (!current.isLoaded(docId) && refresh()) current = snapshot;
+        return current;
+    }
+
+    /**
+     * Loads the doc ids of all the pages that have one.
+     */
+    private void ensureLoaded() {
+        if (loaded) return;
+
+        synchronized (this) {
+            if (loaded) return;
+
+            long start = System.nanoTime();
+            // Read first, ranks updated during the load are reloaded on the next check
+            rankGeneration = pageService.getRankGeneration();
+            loadAfter(NO_DOC_ID).forEach(this::put);
+            publish();
+            lastRefresh = System.nanoTime();
+            lastRankRefresh = lastRefresh;
+            loaded = true;
+
+            System.out.println(
+                "Loaded " +
+                size +
+                " doc ids in " +
+                (System.nanoTime() - start) / 1_000_000 +
+                " ms"
+            );
+        }
+    }
+
+    /**
+     * Loads the doc ids committed by another process (the indexer) since the last load: the ones
+     * above the highest loaded doc id and the missing ones below it.
+     * Checked at most once per REFRESH_INTERVAL_NANOS, by one thread at a time.
+     *
+     * @return true if new doc ids were loaded
+     */
+    private boolean refresh() {
+        if (System.nanoTime() - lastRefresh < REFRESH_INTERVAL_NANOS) return false;
+        if (!refreshing.compareAndSet(false, true)) return false;
+
+        try {
+            lastRefresh = System.nanoTime();
+
+            int highest;
+            List<Integer> missing;
+            synchronized (this) {
+                highest = size - 1;
+                missing = expireMissingDocIds();
+            }
+
+            List<Page> pages = loadAfter(highest);
+            for (int from = 0; from < missing.size(); from += MISSING_BATCH_SIZE) {
+                List<Integer> batch = missing.subList(from, Math.min(missing.size(), from + MISSING_BATCH_SIZE));
+                pages.addAll(load(new Query(Criteria.where("docId").in(batch))));
+            }
+            if (pages.isEmpty()) return false;
+
+            synchronized (this) {
+                pages.forEach(this::put);
+                publish();
+            }
+            return true;
+        } finally {
+            refreshing.set(false);
+        }
+    }
+
+    /**
+     * Reloads the ranks of the loaded pages if they were updated since they were loaded.
+     * Checked at most once per RANK_REFRESH_INTERVAL_NANOS, by one thread at a time.
+     */
+    private void maybeReloadRanks() {
+        if (System.nanoTime() - lastRankRefresh < RANK_REFRESH_INTERVAL_NANOS) return;
+        if (!reloadingRanks.compareAndSet(false, true)) return;
+
+        try {
+            lastRankRefresh = System.nanoTime();
+
+            long generation = pageService.getRankGeneration();
+            if (generation == rankGeneration) return;
+
+            long start = System.nanoTime();
+            Map<Integer, Double> reloaded = new HashMap<>();
+            Query query = new Query(Criteria.where("docId").exists(true));
+            query.fields().include("docId", "rank");
+            try (Stream<Page> pages = mongoTemplate.stream(query, Page.class)) {
+                pages.forEach(page -> reloaded.put(page.getDocId(), page.getRank()));
+            }
+
+            synchronized (this) {
+                unshare();
+                reloaded.forEach((docId, rank) -> {
+                    if (docId >= 0 && docId < size && pageIds[docId] != null) ranks[docId] = rank;
+                });
+                publish();
+                rankGeneration = generation;
+            }
+            System.out.println("Reloaded page ranks in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } finally {
+            reloadingRanks.set(false);
+        }
+    }
+
+    private List<Page> loadAfter(int docId) {
+        return load(new Query(Criteria.where("docId").gt(docId)).with(Sort.by(Sort.Direction.ASC, "docId")));
+    }
+
+    /**
+     * Gives up the doc ids missing for more than MISSING_TIMEOUT_NANOS.
+     *
+     * @return The doc ids still missing
+     */
+    private List<Integer> expireMissingDocIds() {
+        long now = System.nanoTime();
+        missingDocIds.values().removeIf(foundAt -> now - foundAt > MISSING_TIMEOUT_NANOS);
+        return new ArrayList<>(missingDocIds.keySet());
+    }
+
+    private List<Page> load(Query query) {
+        query.fields().include("url", "docId", "rank");
+        try (Stream<Page> pages = mongoTemplate.stream(query, Page.class)) {
+            return new ArrayList<>(pages.toList());
+        }
+    }
+
+    /**
+     * @return The next doc id of the block reserved by this process, reserving a new block from
+     * the counter document when it is used up
+     */
+    private int reserveDocId() {
+        if (nextDocId == reservedEnd) {
+            Query counter = new Query(Criteria.where("_id").is(DOC_ID_COUNTER));
+            if (reservedEnd == 0) {
+                // Never below the doc ids assigned before the counter existed
+                mongoTemplate.upsert(counter, new Update().max("value", size), PageService.COUNTERS_COLLECTION);
+            }
+            Document reserved = mongoTemplate.findAndModify(
+                counter,
+                new Update().inc("value", ID_BLOCK_SIZE),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Document.class,
+                PageService.COUNTERS_COLLECTION
+            );
+            reservedEnd = ((Number) reserved.get("value")).intValue();
+            nextDocId = reservedEnd - ID_BLOCK_SIZE;
+        }
+        return nextDocId++;
+    }
+
+    private void assignMissingDocIds() {
+        // Only indexed pages have content, rank updates may upsert pages without it
+        Query query = new Query(
+            Criteria.where("docId").exists(false).and("content").exists(true)
+        );
+        query.fields().include("url", "rank");
+
+        List<Page> pages = mongoTemplate.find(query, Page.class);
+        if (pages.isEmpty()) return;
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Page.class);
+        for (Page page : pages) {
+            int docId = reserveDocId();
+            put(docId, page.getId(), page.getUrl(), page.getRank());
+            bulkOps.updateOne(
+                new Query(Criteria.where("_id").is(page.getId()).and("docId").exists(false)),
+                new Update().set("docId", docId)
+            );
+        }
+
+        BulkWriteResult result = bulkOps.execute();
+        System.out.println("Assigned doc ids to " + result.getModifiedCount() + " existing pages");
+    }
+
+    private void put(Page page) {
+        // Loaded again by a refresh racing with an assignment
+        if (page.getDocId() < size && page.getId().equals(pageIds[page.getDocId()])) return;
+        put(page.getDocId(), page.getId(), page.getUrl(), page.getRank());
+    }
+
+    private void put(int docId, String pageId, String url, double rank) {
+        if (docId >= pageIds.length) {
+            int capacity = Math.max(pageIds.length * 2, docId + 1);
+            pageIds = Arrays.copyOf(pageIds, capacity);
+            urls = Arrays.copyOf(urls, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+            shared = false;
+        } else if (docId < snapshot.size) {
+            // Readers of the published snapshot may be reading this slot
+            unshare();
+        }
+        if (docId > size) {
+            long now = System.nanoTime();
+            for (int missing = size; missing < docId; missing++) {
+                missingDocIds.put(missing, now);
+            }
+        }
+        missingDocIds.remove(docId);
+
+        pageIds[docId] = pageId;
+        urls[docId] = url;
+        ranks[docId] = rank;
+        unpublished.add(docId);
+        size = Math.max(size, docId + 1);
+    }
+
+    /**
+     * Copies the arrays if the published snapshot holds them, before they are written below its
+     * size.
+     */
+    private void unshare() {
+        if (!shared) return;
+        pageIds = pageIds.clone();
+        urls = urls.clone();
+        ranks = ranks.clone();
+        shared = false;
+    }
+
+    /**
+     * Publishes the arrays as the new snapshot, then the page ids put since the last one.
+     */
+    private void publish() {
+        snapshot = new Snapshot(pageIds, urls, ranks, size);
+        shared = true;
+        for (int docId : unpublished) {
+            docIds.put(pageIds[docId], docId);
+        }
+        unpublished.clear();
+    }
+}
@@ -0,0 +1,254 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.indexer.storage.PostingsCodec;
+import com.project.searchengine.utils.IntArrayList;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Forward index of a page body: its token stream with the char offsets of every token, at the
+ * same positions as the inverted index postings. Phrase matching and snippets read the tokens
+ * around a position from it instead of tokenizing the whole page again on every query.
+ *
+ * Tokens are stored lower cased as they appear in the body text (not stemmed), in blocks of
+ * BLOCK_SIZE positions deflated on their own:
+ *
+ *   vint tokenCount, vint blockCount
+ *   per block: int offset (relative to the end of the table), int inflated length
+ *   per block: deflated tokens, per token: vint start - previous end, vint length, length vint chars
+ *
+ * Offsets restart at the first token of every block, so a token only inflates its own block.
+ * Decoded blocks are kept by the instance, which is not thread safe.
+ */
+public final class ForwardIndex {
+
+    public static final int BLOCK_SIZE = 128;
+
+    /**
+     * Encodes the tokens of a page in order. Reusable across pages through reset.
+     */
+    public static class Encoder {
+
+        private final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream();
+        private final IntArrayList blockOffsets = new IntArrayList();
+        private final IntArrayList blockLengths = new IntArrayList();
+        private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        private final byte[] deflateBuffer = new byte[4096];
+
+        private int tokenCount;
+        private int tokensInBlock;
+        private int lastEnd;
+
+        /**
+         * Adds the token at the next position.
+         *
+         * @param text The body text.
+         * @param start The start of the token in the text.
+         * @param end The end (exclusive) of the token in the text.
+         */
+        public void addToken(CharSequence text, int start, int end) {
+            try {
+                PostingsCodec.writeVInt(block, start - lastEnd);
+                PostingsCodec.writeVInt(block, end - start);
+                for (int i = start; i < end; i++) {
+                    PostingsCodec.writeVInt(block, Character.toLowerCase(text.charAt(i)));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastEnd = end;
+            tokenCount++;
+            if (++tokensInBlock == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        public int getTokenCount() {
+            return tokenCount;
+        }
+
+        /**
+         * @return The encoded forward index of the added tokens
+         */
+        public byte[] finish() {
+            if (tokensInBlock > 0) flushBlock();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream(blocks.size() + 8 * blockOffsets.size() + 10);
+            try {
+                DataOutputStream dataOut = new DataOutputStream(out);
+                PostingsCodec.writeVInt(dataOut, tokenCount);
+                PostingsCodec.writeVInt(dataOut, blockOffsets.size());
+                for (int i = 0; i < blockOffsets.size(); i++) {
+                    dataOut.writeInt(blockOffsets.get(i));
+                    dataOut.writeInt(blockLengths.get(i));
+                }
+                blocks.writeTo(dataOut);
+                dataOut.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        public void reset() {
+            blocks.reset();
+            block.reset();
+            blockOffsets.clear();
+            blockLengths.clear();
+            tokenCount = 0;
+            tokensInBlock = 0;
+            lastEnd = 0;
+        }
+
+        private void flushBlock() {
+            blockOffsets.add(blocks.size());
+            blockLengths.add(block.size());
+
+            deflater.reset();
+            deflater.setInput(block.toByteArray());
+            deflater.finish();
+            while (!deflater.finished()) {
+                int length = deflater.deflate(deflateBuffer);
+                blocks.write(deflateBuffer, 0, length);
+            }
+
+            block.reset();
+            tokensInBlock = 0;
+            lastEnd = 0;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final int tokenCount;
+    private final int[] blockOffsets;
+    private final int[] blockLengths;
+    private final int blocksStart;
+
+    // Decoded blocks, null until a token of the block is read
+    private final String[][] tokens;
+    private final int[][] starts;
+    private final int[][] ends;
+
+    /**
+     * @param bytes A forward index written by an Encoder.
+     */
+    public ForwardIndex(byte[] bytes) {
+        this.data = ByteBuffer.wrap(bytes);
+        this.tokenCount = PostingsCodec.readVInt(data);
+        int blockCount = PostingsCodec.readVInt(data);
+        this.blockOffsets = new int[blockCount];
+        this.blockLengths = new int[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockOffsets[i] = data.getInt();
+            blockLengths[i] = data.getInt();
+        }
+        this.blocksStart = data.position();
+        this.tokens = new String[blockCount][];
+        this.starts = new int[blockCount][];
+        this.ends = new int[blockCount][];
+    }
+
+    /**
+     * Builds the forward index of a text, for pages indexed before forward indexes were stored.
+     *
+     * @param text The body text.
+     * @param analyzer The analyzer giving the token positions.
+     * @return The forward index of the text.
+     */
+    public static ForwardIndex of(CharSequence text, Analyzer analyzer) {
+        Encoder encoder = new Encoder();
+        analyzer.analyze(text, (start, end, position, term, termLength) ->
+            encoder.addToken(text, start, end)
+        );
+        return new ForwardIndex(encoder.finish());
+    }
+
+    /**
+     * @return The number of tokens (positions) of the page
+     */
+    public int size() {
+        return tokenCount;
+    }
+
+    /**
+     * @return The lower cased token at a position, null if the position is out of the page
+     */
+    public String getToken(int position) {
+        if (position < 0 || position >= tokenCount) return null;
+        int block = position / BLOCK_SIZE;
+        decodeBlock(block);
+        return tokens[block][position % BLOCK_SIZE];
+    }
+
+    /**
+     * @return The start of the token at a position in the body text
+     */
+    public int getStart(int position) {
+        checkPosition(position);
+        int block = position / BLOCK_SIZE;
+        decodeBlock(block);
+        return starts[block][position % BLOCK_SIZE];
+    }
+
+    /**
+     * @return The end (exclusive) of the token at a position in the body text
+     */
+    public int getEnd(int position) {
+        checkPosition(position);
+        int block = position / BLOCK_SIZE;
+        decodeBlock(block);
+        return ends[block][position % BLOCK_SIZE];
+    }
+
+    private void checkPosition(int position) {
+        if (position < 0 || position >= tokenCount) {
+            throw new IndexOutOfBoundsException("Position: " + position + ", Size: " + tokenCount);
+        }
+    }
+
+    private void decodeBlock(int block) {
+        if (tokens[block] != null) return;
+
+        byte[] inflated = new byte[blockLengths[block]];
+        int compressedStart = blocksStart + blockOffsets[block];
+        int compressedEnd = block + 1 < blockOffsets.length
+            ? blocksStart + blockOffsets[block + 1]
+            : data.limit();
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data.array(), compressedStart, compressedEnd - compressedStart);
+            inflater.inflate(inflated);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted forward index block " + block, e);
+        } finally {
+            inflater.end();
+        }
+
+        int count = Math.min(BLOCK_SIZE, tokenCount - block * BLOCK_SIZE);
+        String[] blockTokens = new String[count];
+        int[] blockStarts = new int[count];
+        int[] blockEnds = new int[count];
+        ByteBuffer in = ByteBuffer.wrap(inflated);
+        int lastEnd = 0;
+        char[] chars = new char[16];
+        for (int i = 0; i < count; i++) {
+            int start = lastEnd + PostingsCodec.readVInt(in);
+            int length = PostingsCodec.readVInt(in);
+            if (chars.length < length) chars = new char[length];
+            for (int c = 0; c < length; c++) {
+                chars[c] = (char) PostingsCodec.readVInt(in);
+            }
+            blockTokens[i] = new String(chars, 0, length);
+            blockStarts[i] = start;
+            blockEnds[i] = lastEnd = start + length;
+        }
+
+        starts[block] = blockStarts;
+        ends[block] = blockEnds;
+        tokens[block] = blockTokens;
+    }
+}
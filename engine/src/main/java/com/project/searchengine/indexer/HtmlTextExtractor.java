@@ -0,0 +1,499 @@
+package com.project.searchengine.indexer;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+import org.jsoup.nodes.Entities;
+
+/**
+ * Extracts the text of an HTML document in a single pass over its chars, without building a DOM.
+ *
+ * It produces what the indexer used to take from a Jsoup document: the body text as
+ * Element.text() gives it (whitespace collapsed, block elements and br separated by a space),
+ * the title, and the text of every h1, h2 and title element in document order. Tag names are
+ * lower cased and attributes skipped. Comments, doctypes and the contents of script, style and
+ * head (but the title) are dropped. Character references are decoded with Jsoup's entity table.
+ *
+ * Malformed markup is not repaired the way a browser would: a header nested in another header
+ * only counts for the outer one, and the text of an unclosed header runs to the end.
+ */
+public class HtmlTextExtractor {
+
+    /**
+     * The text of a h1, h2 or title element.
+     */
+    public static final class Header {
+
+        private final String tagName;
+        private final String text;
+
+        public Header(String tagName, String text) {
+            this.tagName = tagName;
+            this.text = text;
+        }
+
+        public String getTagName() {
+            return tagName;
+        }
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    /**
+     * The text extracted from a document.
+     */
+    public static final class ExtractedText {
+
+        private final StringBuilder text;
+        private final String title;
+        private final List<Header> headers;
+
+        ExtractedText(StringBuilder text, String title, List<Header> headers) {
+            this.text = text;
+            this.title = title;
+            this.headers = headers;
+        }
+
+        /**
+         * @return The body text, analyzed in place without copying it into a String
+         */
+        public CharSequence getText() {
+            return text;
+        }
+
+        /**
+         * @return The text of the first title element, empty if there is none
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return The h1, h2 and title elements with text, in document order
+         */
+        public List<Header> getHeaders() {
+            return headers;
+        }
+    }
+
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Extracts the text of a document read from a stream.
+     *
+     * @param reader The HTML chars, read in chunks.
+     * @return The extracted text.
+     * @throws IOException If the reader fails.
+     */
+    public static ExtractedText extract(Reader reader) throws IOException {
+        Parser parser = new Parser();
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while ((read = reader.read(chunk)) != -1) {
+            for (int i = 0; i < read; i++) {
+                parser.accept(chunk[i]);
+            }
+        }
+        return parser.finish();
+    }
+
+    /**
+     * Extracts the text of a document held in memory.
+     *
+     * @param html The HTML document.
+     * @return The extracted text.
+     */
+    public static ExtractedText extract(CharSequence html) {
+        Parser parser = new Parser();
+        for (int i = 0; i < html.length(); i++) {
+            parser.accept(html.charAt(i));
+        }
+        return parser.finish();
+    }
+
+    /**
+     * Collects text with its whitespace collapsed and trimmed.
+     */
+    private static final class TextBuffer {
+
+        final StringBuilder text = new StringBuilder();
+        boolean pendingSpace;
+
+        void append(char c) {
+            if (isWhitespace(c)) {
+                pendingSpace = text.length() > 0;
+                return;
+            }
+            // Zero width space and soft hyphen, Element.text() drops them
+            if (c == '\u200B' || c == '\u00AD') return;
+            if (pendingSpace) {
+                text.append(' ');
+                pendingSpace = false;
+            }
+            text.append(c);
+        }
+
+        void separate() {
+            pendingSpace = text.length() > 0;
+        }
+    }
+
+    /**
+     * The tokenizer state machine, fed one char at a time.
+     */
+    private static final class Parser {
+
+        private static final int TEXT = 0;
+        private static final int TAG_OPEN = 1;
+        private static final int TAG_NAME = 2;
+        private static final int ATTRIBUTES = 3;
+        private static final int ATTRIBUTE_VALUE = 4;
+        private static final int DECLARATION = 5;
+        private static final int DECLARATION_DASH = 6;
+        private static final int COMMENT = 7;
+        private static final int BOGUS_COMMENT = 8;
+        private static final int CHARACTER_REFERENCE = 9;
+        private static final int RAW_TEXT = 10;
+        private static final int RAW_TEXT_END_TAG = 11;
+
+        private static final int MAX_REFERENCE_LENGTH = 32;
+
+        private static final Set<String> SEPARATOR_TAGS = Set.of(
+            "address", "article", "aside", "blockquote", "body", "br", "dd", "details", "div",
+            "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", "h1", "h2", "h3",
+            "h4", "h5", "h6", "header", "hr", "li", "main", "nav", "ol", "option", "p", "pre",
+            "section", "summary", "table", "tbody", "td", "tfoot", "th", "thead", "tr", "ul"
+        );
+
+        private int state = TEXT;
+        private int returnState = TEXT;
+        private final StringBuilder tagName = new StringBuilder();
+        private boolean closing;
+        private char quote;
+        private int dashes;
+        private final StringBuilder reference = new StringBuilder();
+
+        // The element whose contents are not markup (script, style, title), null outside of it
+        private String rawTag;
+        private boolean keepRawText;
+        private int rawTagMatched;
+
+        private boolean inHead;
+        private final TextBuffer body = new TextBuffer();
+        private TextBuffer title;
+        private TextBuffer header;
+        private String headerTag;
+        private String firstTitle;
+        private final List<Header> headers = new ArrayList<>();
+
+        void accept(char c) {
+            while (step(c)) {
+                // The char ended the previous state, process it again in the new one
+            }
+        }
+
+        /**
+         * @return True if the char must be processed again in the new state
+         */
+        private boolean step(char c) {
+            switch (state) {
+                case TEXT:
+                    if (c == '<') {
+                        state = TAG_OPEN;
+                    } else if (c == '&') {
+                        startReference(TEXT);
+                    } else {
+                        emit(c);
+                    }
+                    return false;
+                case TAG_OPEN:
+                    tagName.setLength(0);
+                    closing = false;
+                    if (c == '!') {
+                        state = DECLARATION;
+                    } else if (c == '/') {
+                        closing = true;
+                        state = TAG_NAME;
+                    } else if (c == '?') {
+                        state = BOGUS_COMMENT;
+                    } else if (isAsciiLetter(c)) {
+                        tagName.append(Character.toLowerCase(c));
+                        state = TAG_NAME;
+                    } else {
+                        // Not a tag, the < is text
+                        emit('<');
+                        state = TEXT;
+                        return true;
+                    }
+                    return false;
+                case TAG_NAME:
+                    if (c == '>') {
+                        finishTag();
+                    } else if (isWhitespace(c) || c == '/') {
+                        state = ATTRIBUTES;
+                    } else if (tagName.length() == 0 && !isAsciiLetter(c)) {
+                        state = BOGUS_COMMENT;
+                        return true;
+                    } else {
+                        tagName.append(Character.toLowerCase(c));
+                    }
+                    return false;
+                case ATTRIBUTES:
+                    if (c == '>') {
+                        finishTag();
+                    } else if (c == '"' || c == '\'') {
+                        quote = c;
+                        state = ATTRIBUTE_VALUE;
+                    }
+                    return false;
+                case ATTRIBUTE_VALUE:
+                    if (c == quote) state = ATTRIBUTES;
+                    return false;
+                case DECLARATION:
+                    state = c == '-' ? DECLARATION_DASH : BOGUS_COMMENT;
+                    return c != '-';
+                case DECLARATION_DASH:
+                    if (c != '-') {
+                        state = BOGUS_COMMENT;
+                        return true;
+                    }
+                    dashes = 0;
+                    state = COMMENT;
+                    return false;
+                case COMMENT:
+                    if (c == '>' && dashes >= 2) {
+                        state = TEXT;
+                    } else {
+                        dashes = c == '-' ? dashes + 1 : 0;
+                    }
+                    return false;
+                case BOGUS_COMMENT:
+                    if (c == '>') state = TEXT;
+                    return false;
+                case CHARACTER_REFERENCE:
+                    return stepReference(c);
+                case RAW_TEXT:
+                    if (c == '<') {
+                        rawTagMatched = 0;
+                        state = RAW_TEXT_END_TAG;
+                    } else if (keepRawText) {
+                        if (c == '&') {
+                            startReference(RAW_TEXT);
+                        } else {
+                            emit(c);
+                        }
+                    }
+                    return false;
+                case RAW_TEXT_END_TAG:
+                    return stepRawTextEndTag(c);
+                default:
+                    throw new IllegalStateException("Unknown state: " + state);
+            }
+        }
+
+        /**
+         * Matches the chars after a < in raw text against the end tag of the raw element.
+         */
+        private boolean stepRawTextEndTag(char c) {
+            if (rawTagMatched == 0) {
+                if (c == '/') {
+                    rawTagMatched = 1;
+                    return false;
+                }
+            } else if (rawTagMatched <= rawTag.length()) {
+                if (Character.toLowerCase(c) == rawTag.charAt(rawTagMatched - 1)) {
+                    rawTagMatched++;
+                    return false;
+                }
+            } else if (isWhitespace(c) || c == '/' || c == '>') {
+                tagName.setLength(0);
+                tagName.append(rawTag);
+                closing = true;
+                state = ATTRIBUTES;
+                return true;
+            }
+
+            // Not the end tag, the chars read so far are raw text
+            if (keepRawText) {
+                emit('<');
+                if (rawTagMatched > 0) emit('/');
+                for (int i = 0; i < rawTagMatched - 1; i++) {
+                    emit(rawTag.charAt(i));
+                }
+            }
+            state = RAW_TEXT;
+            return true;
+        }
+
+        private void startReference(int returnTo) {
+            reference.setLength(0);
+            returnState = returnTo;
+            state = CHARACTER_REFERENCE;
+        }
+
+        private boolean stepReference(char c) {
+            boolean referenceChar =
+                (c == '#' && reference.length() == 0) ||
+                (c < 128 && Character.isLetterOrDigit(c));
+            if (referenceChar && reference.length() < MAX_REFERENCE_LENGTH) {
+                reference.append(c);
+                return false;
+            }
+
+            state = returnState;
+            String decoded = decode(reference);
+            if (decoded == null) {
+                // Not a reference, the & is text
+                emit('&');
+                emitAll(reference);
+                return true;
+            }
+            emitAll(decoded);
+            return c != ';';
+        }
+
+        private void finishTag() {
+            state = TEXT;
+            String name = tagName.toString();
+            if (closing) {
+                endTag(name);
+            } else {
+                startTag(name);
+            }
+        }
+
+        private void startTag(String name) {
+            if (SEPARATOR_TAGS.contains(name)) separate();
+
+            switch (name) {
+                case "head":
+                    inHead = true;
+                    break;
+                case "body":
+                    inHead = false;
+                    break;
+                case "script":
+                case "style":
+                    startRawText(name, false);
+                    break;
+                case "title":
+                    title = new TextBuffer();
+                    startRawText(name, true);
+                    break;
+                case "h1":
+                case "h2":
+                    if (header == null) {
+                        header = new TextBuffer();
+                        headerTag = name;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void endTag(String name) {
+            if (SEPARATOR_TAGS.contains(name)) separate();
+            if (name.equals(rawTag)) rawTag = null;
+
+            if (name.equals("head")) {
+                inHead = false;
+            } else if (name.equals("title") && title != null) {
+                endTitle();
+            } else if (name.equals(headerTag)) {
+                endHeader();
+            }
+        }
+
+        private void startRawText(String name, boolean keepText) {
+            rawTag = name;
+            keepRawText = keepText;
+            state = RAW_TEXT;
+        }
+
+        private void endTitle() {
+            String text = title.text.toString();
+            if (firstTitle == null) firstTitle = text;
+            if (!text.isEmpty()) headers.add(new Header("title", text));
+            title = null;
+        }
+
+        private void endHeader() {
+            String text = header.text.toString();
+            if (!text.isEmpty()) headers.add(new Header(headerTag, text));
+            header = null;
+            headerTag = null;
+        }
+
+        private void separate() {
+            body.separate();
+            if (header != null) header.separate();
+        }
+
+        private void emit(char c) {
+            if (title != null) {
+                title.append(c);
+                return;
+            }
+            // Text in the head ends it, like a parser would start the body
+            if (inHead) {
+                if (isWhitespace(c)) return;
+                inHead = false;
+            }
+            body.append(c);
+            if (header != null) header.append(c);
+        }
+
+        private void emitAll(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                emit(text.charAt(i));
+            }
+        }
+
+        ExtractedText finish() {
+            if (state == CHARACTER_REFERENCE) {
+                stepReference(' ');
+            }
+            if (title != null) endTitle();
+            if (header != null) endHeader();
+            return new ExtractedText(body.text, firstTitle == null ? "" : firstTitle, headers);
+        }
+    }
+
+    /**
+     * Decodes a character reference without its & and ;.
+     *
+     * @return The decoded chars, null if it is not a known reference
+     */
+    static String decode(CharSequence reference) {
+        if (reference.length() == 0) return null;
+        if (reference.charAt(0) != '#') {
+            String decoded = Entities.getByName(reference.toString());
+            return decoded.isEmpty() ? null : decoded;
+        }
+
+        int radix = 10;
+        int start = 1;
+        if (reference.length() > 1 && (reference.charAt(1) == 'x' || reference.charAt(1) == 'X')) {
+            radix = 16;
+            start = 2;
+        }
+        try {
+            int codePoint = Integer.parseInt(reference, start, reference.length(), radix);
+            if (codePoint == 0 || !Character.isValidCodePoint(codePoint)) return "\uFFFD";
+            return new String(Character.toChars(codePoint));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u00A0';
+    }
+}
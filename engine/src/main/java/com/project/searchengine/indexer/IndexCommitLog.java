@@ -0,0 +1,165 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.indexer.storage.SegmentStore;
+import com.project.searchengine.server.model.*;
+import com.project.searchengine.server.service.*;
+import java.util.*;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+/**
+ * Write-ahead log of the indexer flushes, so a flush is applied entirely or not at all.
+ *
+ * A flush writes document blocks, pages, postings and the isIndexed flags of its URL documents
+ * in separate bulk writes. Before the first of them a PendingBatch lists everything the flush
+ * is about to write, and it is deleted after the last one. Pending batches found when the
+ * indexer starts (a crash) or left by a failed write are rolled back in reverse order: the URL
+ * documents are marked not indexed again, the postings of the pages are removed (or their
+ * segment deleted), then the pages and blocks tagged with the batch id. The documents of the
+ * batch are then simply indexed again, without double counting any posting.
+ *
+ * The previous postings of a reindexed page cannot be restored, so a rolled back batch removes
+ * its reindexed pages entirely and they are indexed again as new pages.
+ */
+@Component
+public class IndexCommitLog {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private PageService pageService;
+
+    @Autowired
+    private InvertedIndexService invertedIndexService;
+
+    @Autowired
+    private UrlsFrontierService urlsFrontierService;
+
+    @Autowired
+    private DocumentStoreService documentStoreService;
+
+    @Autowired
+    private SegmentStore segmentStore;
+
+    /**
+     * Logs a flush of new pages before any of its writes and tags its pages with the batch id.
+     *
+     * @param pages The pages of the flush.
+     * @param urlDocuments The URL documents the flush marks as indexed.
+     * @param segmentName The reserved name of its segment, null without segment store.
+     * @return The id of the batch.
+     */
+    public String begin(List<Page> pages, List<UrlDocument> urlDocuments, String segmentName) {
+        return begin(pages, Collections.emptyList(), urlDocuments, segmentName);
+    }
+
+    /**
+     * Logs a flush before any of its writes and tags its pages with the batch id.
+     *
+     * @param pages The new pages of the flush.
+     * @param reindexedPages The existing pages the flush reindexes.
+     * @param urlDocuments The URL documents the flush marks as indexed.
+     * @param segmentName The reserved name of its segment, null without segment store.
+     * @return The id of the batch.
+     */
+    public String begin(
+        List<Page> pages,
+        List<Page> reindexedPages,
+        List<UrlDocument> urlDocuments,
+        String segmentName
+    ) {
+        String batchId = new ObjectId().toHexString();
+        List<String> pageIds = tag(pages, batchId);
+        List<String> reindexedPageIds = tag(reindexedPages, batchId);
+        List<String> urlDocumentIds = new ArrayList<>(urlDocuments.size());
+        for (UrlDocument urlDocument : urlDocuments) {
+            urlDocumentIds.add(urlDocument.getId());
+        }
+
+        PendingBatch batch = new PendingBatch(batchId, pageIds, urlDocumentIds);
+        batch.setReindexedPageIds(reindexedPageIds);
+        batch.setSegmentName(segmentName);
+        mongoTemplate.insert(batch);
+        return batchId;
+    }
+
+    private static List<String> tag(List<Page> pages, String batchId) {
+        List<String> pageIds = new ArrayList<>(pages.size());
+        for (Page page : pages) {
+            page.setBatchId(batchId);
+            pageIds.add(page.getId());
+        }
+        return pageIds;
+    }
+
+    /**
+     * Marks a flush as committed once all its writes succeeded.
+     *
+     * @param batchId The id of the batch.
+     */
+    public void commit(String batchId) {
+        mongoTemplate.remove(new Query(Criteria.where("_id").is(batchId)), PendingBatch.class);
+    }
+
+    /**
+     * Rolls back a flush whose writes failed.
+     *
+     * @param batchId The id of the batch.
+     */
+    public void rollback(String batchId) {
+        PendingBatch batch = mongoTemplate.findById(batchId, PendingBatch.class);
+        if (batch != null) rollback(batch);
+    }
+
+    /**
+     * Rolls back the flushes left unfinished by a previous run, before indexing starts.
+     *
+     * @return The number of rolled back batches.
+     */
+    public int recover() {
+        List<PendingBatch> pending = mongoTemplate.findAll(PendingBatch.class);
+        for (PendingBatch batch : pending) {
+            rollback(batch);
+        }
+        if (!pending.isEmpty()) {
+            System.out.println("Recovered from " + pending.size() + " unfinished batches");
+        }
+        return pending.size();
+    }
+
+    private void rollback(PendingBatch batch) {
+        long start = System.nanoTime();
+        String batchId = batch.getId();
+
+        // Undo in reverse order, every step is idempotent if the rollback itself is interrupted
+        urlsFrontierService.resetIndexed(batch.getUrlDocumentIds());
+        List<String> reindexedPageIds = batch.getReindexedPageIds();
+        if (batch.getSegmentName() != null) {
+            // The previous postings of the reindexed pages stay deleted from the older segments
+            segmentStore.deleteSegment(batch.getSegmentName());
+        } else if (!segmentStore.isEnabled()) {
+            List<String> pageIds = new ArrayList<>(batch.getPageIds());
+            pageIds.addAll(reindexedPageIds);
+            invertedIndexService.removePages(pageIds);
+        }
+        pageService.deleteBatchPages(batch.getPageIds(), batchId);
+        pageService.deletePages(reindexedPageIds);
+        documentStoreService.deleteBatch(batchId);
+        commit(batchId);
+
+        System.out.println(
+            "Rolled back batch " +
+            batchId +
+            " of " +
+            batch.getPageIds().size() +
+            " pages in " +
+            (System.nanoTime() - start) / 1_000_000 +
+            " ms"
+        );
+    }
+}
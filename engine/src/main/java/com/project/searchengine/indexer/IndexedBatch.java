@@ -0,0 +1,128 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.server.model.*;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The output of indexing a batch of URL documents, ready to be written to the database.
+ * Batches produced by different indexing workers are merged before being flushed.
+ */
+class IndexedBatch {
+
+    private final List<UrlDocument> updatedUrlDocuments = new ArrayList<>();
+    private final List<Page> savedPages = new ArrayList<>();
+    private final List<Page> reindexedPages = new ArrayList<>();
+    // Term signatures of the reindexed pages before this batch, see PostingsDiff
+    private final Map<String, Map<String, Long>> previousSignatures = new HashMap<>();
+    // Reindexed pages without previous signatures, their postings are all removed first
+    private final List<String> purgedPageIds = new ArrayList<>();
+    // The words the purged pages were indexed with, their postings are only removed from these
+    private final Set<String> purgedWords = new HashSet<>();
+    // Purged pages whose previous text is lost, their postings are removed from every word
+    private final List<String> scannedPageIds = new ArrayList<>();
+    private Map<String, InvertedIndex> indexBuffer = new HashMap<>();
+    private final Map<String, InvertedIndex> changedPostings = new HashMap<>();
+    private final Map<String, List<String>> removedPostings = new HashMap<>();
+    // Sorted runs holding the postings of the batch in a bulk build, instead of the index buffer
+    private final List<Path> runs = new ArrayList<>();
+    private int documentsCount;
+
+    List<UrlDocument> getUpdatedUrlDocuments() {
+        return updatedUrlDocuments;
+    }
+
+    List<Page> getSavedPages() {
+        return savedPages;
+    }
+
+    List<Page> getReindexedPages() {
+        return reindexedPages;
+    }
+
+    Map<String, Map<String, Long>> getPreviousSignatures() {
+        return previousSignatures;
+    }
+
+    List<String> getPurgedPageIds() {
+        return purgedPageIds;
+    }
+
+    Set<String> getPurgedWords() {
+        return purgedWords;
+    }
+
+    List<String> getScannedPageIds() {
+        return scannedPageIds;
+    }
+
+    /**
+     * @return The postings of reindexed pages that replace a different posting of the same term
+     */
+    Map<String, InvertedIndex> getChangedPostings() {
+        return changedPostings;
+    }
+
+    /**
+     * @return The ids of the reindexed pages that no longer contain a term, by term
+     */
+    Map<String, List<String>> getRemovedPostings() {
+        return removedPostings;
+    }
+
+    List<Path> getRuns() {
+        return runs;
+    }
+
+    Map<String, InvertedIndex> getIndexBuffer() {
+        return indexBuffer;
+    }
+
+    void setIndexBuffer(Map<String, InvertedIndex> indexBuffer) {
+        this.indexBuffer = indexBuffer;
+    }
+
+    int getDocumentsCount() {
+        return documentsCount;
+    }
+
+    void setDocumentsCount(int documentsCount) {
+        this.documentsCount = documentsCount;
+    }
+
+    /**
+     * Merges another batch into this one.
+     * Page references of the same word are concatenated, pages of different batches never overlap.
+     *
+     * @param other The batch to merge.
+     */
+    void merge(IndexedBatch other) {
+        updatedUrlDocuments.addAll(other.updatedUrlDocuments);
+        savedPages.addAll(other.savedPages);
+        reindexedPages.addAll(other.reindexedPages);
+        previousSignatures.putAll(other.previousSignatures);
+        purgedPageIds.addAll(other.purgedPageIds);
+        purgedWords.addAll(other.purgedWords);
+        scannedPageIds.addAll(other.scannedPageIds);
+        runs.addAll(other.runs);
+        documentsCount += other.documentsCount;
+
+        mergePostings(indexBuffer, other.indexBuffer);
+        mergePostings(changedPostings, other.changedPostings);
+        for (Map.Entry<String, List<String>> entry : other.removedPostings.entrySet()) {
+            removedPostings.computeIfAbsent(entry.getKey(), word -> new ArrayList<>()).addAll(entry.getValue());
+        }
+    }
+
+    private static void mergePostings(
+        Map<String, InvertedIndex> postings,
+        Map<String, InvertedIndex> other
+    ) {
+        for (Map.Entry<String, InvertedIndex> entry : other.entrySet()) {
+            postings.merge(entry.getKey(), entry.getValue(), (current, incoming) -> {
+                current.getPages().addAll(incoming.getPages());
+                return current;
+            });
+        }
+    }
+}
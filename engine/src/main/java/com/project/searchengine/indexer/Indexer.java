@@ -1,16 +1,38 @@
 package com.project.searchengine.indexer;
 
-import com.project.searchengine.ranker.RankCalculator;
+import com.project.searchengine.indexer.storage.SegmentStore;
 import com.project.searchengine.server.model.*;
 import com.project.searchengine.server.service.*;
 import com.project.searchengine.utils.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.select.Elements;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+/**
+ * Indexes the crawled documents as a pipeline of three stages connected by bounded queues:
+ *
+ * 1. Fetch: reads batches of non indexed documents from the database.
+ * 2. Parse: worker threads stream the decompressed HTML through HtmlTextExtractor and
+ *    tokenize it, each worker in its own postings buffer. A worker keeps adding fetched batches
+ *    to its buffer until its estimated size reaches its share of indexer.buffer.mb, so flushes
+ *    are sized by memory rather than by number of documents.
+ * 3. Write: merges the batches available from the workers and writes them to the database,
+ *    while the workers keep parsing the next batches. The pages, postings and URL documents
+ *    of a flush are written concurrently, with up to indexer.write.flushes flushes in flight.
+ *
+ * With indexer.bulk.enabled=true the workers spill their full buffers to indexer.spill.dir as
+ * sorted runs, which are merged and written once all the documents are indexed (see BulkBuild).
+ */
 @Service
 public class Indexer {
 
@@ -26,8 +48,81 @@ public class Indexer {
     @Autowired
     private UrlsFrontierService urlsFrontierService;
 
+    @Autowired
+    private SegmentStore segmentStore;
+
+    @Autowired
+    private DocIdDictionary docIdDictionary;
+
+    @Autowired
+    private Analyzer analyzer;
+
+    @Autowired
+    private DocumentStoreService documentStoreService;
+
+    @Autowired
+    private IndexCommitLog indexCommitLog;
+
+    @Value("${indexer.buffer.mb:64}")
+    private int bufferMb;
+
+    @Value("${indexer.bulk.enabled:false}")
+    private boolean bulkEnabled;
+
+    @Value("${indexer.spill.dir:index-runs}")
+    private String spillDirectory;
+
+    @Value("${indexer.write.flushes:2}")
+    private int maxFlushesInFlight;
+
+    // New pages get the 32 hex chars of a fingerprint of their URL as id instead of a SHA-256 hex
+    @Value("${indexer.compact.page.ids:false}")
+    private boolean compactPageIds;
+
+    // Flushes handed over by the write stage, and the concurrent writes of each flush
+    private ExecutorService flushExecutor;
+    private ExecutorService writeExecutor;
+    private Semaphore flushesInFlight;
+
+    // Number of documents fetched at a time, the flushes are sized by indexer.buffer.mb
     public static int BATCH_SIZE = 40;
-    public static int currentBatch = 1;
+    public static AtomicInteger currentBatch = new AtomicInteger(1);
+
+    // Marks the end of the fetched batches for the workers
+    private static final List<UrlDocument> END_OF_DOCUMENTS = new ArrayList<>();
+    // Marks that a worker has finished for the writer
+    private static final IndexedBatch END_OF_BATCHES = new IndexedBatch();
+
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The bulk build of the current indexing pass, null when disabled
+    private BulkBuild bulkBuild;
+
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    @PostConstruct
+    void startWriteExecutors() {
+        flushesInFlight = new Semaphore(maxFlushesInFlight);
+        flushExecutor = Executors.newFixedThreadPool(maxFlushesInFlight, daemonThreads("indexer-flush"));
+        // The pages, postings and URL documents of every flush in flight are written concurrently
+        writeExecutor = Executors.newFixedThreadPool(3 * maxFlushesInFlight, daemonThreads("indexer-write"));
+    }
+
+    @PreDestroy
+    void stopWriteExecutors() {
+        flushExecutor.shutdown();
+        writeExecutor.shutdown();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
 
     /**
      * Starts the indexing process by fetching documents from the database and indexing them in batches.
@@ -36,117 +131,479 @@ public class Indexer {
      * This method is called by the main application to initiate the indexing process.
      */
     public void startIndexing() {
-        System.out.println("Starting indexing process...");
+        // Roll back the batches a previous run left half written, their documents are indexed again
+        indexCommitLog.recover();
+
+        bulkBuild = null;
+        if (bulkEnabled) {
+            BulkBuild.prepareSpillDirectory(Paths.get(spillDirectory));
+            bulkBuild = new BulkBuild(segmentStore, invertedIndexService, indexCommitLog);
+        }
+
+        System.out.println(
+            "Starting indexing process with " +
+            numThreads +
+            " workers, " +
+            bufferMb +
+            " MB of postings buffers" +
+            (bulkEnabled ? " spilled to " + spillDirectory : "")
+        );
+
+        BlockingQueue<List<UrlDocument>> fetchedBatches = new ArrayBlockingQueue<>(numThreads * 2);
+        BlockingQueue<IndexedBatch> indexedBatches = new ArrayBlockingQueue<>(numThreads * 2);
+
+        Thread writer = new Thread(() -> writeBatches(indexedBatches), "indexer-writer");
+        writer.start();
+
+        ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            workers.submit(() -> indexBatches(fetchedBatches, indexedBatches));
+        }
+
+        try {
+            // The fetch stage runs on the calling thread
+            try {
+                fetchBatches(fetchedBatches);
+            } catch (RuntimeException e) {
+                System.err.println("Error fetching documents to index: " + e.getMessage());
+            }
+
+            for (int i = 0; i < numThreads; i++) {
+                fetchedBatches.put(END_OF_DOCUMENTS);
+            }
+
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            workers.shutdownNow();
+            writer.interrupt();
+            System.err.println("Indexing interrupted: " + e.getMessage());
+        }
+
+        System.out.println("No more documents to index");
+        System.out.println("Analysis cache: " + analyzer.getCache());
+    }
+
+    /**
+     * Fetch stage: pages through the non indexed documents by id, as they are only flagged
+     * as indexed once the writer stage flushes them.
+     *
+     * @param fetchedBatches The queue feeding the indexing workers.
+     */
+    private void fetchBatches(BlockingQueue<List<UrlDocument>> fetchedBatches)
+        throws InterruptedException {
+        String lastId = null;
 
         while (true) {
-            // Get a batch of non indexed documents from the database
-            List<UrlDocument> urlDocuments = urlsFrontierService.getNotIndexedDocuments(BATCH_SIZE);
+            List<UrlDocument> urlDocuments = urlsFrontierService.getNotIndexedDocumentsAfter(
+                lastId,
+                BATCH_SIZE
+            );
+
+            if (urlDocuments.isEmpty()) return;
+
+            lastId = urlDocuments.get(urlDocuments.size() - 1).getId();
+            fetchedBatches.put(urlDocuments);
+        }
+    }
+
+    /**
+     * Parse stage: indexes fetched batches into the worker's own postings buffer until
+     * the fetch stage runs out of documents, handing the batch over to the writer each time
+     * the buffer reaches the worker's share of the buffer memory.
+     *
+     * @param fetchedBatches The queue of batches to index.
+     * @param indexedBatches The queue feeding the writer stage.
+     */
+    private void indexBatches(
+        BlockingQueue<List<UrlDocument>> fetchedBatches,
+        BlockingQueue<IndexedBatch> indexedBatches
+    ) {
+        PostingsBuilder postingsBuilder = new PostingsBuilder();
+        IndexedBatch batch = new IndexedBatch();
+        long bufferBytes = (long) bufferMb * 1024 * 1024 / numThreads;
+
+        try {
+            while (true) {
+                List<UrlDocument> urlDocuments = fetchedBatches.take();
+                if (urlDocuments == END_OF_DOCUMENTS) break;
+
+                try {
+                    indexDocuments(urlDocuments, batch, postingsBuilder);
+                    if (postingsBuilder.getEstimatedBytes() >= bufferBytes) {
+                        indexedBatches.put(finishBatch(batch, postingsBuilder, bulkBuild != null));
+                        batch = new IndexedBatch();
+                    }
+                } catch (RuntimeException e) {
+                    // The documents of the discarded batch are left not indexed
+                    System.err.println("Error indexing batch: " + e.getMessage());
+                    postingsBuilder.clear();
+                    batch = new IndexedBatch();
+                }
+            }
+
+            if (batch.getDocumentsCount() > 0) {
+                indexedBatches.put(finishBatch(batch, postingsBuilder, bulkBuild != null));
+            }
+        } catch (RuntimeException e) {
+            System.err.println("Error indexing batch: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // Always tell the writer this worker is done, so it never waits forever
+            try {
+                indexedBatches.put(END_OF_BATCHES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Write stage: merges all batches already indexed by the workers into a single flush,
+     * so the database writes overlap with the parsing of the next batches. The flushes run on
+     * their own threads, so the next flush is merged while the previous one is written.
+     *
+     * @param indexedBatches The queue of indexed batches.
+     */
+    private void writeBatches(BlockingQueue<IndexedBatch> indexedBatches) {
+        int runningWorkers = numThreads;
+        List<IndexedBatch> available = new ArrayList<>();
+
+        try {
+            while (runningWorkers > 0) {
+                available.clear();
+                available.add(indexedBatches.take());
+                indexedBatches.drainTo(available, numThreads - 1);
+
+                IndexedBatch merged = new IndexedBatch();
+                int mergedBatches = 0;
+                for (IndexedBatch batch : available) {
+                    if (batch == END_OF_BATCHES) {
+                        runningWorkers--;
+                    } else {
+                        merged.merge(batch);
+                        mergedBatches++;
+                    }
+                }
+
+                if (mergedBatches == 0) continue;
 
-            // If there are no more documents to index, break the loop
-            if (urlDocuments.isEmpty()) {
-                System.out.println("No more documents to index");
-                return;
+                // Flush asynchronously, at most indexer.write.flushes at a time
+                flushesInFlight.acquire();
+                int flushedBatches = mergedBatches;
+                flushExecutor.execute(() -> {
+                    try {
+                        flush(merged, flushedBatches);
+                    } catch (RuntimeException e) {
+                        System.err.println("Error saving indexed batch: " + e.getMessage());
+                    } finally {
+                        flushesInFlight.release();
+                    }
+                });
             }
 
-            // Index all batches
-            indexBatch(urlDocuments);
-            currentBatch++;
+            // Wait for the last flushes
+            flushesInFlight.acquire(maxFlushesInFlight);
+            flushesInFlight.release(maxFlushesInFlight);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+
+        // All the batches of a bulk build are written, merge and write their postings
+        if (bulkBuild != null) bulkBuild.finish();
     }
 
     /**
-     * Indexes a batch of URL documents with a certain size.
+     * Indexes a batch of URL documents with a certain size and saves it to the database
+     * on the calling thread.
      *
      * @param urlDocuments The list of URL documents to be indexed.
      */
     public void indexBatch(List<UrlDocument> urlDocuments) {
-        long start = System.nanoTime();
+        flush(indexBatch(urlDocuments, new PostingsBuilder()), 1);
+    }
 
-        List<UrlDocument> updatedUrlDocuments = new ArrayList<>();
-        List<Page> savedPages = new ArrayList<>();
+    /**
+     * Indexes a batch of URL documents into the given postings buffer.
+     *
+     * @param urlDocuments The list of URL documents to be indexed.
+     * @param postingsBuilder The postings buffer of the calling worker.
+     * @return The indexed batch ready to be saved.
+     */
+    IndexedBatch indexBatch(List<UrlDocument> urlDocuments, PostingsBuilder postingsBuilder) {
+        IndexedBatch batch = new IndexedBatch();
+        indexDocuments(urlDocuments, batch, postingsBuilder);
+        return finishBatch(batch, postingsBuilder, false);
+    }
 
+    /**
+     * Indexes URL documents into a batch and its postings buffer. The pages already indexed are
+     * looked up for all the documents at once, instead of a query per document.
+     */
+    private void indexDocuments(
+        List<UrlDocument> urlDocuments,
+        IndexedBatch batch,
+        PostingsBuilder postingsBuilder
+    ) {
+        List<String> pageIds = new ArrayList<>(urlDocuments.size());
+        List<String> legacyPageIds = new ArrayList<>();
         for (UrlDocument urlDocument : urlDocuments) {
+            String url = urlDocument.getNormalizedUrl();
+            if (compactPageIds) {
+                pageIds.add(HashManager.fingerprint(url).toString());
+                legacyPageIds.add(HashManager.hash(url));
+            } else {
+                pageIds.add(HashManager.hash(url));
+            }
+        }
+
+        List<String> lookedUpIds = new ArrayList<>(pageIds);
+        lookedUpIds.addAll(legacyPageIds);
+        Map<String, Page> indexedPages = pageService.getContentHashes(lookedUpIds);
+        // A page indexed before compact ids keeps its SHA-256 id, only new pages get compact ones
+        for (int i = 0; i < legacyPageIds.size(); i++) {
+            if (indexedPages.containsKey(legacyPageIds.get(i))) pageIds.set(i, legacyPageIds.get(i));
+        }
+
+        // Only the words are diffed, with the signatures of the pages whose content changed
+        Map<String, Map<String, Long>> previousSignatures = Collections.emptyMap();
+        Map<String, Set<String>> previousWords = Collections.emptyMap();
+        if (!segmentStore.isEnabled() && bulkBuild == null && !indexedPages.isEmpty()) {
+            List<String> changedPageIds = new ArrayList<>();
+            for (int i = 0; i < urlDocuments.size(); i++) {
+                Page indexedPage = indexedPages.get(pageIds.get(i));
+                if (indexedPage != null && !isUnchanged(indexedPage, urlDocuments.get(i))) {
+                    changedPageIds.add(indexedPage.getId());
+                }
+            }
+            previousSignatures = pageService.getTermSignatures(changedPageIds);
+
+            // The pages indexed before signatures are purged from the words of their previous text
+            changedPageIds.removeAll(previousSignatures.keySet());
+            previousWords = getPreviousWords(changedPageIds);
+        }
+
+        for (int i = 0; i < urlDocuments.size(); i++) {
             // Index each document in the batch
-            indexDocument(urlDocument, updatedUrlDocuments, savedPages);
+            indexDocument(
+                urlDocuments.get(i),
+                pageIds.get(i),
+                batch,
+                postingsBuilder,
+                indexedPages,
+                previousSignatures,
+                previousWords
+            );
+        }
+        batch.setDocumentsCount(batch.getDocumentsCount() + urlDocuments.size());
+    }
+
+    /**
+     * Finds the words pages were indexed with from their previous text: the tokens of their
+     * forward index (or of their stored body text for pages indexed before forward indexes) and
+     * of their title, analyzed again.
+     *
+     * @param pageIds The ids of the indexed pages.
+     * @return The words by page id, pages whose previous text is lost are left out
+     */
+    private Map<String, Set<String>> getPreviousWords(List<String> pageIds) {
+        Map<String, Set<String>> previousWords = new HashMap<>();
+        for (Page page : pageService.getIndexedTexts(pageIds).values()) {
+            Set<String> words = new HashSet<>();
+            if (page.getForwardIndex() != null) {
+                ForwardIndex forwardIndex = new ForwardIndex(page.getForwardIndex());
+                Set<String> tokens = new HashSet<>();
+                for (int position = 0; position < forwardIndex.size(); position++) {
+                    tokens.add(forwardIndex.getToken(position));
+                }
+                for (String token : tokens) {
+                    String word = analyzer.analyzeToken(token);
+                    if (word != null) words.add(word);
+                }
+            } else {
+                String text = page.getContent() != null
+                    ? page.getContent()
+                    : documentStoreService.getDocument(page.getId());
+                if (text == null) continue;
+                addWords(text, words);
+            }
+            if (page.getTitle() != null) addWords(page.getTitle(), words);
+            previousWords.put(page.getId(), words);
         }
+        return previousWords;
+    }
 
-        // Compute the term frequency (TF) for the tokens
-        Map<String, InvertedIndex> indexBuffer = tokenizer.getIndexBuffer();
-        Map<String, Integer> pagesTokensCount = tokenizer.getPagesTokensCount();
-        RankCalculator.calculateTf(indexBuffer, pagesTokensCount);
+    private void addWords(CharSequence text, Set<String> words) {
+        analyzer.analyze(text, (start, end, position, term, termLength) -> {
+            if (termLength > 0) words.add(new String(term, 0, termLength));
+        });
+    }
 
-        // Save the tokens, updated URL documents and pages to the database
-        saveToDatabase(updatedUrlDocuments, savedPages, indexBuffer);
+    /**
+     * Moves the postings buffer into the batch, as inverted indices or as a sorted run spilled to
+     * disk, and clears the buffer.
+     *
+     * @param batch The batch of the indexed documents.
+     * @param postingsBuilder The postings buffer of the calling worker.
+     * @param spill Whether the postings are spilled for a bulk build.
+     * @return The batch ready to be saved.
+     */
+    private IndexedBatch finishBatch(
+        IndexedBatch batch,
+        PostingsBuilder postingsBuilder,
+        boolean spill
+    ) {
+        try {
+            if (spill) {
+                // The spilled postings are only signed, reindexed pages lose all their postings
+                Map<String, Page> pages = PostingsDiff.resetSignatures(batch);
+                Path run = PostingsRun.write(
+                    Paths.get(spillDirectory),
+                    postingsBuilder,
+                    (word, references) -> PostingsDiff.sign(pages, word, references)
+                );
+                batch.getRuns().add(run);
+            } else {
+                // Convert the batch postings to inverted indices, the term frequency (TF) is computed here
+                batch.setIndexBuffer(postingsBuilder.toInvertedIndex());
+                // Keep only the postings the reindexed pages change
+                PostingsDiff.apply(batch);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill postings", e);
+        } finally {
+            postingsBuilder.clear();
+        }
+        return batch;
+    }
 
-        // Reset tokenizer for the next batch
-        tokenizer.resetForNewBatch();
+    /**
+     * Saves an indexed batch to the database and logs its timing.
+     *
+     * @param batch The batch to save.
+     * @param mergedBatches The number of worker batches merged into it.
+     */
+    private void flush(IndexedBatch batch, int mergedBatches) {
+        long start = System.nanoTime();
+
+        // Save the tokens, updated URL documents and pages to the database
+        saveToDatabase(batch);
 
         long duration = (System.nanoTime() - start) / 1_000_000;
         System.out.println(
             "Indexing Batch " +
-            currentBatch +
+            currentBatch.getAndIncrement() +
             " took: " +
             duration +
             " ms, processed " +
-            urlDocuments.size() +
-            " documents"
+            batch.getDocumentsCount() +
+            " documents (" +
+            batch.getReindexedPages().size() +
+            " reindexed) from " +
+            mergedBatches +
+            " merged batches"
         );
     }
 
     /**
-     * Indexes a single Url document by parsing the jsoup document, extracting its content and headers,
-     * and tokenizing them.
+     * Indexes a single Url document by extracting its content and headers while it is
+     * decompressed, and tokenizing them.
+     *
+     * A page that already exists is skipped when its crawled content has the same hash, otherwise
+     * it is reindexed and the batch replaces its previous postings.
      *
      * @param urlDocument The URL document to be indexed.
-     * @param updatedUrlDocuments The list of URL documents to be updated.
-     * @param savedPages The list of pages to be saved.
+     * @param pageId The id of the page of the document.
+     * @param batch The batch collecting the pages and URL documents to be saved.
+     * @param postingsBuilder The postings buffer of the calling worker.
+     * @param indexedPages The already indexed pages of the batch with their content hash, by id.
+     * @param previousSignatures The term signatures of the changed pages to diff, by id.
+     * @param previousWords The words of the changed pages without signatures to purge, by id.
      */
-    public void indexDocument(
+    void indexDocument(
         UrlDocument urlDocument,
-        List<UrlDocument> updatedUrlDocuments,
-        List<Page> savedPages
+        String pageId,
+        IndexedBatch batch,
+        PostingsBuilder postingsBuilder,
+        Map<String, Page> indexedPages,
+        Map<String, Map<String, Long>> previousSignatures,
+        Map<String, Set<String>> previousWords
     ) {
         long start = System.nanoTime();
+        List<UrlDocument> updatedUrlDocuments = batch.getUpdatedUrlDocuments();
+
         // Get the document from the database
         String url = urlDocument.getNormalizedUrl();
-        String document = CompressionUtil.decompress(urlDocument.getDocument());
+        byte[] compressedDocument = urlDocument.getDocument();
 
         // Check null documents
-        if (document == null) {
+        if (compressedDocument == null || compressedDocument.length == 0) {
             System.out.println("Skipping null document for URL:" + url);
             urlDocument.setIndexed(true);
             updatedUrlDocuments.add(urlDocument);
             return;
         }
 
-        // Convert the document to a Jsoup Document object
-        Document jsoupDocument = Jsoup.parse(document);
-
-        // Call the index method with the URL and the Jsoup Document object
-        index(url, jsoupDocument);
+        // Check if the page is already indexed from the same content
+        byte[] contentHash = urlDocument.getHashedDocContent();
+        Page indexedPage = indexedPages.get(pageId);
+        if (indexedPage != null && isUnchanged(indexedPage, urlDocument)) {
+            System.out.println("Page unchanged for URL: " + url + ", skipping save.");
+            urlDocument.setIndexed(true);
+            updatedUrlDocuments.add(urlDocument);
+            return;
+        }
 
-        // Set the page token count in the page object
-        // Check if the page already exists in the database
-        String pageId = HashManager.hash(url);
-        int pageTokenCount;
-        if (!pageService.existsById(pageId)) {
-            pageTokenCount = tokenizer.getPageTokenCount(pageId);
-            savedPages.add(
-                new Page(
-                    pageId,
-                    url,
-                    jsoupDocument.title(),
-                    jsoupDocument.body().text().toLowerCase(),
-                    pageTokenCount
-                )
-            );
-        } else {
-            System.out.println("Page already exists for URL: " + url + ", skipping save.");
+        // Extract the text in one pass over the decompressed chars, without building a DOM
+        HtmlTextExtractor.ExtractedText document;
+        try (Reader reader = CompressionUtil.decompressToReader(compressedDocument)) {
+            document = HtmlTextExtractor.extract(reader);
+        } catch (IOException e) {
+            System.out.println("Skipping unreadable document for URL:" + url + ", " + e.getMessage());
             urlDocument.setIndexed(true);
             updatedUrlDocuments.add(urlDocument);
             return;
         }
 
+        // Assign the page its dense doc id, carried by its postings
+        int docId = docIdDictionary.assign(pageId, url);
+        postingsBuilder.addDocument(pageId, docId);
+
+        // Call the index method with the page id and the extracted text
+        byte[] forwardIndex = index(pageId, document, postingsBuilder);
+
+        // Set the page token count in the page object
+        int pageTokenCount = postingsBuilder.getPageTokenCount(pageId);
+        Page page = new Page(
+            pageId,
+            url,
+            document.getTitle(),
+            document.getText().toString(),
+            pageTokenCount
+        );
+        page.setDocId(docId);
+        page.setForwardIndex(forwardIndex);
+        page.setContentHash(contentHash);
+        if (indexedPage == null) {
+            batch.getSavedPages().add(page);
+        } else {
+            batch.getReindexedPages().add(page);
+            // The words are diffed when the previous signatures are known, the segment store
+            // deletes all the previous postings
+            Map<String, Long> signatures = previousSignatures.get(pageId);
+            if (signatures != null) {
+                batch.getPreviousSignatures().put(pageId, signatures);
+            } else if (previousWords.containsKey(pageId)) {
+                batch.getPurgedPageIds().add(pageId);
+                batch.getPurgedWords().addAll(previousWords.get(pageId));
+            } else if (!segmentStore.isEnabled()) {
+                batch.getScannedPageIds().add(pageId);
+            }
+        }
+
         // Add the document to the updatedUrlDocuments list
         urlDocument.setIndexed(true);
         updatedUrlDocuments.add(urlDocument);
@@ -154,60 +611,169 @@ public class Indexer {
         System.out.println(
             "Indexing document took: " +
             duration +
-            " ms, processed URL: " +
+            " ms, " +
+            (indexedPage == null ? "processed" : "reindexed") +
+            " URL: " +
             url +
             ", pageId: " +
-            pageId
+            pageId +
+            ", docId: " +
+            docId
         );
     }
 
+    /**
+     * @return Whether an indexed page was indexed from the same content as the crawled document
+     */
+    private static boolean isUnchanged(Page indexedPage, UrlDocument urlDocument) {
+        byte[] contentHash = urlDocument.getHashedDocContent();
+        return contentHash != null && Arrays.equals(contentHash, indexedPage.getContentHash());
+    }
+
     /**
      * Processes a single document by extracting its content and headers, and tokenizing them.
      *
-     * @param url The URL of the document.
-     * @param document The Jsoup Document object.
+     * @param pageId The id of the page.
+     * @param document The text extracted from the page.
+     * @param postingsBuilder The postings buffer of the calling worker.
+     * @return The forward index of the page body.
      */
-    public void index(String url, Document document) {
-        // Extract raw text
-        String id = HashManager.hash(url);
-        String content = document.body().text();
-        Elements fieldTags = document.select("h1, h2, title");
-
-        tokenizer.tokenizeContent(content, id);
-        tokenizer.tokenizeHeaders(fieldTags, id);
+    public byte[] index(
+        String pageId,
+        HtmlTextExtractor.ExtractedText document,
+        PostingsBuilder postingsBuilder
+    ) {
+        byte[] forwardIndex = tokenizer.tokenizeContent(document.getText(), pageId, postingsBuilder);
+        tokenizer.tokenizeHeaders(document.getHeaders(), pageId, postingsBuilder);
+        return forwardIndex;
     }
 
     /**
-     * Saves the tokens, updated URL documents and pages to the database.
+     * Saves the tokens, updated URL documents and pages of a batch to the database, logged in
+     * the IndexCommitLog and rolled back if any write fails.
      *
-     * @param updatedUrlDocuments The list of URL documents to be updated.
-     * @param savedPages The list of pages to be saved.
+     * @param batch The indexed batch.
      */
-    public void saveToDatabase(
-        List<UrlDocument> updatedUrlDocuments,
-        List<Page> savedPages,
-        Map<String, InvertedIndex> indexBuffer
-    ) {
+    void saveToDatabase(IndexedBatch batch) {
+        // Log the batch before writing it, so a crash or a failed write is rolled back as a whole
+        boolean spilled = !batch.getRuns().isEmpty();
+        String segmentName;
+        if (spilled) {
+            segmentName = bulkBuild.getSegmentName();
+        } else {
+            segmentName = segmentStore.isEnabled() && !batch.getIndexBuffer().isEmpty()
+                ? segmentStore.reserveSegmentName()
+                : null;
+        }
+        String batchId = indexCommitLog.begin(
+            batch.getSavedPages(),
+            batch.getReindexedPages(),
+            batch.getUpdatedUrlDocuments(),
+            segmentName
+        );
+        try {
+            writeBatch(batchId, segmentName, batch);
+        } catch (RuntimeException e) {
+            System.err.println("Rolling back batch " + batchId + ": " + e.getMessage());
+            indexCommitLog.rollback(batchId);
+            batch.getRuns().forEach(run -> run.toFile().delete());
+            throw e;
+        }
+
+        // A spilled batch stays pending until the bulk build writes its postings
+        if (spilled) {
+            bulkBuild.add(batchId, batch);
+            return;
+        }
+        indexCommitLog.commit(batchId);
+
+        // The segment of a committed batch can be merged
+        if (segmentName != null) segmentStore.releaseSegment(segmentName);
+    }
+
+    /**
+     * Runs the three independent writes of a batch concurrently and waits for all of them, so a
+     * failed batch is only rolled back once none of its writes is running.
+     */
+    private void writeBatch(String batchId, String segmentName, IndexedBatch batch) {
+        List<String> reindexedPageIds = new ArrayList<>(batch.getReindexedPages().size());
+        batch.getReindexedPages().forEach(page -> reindexedPageIds.add(page.getId()));
+
+        CompletableFuture<Void> pages = CompletableFuture.runAsync(
+            () -> writePages(batchId, batch, reindexedPageIds),
+            writeExecutor
+        );
+        CompletableFuture<Void> postings = CompletableFuture.runAsync(
+            () -> writePostings(segmentName, batch, reindexedPageIds),
+            writeExecutor
+        );
+        CompletableFuture<Void> urlDocuments = CompletableFuture.runAsync(
+            () -> writeUrlDocuments(batch.getUpdatedUrlDocuments()),
+            writeExecutor
+        );
+
+        try {
+            CompletableFuture.allOf(pages, postings, urlDocuments).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private void writePages(String batchId, IndexedBatch batch, List<String> reindexedPageIds) {
+        List<Page> savedPages = batch.getSavedPages();
+        List<Page> reindexedPages = batch.getReindexedPages();
+
+        // Move the page texts into compressed blocks of the document store
+        List<Page> pages = new ArrayList<>(savedPages);
+        pages.addAll(reindexedPages);
+        documentStoreService.storeContents(pages, batchId);
+        documentStoreService.detachDocuments(reindexedPageIds, batchId);
+
         long start = System.nanoTime();
-        // Save the pages in bulk
+        // Save the new pages and replace the indexed fields of the reindexed ones in bulk
         pageService.savePagesInBulk(savedPages);
+        pageService.updatePagesInBulk(reindexedPages);
         long duration = (System.nanoTime() - start) / 1_000_000;
         System.out.println(
-            "Saving pages took: " + duration + " ms, saved " + savedPages.size() + " pages"
+            "Saving pages took: " +
+            duration +
+            " ms, saved " +
+            savedPages.size() +
+            " pages, updated " +
+            reindexedPages.size()
         );
+    }
+
+    private void writePostings(String segmentName, IndexedBatch batch, List<String> reindexedPageIds) {
+        Map<String, InvertedIndex> indexBuffer = batch.getIndexBuffer();
 
-        // Save the inverted index in bulk
-        start = System.nanoTime();
-        invertedIndexService.saveTokensInBulk(tokenizer.getIndexBuffer());
-        duration = (System.nanoTime() - start) / 1_000_000;
+        // Save the inverted index in bulk, as a new segment when the segment store is enabled
+        long start = System.nanoTime();
+        int tokensCount = indexBuffer.size();
+        if (segmentStore.isEnabled()) {
+            // The previous postings of the reindexed pages are deleted from the older segments
+            segmentStore.deletePages(reindexedPageIds);
+            if (segmentName != null) segmentStore.writeSegment(segmentName, indexBuffer);
+        } else {
+            invertedIndexService.removePages(batch.getPurgedPageIds(), batch.getPurgedWords());
+            invertedIndexService.removePages(batch.getScannedPageIds());
+            invertedIndexService.saveTokensInBulk(indexBuffer);
+            invertedIndexService.updatePostingsInBulk(
+                batch.getChangedPostings(),
+                batch.getRemovedPostings()
+            );
+        }
+        long duration = (System.nanoTime() - start) / 1_000_000;
         System.out.println(
-            "Saving tokens took: " + duration + " ms, saved " + indexBuffer.size() + " tokens"
+            "Saving tokens took: " + duration + " ms, saved " + tokensCount + " tokens"
         );
+    }
 
+    private void writeUrlDocuments(List<UrlDocument> updatedUrlDocuments) {
         // Save the updated URL documents in bulk
-        start = System.nanoTime();
+        long start = System.nanoTime();
         urlsFrontierService.updateUrlDocumentsInBulk(updatedUrlDocuments);
-        duration = (System.nanoTime() - start) / 1_000_000;
+        long duration = (System.nanoTime() - start) / 1_000_000;
         System.out.println(
             "Saving URL documents took: " +
             duration +
@@ -0,0 +1,312 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.ranker.RankCalculator;
+import com.project.searchengine.server.model.InvertedIndex;
+import com.project.searchengine.server.model.PageReference;
+import com.project.searchengine.utils.CharArrayDictionary;
+import com.project.searchengine.utils.IntArrayList;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * In-batch postings buffer used by the tokenizer.
+ *
+ * Terms are interned to dense int ids (straight from the analyzer buffer) and pages to dense
+ * per-batch ordinals, so adding a token is a hash lookup and primitive array appends. Documents are
+ * tokenized one after the other, so the posting of the current document is always the
+ * last posting of its term and can be found in O(1).
+ *
+ * The persisted InvertedIndex / PageReference model is only built at flush time. The heap used
+ * by the buffer is estimated as tokens are added, so the indexer can flush it or spill it to disk
+ * as a sorted run by size rather than by number of documents.
+ */
+public class PostingsBuilder {
+
+    /**
+     * Header fields tracked per posting, in the order they are stored.
+     */
+    public static final String[] FIELDS = { "title", "h1", "h2" };
+
+    // Estimated heap cost of a new term (its TermPostings, arrays and dictionary entry), of a new
+    // posting (doc, position start and field counts) and of a new document
+    private static final int TERM_BYTES = 320;
+    private static final int POSTING_BYTES = (2 + FIELDS.length) * Integer.BYTES;
+    private static final int DOCUMENT_BYTES = 128;
+
+    private final CharArrayDictionary terms = new CharArrayDictionary(1024);
+    private final List<TermPostings> termPostings = new ArrayList<>();
+
+    private final Map<String, Integer> docOrdinals = new HashMap<>();
+    private final List<String> pageIds = new ArrayList<>();
+    private final IntArrayList docIds = new IntArrayList();
+    private final IntArrayList docTokenCounts = new IntArrayList();
+    private long estimatedBytes;
+
+    /**
+     * Postings of a single term within the batch.
+     * Posting i belongs to document docs[i], its positions are
+     * positions[positionStarts[i] .. positionStarts[i + 1]) and its header counts are
+     * fieldCounts[i * FIELDS.length .. (i + 1) * FIELDS.length).
+     */
+    static class TermPostings {
+
+        final IntArrayList docs = new IntArrayList(4);
+        final IntArrayList positionStarts = new IntArrayList(4);
+        final IntArrayList positions = new IntArrayList(8);
+        final IntArrayList fieldCounts = new IntArrayList(4 * FIELDS.length);
+
+        int lastDoc() {
+            return docs.isEmpty() ? -1 : docs.get(docs.size() - 1);
+        }
+
+        void startPosting(int doc) {
+            docs.add(doc);
+            positionStarts.add(positions.size());
+            for (int i = 0; i < FIELDS.length; i++) {
+                fieldCounts.add(0);
+            }
+        }
+
+        int positionsEnd(int posting) {
+            return posting + 1 < docs.size() ? positionStarts.get(posting + 1) : positions.size();
+        }
+    }
+
+    /**
+     * Registers a page in the batch and returns its ordinal.
+     * Calling it again for a page already in the batch returns the existing ordinal.
+     *
+     * @param pageId The page id.
+     * @return The dense per-batch ordinal of the page.
+     */
+    public int addDocument(String pageId) {
+        return addDocument(pageId, DocIdDictionary.NO_DOC_ID);
+    }
+
+    /**
+     * Registers a page and its global doc id in the batch and returns its ordinal.
+     *
+     * @param pageId The page id.
+     * @param docId The doc id assigned to the page by the DocIdDictionary.
+     * @return The dense per-batch ordinal of the page.
+     */
+    public int addDocument(String pageId, int docId) {
+        Integer ordinal = docOrdinals.get(pageId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        int newOrdinal = pageIds.size();
+        docOrdinals.put(pageId, newOrdinal);
+        pageIds.add(pageId);
+        docIds.add(docId);
+        docTokenCounts.add(0);
+        estimatedBytes += DOCUMENT_BYTES + 2L * pageId.length();
+        return newOrdinal;
+    }
+
+    /**
+     * Records an occurrence of a term in a document and counts it towards the page token count.
+     *
+     * @param term The cleaned token.
+     * @param doc The document ordinal returned by addDocument.
+     * @param position The position of the token in the page body.
+     */
+    public void addPosition(String term, int doc, int position) {
+        addPosition(internTerm(terms.add(term)), doc, position);
+    }
+
+    /**
+     * Records an occurrence of a term held in a char buffer, see addPosition(String, int, int).
+     *
+     * @param term The buffer holding the cleaned token.
+     * @param length The length of the token in the buffer.
+     * @param doc The document ordinal returned by addDocument.
+     * @param position The position of the token in the page body.
+     */
+    public void addPosition(char[] term, int length, int doc, int position) {
+        addPosition(internTerm(terms.add(term, 0, length)), doc, position);
+    }
+
+    private void addPosition(int termId, int doc, int position) {
+        TermPostings postings = termPostings.get(termId);
+        if (postings.lastDoc() != doc) {
+            postings.startPosting(doc);
+            estimatedBytes += POSTING_BYTES;
+        }
+        postings.positions.add(position);
+        docTokenCounts.increment(doc, 1);
+        estimatedBytes += Integer.BYTES;
+    }
+
+    /**
+     * Increments the header count of a term in a document.
+     * Terms that do not appear in the body of the document are ignored.
+     *
+     * @param term The cleaned token.
+     * @param doc The document ordinal returned by addDocument.
+     * @param field The header type (title, h1, h2).
+     */
+    public void addFieldOccurrence(String term, int doc, String field) {
+        addFieldOccurrence(term.toCharArray(), term.length(), doc, field);
+    }
+
+    /**
+     * Increments the header count of a term held in a char buffer.
+     *
+     * @param term The buffer holding the cleaned token.
+     * @param length The length of the token in the buffer.
+     * @param doc The document ordinal returned by addDocument.
+     * @param field The header type (title, h1, h2).
+     */
+    public void addFieldOccurrence(char[] term, int length, int doc, String field) {
+        int fieldIndex = fieldIndex(field);
+        int termId = terms.get(term, 0, length);
+        if (fieldIndex < 0 || termId < 0) return;
+
+        TermPostings postings = termPostings.get(termId);
+        if (postings.lastDoc() != doc) return;
+
+        int posting = postings.docs.size() - 1;
+        postings.fieldCounts.increment(posting * FIELDS.length + fieldIndex, 1);
+    }
+
+    /**
+     * @return The number of body tokens indexed for the page, 0 if it is not in the batch
+     */
+    public int getPageTokenCount(String pageId) {
+        Integer ordinal = docOrdinals.get(pageId);
+        return ordinal == null ? 0 : docTokenCounts.get(ordinal);
+    }
+
+    /**
+     * @return A map of page id to its body token count
+     */
+    public Map<String, Integer> getPagesTokensCount() {
+        Map<String, Integer> counts = new HashMap<>(pageIds.size() * 2);
+        for (int i = 0; i < pageIds.size(); i++) {
+            counts.put(pageIds.get(i), docTokenCounts.get(i));
+        }
+        return counts;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    public int documentCount() {
+        return pageIds.size();
+    }
+
+    /**
+     * @return An estimate of the heap used by the buffered postings, in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Receives the postings of one term.
+     */
+    @FunctionalInterface
+    public interface TermPostingsConsumer {
+        void accept(String word, List<PageReference> pages) throws IOException;
+    }
+
+    /**
+     * Visits the postings of the batch term by term in sorted term order, only building the
+     * PageReference model of the current term, to write them as a sorted run.
+     *
+     * @param consumer Receives every term with its page references.
+     */
+    public void forEachTermSorted(TermPostingsConsumer consumer) throws IOException {
+        Integer[] termIds = new Integer[terms.size()];
+        for (int termId = 0; termId < termIds.length; termId++) {
+            termIds[termId] = termId;
+        }
+        String[] words = new String[termIds.length];
+        for (int termId = 0; termId < termIds.length; termId++) {
+            words[termId] = terms.get(termId);
+        }
+        Arrays.sort(termIds, (a, b) -> words[a].compareTo(words[b]));
+
+        for (int termId : termIds) {
+            consumer.accept(words[termId], pageReferences(termPostings.get(termId)));
+        }
+    }
+
+    /**
+     * Converts the batch postings into the persisted model, with the TF of every
+     * page reference already computed.
+     *
+     * @return A map of word to its inverted index
+     */
+    public Map<String, InvertedIndex> toInvertedIndex() {
+        Map<String, InvertedIndex> indexBuffer = new HashMap<>(terms.size() * 2);
+
+        for (int termId = 0; termId < terms.size(); termId++) {
+            String word = terms.get(termId);
+            InvertedIndex invertedIndex = new InvertedIndex(word);
+            invertedIndex.setPages(pageReferences(termPostings.get(termId)));
+            indexBuffer.put(word, invertedIndex);
+        }
+
+        return indexBuffer;
+    }
+
+    /**
+     * Builds the page references of a term.
+     */
+    private List<PageReference> pageReferences(TermPostings postings) {
+        List<PageReference> pages = new ArrayList<>(postings.docs.size());
+        for (int posting = 0; posting < postings.docs.size(); posting++) {
+            int doc = postings.docs.get(posting);
+            int start = postings.positionStarts.get(posting);
+            int end = postings.positionsEnd(posting);
+
+            PageReference pageReference = new PageReference(pageIds.get(doc), docIds.get(doc));
+            pageReference.setWordPositions(postings.positions.toList(start, end));
+
+            for (int field = 0; field < FIELDS.length; field++) {
+                int count = postings.fieldCounts.get(posting * FIELDS.length + field);
+                if (count > 0) {
+                    pageReference.addfieldWordCount(FIELDS[field], count);
+                }
+            }
+
+            pageReference.setTf(RankCalculator.calculateTf(end - start, docTokenCounts.get(doc)));
+            pages.add(pageReference);
+        }
+        return pages;
+    }
+
+    /**
+     * Clears all postings, terms and documents of the batch.
+     */
+    public void clear() {
+        terms.clear();
+        termPostings.clear();
+        docOrdinals.clear();
+        pageIds.clear();
+        docIds.clear();
+        docTokenCounts.clear();
+        estimatedBytes = 0;
+    }
+
+    /**
+     * Creates the postings of a newly interned term.
+     */
+    private int internTerm(int termId) {
+        if (termId == termPostings.size()) {
+            termPostings.add(new TermPostings());
+            estimatedBytes += TERM_BYTES + 2L * terms.get(termId).length();
+        }
+        return termId;
+    }
+
+    private static int fieldIndex(String field) {
+        for (int i = 0; i < FIELDS.length; i++) {
+            if (FIELDS[i].equals(field)) return i;
+        }
+        return -1;
+    }
+}
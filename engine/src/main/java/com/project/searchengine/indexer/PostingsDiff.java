@@ -0,0 +1,137 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.server.model.*;
+import com.project.searchengine.utils.HashManager;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Finds the postings a batch changes for the pages it reindexes.
+ *
+ * Every page keeps a signature of its posting for each of its terms (a 64-bit hash of its
+ * occurrence count, positions and field counts). Comparing the signatures of the new postings of a reindexed page with the
+ * previous ones splits them into:
+ *
+ * 1. Added terms: the posting stays in the index buffer and is appended like a new page.
+ * 2. Changed terms: the posting moves to the changed postings, replacing the previous one.
+ * 3. Unchanged terms: the posting is dropped from the buffer, nothing is written.
+ * 4. Removed terms: the page is listed in the removed postings of the term.
+ *
+ * So a recrawled page only writes the postings that differ from the indexed ones.
+ */
+final class PostingsDiff {
+
+    private PostingsDiff() {}
+
+    /**
+     * The tf is left out: it is normalized by the page length, so a one word edit would change the
+     * signature of every posting of the page. A posting whose occurrences did not move keeps the
+     * tf it was indexed with.
+     *
+     * @return The signature of a posting, equal for postings with the same occurrences and field
+     * counts
+     */
+    static long signature(PageReference page) {
+        List<Integer> positions = page.getWordPositions();
+        Map<String, Integer> fields = new TreeMap<>(page.getFieldWordCount());
+
+        int size = Integer.BYTES * (1 + positions.size());
+        for (String field : fields.keySet()) {
+            size += Integer.BYTES * 2 + field.length() * 3;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(positions.size());
+        positions.forEach(buffer::putInt);
+        for (Map.Entry<String, Integer> field : fields.entrySet()) {
+            byte[] name = field.getKey().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(name.length).put(name).putInt(field.getValue());
+        }
+        return HashManager.fingerprint(Arrays.copyOf(buffer.array(), buffer.position())).getHigh();
+    }
+
+    /**
+     * Clears the term signatures of the pages of a batch before they are signed.
+     *
+     * @return The pages of the batch by id
+     */
+    static Map<String, Page> resetSignatures(IndexedBatch batch) {
+        Map<String, Page> pages = new HashMap<>();
+        for (Page page : batch.getSavedPages()) {
+            page.setTermSignatures(new HashMap<>());
+            pages.put(page.getId(), page);
+        }
+        for (Page page : batch.getReindexedPages()) {
+            page.setTermSignatures(new HashMap<>());
+            pages.put(page.getId(), page);
+        }
+        return pages;
+    }
+
+    /**
+     * Sets the signatures of the postings of one term on their pages, for postings that are
+     * spilled instead of diffed.
+     *
+     * @param pages The pages by id, from resetSignatures.
+     * @param word The term.
+     * @param references The page references of the term.
+     */
+    static void sign(Map<String, Page> pages, String word, List<PageReference> references) {
+        for (PageReference reference : references) {
+            Page page = pages.get(reference.getPageId());
+            if (page != null) page.getTermSignatures().put(word, signature(reference));
+        }
+    }
+
+    /**
+     * Sets the term signatures of all the pages of a batch from its index buffer, and moves the
+     * postings of its reindexed pages with previous signatures out of the buffer when they are
+     * changed or unchanged.
+     *
+     * @param batch The batch, once its index buffer is built.
+     */
+    static void apply(IndexedBatch batch) {
+        Map<String, Page> pages = resetSignatures(batch);
+
+        Map<String, Map<String, Long>> previous = batch.getPreviousSignatures();
+        Iterator<Map.Entry<String, InvertedIndex>> words = batch.getIndexBuffer().entrySet().iterator();
+        while (words.hasNext()) {
+            Map.Entry<String, InvertedIndex> entry = words.next();
+            String word = entry.getKey();
+            List<PageReference> references = entry.getValue().getPages();
+
+            boolean indexed = false;
+            for (PageReference reference : references) {
+                long signature = signature(reference);
+                Page page = pages.get(reference.getPageId());
+                if (page != null) page.getTermSignatures().put(word, signature);
+
+                Map<String, Long> signatures = previous.get(reference.getPageId());
+                Long previousSignature = signatures == null ? null : signatures.get(word);
+                if (previousSignature == null) continue;
+
+                indexed = true;
+                if (previousSignature != signature) {
+                    batch.getChangedPostings().computeIfAbsent(word, InvertedIndex::new).addPage(reference);
+                }
+            }
+            if (!indexed) continue;
+
+            // The page already has a posting for this word, it is replaced or kept as is
+            references.removeIf(reference -> {
+                Map<String, Long> signatures = previous.get(reference.getPageId());
+                return signatures != null && signatures.containsKey(word);
+            });
+            if (references.isEmpty()) words.remove();
+        }
+
+        for (Map.Entry<String, Map<String, Long>> entry : previous.entrySet()) {
+            Map<String, Long> current = pages.get(entry.getKey()).getTermSignatures();
+            for (String word : entry.getValue().keySet()) {
+                if (!current.containsKey(word)) {
+                    batch.getRemovedPostings().computeIfAbsent(word, w -> new ArrayList<>()).add(entry.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.project.searchengine.indexer;
+
+import com.project.searchengine.indexer.storage.PostingsCodec;
+import com.project.searchengine.server.model.PageReference;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * A sorted run of postings spilled to local disk by a bulk build, merged with the other runs
+ * once all the documents are indexed.
+ *
+ * A run is a sequence of terms in ascending order, each followed by its page references:
+ * page id, doc id, tf, title/h1/h2 counts and the positions as vint gaps. A false marker ends
+ * the run.
+ */
+final class PostingsRun {
+
+    static final String PREFIX = "postings-run-";
+
+    private PostingsRun() {}
+
+    /**
+     * Writes a postings buffer as a new run in the given directory.
+     *
+     * @param directory The spill directory.
+     * @param postingsBuilder The buffer to spill, left unchanged.
+     * @param consumer Also receives every term with its page references, can be null.
+     * @return The path of the run.
+     */
+    static Path write(
+        Path directory,
+        PostingsBuilder postingsBuilder,
+        PostingsBuilder.TermPostingsConsumer consumer
+    ) throws IOException {
+        Path path = Files.createTempFile(directory, PREFIX, ".run");
+        try (
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)
+            )
+        ) {
+            postingsBuilder.forEachTermSorted((word, pages) -> {
+                writeTerm(out, word, pages);
+                if (consumer != null) consumer.accept(word, pages);
+            });
+            out.writeBoolean(false);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        return path;
+    }
+
+    private static void writeTerm(DataOutputStream out, String word, List<PageReference> pages)
+        throws IOException {
+        out.writeBoolean(true);
+        out.writeUTF(word);
+        PostingsCodec.writeVInt(out, pages.size());
+        for (PageReference page : pages) {
+            out.writeUTF(page.getPageId());
+            out.writeInt(page.getDocId());
+            out.writeDouble(page.getTf());
+            for (String field : PostingsBuilder.FIELDS) {
+                PostingsCodec.writeVInt(out, page.getFieldWordCount().getOrDefault(field, 0));
+            }
+
+            List<Integer> positions = page.getWordPositions();
+            PostingsCodec.writeVInt(out, positions.size());
+            int last = 0;
+            for (int position : positions) {
+                PostingsCodec.writeVInt(out, position - last);
+                last = position;
+            }
+        }
+    }
+
+    /**
+     * Reads a run one term at a time.
+     */
+    static class Reader implements Closeable {
+
+        private final DataInputStream in;
+        private String term;
+        private List<PageReference> pages;
+
+        Reader(Path path) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+        }
+
+        /**
+         * Moves to the next term.
+         *
+         * @return false at the end of the run
+         */
+        boolean next() throws IOException {
+            if (!in.readBoolean()) {
+                term = null;
+                pages = null;
+                return false;
+            }
+
+            term = in.readUTF();
+            int count = readVInt(in);
+            pages = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                PageReference page = new PageReference(in.readUTF(), in.readInt());
+                page.setTf(in.readDouble());
+                for (String field : PostingsBuilder.FIELDS) {
+                    int fieldCount = readVInt(in);
+                    if (fieldCount > 0) page.addfieldWordCount(field, fieldCount);
+                }
+
+                int positionsCount = readVInt(in);
+                List<Integer> positions = new ArrayList<>(positionsCount);
+                int position = 0;
+                for (int j = 0; j < positionsCount; j++) {
+                    position += readVInt(in);
+                    positions.add(position);
+                }
+                page.setWordPositions(positions);
+                pages.add(page);
+            }
+            return true;
+        }
+
+        String term() {
+            return term;
+        }
+
+        List<PageReference> pages() {
+            return pages;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * K-way merges sorted runs: every term is passed once, with the page references of all the
+     * runs holding it in run order.
+     *
+     * @param runs The runs to merge.
+     * @param consumer Receives the merged terms in ascending order.
+     */
+    static void merge(List<Path> runs, PostingsBuilder.TermPostingsConsumer consumer)
+        throws IOException {
+        List<Reader> readers = new ArrayList<>(runs.size());
+        try {
+            for (Path run : runs) {
+                readers.add(new Reader(run));
+            }
+
+            // Queue of the runs by their current term, ties broken by run order
+            PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+                int cmp = readers.get(a).term().compareTo(readers.get(b).term());
+                return cmp != 0 ? cmp : Integer.compare(a, b);
+            });
+            for (int i = 0; i < readers.size(); i++) {
+                if (readers.get(i).next()) queue.add(i);
+            }
+
+            while (!queue.isEmpty()) {
+                int head = queue.poll();
+                String term = readers.get(head).term();
+                List<PageReference> pages = new ArrayList<>(readers.get(head).pages());
+                advance(queue, readers, head);
+
+                while (!queue.isEmpty() && readers.get(queue.peek()).term().equals(term)) {
+                    int next = queue.poll();
+                    pages.addAll(readers.get(next).pages());
+                    advance(queue, readers, next);
+                }
+
+                consumer.accept(term, pages);
+            }
+        } finally {
+            for (Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private static void advance(PriorityQueue<Integer> queue, List<Reader> readers, int run)
+        throws IOException {
+        if (readers.get(run).next()) queue.add(run);
+    }
+
+    /**
+     * Deletes the runs left in the spill directory by a bulk build that did not finish.
+     *
+     * @param directory The spill directory.
+     */
+    static void deleteStaleRuns(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) return;
+        try (DirectoryStream<Path> runs = Files.newDirectoryStream(directory, PREFIX + "*")) {
+            for (Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+    }
+
+    private static int readVInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.project.searchengine.indexer;
 
+import com.project.searchengine.utils.CharArrayDictionary;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
@@ -13,6 +14,8 @@ import org.springframework.stereotype.Component;
 public class StopWordFilter {
 
     private final Set<String> stopWords;
+    // Same stop words, looked up from the analyzer buffers without building Strings
+    private final CharArrayDictionary stopWordChars;
 
     public StopWordFilter() {
         // Load stop words from a file
@@ -20,6 +23,7 @@ public class StopWordFilter {
             this.stopWords = new HashSet<>(
                 Files.readAllLines(Paths.get("src/main/resources/stopwords.txt"))
             );
+            this.stopWordChars = new CharArrayDictionary(stopWords);
         } catch (IOException e) {
             System.err.println("Error loading stop words: " + e.getMessage());
             throw new RuntimeException("Failed to load stop words", e);
@@ -34,4 +38,14 @@ public class StopWordFilter {
     public boolean isStopWord(String token) {
         return stopWords.contains(token);
     }
+
+    /**
+     * Check if the first length chars of a buffer are a stop word.
+     * @param buffer
+     * @param length
+     * @return true if the chars are a stop word, false otherwise
+     */
+    public boolean isStopWord(char[] buffer, int length) {
+        return stopWordChars.contains(buffer, 0, length);
+    }
 }
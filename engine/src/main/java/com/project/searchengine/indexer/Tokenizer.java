@@ -1,186 +1,85 @@
 package com.project.searchengine.indexer;
 
-import com.project.searchengine.server.model.InvertedIndex;
-import com.project.searchengine.server.model.PageReference;
 import java.io.InputStream;
-import java.util.*;
-import opennlp.tools.stemmer.PorterStemmer;
+import java.util.List;
 import opennlp.tools.tokenize.*;
-import org.jsoup.nodes.*;
-import org.jsoup.select.Elements;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
 public class Tokenizer {
 
-    private final Map<String, InvertedIndex> indexBuffer = new HashMap<>();
-    private final Map<String, Integer> pagesTokensCount = new HashMap<>();
-
-    private final PorterStemmer stemmer = new PorterStemmer();
-
     SimpleTokenizer tokenizer = SimpleTokenizer.INSTANCE;
 
     // TokenizerME tokenizer;
 
-    @Autowired
-    private final StopWordFilter stopWordFilter;
+    private final Analyzer analyzer;
 
-    public Tokenizer(StopWordFilter stopWordFilter) {
-        this.stopWordFilter = stopWordFilter;
+    // Forward index encoder of every worker thread, reused across pages
+    private final ThreadLocal<ForwardIndex.Encoder> forwardIndexEncoder = ThreadLocal.withInitial(
+        ForwardIndex.Encoder::new
+    );
+
+    public Tokenizer(Analyzer analyzer) {
+        this.analyzer = analyzer;
         // loadTokenizerModel();
     }
 
     /**
-     * Tokenizes the input text and build the inverted index
+     * Tokenizes the input text and adds its postings to the given buffer
      * @param text The input text to tokenize
      * @param pageId The current page id
-     * @param fieldType The field type (e.g., body, title, h1, h2)
+     * @param postingsBuilder The postings buffer of the calling worker
+     * @return The forward index of the text, its tokens at the same positions as the postings
      */
-    public void tokenizeContent(String text, String pageId) {
+    public byte[] tokenizeContent(CharSequence text, String pageId, PostingsBuilder postingsBuilder) {
         long startTime = System.currentTimeMillis();
-        int position = 0;
-
-        // Tokenize the text
-        String tokens[] = tokenizer.tokenize(text.toLowerCase());
-
-        for (String token : tokens) {
-            String cleanedToken = cleanToken(token);
-            if (!cleanedToken.isEmpty()) {
-                // Build the inverted index and add it to the index buffer
-                buildInvertedIndex(cleanedToken, pageId, position);
-
-                // Increment token count for page id
-                pagesTokensCount.merge(pageId, 1, Integer::sum);
+        int doc = postingsBuilder.addDocument(pageId);
+        ForwardIndex.Encoder forwardIndex = forwardIndexEncoder.get();
+        forwardIndex.reset();
+
+        // Analyze the text in one pass, every token takes a position even if it is not indexed
+        int tokensCount = analyzer.analyze(text, (start, end, position, term, termLength) -> {
+            forwardIndex.addToken(text, start, end);
+            if (termLength > 0) {
+                // Add the position to the postings buffer, this also counts the page token
+                postingsBuilder.addPosition(term, termLength, doc, position);
             }
-            // Increment position to the next token
-            position++;
-        }
+        });
 
         long endTime = System.currentTimeMillis();
         System.out.println(
-            "Tokenized " + tokens.length + " tokens in " + (endTime - startTime) + " ms"
+            "Tokenized " + tokensCount + " tokens in " + (endTime - startTime) + " ms"
         );
+        return forwardIndex.finish();
     }
 
     /**
      * Tokenizes the headers of the page and updates the field count
      * for each header type (h1, h2, title)
-     * @param fieldTags The field tags to tokenize.
+     * @param headers The headers extracted from the page.
      * @param pageId The page id.
+     * @param postingsBuilder The postings buffer of the calling worker
      */
-
-    public void tokenizeHeaders(Elements fieldTags, String pageId) {
-        for (Element header : fieldTags) {
-            String headerText = header.text();
+    public void tokenizeHeaders(
+        List<HtmlTextExtractor.Header> headers,
+        String pageId,
+        PostingsBuilder postingsBuilder
+    ) {
+        int doc = postingsBuilder.addDocument(pageId);
+        for (HtmlTextExtractor.Header header : headers) {
+            String headerText = header.getText();
             if (headerText == null || headerText.isBlank()) continue;
-            String headerType = header.tagName();
-
-            String tokens[] = tokenizer.tokenize(headerText.toLowerCase());
+            String headerType = header.getTagName();
 
-            for (String token : tokens) {
-                String cleanedToken = cleanToken(token);
-                if (!cleanedToken.isEmpty()) {
+            analyzer.analyze(headerText, (start, end, position, term, termLength) -> {
+                if (termLength > 0) {
                     //  Update field count for the header type
-                    updateFieldCount(cleanedToken, pageId, headerType);
+                    postingsBuilder.addFieldOccurrence(term, termLength, doc, headerType);
                 }
-            }
-        }
-    }
-
-    /**
-     * Build the inverted index to be saved to the database
-     * If it already exists update it
-     *
-     * @param word The Id of the inverted index
-     * @param pageId The Id of the page that contains the word
-     * @param position The position of the word in the page
-     * @param fieldType  The field type (e.g., body, title, h1, h2)
-     */
-    private void buildInvertedIndex(String word, String pageId, Integer position) {
-        // Get or create inverted index from buffer
-        InvertedIndex invertedIndex = indexBuffer.computeIfAbsent(word, w -> new InvertedIndex(word)
-        );
-
-        // Update or create pageReference
-        PageReference pageReference = invertedIndex
-            .getPages()
-            .stream()
-            .filter(p -> p.getPageId().equals(pageId))
-            .findFirst()
-            .orElseGet(() -> {
-                PageReference newPageReference = new PageReference(pageId);
-                invertedIndex.addPage(newPageReference);
-                return newPageReference;
             });
-
-        // Update positions
-        pageReference.getWordPositions().add(position);
-    }
-
-    /**
-     * Update the field count for the given word and page id
-     *
-     * @param word The word to update.
-     * @param pageId The page id.
-     * @param fieldType The field type (title, h1, h2).
-     */
-    public void updateFieldCount(String word, String pageId, String fieldType) {
-        // Get the inverted index from the buffer
-        InvertedIndex invertedIndex = indexBuffer.get(word);
-
-        if (invertedIndex != null) {
-            // Get the page reference
-            PageReference pageReference = invertedIndex
-                .getPages()
-                .stream()
-                .filter(p -> p.getPageId().equals(pageId))
-                .findFirst()
-                .orElse(null);
-
-            if (pageReference != null) {
-                // Update the field count
-                pageReference.getFieldWordCount().merge(fieldType, 1, Integer::sum);
-            }
         }
     }
 
-    /**
-     * Cleans the token by removing unwanted characters.
-     * Preserves special tokens like email, phone, hashtags, and hyphenated words.
-     *
-     * @param token The token to clean.
-     * @return The cleaned token.
-     */
-    private String cleanToken(String token) {
-        if (stopWordFilter.isStopWord(token)) {
-            return "";
-        }
-
-        token = token.replaceAll("[^a-z]", "");
-
-        String cleanedToken = stemmer.stem(token);
-
-        // Skip stop words
-        if (cleanedToken.length() < 2) {
-            return "";
-        }
-
-        // Apply stemming to regural words
-        return cleanedToken;
-    }
-
-    /**
-     * Reset the tokenizer for a new batch of documents.
-     *
-     * This method clears the index buffer and the pages tokens count.
-     */
-    public void resetForNewBatch() {
-        indexBuffer.clear();
-        pagesTokensCount.clear();
-        System.out.println("Reset tokenizer for new batch");
-    }
-
     /**
      * Load the tokenizer model from the specified input stream.
      *
@@ -197,26 +96,4 @@ public class Tokenizer {
     //         throw new RuntimeException("Error loading tokenizer model", e);
     //     }
     // }
-
-    /**
-     * Return index buffer of all tokens of the current document
-     */
-    public Map<String, InvertedIndex> getIndexBuffer() {
-        return indexBuffer;
-    }
-
-    /**
-     * Set the count of tokens for each page reference in the index buffer
-     */
-    int getPageTokenCount(String pageId) {
-        int tokenCount = pagesTokensCount.getOrDefault(pageId, 0);
-        return tokenCount;
-    }
-
-    /**
-     * Return the count of tokens for each page reference in the index buffer
-     */
-    Map<String, Integer> getPagesTokensCount() {
-        return pagesTokensCount;
-    }
 }
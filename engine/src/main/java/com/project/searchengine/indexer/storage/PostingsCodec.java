@@ -0,0 +1,341 @@
+package com.project.searchengine.indexer.storage;
+
+import com.project.searchengine.utils.IntArrayList;
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Compressed postings format: delta + variable-byte encoding in blocks of BLOCK_SIZE postings.
+ *
+ * The postings of a term are written as two streams:
+ *
+ * docs:      vint blockCount
+ *            per block (skip table): vint lastDocDelta, vint docsBytes, vint positionsBytes
+ *            per posting: vint docDelta, vint freq, int tf (float bits), vint title, vint h1, vint h2
+ * positions: per posting: freq vints of position deltas
+ *
+ * Doc ids must be added in increasing order. The skip table lets the decoder jump over whole
+ * blocks (and their positions) without decoding them.
+ */
+public final class PostingsCodec {
+
+    public static final int BLOCK_SIZE = 128;
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    private PostingsCodec() {}
+
+    /**
+     * Writes a non negative int using 1 to 5 bytes, 7 bits per byte, low bits first.
+     */
+    public static void writeVInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    public static int readVInt(ByteBuffer in) {
+        byte b = in.get();
+        int value = b & 0x7F;
+        for (int shift = 7; b < 0; shift += 7) {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Buffers the postings of one term and encodes them block by block.
+     * Reusable across terms through reset.
+     */
+    public static class Encoder {
+
+        private final ByteArrayOutputStream skipTable = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream positions = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream blockDocs = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream blockPositions = new ByteArrayOutputStream();
+
+        private int blockCount;
+        private int docsInBlock;
+        private int lastDoc = -1;
+        private int lastBlockDoc = -1;
+        private int docFreq;
+
+        /**
+         * Adds a posting, doc ids must be increasing.
+         *
+         * @param doc The doc id.
+         * @param tf The term frequency of the posting.
+         * @param fieldCounts The title, h1 and h2 counts.
+         * @param positions The sorted word positions.
+         * @param positionsCount The number of positions to read from the array.
+         */
+        public void addPosting(int doc, double tf, int[] fieldCounts, int[] positions, int positionsCount)
+            throws IOException {
+            if (doc <= lastDoc) {
+                throw new IllegalArgumentException("Doc ids must be increasing: " + doc + " after " + lastDoc);
+            }
+
+            writeVInt(blockDocs, doc - Math.max(lastDoc, 0) - (lastDoc < 0 ? 0 : 1));
+            writeVInt(blockDocs, positionsCount);
+            writeInt(blockDocs, Float.floatToIntBits((float) tf));
+            for (int fieldCount : fieldCounts) {
+                writeVInt(blockDocs, fieldCount);
+            }
+
+            int lastPosition = 0;
+            for (int i = 0; i < positionsCount; i++) {
+                writeVInt(blockPositions, positions[i] - lastPosition);
+                lastPosition = positions[i];
+            }
+
+            lastDoc = doc;
+            docFreq++;
+            if (++docsInBlock == BLOCK_SIZE) {
+                flushBlock();
+            }
+        }
+
+        /**
+         * Writes the encoded docs and positions streams of the term.
+         *
+         * @return The docs and positions byte lengths.
+         */
+        public long[] finish(OutputStream docsOut, OutputStream positionsOut) throws IOException {
+            if (docsInBlock > 0) flushBlock();
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            writeVInt(header, blockCount);
+            header.writeTo(docsOut);
+            skipTable.writeTo(docsOut);
+            blocks.writeTo(docsOut);
+            positions.writeTo(positionsOut);
+
+            return new long[] {
+                header.size() + skipTable.size() + blocks.size(),
+                positions.size(),
+            };
+        }
+
+        public int getDocFreq() {
+            return docFreq;
+        }
+
+        public void reset() {
+            skipTable.reset();
+            blocks.reset();
+            positions.reset();
+            blockDocs.reset();
+            blockPositions.reset();
+            blockCount = 0;
+            docsInBlock = 0;
+            lastDoc = -1;
+            lastBlockDoc = -1;
+            docFreq = 0;
+        }
+
+        private void flushBlock() throws IOException {
+            writeVInt(skipTable, lastDoc - Math.max(lastBlockDoc, 0));
+            writeVInt(skipTable, blockDocs.size());
+            writeVInt(skipTable, blockPositions.size());
+            blockDocs.writeTo(blocks);
+            blockPositions.writeTo(positions);
+            blockDocs.reset();
+            blockPositions.reset();
+
+            lastBlockDoc = lastDoc;
+            docsInBlock = 0;
+            blockCount++;
+        }
+
+        private static void writeInt(OutputStream out, int value) throws IOException {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+    }
+
+    /**
+     * Iterates over the postings of one term, decoding positions only when asked.
+     *
+     * Usage: while ((doc = decoder.nextDoc()) != NO_MORE_DOCS) { ... }
+     */
+    public static class Decoder {
+
+        private final ByteBuffer docs;
+        private final ByteBuffer positions;
+        private final int docFreq;
+
+        private final int blockCount;
+        private final int[] blockLastDocs;
+        private final int[] blockDocsStarts;
+        private final int[] blockPositionsStarts;
+
+        private int block = -1;
+        private int docsLeftInBlock = 0;
+        private int decoded = 0;
+
+        private int doc = -1;
+        private int freq;
+        private float tf;
+        private final int[] fieldCounts = new int[3];
+        private boolean positionsRead = true;
+
+        /**
+         * @param docs The docs stream of the term, starting at its block count.
+         * @param positions The positions stream of the term.
+         * @param docFreq The number of postings of the term.
+         */
+        public Decoder(ByteBuffer docs, ByteBuffer positions, int docFreq) {
+            this.docs = docs;
+            this.positions = positions;
+            this.docFreq = docFreq;
+
+            this.blockCount = readVInt(docs);
+            this.blockLastDocs = new int[blockCount];
+            this.blockDocsStarts = new int[blockCount];
+            this.blockPositionsStarts = new int[blockCount];
+
+            int lastDoc = 0;
+            int[] docsLengths = new int[blockCount];
+            int[] positionsLengths = new int[blockCount];
+            for (int i = 0; i < blockCount; i++) {
+                lastDoc += readVInt(docs);
+                blockLastDocs[i] = lastDoc;
+                docsLengths[i] = readVInt(docs);
+                positionsLengths[i] = readVInt(docs);
+            }
+
+            int docsStart = docs.position();
+            int positionsStart = positions.position();
+            for (int i = 0; i < blockCount; i++) {
+                blockDocsStarts[i] = docsStart;
+                blockPositionsStarts[i] = positionsStart;
+                docsStart += docsLengths[i];
+                positionsStart += positionsLengths[i];
+            }
+        }
+
+        public int getDocFreq() {
+            return docFreq;
+        }
+
+        /**
+         * @return The next doc id, or NO_MORE_DOCS
+         */
+        public int nextDoc() {
+            if (decoded == docFreq) {
+                return doc = NO_MORE_DOCS;
+            }
+            if (docsLeftInBlock == 0) {
+                seekBlock(block + 1);
+            }
+            skipPositions();
+
+            doc = (doc < 0 ? 0 : doc + 1) + readVInt(docs);
+            freq = readVInt(docs);
+            tf = Float.intBitsToFloat(docs.getInt());
+            for (int i = 0; i < fieldCounts.length; i++) {
+                fieldCounts[i] = readVInt(docs);
+            }
+
+            positionsRead = false;
+            docsLeftInBlock--;
+            decoded++;
+            return doc;
+        }
+
+        /**
+         * Moves to the first doc id greater than or equal to target, skipping whole blocks
+         * through the skip table.
+         *
+         * @return The doc id found, or NO_MORE_DOCS
+         */
+        public int advance(int target) {
+            int targetBlock = block < 0 ? 0 : block;
+            while (targetBlock < blockCount && blockLastDocs[targetBlock] < target) {
+                targetBlock++;
+            }
+            if (targetBlock == blockCount) {
+                decoded = docFreq;
+                return doc = NO_MORE_DOCS;
+            }
+            if (targetBlock != block) {
+                seekBlock(targetBlock);
+                decoded = targetBlock * BLOCK_SIZE;
+            }
+
+            while (doc < target) {
+                if (nextDoc() == NO_MORE_DOCS) break;
+            }
+            return doc;
+        }
+
+        public int doc() {
+            return doc;
+        }
+
+        public int freq() {
+            return freq;
+        }
+
+        public double tf() {
+            return tf;
+        }
+
+        /**
+         * @return The title, h1 and h2 counts of the current posting
+         */
+        public int[] fieldCounts() {
+            return fieldCounts;
+        }
+
+        /**
+         * Decodes the positions of the current posting, can only be called once per posting.
+         */
+        public int[] positions() {
+            int[] result = new int[freq];
+            int position = 0;
+            for (int i = 0; i < freq; i++) {
+                position += readVInt(positions);
+                result[i] = position;
+            }
+            positionsRead = true;
+            return result;
+        }
+
+        /**
+         * Decodes the positions of the current posting into a reusable list.
+         */
+        public void positions(IntArrayList into) {
+            into.clear();
+            int position = 0;
+            for (int i = 0; i < freq; i++) {
+                position += readVInt(positions);
+                into.add(position);
+            }
+            positionsRead = true;
+        }
+
+        private void seekBlock(int newBlock) {
+            block = newBlock;
+            docs.position(blockDocsStarts[newBlock]);
+            positions.position(blockPositionsStarts[newBlock]);
+            docsLeftInBlock = Math.min(BLOCK_SIZE, docFreq - newBlock * BLOCK_SIZE);
+            // The first doc of a block is a delta from the last doc of the previous block
+            doc = newBlock == 0 ? -1 : blockLastDocs[newBlock - 1];
+            positionsRead = true;
+        }
+
+        private void skipPositions() {
+            if (positionsRead) return;
+            for (int i = 0; i < freq; i++) {
+                readVInt(positions);
+            }
+            positionsRead = true;
+        }
+    }
+}
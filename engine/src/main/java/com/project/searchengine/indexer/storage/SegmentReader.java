@@ -0,0 +1,420 @@
+package com.project.searchengine.indexer.storage;
+
+import com.project.searchengine.server.model.PageReference;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads an immutable segment written by SegmentWriter.
+ *
+ * The segment files are memory mapped: a term is binary searched in place in the mapped term
+ * dictionary and its postings are decoded lazily from the mapped postings, so hot terms are
+ * served from the OS page cache without copies. Only the doc table is loaded in memory.
+ * A reader can be shared by concurrent queries, every lookup works on its own buffer slices.
+ *
+ * Readers are reference counted: the store holds one reference while the segment is live and
+ * every query holds one while it reads, the segment is closed (and its files deleted once merged
+ * away) when the last reference is released. The mappings themselves are released by the GC.
+ *
+ * Pages deleted after the segment was written (a reindexed page) are kept in a ".del" bitset of
+ * segment doc ids, replaced atomically on every delete. Their postings are skipped by getPostings
+ * and dropped when the segment is merged. Every delete bumps the delete generation of the segment,
+ * recorded in the shard's commit file, so a reader of another process reloads the bitset.
+ */
+public class SegmentReader implements Closeable {
+
+    private final String name;
+    private final Path directory;
+    private final String[] pageIds;
+    private final int[] globalDocIds;
+    private final int termsCount;
+    private final long postingsEnd;
+    private final long positionsEnd;
+    private final ByteBuffer termDictionary;
+    private final int termIndexOffset;
+    private final ByteBuffer postingsData;
+    private final ByteBuffer positionsData;
+    private final long sizeInBytes;
+
+    private final AtomicInteger refCount = new AtomicInteger(1);
+    private volatile boolean deleteOnClose = false;
+    // Never modified once published, deletePages replaces it
+    private volatile BitSet deletedDocs;
+    private volatile long deleteGeneration;
+
+    public SegmentReader(Path directory, String name) throws IOException {
+        this(directory, name, 0);
+    }
+
+    /**
+     * @param deleteGeneration The delete generation of the segment in the commit file.
+     */
+    SegmentReader(Path directory, String name, long deleteGeneration) throws IOException {
+        this.name = name;
+        this.directory = directory;
+
+        Path termsPath = directory.resolve(name + SegmentWriter.TERMS_EXTENSION);
+        try (
+            DataInputStream data = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(termsPath), 1 << 16)
+            )
+        ) {
+            int version = data.readInt();
+            if (version != SegmentWriter.FORMAT_VERSION) {
+                throw new IOException("Unsupported segment format " + version + " in " + name);
+            }
+            int pagesCount = data.readInt();
+            this.termsCount = data.readInt();
+            this.postingsEnd = data.readLong();
+            this.positionsEnd = data.readLong();
+
+            this.pageIds = new String[pagesCount];
+            this.globalDocIds = new int[pagesCount];
+            for (int doc = 0; doc < pagesCount; doc++) {
+                globalDocIds[doc] = data.readInt();
+                pageIds[doc] = data.readUTF();
+            }
+        }
+
+        this.termDictionary = map(termsPath);
+        this.termIndexOffset = (int) termDictionary.getLong(termDictionary.capacity() - Long.BYTES);
+        this.postingsData = map(directory.resolve(name + SegmentWriter.POSTINGS_EXTENSION));
+        this.positionsData = map(directory.resolve(name + SegmentWriter.POSITIONS_EXTENSION));
+        this.sizeInBytes =
+            (long) termDictionary.capacity() + postingsData.capacity() + positionsData.capacity();
+
+        this.deletedDocs = readDeletes();
+        this.deleteGeneration = deleteGeneration;
+    }
+
+    private BitSet readDeletes() throws IOException {
+        Path deletesPath = directory.resolve(name + SegmentWriter.DELETES_EXTENSION);
+        return Files.exists(deletesPath) ? BitSet.valueOf(Files.readAllBytes(deletesPath)) : new BitSet();
+    }
+
+    /**
+     * Maps a whole segment file read only, the mapping stays valid once the channel is closed.
+     */
+    private static ByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Segment file too large to be mapped: " + path);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public int getTermsCount() {
+        return termsCount;
+    }
+
+    /**
+     * @return The pages of the segment that are not deleted, with their global doc ids
+     */
+    public Map<String, Integer> getPageDocIds() {
+        BitSet deleted = deletedDocs;
+        Map<String, Integer> pageDocIds = new HashMap<>(pageIds.length * 2);
+        for (int doc = 0; doc < pageIds.length; doc++) {
+            if (!deleted.get(doc)) pageDocIds.put(pageIds[doc], globalDocIds[doc]);
+        }
+        return pageDocIds;
+    }
+
+    /**
+     * @return The number of deleted pages of the segment
+     */
+    public int getDeletedCount() {
+        return deletedDocs.cardinality();
+    }
+
+    /**
+     * @return The segment doc ids of the deleted pages, must not be modified
+     */
+    BitSet getDeletedDocs() {
+        return deletedDocs;
+    }
+
+    /**
+     * @return The number of times pages were deleted from the segment
+     */
+    long getDeleteGeneration() {
+        return deleteGeneration;
+    }
+
+    /**
+     * Reads the deleted pages again after another process deleted pages from the segment.
+     *
+     * @param deleteGeneration The delete generation of the segment in the commit file.
+     */
+    synchronized void reloadDeletes(long deleteGeneration) throws IOException {
+        deletedDocs = readDeletes();
+        this.deleteGeneration = deleteGeneration;
+    }
+
+    /**
+     * Deletes the given pages from the segment and persists the deletes before they are visible.
+     * The delete generation is bumped, the shard records it when it writes its commit file.
+     *
+     * @param deleted The ids of the pages to delete, pages not in the segment are ignored.
+     * @return The number of pages newly deleted.
+     */
+    synchronized int deletePages(Set<String> deleted) throws IOException {
+        BitSet updated = (BitSet) deletedDocs.clone();
+        int count = 0;
+        for (int doc = 0; doc < pageIds.length; doc++) {
+            if (!updated.get(doc) && deleted.contains(pageIds[doc])) {
+                updated.set(doc);
+                count++;
+            }
+        }
+        if (count == 0) return 0;
+
+        Path deletesPath = directory.resolve(name + SegmentWriter.DELETES_EXTENSION);
+        Path temp = directory.resolve(name + SegmentWriter.DELETES_EXTENSION + ".tmp");
+        Files.write(temp, updated.toByteArray());
+        Files.move(temp, deletesPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        deletedDocs = updated;
+        deleteGeneration++;
+        return count;
+    }
+
+    /**
+     * @return The page id of a segment doc id
+     */
+    public String getPageId(int doc) {
+        return pageIds[doc];
+    }
+
+    /**
+     * @return The global doc id of a segment doc id
+     */
+    public int getGlobalDocId(int doc) {
+        return globalDocIds[doc];
+    }
+
+    /**
+     * @return The term at the given ordinal, terms are sorted
+     */
+    String getTerm(int ordinal) {
+        int entry = entryOffset(ordinal);
+        int length = termDictionary.getShort(entry) & 0xFFFF;
+        byte[] bytes = new byte[length + 2];
+        termDictionary.get(entry, bytes);
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted term dictionary in " + name, e);
+        }
+    }
+
+    /**
+     * Binary searches a term in the mapped term dictionary.
+     *
+     * @return The ordinal of the term, -1 if it is not in the segment
+     */
+    int findTerm(String term) {
+        int low = 0;
+        int high = termsCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int cmp = compareTerm(entryOffset(middle), term);
+            if (cmp < 0) {
+                low = middle + 1;
+            } else if (cmp > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compares the term of a dictionary entry with a term without decoding it to a String.
+     * Terms are written in modified UTF-8, where every char is encoded on its own, so comparing
+     * the decoded chars gives the String order the terms were sorted in.
+     */
+    private int compareTerm(int entry, String term) {
+        int position = entry + 2;
+        int end = position + (termDictionary.getShort(entry) & 0xFFFF);
+        int i = 0;
+
+        while (position < end && i < term.length()) {
+            int b = termDictionary.get(position) & 0xFF;
+            char c;
+            if (b < 0x80) {
+                c = (char) b;
+                position += 1;
+            } else if ((b & 0xE0) == 0xC0) {
+                c = (char) (((b & 0x1F) << 6) | (termDictionary.get(position + 1) & 0x3F));
+                position += 2;
+            } else {
+                c = (char) (((b & 0x0F) << 12) |
+                    ((termDictionary.get(position + 1) & 0x3F) << 6) |
+                    (termDictionary.get(position + 2) & 0x3F));
+                position += 3;
+            }
+
+            int cmp = Character.compare(c, term.charAt(i++));
+            if (cmp != 0) return cmp;
+        }
+
+        if (position < end) return 1;
+        return i < term.length() ? -1 : 0;
+    }
+
+    private int entryOffset(int ordinal) {
+        return (int) termDictionary.getLong(termIndexOffset + ordinal * Long.BYTES);
+    }
+
+    /**
+     * @return The offset of the docFreq, postings and positions offsets of an entry
+     */
+    private int entryDataOffset(int ordinal) {
+        int entry = entryOffset(ordinal);
+        return entry + 2 + (termDictionary.getShort(entry) & 0xFFFF);
+    }
+
+    /**
+     * @return The number of pages containing the term, 0 if it is not in the segment
+     */
+    public int getDocFreq(String term) {
+        int ordinal = findTerm(term);
+        return ordinal < 0 ? 0 : termDictionary.getInt(entryDataOffset(ordinal));
+    }
+
+    /**
+     * Opens a decoder over the postings of a term, to iterate or skip through them lazily.
+     * The decoder does not skip deleted pages.
+     *
+     * @param term The term to look up.
+     * @return The decoder, null if the term is not in the segment.
+     */
+    public PostingsCodec.Decoder postings(String term) {
+        int ordinal = findTerm(term);
+        return ordinal < 0 ? null : postings(ordinal);
+    }
+
+    PostingsCodec.Decoder postings(int ordinal) {
+        int data = entryDataOffset(ordinal);
+        int docFreq = termDictionary.getInt(data);
+        long docsStart = termDictionary.getLong(data + Integer.BYTES);
+        long positionsStart = termDictionary.getLong(data + Integer.BYTES + Long.BYTES);
+
+        long docsEnd = postingsEnd;
+        long positionsEndOffset = positionsEnd;
+        if (ordinal + 1 < termsCount) {
+            int next = entryDataOffset(ordinal + 1);
+            docsEnd = termDictionary.getLong(next + Integer.BYTES);
+            positionsEndOffset = termDictionary.getLong(next + Integer.BYTES + Long.BYTES);
+        }
+
+        return new PostingsCodec.Decoder(
+            postingsData.slice((int) docsStart, (int) (docsEnd - docsStart)),
+            positionsData.slice((int) positionsStart, (int) (positionsEndOffset - positionsStart)),
+            docFreq
+        );
+    }
+
+    /**
+     * Reads the page references of a term.
+     *
+     * @param term The term to look up.
+     * @return The page references of the term, empty if it is not in the segment.
+     */
+    public List<PageReference> getPostings(String term) {
+        int ordinal = findTerm(term);
+        return ordinal < 0 ? new ArrayList<>() : getPostings(ordinal);
+    }
+
+    /**
+     * Decodes the page references of the term at the given ordinal, without the deleted pages.
+     */
+    List<PageReference> getPostings(int ordinal) {
+        PostingsCodec.Decoder decoder = postings(ordinal);
+        List<PageReference> pages = new ArrayList<>(decoder.getDocFreq());
+        BitSet deleted = deletedDocs;
+
+        int doc;
+        while ((doc = decoder.nextDoc()) != PostingsCodec.NO_MORE_DOCS) {
+            if (deleted.get(doc)) continue;
+
+            PageReference page = new PageReference(pageIds[doc], globalDocIds[doc]);
+            page.setTf(decoder.tf());
+
+            int[] fieldCounts = decoder.fieldCounts();
+            addFieldCount(page, "title", fieldCounts[0]);
+            addFieldCount(page, "h1", fieldCounts[1]);
+            addFieldCount(page, "h2", fieldCounts[2]);
+
+            int[] positions = decoder.positions();
+            List<Integer> wordPositions = new ArrayList<>(positions.length);
+            for (int position : positions) {
+                wordPositions.add(position);
+            }
+            page.setWordPositions(wordPositions);
+            pages.add(page);
+        }
+        return pages;
+    }
+
+    private static void addFieldCount(PageReference page, String field, int count) {
+        if (count > 0) {
+            page.addfieldWordCount(field, count);
+        }
+    }
+
+    /**
+     * Takes a reference on the segment if it is still open.
+     *
+     * @return false if the segment has already been closed
+     */
+    boolean tryIncRef() {
+        while (true) {
+            int count = refCount.get();
+            if (count <= 0) return false;
+            if (refCount.compareAndSet(count, count + 1)) return true;
+        }
+    }
+
+    /**
+     * Releases a reference, closing the segment when it was the last one.
+     */
+    void decRef() {
+        if (refCount.decrementAndGet() == 0) {
+            try {
+                close();
+            } catch (IOException e) {
+                System.err.println("Error closing segment " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the segment files once the last reference is released.
+     */
+    void markDeleted() {
+        deleteOnClose = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (deleteOnClose) {
+            for (String fileName : SegmentWriter.fileNames(name)) {
+                Files.deleteIfExists(directory.resolve(fileName));
+            }
+        }
+    }
+}
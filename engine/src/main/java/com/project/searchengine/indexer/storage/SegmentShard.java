@@ -0,0 +1,473 @@
+package com.project.searchengine.indexer.storage;
+
+import com.project.searchengine.server.model.PageReference;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * One shard of the SegmentStore: the immutable segments holding the postings of the pages whose
+ * doc ids hash to it, kept in a directory of their own.
+ *
+ * The live segments are listed in a "segments" commit file that is replaced atomically, files that
+ * are not referenced by it (a crashed flush or merge) are removed by the writing process when it
+ * takes the store's write lock, other processes only open the committed segments. The
+ * file starts with the flush generation, then has a line per segment with its name and its delete
+ * generation, bumped when pages are deleted from it. Another process (the query server) reopens
+ * the new segments and reloads the deletes of the segments whose delete generation changed.
+ * Segments are compacted by the shard's own merge thread following a TieredMergePolicy.
+ *
+ * A flushed segment is held out of merges until the batch that wrote it is committed, so a batch
+ * rolled back after a crash can still remove its own segment.
+ */
+class SegmentShard {
+
+    private static final String COMMIT_FILE = "segments";
+    private static final long REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Path directory;
+    private final TieredMergePolicy mergePolicy = new TieredMergePolicy();
+    private final ExecutorService mergeExecutor;
+
+    // Immutable snapshot of the live segments, replaced on every commit
+    private volatile List<SegmentReader> segments = Collections.emptyList();
+    private final Set<String> mergingSegments = ConcurrentHashMap.newKeySet();
+    private final Set<String> pendingSegments = ConcurrentHashMap.newKeySet();
+    private long generation = 0;
+    private long lastRefresh = System.nanoTime();
+
+    SegmentShard(Path directory, String mergerName) throws IOException {
+        this.directory = directory;
+        this.mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, mergerName);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Files.createDirectories(directory);
+        open();
+    }
+
+    static String segmentName(long generation) {
+        return "_" + generation;
+    }
+
+    /**
+     * Reserves a flush generation of at least the given one, so that all the shards can write the
+     * segment of a flush under the same name.
+     *
+     * @param atLeast The lowest acceptable generation.
+     * @return The reserved generation, greater than atLeast if the shard already used it
+     */
+    synchronized long reserveGeneration(long atLeast) {
+        generation = Math.max(generation + 1, atLeast);
+        return generation;
+    }
+
+    /**
+     * Opens a writer for a segment of this shard with a reserved name.
+     *
+     * @param name The name of the segment.
+     * @param pageDocIds The pages of the segment with their global doc ids.
+     */
+    SegmentWriter openWriter(String name, Map<String, Integer> pageDocIds) throws IOException {
+        return new SegmentWriter(directory, name, pageDocIds);
+    }
+
+    /**
+     * Commits a finished segment as live, it is not merged until it is released.
+     *
+     * @param name The name of the written segment.
+     */
+    void addSegment(String name) throws IOException {
+        pendingSegments.add(name);
+        try {
+            commit(Collections.emptyList(), new SegmentReader(directory, name));
+        } catch (IOException | RuntimeException e) {
+            pendingSegments.remove(name);
+            throw e;
+        }
+    }
+
+    /**
+     * Lets a segment be merged once the batch that wrote it is committed, and schedules a
+     * background merge check.
+     *
+     * @param name The name of the segment.
+     */
+    void releaseSegment(String name) {
+        pendingSegments.remove(name);
+        mergeExecutor.submit(this::mergeSegments);
+    }
+
+    /**
+     * Removes a segment of a rolled back batch from the live segments.
+     *
+     * @param name The name of the segment.
+     * @return True if the segment was live and is now deleted.
+     */
+    synchronized boolean deleteSegment(String name) {
+        pendingSegments.remove(name);
+        for (SegmentReader segment : segments) {
+            if (segment.getName().equals(name)) {
+                try {
+                    commit(List.of(segment), null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to delete segment " + name, e);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the postings of the given pages from all live segments, before their new postings
+     * are written to a new segment.
+     *
+     * @param pageIds The ids of the pages to delete.
+     * @return The number of deleted postings lists, one per segment holding a page.
+     */
+    synchronized int deletePages(Collection<String> pageIds) {
+        if (pageIds.isEmpty()) return 0;
+        Set<String> deleted = new HashSet<>(pageIds);
+        int count = 0;
+        for (SegmentReader segment : segments) {
+            try {
+                count += segment.deletePages(deleted);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to delete pages from segment " + segment.getName(), e);
+            }
+        }
+        if (count > 0) {
+            try {
+                // Publishes the new delete generations, after the deletes they point to
+                writeCommitFile(segments);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to commit deletes of shard " + directory, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the pages of a token across all live segments.
+     *
+     * @param token The token to search for.
+     * @return A list of PageReference objects associated with the token.
+     */
+    List<PageReference> getTokenPages(String token) {
+        List<SegmentReader> snapshot = acquireSegments();
+        try {
+            List<PageReference> pages = new ArrayList<>();
+            for (SegmentReader segment : snapshot) {
+                pages.addAll(segment.getPostings(token));
+            }
+            return pages;
+        } catch (RuntimeException e) {
+            System.err.println("Error reading postings for token " + token + ": " + e.getMessage());
+            return Collections.emptyList();
+        } finally {
+            releaseSegments(snapshot);
+        }
+    }
+
+    /**
+     * @return The number of live segments
+     */
+    int getSegmentsCount() {
+        return segments.size();
+    }
+
+    /**
+     * Merges segments as long as the merge policy finds full tiers.
+     */
+    void mergeSegments() {
+        while (true) {
+            List<SegmentReader> candidates = new ArrayList<>();
+            for (SegmentReader segment : segments) {
+                String name = segment.getName();
+                if (!mergingSegments.contains(name) && !pendingSegments.contains(name)) {
+                    candidates.add(segment);
+                }
+            }
+
+            List<SegmentReader> toMerge = mergePolicy.findMerge(candidates);
+            if (toMerge.isEmpty()) return;
+
+            toMerge.forEach(segment -> mergingSegments.add(segment.getName()));
+            try {
+                merge(toMerge);
+            } catch (IOException e) {
+                System.err.println("Error merging segments: " + e.getMessage());
+                return;
+            } finally {
+                toMerge.forEach(segment -> mergingSegments.remove(segment.getName()));
+            }
+        }
+    }
+
+    /**
+     * Merges the given segments into a new one with a k-way merge of their sorted term dictionaries.
+     */
+    private void merge(List<SegmentReader> toMerge) throws IOException {
+        long start = System.nanoTime();
+        String name = newSegmentName();
+
+        // Queue of the next term of every segment, ties broken by segment order
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> {
+            int cmp = toMerge.get(a[0]).getTerm(a[1]).compareTo(toMerge.get(b[0]).getTerm(b[1]));
+            return cmp != 0 ? cmp : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < toMerge.size(); i++) {
+            if (toMerge.get(i).getTermsCount() > 0) queue.add(new int[] { i, 0 });
+        }
+
+        // Pages deleted while the merge runs are deleted again from the merged segment
+        List<BitSet> deletedAtStart = new ArrayList<>(toMerge.size());
+        toMerge.forEach(segment -> deletedAtStart.add(segment.getDeletedDocs()));
+
+        Map<String, Integer> pageDocIds = new HashMap<>();
+        toMerge.forEach(segment -> pageDocIds.putAll(segment.getPageDocIds()));
+
+        try (SegmentWriter writer = new SegmentWriter(directory, name, pageDocIds)) {
+            while (!queue.isEmpty()) {
+                int[] head = queue.poll();
+                String term = toMerge.get(head[0]).getTerm(head[1]);
+                List<PageReference> pages = new ArrayList<>();
+
+                advance(queue, toMerge, head, pages);
+                while (!queue.isEmpty() && toMerge.get(queue.peek()[0]).getTerm(queue.peek()[1]).equals(term)) {
+                    advance(queue, toMerge, queue.poll(), pages);
+                }
+
+                // A term only held by deleted pages is dropped
+                if (!pages.isEmpty()) writer.addTerm(term, pages);
+            }
+            writer.finish();
+        }
+
+        commitMerge(toMerge, deletedAtStart, new SegmentReader(directory, name));
+        System.out.println(
+            "Merged " +
+            toMerge.size() +
+            " segments into " +
+            name +
+            " in " +
+            (System.nanoTime() - start) / 1_000_000 +
+            " ms"
+        );
+    }
+
+    private static void advance(
+        PriorityQueue<int[]> queue,
+        List<SegmentReader> segments,
+        int[] entry,
+        List<PageReference> pages
+    ) throws IOException {
+        SegmentReader segment = segments.get(entry[0]);
+        pages.addAll(segment.getPostings(entry[1]));
+        if (entry[1] + 1 < segment.getTermsCount()) {
+            queue.add(new int[] { entry[0], entry[1] + 1 });
+        }
+    }
+
+    /**
+     * Commits a merge once the pages deleted from the merged segments since it started are
+     * deleted from the new segment too.
+     */
+    private synchronized void commitMerge(
+        List<SegmentReader> toMerge,
+        List<BitSet> deletedAtStart,
+        SegmentReader merged
+    ) throws IOException {
+        Set<String> deletedSince = new HashSet<>();
+        for (int i = 0; i < toMerge.size(); i++) {
+            SegmentReader segment = toMerge.get(i);
+            BitSet deleted = (BitSet) segment.getDeletedDocs().clone();
+            deleted.andNot(deletedAtStart.get(i));
+            for (int doc = deleted.nextSetBit(0); doc >= 0; doc = deleted.nextSetBit(doc + 1)) {
+                deletedSince.add(segment.getPageId(doc));
+            }
+        }
+        if (!deletedSince.isEmpty()) merged.deletePages(deletedSince);
+        commit(toMerge, merged);
+    }
+
+    /**
+     * Atomically replaces the merged segments by the new one in the commit file and the live snapshot.
+     *
+     * @param removed The segments that were merged, empty for a flush.
+     * @param added The new segment, null when segments are only deleted.
+     */
+    private synchronized void commit(List<SegmentReader> removed, SegmentReader added)
+        throws IOException {
+        List<SegmentReader> updated = new ArrayList<>(segments);
+        updated.removeAll(removed);
+        if (added != null) updated.add(added);
+
+        writeCommitFile(updated);
+        segments = Collections.unmodifiableList(updated);
+
+        for (SegmentReader segment : removed) {
+            segment.markDeleted();
+            segment.decRef();
+        }
+    }
+
+    private void writeCommitFile(List<SegmentReader> live) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(Long.toString(generation));
+        for (SegmentReader segment : live) {
+            lines.add(segment.getName() + " " + segment.getDeleteGeneration());
+        }
+
+        Path temp = directory.resolve(COMMIT_FILE + ".tmp");
+        Files.write(temp, lines, StandardCharsets.UTF_8);
+        Files.move(
+            temp,
+            directory.resolve(COMMIT_FILE),
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING
+        );
+    }
+
+    private synchronized String newSegmentName() {
+        return segmentName(++generation);
+    }
+
+    /**
+     * Opens the segments of the commit file. The files of other segments may belong to a flush or
+     * merge in progress in the writing process, so they are left alone.
+     */
+    private synchronized void open() throws IOException {
+        Map<String, Long> committed = readCommitFile();
+        List<SegmentReader> opened = new ArrayList<>();
+        for (Map.Entry<String, Long> segment : committed.entrySet()) {
+            opened.add(new SegmentReader(directory, segment.getKey(), segment.getValue()));
+        }
+        segments = Collections.unmodifiableList(opened);
+
+        System.out.println("Opened segment shard " + directory + " with " + opened.size() + " segments");
+    }
+
+    /**
+     * Catches up with the last commit and removes the files of uncommitted segments, left by a
+     * crashed flush or merge. Only called under the store's write lock, so no other process is
+     * writing segments.
+     */
+    synchronized void openForWriting() throws IOException {
+        refresh();
+
+        Set<String> liveFiles = new HashSet<>();
+        readCommitFile().keySet().forEach(name -> liveFiles.addAll(SegmentWriter.fileNames(name)));
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "_*")) {
+            for (Path file : files) {
+                if (!liveFiles.contains(file.getFileName().toString())) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the commit file and sets the flush generation.
+     *
+     * @return The delete generations of the live segments by name, in commit order
+     */
+    private Map<String, Long> readCommitFile() throws IOException {
+        Path commitFile = directory.resolve(COMMIT_FILE);
+        if (!Files.exists(commitFile)) return Collections.emptyMap();
+
+        List<String> lines = Files.readAllLines(commitFile, StandardCharsets.UTF_8);
+        // Never goes back below a generation reserved by a flush in progress
+        generation = Math.max(generation, Long.parseLong(lines.get(0).trim()));
+        Map<String, Long> committed = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.trim().split(" ");
+            committed.put(fields[0], fields.length > 1 ? Long.parseLong(fields[1]) : 0);
+        }
+        return committed;
+    }
+
+    /**
+     * Reopens the shard if another process (the indexer) committed new segments or deleted pages.
+     * Checked at most once per REFRESH_INTERVAL_NANOS.
+     */
+    private synchronized void maybeRefresh() {
+        if (System.nanoTime() - lastRefresh < REFRESH_INTERVAL_NANOS) return;
+        refresh();
+    }
+
+    /**
+     * Opens the segments committed since the last refresh, closes the ones merged away and
+     * reloads the deletes of the segments whose delete generation changed.
+     */
+    synchronized void refresh() {
+        lastRefresh = System.nanoTime();
+
+        try {
+            if (!Files.exists(directory.resolve(COMMIT_FILE))) return;
+            Map<String, Long> committed = readCommitFile();
+
+            Map<String, SegmentReader> current = new HashMap<>();
+            segments.forEach(segment -> current.put(segment.getName(), segment));
+
+            List<SegmentReader> refreshed = new ArrayList<>();
+            boolean changed = committed.size() != current.size();
+            for (Map.Entry<String, Long> segment : committed.entrySet()) {
+                SegmentReader existing = current.remove(segment.getKey());
+                if (existing == null) {
+                    existing = new SegmentReader(directory, segment.getKey(), segment.getValue());
+                    changed = true;
+                } else if (existing.getDeleteGeneration() != segment.getValue()) {
+                    existing.reloadDeletes(segment.getValue());
+                }
+                refreshed.add(existing);
+            }
+
+            if (!changed) return;
+            segments = Collections.unmodifiableList(refreshed);
+            current.values().forEach(SegmentReader::decRef);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error refreshing segment shard " + directory + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Takes a reference on every live segment, so they are not closed while being read.
+     */
+    private List<SegmentReader> acquireSegments() {
+        maybeRefresh();
+
+        while (true) {
+            List<SegmentReader> snapshot = segments;
+            List<SegmentReader> acquired = new ArrayList<>(snapshot.size());
+            for (SegmentReader segment : snapshot) {
+                if (!segment.tryIncRef()) break;
+                acquired.add(segment);
+            }
+            if (acquired.size() == snapshot.size()) return acquired;
+
+            // A merge closed one of the segments in between, retry with the new snapshot
+            releaseSegments(acquired);
+        }
+    }
+
+    private void releaseSegments(List<SegmentReader> acquired) {
+        acquired.forEach(SegmentReader::decRef);
+    }
+
+    void close() {
+        mergeExecutor.shutdown();
+        try {
+            mergeExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        segments.forEach(SegmentReader::decRef);
+        segments = Collections.emptyList();
+    }
+}
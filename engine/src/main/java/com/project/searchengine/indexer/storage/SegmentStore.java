@@ -0,0 +1,396 @@
+package com.project.searchengine.indexer.storage;
+
+import com.project.searchengine.server.model.InvertedIndex;
+import com.project.searchengine.server.model.PageReference;
+import jakarta.annotation.PreDestroy;
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * On-disk inverted index made of immutable segments, an alternative to the Mongo "words" collection.
+ *
+ * Every indexer flush writes a new segment, so the write cost of a batch does not depend on the
+ * size of the index. Segments are compacted in the background following a TieredMergePolicy.
+ *
+ * The index is partitioned by document into indexer.shards SegmentShards: a page belongs to the
+ * shard its doc id hashes to, and every shard has its own segments, commit file and merge thread.
+ * The segment of a flush is split across the shards under the same name, so a rolled back batch
+ * removes it from all of them. Queries run on every shard and merge their results (see
+ * QueryProcessor).
+ *
+ * A reindexed page is deleted from the segments holding its previous postings before its new
+ * postings are flushed, the deletes are applied when the segments are merged.
+ *
+ * Enabled with indexer.segments.enabled=true, the files are kept in indexer.segments.dir (in a
+ * shard-{i} directory per shard when there are several). The number of shards of an index is
+ * fixed when it is created.
+ *
+ * Any number of processes can read the store, but only one writes it: the first write takes a
+ * lock on the write.lock file, then removes the files of the segments that were never committed.
+ */
+@Component
+public class SegmentStore {
+
+    private static final String SHARDS_FILE = "shards";
+    private static final String WRITE_LOCK_FILE = "write.lock";
+
+    private final boolean enabled;
+    private final Path root;
+    private final List<SegmentShard> shards = new ArrayList<>();
+    private FileChannel writeLockChannel;
+
+    public SegmentStore(boolean enabled, String directory) {
+        this(enabled, directory, 1);
+    }
+
+    @Autowired
+    public SegmentStore(
+        @Value("${indexer.segments.enabled:false}") boolean enabled,
+        @Value("${indexer.segments.dir:index}") String directory,
+        @Value("${indexer.shards:1}") int shardsCount
+    ) {
+        this.enabled = enabled;
+        this.root = Paths.get(directory);
+
+        if (enabled) {
+            try {
+                Files.createDirectories(root);
+                checkShardsCount(root, shardsCount);
+                for (int i = 0; i < shardsCount; i++) {
+                    // A single shard keeps its segments in the store directory itself
+                    Path shardDirectory = shardsCount == 1 ? root : root.resolve("shard-" + i);
+                    shards.add(new SegmentShard(shardDirectory, "segment-merger-" + i));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to open segment store " + directory, e);
+            }
+        }
+    }
+
+    /**
+     * Records the number of shards of a new index, and checks it for an existing one since the
+     * pages cannot move between shards.
+     */
+    private static void checkShardsCount(Path root, int shardsCount) throws IOException {
+        if (shardsCount < 1) {
+            throw new IllegalArgumentException("indexer.shards must be at least 1: " + shardsCount);
+        }
+
+        Path shardsFile = root.resolve(SHARDS_FILE);
+        if (Files.exists(shardsFile)) {
+            int existing = Integer.parseInt(Files.readString(shardsFile, StandardCharsets.UTF_8).trim());
+            if (existing != shardsCount) {
+                throw new IllegalStateException(
+                    "Segment store " + root + " has " + existing + " shards, indexer.shards is " + shardsCount
+                );
+            }
+        } else {
+            Files.writeString(shardsFile, Integer.toString(shardsCount), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Takes the write lock of the store on its first write, and cleans up the shards for writing.
+     *
+     * @throws IllegalStateException If another process holds the write lock.
+     */
+    private synchronized void acquireWriteLock() {
+        if (writeLockChannel != null || !enabled) return;
+
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(
+                root.resolve(WRITE_LOCK_FILE),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE
+            );
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                // Held by another store of this JVM
+                lock = null;
+            }
+            if (lock == null) {
+                throw new IllegalStateException("Segment store " + root + " is locked by another writer");
+            }
+
+            for (SegmentShard shard : shards) {
+                shard.openForWriting();
+            }
+            writeLockChannel = channel;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to lock segment store " + root, e);
+        } finally {
+            // Closing the channel releases the lock
+            if (writeLockChannel == null && channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing " + WRITE_LOCK_FILE + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return The number of shards, 0 when the store is disabled
+     */
+    public int getShardsCount() {
+        return shards.size();
+    }
+
+    /**
+     * @return The shard of a page, from a hash of its doc id so that pages indexed together are
+     * spread over all the shards
+     */
+    static int shardOf(int docId, int shardsCount) {
+        int hash = docId * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), shardsCount);
+    }
+
+    /**
+     * Writes a flushed batch as a new segment, which is not merged until it is released.
+     *
+     * @param indexBuffer Map of word to InvertedIndex objects to be saved
+     * @return The name of the new segment, null if the buffer is empty
+     */
+    public String writeSegment(Map<String, InvertedIndex> indexBuffer) {
+        if (indexBuffer.isEmpty()) return null;
+        String name = reserveSegmentName();
+        writeSegment(name, indexBuffer);
+        return name;
+    }
+
+    /**
+     * @return The name of the next flushed segment, so it can be logged before it is written. The
+     * name is free in every shard.
+     */
+    public String reserveSegmentName() {
+        acquireWriteLock();
+        // A merge can take the generation reserved in another shard, reserve until all agree
+        long generation = 0;
+        int agreed = 0;
+        for (int i = 0; agreed < shards.size(); i = (i + 1) % shards.size()) {
+            long reserved = shards.get(i).reserveGeneration(generation);
+            if (reserved == generation) {
+                agreed++;
+            } else {
+                generation = reserved;
+                agreed = 1;
+            }
+        }
+        return SegmentShard.segmentName(generation);
+    }
+
+    /**
+     * Writes a flushed batch as a new segment with a reserved name, which is not merged until it
+     * is released.
+     *
+     * @param name A name returned by reserveSegmentName.
+     * @param indexBuffer Map of word to InvertedIndex objects to be saved
+     */
+    public void writeSegment(String name, Map<String, InvertedIndex> indexBuffer) {
+        if (indexBuffer.isEmpty()) return;
+
+        Map<String, Integer> pageDocIds = new HashMap<>();
+        for (InvertedIndex index : indexBuffer.values()) {
+            index.getPages().forEach(page -> pageDocIds.put(page.getPageId(), page.getDocId()));
+        }
+        writeSegment(name, pageDocIds, writer -> {
+            for (String word : new TreeSet<>(indexBuffer.keySet())) {
+                writer.addTerm(word, indexBuffer.get(word).getPages());
+            }
+        });
+    }
+
+    /**
+     * Receives the terms of a segment in ascending order.
+     */
+    @FunctionalInterface
+    public interface TermWriter {
+        void addTerm(String term, List<PageReference> pages) throws IOException;
+    }
+
+    /**
+     * Adds the terms of a segment to its writer in ascending order.
+     */
+    @FunctionalInterface
+    public interface SortedPostings {
+        void writeTo(TermWriter writer) throws IOException;
+    }
+
+    /**
+     * Writes a segment with a reserved name from postings streamed in term order, so a bulk build
+     * writes its merged runs without holding them in memory. Every term is split between the
+     * segments of the shards of its pages. The segment is not merged until it is released.
+     *
+     * @param name A name returned by reserveSegmentName.
+     * @param pageDocIds All the pages of the postings with their global doc ids.
+     * @param postings Adds the terms to the segment writer.
+     */
+    public void writeSegment(String name, Map<String, Integer> pageDocIds, SortedPostings postings) {
+        acquireWriteLock();
+        List<Map<String, Integer>> shardPages = new ArrayList<>();
+        shards.forEach(shard -> shardPages.add(new HashMap<>()));
+        pageDocIds.forEach((pageId, docId) ->
+            shardPages.get(shardOf(docId, shards.size())).put(pageId, docId)
+        );
+
+        SegmentWriter[] writers = new SegmentWriter[shards.size()];
+        try {
+            try {
+                for (int i = 0; i < shards.size(); i++) {
+                    if (!shardPages.get(i).isEmpty()) {
+                        writers[i] = shards.get(i).openWriter(name, shardPages.get(i));
+                    }
+                }
+                postings.writeTo((term, pages) -> addTerm(writers, term, pages));
+                for (SegmentWriter writer : writers) {
+                    if (writer != null) writer.finish();
+                }
+            } finally {
+                for (SegmentWriter writer : writers) {
+                    if (writer != null) writer.close();
+                }
+            }
+
+            for (int i = 0; i < shards.size(); i++) {
+                if (writers[i] != null) shards.get(i).addSegment(name);
+            }
+        } catch (IOException e) {
+            // The shards that committed their part drop it, the others ignore the name
+            shards.forEach(shard -> shard.deleteSegment(name));
+            throw new UncheckedIOException("Failed to write segment", e);
+        }
+    }
+
+    private void addTerm(SegmentWriter[] writers, String term, List<PageReference> pages)
+        throws IOException {
+        if (writers.length == 1) {
+            writers[0].addTerm(term, pages);
+            return;
+        }
+
+        List<List<PageReference>> shardPages = new ArrayList<>(writers.length);
+        for (int i = 0; i < writers.length; i++) {
+            shardPages.add(new ArrayList<>());
+        }
+        for (PageReference page : pages) {
+            shardPages.get(shardOf(page.getDocId(), writers.length)).add(page);
+        }
+        for (int i = 0; i < writers.length; i++) {
+            if (!shardPages.get(i).isEmpty()) writers[i].addTerm(term, shardPages.get(i));
+        }
+    }
+
+    /**
+     * Lets a segment be merged once the batch that wrote it is committed, and schedules a
+     * background merge check in every shard.
+     *
+     * @param name The name of the segment.
+     */
+    public void releaseSegment(String name) {
+        acquireWriteLock();
+        shards.forEach(shard -> shard.releaseSegment(name));
+    }
+
+    /**
+     * Removes a segment of a rolled back batch from the live segments of every shard.
+     *
+     * @param name The name of the segment.
+     * @return True if the segment was live in a shard and is now deleted.
+     */
+    public boolean deleteSegment(String name) {
+        acquireWriteLock();
+        boolean deleted = false;
+        for (SegmentShard shard : shards) {
+            deleted |= shard.deleteSegment(name);
+        }
+        return deleted;
+    }
+
+    /**
+     * Deletes the postings of the given pages from all live segments, before their new postings
+     * are written to a new segment.
+     *
+     * @param pageIds The ids of the pages to delete.
+     * @return The number of deleted postings lists, one per segment holding a page.
+     */
+    public int deletePages(Collection<String> pageIds) {
+        if (pageIds.isEmpty()) return 0;
+        acquireWriteLock();
+        int count = 0;
+        for (SegmentShard shard : shards) {
+            count += shard.deletePages(pageIds);
+        }
+        return count;
+    }
+
+    /**
+     * Retrieves the pages of a token across all live segments of all the shards.
+     *
+     * @param token The token to search for.
+     * @return A list of PageReference objects associated with the token.
+     */
+    public List<PageReference> getTokenPages(String token) {
+        List<PageReference> pages = new ArrayList<>();
+        for (SegmentShard shard : shards) {
+            pages.addAll(shard.getTokenPages(token));
+        }
+        return pages;
+    }
+
+    /**
+     * Retrieves the pages of a token in the live segments of one shard.
+     *
+     * @param shard The index of the shard.
+     * @param token The token to search for.
+     * @return A list of PageReference objects associated with the token.
+     */
+    public List<PageReference> getTokenPages(int shard, String token) {
+        return shards.get(shard).getTokenPages(token);
+    }
+
+    /**
+     * Refreshes every shard now rather than on the next query after the refresh interval, to see
+     * the segments and deletes committed by another process.
+     */
+    void refresh() {
+        shards.forEach(SegmentShard::refresh);
+    }
+
+    /**
+     * @return The number of live segments of all the shards
+     */
+    public int getSegmentsCount() {
+        int count = 0;
+        for (SegmentShard shard : shards) {
+            count += shard.getSegmentsCount();
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        shards.forEach(SegmentShard::close);
+        if (writeLockChannel != null) {
+            try {
+                writeLockChannel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing " + WRITE_LOCK_FILE + ": " + e.getMessage());
+            }
+            writeLockChannel = null;
+        }
+    }
+}
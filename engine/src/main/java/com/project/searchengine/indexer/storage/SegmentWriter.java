@@ -0,0 +1,254 @@
+package com.project.searchengine.indexer.storage;
+
+import com.project.searchengine.server.model.PageReference;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Writes a single immutable index segment made of three files:
+ *
+ * - {name}.tim: the doc table (pages sorted by global doc id, their index is the segment doc id),
+ *   the term dictionary (terms in sorted order with their document frequency and postings offsets)
+ *   and a term index of fixed size entry offsets, so a term can be binary searched in place.
+ * - {name}.doc: the postings, encoded with PostingsCodec.
+ * - {name}.pos: the word positions, encoded with PostingsCodec.
+ *
+ * Terms must be added in ascending order. The files are synced to disk on finish, a segment
+ * only becomes visible once the SegmentStore commits it.
+ */
+public class SegmentWriter implements Closeable {
+
+    static final int FORMAT_VERSION = 4;
+    static final String TERMS_EXTENSION = ".tim";
+    static final String POSTINGS_EXTENSION = ".doc";
+    static final String POSITIONS_EXTENSION = ".pos";
+    static final String DELETES_EXTENSION = ".del";
+
+    private final String name;
+    private final Path termsPath;
+    private final SegmentOutput postingsOutput;
+    private final SegmentOutput positionsOutput;
+
+    private final String[] pageIds;
+    private final int[] globalDocIds;
+    private final Map<String, Integer> docIds;
+    private final PostingsCodec.Encoder encoder = new PostingsCodec.Encoder();
+
+    private final List<String> terms = new ArrayList<>();
+    private final List<Integer> docFreqs = new ArrayList<>();
+    private final List<Long> postingsOffsets = new ArrayList<>();
+    private final List<Long> positionsOffsets = new ArrayList<>();
+    private long postingsCount;
+
+    /**
+     * @param directory The directory of the segment files.
+     * @param name The segment name.
+     * @param pageDocIds All the pages that appear in the segment postings, with their global doc ids.
+     */
+    public SegmentWriter(Path directory, String name, Map<String, Integer> pageDocIds)
+        throws IOException {
+        this.name = name;
+        this.termsPath = directory.resolve(name + TERMS_EXTENSION);
+        this.postingsOutput = new SegmentOutput(directory.resolve(name + POSTINGS_EXTENSION));
+        this.positionsOutput = new SegmentOutput(directory.resolve(name + POSITIONS_EXTENSION));
+
+        // Segment doc ids follow the global doc ids, so merged postings keep the same order
+        List<Map.Entry<String, Integer>> pages = new ArrayList<>(pageDocIds.entrySet());
+        pages.sort(
+            Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey())
+        );
+
+        this.pageIds = new String[pages.size()];
+        this.globalDocIds = new int[pages.size()];
+        this.docIds = new HashMap<>(pages.size() * 2);
+        for (int doc = 0; doc < pages.size(); doc++) {
+            pageIds[doc] = pages.get(doc).getKey();
+            globalDocIds[doc] = pages.get(doc).getValue();
+            docIds.put(pageIds[doc], doc);
+        }
+    }
+
+    /**
+     * Appends the postings of a term to the segment.
+     *
+     * @param term The term, greater than every term added before.
+     * @param pages The page references of the term.
+     */
+    public void addTerm(String term, List<PageReference> pages) throws IOException {
+        if (!terms.isEmpty() && terms.get(terms.size() - 1).compareTo(term) >= 0) {
+            throw new IllegalArgumentException("Terms must be added in sorted order: " + term);
+        }
+
+        List<PageReference> sorted = new ArrayList<>(pages);
+        sorted.sort(Comparator.comparingInt(page -> docId(page.getPageId())));
+
+        int[] fieldCounts = new int[3];
+        int[] positions = new int[16];
+        for (PageReference page : sorted) {
+            Map<String, Integer> fieldWordCount = page.getFieldWordCount();
+            fieldCounts[0] = fieldWordCount.getOrDefault("title", 0);
+            fieldCounts[1] = fieldWordCount.getOrDefault("h1", 0);
+            fieldCounts[2] = fieldWordCount.getOrDefault("h2", 0);
+
+            List<Integer> wordPositions = page.getWordPositions();
+            if (wordPositions.size() > positions.length) {
+                positions = new int[wordPositions.size()];
+            }
+            for (int i = 0; i < wordPositions.size(); i++) {
+                positions[i] = wordPositions.get(i);
+            }
+
+            encoder.addPosting(
+                docId(page.getPageId()),
+                page.getTf(),
+                fieldCounts,
+                positions,
+                wordPositions.size()
+            );
+        }
+
+        terms.add(term);
+        docFreqs.add(encoder.getDocFreq());
+        postingsOffsets.add(postingsOutput.position());
+        positionsOffsets.add(positionsOutput.position());
+
+        encoder.finish(postingsOutput.data(), positionsOutput.data());
+        encoder.reset();
+        postingsCount += sorted.size();
+    }
+
+    private int docId(String pageId) {
+        Integer doc = docIds.get(pageId);
+        if (doc == null) {
+            throw new IllegalArgumentException("Page " + pageId + " is not in segment " + name);
+        }
+        return doc;
+    }
+
+    /**
+     * Writes the doc table and term dictionary and syncs all the segment files.
+     *
+     * @return The name of the written segment.
+     */
+    public String finish() throws IOException {
+        postingsOutput.sync();
+        positionsOutput.sync();
+
+        try (SegmentOutput termsOutput = new SegmentOutput(termsPath)) {
+            DataOutputStream data = termsOutput.data();
+            data.writeInt(FORMAT_VERSION);
+            data.writeInt(pageIds.length);
+            data.writeInt(terms.size());
+            data.writeLong(postingsOutput.position());
+            data.writeLong(positionsOutput.position());
+            for (int doc = 0; doc < pageIds.length; doc++) {
+                data.writeInt(globalDocIds[doc]);
+                data.writeUTF(pageIds[doc]);
+            }
+
+            long[] entryOffsets = new long[terms.size()];
+            for (int i = 0; i < terms.size(); i++) {
+                entryOffsets[i] = termsOutput.position();
+                data.writeUTF(terms.get(i));
+                data.writeInt(docFreqs.get(i));
+                data.writeLong(postingsOffsets.get(i));
+                data.writeLong(positionsOffsets.get(i));
+            }
+
+            // Term index, followed by its offset as the last 8 bytes of the file
+            long termIndexOffset = termsOutput.position();
+            for (long entryOffset : entryOffsets) {
+                data.writeLong(entryOffset);
+            }
+            data.writeLong(termIndexOffset);
+            termsOutput.sync();
+        }
+
+        System.out.println(
+            "Wrote segment " +
+            name +
+            " with " +
+            terms.size() +
+            " terms, " +
+            pageIds.length +
+            " pages, " +
+            postingsCount +
+            " postings"
+        );
+        return name;
+    }
+
+    @Override
+    public void close() throws IOException {
+        postingsOutput.close();
+        positionsOutput.close();
+    }
+
+    /**
+     * All the file names a segment is made of.
+     */
+    static List<String> fileNames(String name) {
+        return List.of(
+            name + TERMS_EXTENSION,
+            name + POSTINGS_EXTENSION,
+            name + POSITIONS_EXTENSION,
+            name + DELETES_EXTENSION
+        );
+    }
+
+    /**
+     * Buffered file output that keeps track of its position as a long.
+     */
+    private static class SegmentOutput implements Closeable {
+
+        private final FileOutputStream file;
+        private final CountingOutputStream counter;
+        private final DataOutputStream data;
+
+        SegmentOutput(Path path) throws IOException {
+            this.file = new FileOutputStream(path.toFile());
+            this.counter = new CountingOutputStream(new BufferedOutputStream(file, 1 << 16));
+            this.data = new DataOutputStream(counter);
+        }
+
+        DataOutputStream data() {
+            return data;
+        }
+
+        long position() {
+            return counter.count;
+        }
+
+        void sync() throws IOException {
+            data.flush();
+            file.getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            data.close();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.project.searchengine.indexer.storage;
+
+import java.util.*;
+
+/**
+ * Picks segments to merge, grouping them in size tiers.
+ *
+ * A segment of size S belongs to tier floor(log(S / floor) / log(segmentsPerTier)), so every
+ * tier holds segments up to segmentsPerTier times bigger than the previous one. Once a tier
+ * has segmentsPerTier segments, they are merged into one segment of the next tier. Every page
+ * is then rewritten only a logarithmic number of times, keeping the write cost per batch
+ * constant regardless of the index size.
+ *
+ * Segments are memory mapped by SegmentReader, so merges never produce segments larger than
+ * maxMergedSegmentBytes, well under the 2 GB limit of a single mapping.
+ */
+public class TieredMergePolicy {
+
+    private static final int DEFAULT_SEGMENTS_PER_TIER = 10;
+    private static final long DEFAULT_FLOOR_SEGMENT_BYTES = 2L * 1024 * 1024;
+    private static final long DEFAULT_MAX_MERGED_SEGMENT_BYTES = 1024L * 1024 * 1024;
+
+    private final int segmentsPerTier;
+    private final long floorSegmentBytes;
+    private final long maxMergedSegmentBytes;
+
+    public TieredMergePolicy() {
+        this(DEFAULT_SEGMENTS_PER_TIER, DEFAULT_FLOOR_SEGMENT_BYTES, DEFAULT_MAX_MERGED_SEGMENT_BYTES);
+    }
+
+    public TieredMergePolicy(int segmentsPerTier, long floorSegmentBytes, long maxMergedSegmentBytes) {
+        this.segmentsPerTier = segmentsPerTier;
+        this.floorSegmentBytes = floorSegmentBytes;
+        this.maxMergedSegmentBytes = maxMergedSegmentBytes;
+    }
+
+    /**
+     * Finds the next segments to merge.
+     *
+     * @param segments The live segments that are not already being merged.
+     * @return The segments to merge into one, empty if no tier is full.
+     */
+    public List<SegmentReader> findMerge(List<SegmentReader> segments) {
+        Map<Integer, List<SegmentReader>> tiers = new TreeMap<>();
+        for (SegmentReader segment : segments) {
+            // Segments this large would merge into one above maxMergedSegmentBytes
+            if (segment.getSizeInBytes() > maxMergedSegmentBytes / segmentsPerTier) continue;
+            tiers.computeIfAbsent(tier(segment.getSizeInBytes()), t -> new ArrayList<>()).add(segment);
+        }
+
+        // Merge the smallest full tier first, they are the cheapest merges
+        for (List<SegmentReader> tier : tiers.values()) {
+            if (tier.size() >= segmentsPerTier) {
+                tier.sort(Comparator.comparingLong(SegmentReader::getSizeInBytes));
+                return new ArrayList<>(tier.subList(0, segmentsPerTier));
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    int tier(long sizeInBytes) {
+        double relativeSize = (double) Math.max(sizeInBytes, floorSegmentBytes) / floorSegmentBytes;
+        return (int) Math.floor(Math.log(relativeSize) / Math.log(segmentsPerTier));
+    }
+}
@@ -6,17 +6,15 @@ import java.util.concurrent.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.project.searchengine.indexer.ForwardIndex;
 import com.project.searchengine.server.model.PageReference;
 import com.project.searchengine.server.service.PageReferenceService;
 
-import opennlp.tools.tokenize.SimpleTokenizer;
-
 @Component
 public class PhraseMatcher {
 
     @Autowired
     private PageReferenceService pageReferenceService;
-    private final SimpleTokenizer tokenizer = SimpleTokenizer.INSTANCE;
 
     private final int threadsNum = 40; 
     private final Map<String, Integer> matchPositions = new ConcurrentHashMap<>(); // store match positions for each
@@ -62,14 +60,15 @@ public class PhraseMatcher {
      * Find if the words before or after a specific token (depending on
      * isBeforeToken) match or not
      * 
-     * @param bodyTokens
+     * @param bodyTokens    forward index of the page body, only the blocks around
+     *                      the token are decoded
      * @param originalWords list of the query original words before tokenization
      * @param tokenIndex
      * @param isBeforeToken to determine if the match is before the anchor token or
      *                      after it
      * @return true if a match is found
      */
-    private boolean findMatchAroundToken(String[] bodyTokens,
+    private boolean findMatchAroundToken(ForwardIndex bodyTokens,
             List<String> originalWords,
             int tokenIndex, int pos, boolean isBeforeToken) {
 
@@ -79,12 +78,12 @@ public class PhraseMatcher {
         int querySize = originalWords.size();
 
         while (found &&
-                isValidOffset(currentOffset, bodyTokens.length)
+                isValidOffset(currentOffset, bodyTokens.size())
                 && isValidTokenIndex(currentTokenIndex, querySize)) {
 
             String currentToken = originalWords.get(currentTokenIndex);
 
-            if (!currentToken.toLowerCase().equals(bodyTokens[currentOffset])) {
+            if (!currentToken.toLowerCase().equals(bodyTokens.getToken(currentOffset))) {
                 found = false;
             }
 
@@ -98,13 +97,13 @@ public class PhraseMatcher {
     /**
      * Checks if a given token is part of a phrase match in the body content or not
      *
-     * @param bodyTokens:
+     * @param bodyTokens:    forward index of the page body
      * @param originalWords: original query words
      * @param token:         token to match
      * @param pos:           position of the current token in body content
      * @return true if the token is part of a matching phrase false otherwise.
      */
-    public boolean isPhraseMatchFound(String[] bodyTokens,
+    public boolean isPhraseMatchFound(ForwardIndex bodyTokens,
             List<String> originalWords, String token, int pos) {
 
         int tokenIndex = originalWords.indexOf(token);
@@ -113,7 +112,7 @@ public class PhraseMatcher {
             return false;
 
         // check current
-        if (!token.equals(bodyTokens[pos]))
+        if (!token.equals(bodyTokens.getToken(pos)))
             return false;
 
         boolean isMatchFound = false;
@@ -134,14 +133,14 @@ public class PhraseMatcher {
             List<PageReference> filteredPages) {
 
         List<Integer> positions = page.getWordPositions();
-        String bodyContent = pageReferenceService.getPageBodyContent(page);
-        String[] bodyTokens = tokenizer.tokenize(bodyContent.toLowerCase());
+        // Only the tokens around the positions are decoded, the body is not tokenized again
+        ForwardIndex bodyTokens = pageReferenceService.getPageForwardIndex(page);
 
         for (Integer pos : positions) {
             boolean isMatchFound = isPhraseMatchFound(bodyTokens, originalWords, originalToken, pos);
 
             if (isMatchFound) {
-                System.out.println("matched:" + bodyTokens[pos] + " | at " + pos + " | id:" + page.getPageId());
+                System.out.println("matched:" + bodyTokens.getToken(pos) + " | at " + pos + " | id:" + page.getPageId());
 
                 matchPositions.put(page.getPageId(), pos);
                 filteredPages.add(page);
@@ -2,20 +2,52 @@ package com.project.searchengine.queryprocessor;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.IntFunction;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import com.project.searchengine.indexer.storage.SegmentStore;
+import com.project.searchengine.ranker.RankedPage;
 import com.project.searchengine.ranker.Ranker;
 import com.project.searchengine.server.model.PageReference;
 import com.project.searchengine.server.service.InvertedIndexService;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Processes the search queries.
+ *
+ * With the segment store, the query is executed as a scatter-gather over its shards: every shard
+ * retrieves its postings of the tokens and ranks its own pages on its own executor, and only the
+ * best pages of every shard are merged. The shards rank with the document frequencies of the
+ * whole index, so their scores can be compared.
+ */
 @Component
 public class QueryProcessor {
 
+    /**
+     * The result of a shard: its best pages and the number of pages it matched.
+     */
+    private static class ShardHits {
+
+        final List<RankedPage> pages;
+        final int matchedPages;
+
+        ShardHits(List<RankedPage> pages, int matchedPages) {
+            this.pages = pages;
+            this.matchedPages = matchedPages;
+        }
+    }
+
     @Autowired
     private InvertedIndexService invertedIndexService;
 
+    @Autowired
+    private SegmentStore segmentStore;
+
     @Autowired
     private QueryTokenizer queryTokenizer;
 
@@ -30,12 +62,35 @@ public class QueryProcessor {
 
     private final int threadsNum = 20;
 
+    @Value("${query.shard.threads:4}")
+    private int shardThreads;
+
+    // The query executor of every shard of the segment store
+    private final List<ExecutorService> shardExecutors = new ArrayList<>();
+
     private int pageSize = 20;
 
     private Integer resultPagesNumber = 0;
     private final Map<String, String> allPagesSnippets = new ConcurrentHashMap<>();
     private List<Map<PageReference, String>> rankedPageBatches;
 
+    @PostConstruct
+    void startShardExecutors() {
+        for (int shard = 0; shard < segmentStore.getShardsCount(); shard++) {
+            String name = "query-shard-" + shard;
+            shardExecutors.add(Executors.newFixedThreadPool(shardThreads, runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    @PreDestroy
+    void stopShardExecutors() {
+        shardExecutors.forEach(ExecutorService::shutdownNow);
+    }
+
     /**
      * Retrieves the result pages for each token in the processed query
      *
@@ -47,7 +102,9 @@ public class QueryProcessor {
         Map<String, List<PageReference>> queryPages = new HashMap<>();
 
         for (String token : tokenizedQuery) {
-            List<PageReference> tokenPages = invertedIndexService.getTokenPages(token);
+            List<PageReference> tokenPages = segmentStore.isEnabled()
+                    ? segmentStore.getTokenPages(token)
+                    : invertedIndexService.getTokenPages(token);
             queryPages.put(token, tokenPages);
         }
         return queryPages;
@@ -184,6 +241,16 @@ public class QueryProcessor {
         resultPagesNumber = 0;
 
         QueryResult queryResult = queryTokenizer.tokenizeQuery(query);
+        if (segmentStore.isEnabled()) {
+            // Only the pages up to the requested result page are merged from the shards
+            Map<PageReference, String> rankedPages = searchShards(query, queryResult, (pageNumber + 1) * pageSize);
+            System.out.println("Result pages number: " + resultPagesNumber);
+            this.rankedPageBatches = splitMap(rankedPages, pageSize);
+
+            getBatchSnippets(query, pageNumber);
+            return;
+        }
+
         List<String> tokenizedQuery = queryResult.getTokenizedQuery();
         Map<String, List<PageReference>> queryPages = retrieveQueryPages(tokenizedQuery);
 
@@ -214,6 +281,132 @@ public class QueryProcessor {
         getBatchSnippets(query, pageNumber);
     }
 
+    /**
+     * Runs the query on every shard of the segment store and merges their best pages, the number
+     * of matched pages of all the shards is saved as the result pages number.
+     *
+     * 1. Every shard retrieves its pages of the tokens.
+     * 2. For a phrase query, every shard filters its pages of the token with the fewest pages in
+     *    the whole index.
+     * 3. Every shard ranks its pages with the document frequencies summed over all the shards and
+     *    returns its best pages, which are merged by score.
+     *
+     * @param query The original search query
+     * @param queryResult The tokenized query
+     * @param limit The number of best pages to return
+     * @return The best pages in ranked order, with their first matched token
+     */
+    private Map<PageReference, String> searchShards(String query, QueryResult queryResult, int limit) {
+        List<String> tokenizedQuery = queryResult.getTokenizedQuery();
+        List<Map<String, List<PageReference>>> shardPages = scatter(
+                shard -> () -> retrieveShardPages(shard, tokenizedQuery),
+                Collections.emptyMap());
+
+        Map<String, Integer> documentFrequencies = documentFrequencies(tokenizedQuery, shardPages);
+        documentFrequencies.forEach((token, pagesCount) ->
+                System.out.println("Token: " + token + " | Pages Found: " + pagesCount));
+
+        if (phraseMatcher.isPhraseMatchQuery(query) && !documentFrequencies.isEmpty()) {
+            System.out.println("phrase match query");
+
+            // The same token is matched on every shard, so their filtered pages can be merged
+            String minToken = Collections.min(documentFrequencies.entrySet(), Map.Entry.comparingByValue()).getKey();
+            List<Map<String, List<PageReference>>> retrieved = shardPages;
+            shardPages = scatter(
+                    shard -> () -> phraseMatcher.filterPhraseMatchPages(
+                            Map.of(minToken, retrieved.get(shard).getOrDefault(minToken, List.of())),
+                            queryResult),
+                    Collections.emptyMap());
+            documentFrequencies = documentFrequencies(List.of(minToken), shardPages);
+        }
+
+        Map<String, Integer> frequencies = documentFrequencies;
+        List<Map<String, List<PageReference>>> pages = shardPages;
+        List<ShardHits> shardHits = scatter(
+                shard -> () -> new ShardHits(
+                        ranker.rankTop(pages.get(shard), frequencies, limit),
+                        countPages(pages.get(shard))),
+                new ShardHits(Collections.emptyList(), 0));
+
+        List<RankedPage> merged = new ArrayList<>();
+        for (ShardHits hits : shardHits) {
+            merged.addAll(hits.pages);
+            resultPagesNumber += hits.matchedPages;
+        }
+        // Ties are ordered by doc id, as the ranker does within a shard
+        merged.sort(Comparator.comparingDouble(RankedPage::getScore).reversed()
+                .thenComparingInt(rankedPage -> rankedPage.getPage().getDocId()));
+
+        Map<PageReference, String> rankedPages = new LinkedHashMap<>();
+        for (RankedPage rankedPage : merged.subList(0, Math.min(limit, merged.size()))) {
+            rankedPages.put(rankedPage.getPage(), rankedPage.getToken());
+        }
+        return rankedPages;
+    }
+
+    private Map<String, List<PageReference>> retrieveShardPages(int shard, List<String> tokenizedQuery) {
+        Map<String, List<PageReference>> queryPages = new HashMap<>();
+        for (String token : tokenizedQuery) {
+            queryPages.put(token, segmentStore.getTokenPages(shard, token));
+        }
+        return queryPages;
+    }
+
+    /**
+     * @return The number of pages of every token in all the shards
+     */
+    private static Map<String, Integer> documentFrequencies(List<String> tokens,
+            List<Map<String, List<PageReference>>> shardPages) {
+        Map<String, Integer> documentFrequencies = new HashMap<>();
+        for (String token : tokens) {
+            int pagesCount = 0;
+            for (Map<String, List<PageReference>> pages : shardPages) {
+                pagesCount += pages.getOrDefault(token, List.of()).size();
+            }
+            documentFrequencies.put(token, pagesCount);
+        }
+        return documentFrequencies;
+    }
+
+    private static int countPages(Map<String, List<PageReference>> queryPages) {
+        Set<String> pageIds = new HashSet<>();
+        for (List<PageReference> pages : queryPages.values()) {
+            for (PageReference page : pages) {
+                pageIds.add(page.getPageId());
+            }
+        }
+        return pageIds.size();
+    }
+
+    /**
+     * Runs a task on the executor of every shard and waits for all of them. A shard that fails
+     * is left out of the results.
+     *
+     * @param task The task of a shard, from its index
+     * @param failed The result of a shard that failed
+     * @return The results of the shards, by shard index
+     */
+    private <T> List<T> scatter(IntFunction<Callable<T>> task, T failed) {
+        List<Future<T>> futures = new ArrayList<>();
+        for (int shard = 0; shard < shardExecutors.size(); shard++) {
+            futures.add(shardExecutors.get(shard).submit(task.apply(shard)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        for (int shard = 0; shard < futures.size(); shard++) {
+            try {
+                results.add(futures.get(shard).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(failed);
+            } catch (ExecutionException e) {
+                System.err.println("Error in processing shard " + shard + ": " + e.getCause().getMessage());
+                results.add(failed);
+            }
+        }
+        return results;
+    }
+
     /**
      * Returns all the snippets generated for the pages.
      *
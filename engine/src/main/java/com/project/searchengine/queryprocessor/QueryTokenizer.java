@@ -1,7 +1,6 @@
 package com.project.searchengine.queryprocessor;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -9,34 +8,29 @@ import java.util.Map;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import com.project.searchengine.indexer.StopWordFilter;
-
-import opennlp.tools.stemmer.PorterStemmer;
-import opennlp.tools.tokenize.SimpleTokenizer;
+import com.project.searchengine.indexer.Analyzer;
 
 @Component
 public class QueryTokenizer {
 
-    private final StopWordFilter stopWordFilter;
-    private final PorterStemmer stemmer = new PorterStemmer();
-    private final SimpleTokenizer tokenizer = SimpleTokenizer.INSTANCE;
+    private final Analyzer analyzer;
 
     @Autowired
     private PhraseMatcher phraseMatcher;
 
-    public QueryTokenizer(StopWordFilter stopWordFilter) {
-        this.stopWordFilter = stopWordFilter;
+    public QueryTokenizer(Analyzer analyzer) {
+        this.analyzer = analyzer;
     }
    
     /**
      * Query processing matches the indexer to ensure queries & indexed documents
-     * match
+     * match, both go through the same Analyzer
      * 
-     * 1. converts query to lower case
-     * 2. tokenizes query using OpenNLP's SimpleTokenizer
-     * 3. Removes stop words using StopWordFilter
-     * 4. porter stemming on each token
-     * 5. removes any remaining non-alphabetics
+     * 1. splits the query into tokens like the indexer
+     * 2. lower cases each token
+     * 3. Removes stop words
+     * 4. removes any non-alphabetics
+     * 5. porter stemming on each token
      * 
      * @param query: the search query itself
      * @return List of cleaned tokens ready for search
@@ -44,10 +38,20 @@ public class QueryTokenizer {
     public QueryResult tokenizeQuery(String query) {
         List<String> tokenizedQuery = new ArrayList<>();
         Map<String, String> tokenizedToOriginal = new HashMap<>();
+        List<String> originalWords = new ArrayList<>();
         
         query = query.toLowerCase();
-        String tokens[] = tokenizer.tokenize(query);
-        List<String> originalWords = new ArrayList<>(Arrays.asList(tokens));
+        String lowerCaseQuery = query;
+        analyzer.analyze(query, (start, end, position, term, termLength) -> {
+            String originalWord = lowerCaseQuery.substring(start, end);
+            originalWords.add(originalWord);
+
+            if (termLength > 0) {
+                String token = new String(term, 0, termLength);
+                tokenizedToOriginal.put(token, originalWord);
+                tokenizedQuery.add(token);
+            }
+        });
         
         boolean isPhraseMatch = phraseMatcher.isPhraseMatchQuery(query);
 
@@ -55,24 +59,6 @@ public class QueryTokenizer {
             originalWords.remove(0);
             originalWords.remove(originalWords.size() - 1);
         }
-        
-
-        for (String token : tokens) {
-            String originalWord = token;
-
-            if (stopWordFilter.isStopWord(token)) {
-                continue;
-            }
-
-            token = stemmer.stem(token);
-            token = token.replaceAll("[^a-z]", "");
-
-            tokenizedToOriginal.put(token, originalWord);
-
-            if (!token.isEmpty()) {
-                tokenizedQuery.add(token);
-            }
-        }
 
         return new QueryResult(tokenizedQuery, tokenizedToOriginal, originalWords, isPhraseMatch);
     }
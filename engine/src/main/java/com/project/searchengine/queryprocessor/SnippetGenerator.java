@@ -4,17 +4,13 @@ import java.util.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.project.searchengine.indexer.Analyzer;
+import com.project.searchengine.indexer.ForwardIndex;
 import com.project.searchengine.server.model.PageReference;
 import com.project.searchengine.server.service.PageReferenceService;
 
-import opennlp.tools.stemmer.PorterStemmer;
-import opennlp.tools.tokenize.SimpleTokenizer;
-
 @Component
 public class SnippetGenerator {
-    private final SimpleTokenizer tokenizer = SimpleTokenizer.INSTANCE;
-    private final PorterStemmer stemmer = new PorterStemmer();
-
     private static Integer halfSnippetSize = 50;
 
     @Autowired
@@ -23,20 +19,23 @@ public class SnippetGenerator {
     @Autowired
     private PhraseMatcher phraseMatcher;
 
+    @Autowired
+    private Analyzer analyzer;
+
     /**
      * Generates a snippet from the body of text by extracting a range of tokens
      * and optionally highlights query words and phrases
      * 
      * @param token         The token from the query that was matched in the body
      *                      text
-     * @param bodyTokens    The array of body tokens from the page
+     * @param bodyTokens    The forward index of the page body
      * @param matchPosition The match position of the token in the body
      * @param queryResult   The query result data
      * @return A formatted snippet string from the body of text, highlighting the
      *         matched tokens
      */
     private String generateSnippet(String token,
-            String[] bodyTokens,
+            ForwardIndex bodyTokens,
             int matchPosition,
             QueryResult queryResult) {
 
@@ -47,7 +46,7 @@ public class SnippetGenerator {
 
         // Calculate the range of tokens to include in the snippet
         int startIndex = Math.max(0, matchPosition - halfSnippetSize);
-        int endIndex = Math.min(bodyTokens.length, matchPosition + halfSnippetSize);
+        int endIndex = Math.min(bodyTokens.size(), matchPosition + halfSnippetSize);
 
         StringBuilder snippet = new StringBuilder();
 
@@ -78,7 +77,7 @@ public class SnippetGenerator {
                 System.out.println("match pos in body: " + matchPosition);
 
                 int start = Math.max(0, matchPosition - tokenIndex);
-                int end = Math.min(bodyTokens.length, start + phraseLength);
+                int end = Math.min(bodyTokens.size(), start + phraseLength);
 
                 highlightPositions.add(matchPosition);
 
@@ -92,19 +91,12 @@ public class SnippetGenerator {
         }
 
         for (int i = startIndex; i < endIndex; i++) {
-            String bodyToken = bodyTokens[i];
-
-            // get stemmed token for highlighting any other query tokens
-            String stemmedToken;
-            try {
-                stemmedToken = (bodyToken != null && !bodyToken.isEmpty() && bodyToken.matches("[a-zA-Z]+"))
-                        ? stemmer.stem(bodyToken.toLowerCase())
-                        : bodyToken.toLowerCase();
-            } catch (Exception e) {
-                stemmedToken = bodyToken.toLowerCase();
-            }
+            String bodyToken = bodyTokens.getToken(i);
+
+            // get the analyzed token for highlighting any other query tokens, null if not indexed
+            String stemmedToken = analyzer.analyzeToken(bodyToken);
 
-            String nextToken = (i + 1 < bodyTokens.length) ? bodyTokens[i + 1] : null;
+            String nextToken = bodyTokens.getToken(i + 1);
 
             boolean isOpeningPunctuation = bodyToken.matches(openingPunctuation);
             boolean isClosingNextPunctuation = (nextToken != null) &&
@@ -112,7 +104,7 @@ public class SnippetGenerator {
 
             // Check if current token should be highlighted
             boolean shouldHighlight = highlightPositions.contains(i)
-                    || (!isPhraseMatch && tokenizedQuery.contains(stemmedToken));
+                    || (!isPhraseMatch && stemmedToken != null && tokenizedQuery.contains(stemmedToken));
 
             if (shouldHighlight) {
                 snippet.append("<strong>").append(bodyToken).append("</strong>");
@@ -146,8 +138,8 @@ public class SnippetGenerator {
 
         List<Integer> positions = page.getWordPositions();
 
-        String bodyContent = pageReferenceService.getPageBodyContent(page);
-        String[] bodyTokens = tokenizer.tokenize(bodyContent.toLowerCase());
+        // Only the blocks of the snippet window are decoded from the forward index
+        ForwardIndex bodyTokens = pageReferenceService.getPageForwardIndex(page);
         String pageId = page.getPageId();
         boolean isPhraseMatch = queryResult.getIsPhraseMatch();
 
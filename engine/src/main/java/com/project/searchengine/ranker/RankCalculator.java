@@ -26,9 +26,10 @@ public class RankCalculator {
             for (PageReference pageReference : index.getPages()) {
                 // Calculate TF for each page reference
                 String pageId = pageReference.getPageId();
-                double tf =
-                    (double) pageReference.getWordPositions().size() /
-                    pageTokenCount.getOrDefault(pageId, 1);
+                double tf = calculateTf(
+                    pageReference.getWordPositions().size(),
+                    pageTokenCount.getOrDefault(pageId, 1)
+                );
 
                 // Update the page reference with the calculated TF
                 pageReference.setTf(tf);
@@ -36,6 +37,17 @@ public class RankCalculator {
         }
     }
 
+    /**
+     * Calculates the weighted Term Frequency of a single page reference
+     *
+     * @param tokenOccurrences: number of occurrences of the token in the document
+     * @param pageTokenCount: total tokens in the document
+     * @return the weighted TF (double)
+     */
+    public static double calculateTf(int tokenOccurrences, int pageTokenCount) {
+        return (double) tokenOccurrences / Math.max(pageTokenCount, 1);
+    }
+
     /**
      * Calculates the final score to be used for ranking
      * Score = (weight) * TF * IDF + (1-weight) * page rank
@@ -0,0 +1,37 @@
+package com.project.searchengine.ranker;
+
+import com.project.searchengine.server.model.PageReference;
+
+/**
+ * A ranked page with its score, so the pages ranked on different shards can be merged.
+ */
+public class RankedPage {
+
+    private final PageReference page;
+    private final String token;
+    private final double score;
+
+    public RankedPage(PageReference page, String token, double score) {
+        this.page = page;
+        this.token = token;
+        this.score = score;
+    }
+
+    /**
+     * @return The first matched page reference of the page
+     */
+    public PageReference getPage() {
+        return page;
+    }
+
+    /**
+     * @return The token of the first matched page reference
+     */
+    public String getToken() {
+        return token;
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
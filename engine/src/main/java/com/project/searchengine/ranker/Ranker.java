@@ -1,7 +1,7 @@
 package com.project.searchengine.ranker;
 
+import com.project.searchengine.indexer.DocIdDictionary;
 import com.project.searchengine.server.model.PageReference;
-import com.project.searchengine.server.service.PageReferenceService;
 import com.project.searchengine.server.service.PageService;
 import java.util.*;
 import org.springframework.stereotype.Component;
@@ -10,11 +10,11 @@ import org.springframework.stereotype.Component;
 public class Ranker {
 
     private final long totalDocuments;
-    private final PageReferenceService pageReferenceService;
+    private final DocIdDictionary docIdDictionary;
 
-    public Ranker(PageService pageService, PageReferenceService pageReferenceService) {
+    public Ranker(PageService pageService, DocIdDictionary docIdDictionary) {
         this.totalDocuments = pageService.getTotalDocuments();
-        this.pageReferenceService = pageReferenceService;
+        this.docIdDictionary = docIdDictionary;
     }
 
     /**
@@ -25,45 +25,156 @@ public class Ranker {
      * @return a map of page references to their corresponding token (the first matched token)
      */
     public Map<PageReference, String> rank(Map<String, List<PageReference>> queryResults) {
-        Map<String, Double> scores = computeScores(queryResults);
-        List<String> sortedPageIds = sortedPages(scores); // get the sorted pages ids according to their values in scores Map
+        List<String> tokens = new ArrayList<>(queryResults.keySet());
+        int[][] tokensDocIds = resolveDocIds(tokens, queryResults);
+        int[] docIds = candidateDocIds(tokensDocIds); // sorted, the index of a doc id is its slot
 
-        return getOrderedPageReferences(queryResults, sortedPageIds);
+        double[] scores = computeScores(tokens, queryResults, Collections.emptyMap(), tokensDocIds, docIds);
+        int[] sortedSlots = sortedPages(scores); // get the slots sorted according to their scores
+
+        return getOrderedPageReferences(tokens, queryResults, tokensDocIds, docIds, sortedSlots);
     }
 
     /**
-     * Main for loop to process each token and compute pages scores Map
+     * Ranks the pages of one shard of the index and keeps the best ones. The IDF of the tokens
+     * comes from their document frequencies in the whole index, so the scores of the pages of
+     * different shards can be compared.
      *
-     * @return Map with page_id as its key, and page score as its value
+     * @param queryResults a map of token to the page references of the shard
+     * @param documentFrequencies the number of pages of every token in all the shards
+     * @param limit the number of best pages to keep
+     * @return the best pages by descending score, ties ordered by doc id
      */
-    Map<String, Double> computeScores(Map<String, List<PageReference>> queryResults) {
-        Map<String, Double> scores = new HashMap<>();
-        Map<String, Double> pagesRanks = getPagesRanks(queryResults);
+    public List<RankedPage> rankTop(
+        Map<String, List<PageReference>> queryResults,
+        Map<String, Integer> documentFrequencies,
+        int limit
+    ) {
+        List<String> tokens = new ArrayList<>(queryResults.keySet());
+        int[][] tokensDocIds = resolveDocIds(tokens, queryResults);
+        int[] docIds = candidateDocIds(tokensDocIds);
+
+        double[] scores = computeScores(tokens, queryResults, documentFrequencies, tokensDocIds, docIds);
+        int[] topSlots = topPages(scores, limit);
 
-        for (List<PageReference> prs : queryResults.values()) {
-            processToken(prs, scores, pagesRanks);
+        Map<PageReference, String> pages = getOrderedPageReferences(
+            tokens,
+            queryResults,
+            tokensDocIds,
+            docIds,
+            topSlots
+        );
+        List<RankedPage> ranked = new ArrayList<>(topSlots.length);
+        int i = 0;
+        for (Map.Entry<PageReference, String> entry : pages.entrySet()) {
+            ranked.add(new RankedPage(entry.getKey(), entry.getValue(), scores[topSlots[i++]]));
         }
+        return ranked;
+    }
 
-        return scores; // return sorted pages ids (strings) according to their values in scores Map
+    /**
+     * Resolves the doc id of every page reference, page references written before doc ids
+     * existed are looked up in the dictionary.
+     *
+     * @return The doc ids of the page references of every token, in the same order
+     */
+    int[][] resolveDocIds(List<String> tokens, Map<String, List<PageReference>> queryResults) {
+        int[][] tokensDocIds = new int[tokens.size()][];
+        // Pages missing from the dictionary still need a distinct id, they get negative ones
+        Map<String, Integer> unknownPages = new HashMap<>();
+
+        for (int t = 0; t < tokens.size(); t++) {
+            List<PageReference> prs = queryResults.get(tokens.get(t));
+            int[] docIds = new int[prs.size()];
+            for (int i = 0; i < prs.size(); i++) {
+                PageReference pr = prs.get(i);
+                int docId = pr.getDocId();
+                if (docId < 0) docId = docIdDictionary.getDocId(pr.getPageId());
+                if (docId < 0) {
+                    docId = unknownPages.computeIfAbsent(pr.getPageId(), pageId ->
+                        -2 - unknownPages.size()
+                    );
+                }
+                docIds[i] = docId;
+            }
+            tokensDocIds[t] = docIds;
+        }
+        return tokensDocIds;
+    }
+
+    /**
+     * @return The distinct doc ids of all the tokens, sorted
+     */
+    int[] candidateDocIds(int[][] tokensDocIds) {
+        int total = 0;
+        for (int[] docIds : tokensDocIds) total += docIds.length;
+
+        int[] all = new int[total];
+        int size = 0;
+        for (int[] docIds : tokensDocIds) {
+            System.arraycopy(docIds, 0, all, size, docIds.length);
+            size += docIds.length;
+        }
+        Arrays.sort(all);
+
+        int distinct = 0;
+        for (int i = 0; i < all.length; i++) {
+            if (i == 0 || all[i] != all[i - 1]) all[distinct++] = all[i];
+        }
+        return Arrays.copyOf(all, distinct);
+    }
+
+    /**
+     * Main for loop to process each token and compute pages scores
+     *
+     * @param documentFrequencies the document frequency of the tokens, a token missing from it
+     *                            uses the number of its page references
+     * @return The score of every candidate page, aligned with docIds
+     */
+    double[] computeScores(
+        List<String> tokens,
+        Map<String, List<PageReference>> queryResults,
+        Map<String, Integer> documentFrequencies,
+        int[][] tokensDocIds,
+        int[] docIds
+    ) {
+        double[] scores = new double[docIds.length];
+        double[] pagesRanks = docIdDictionary.getRanks(docIds);
+
+        for (int t = 0; t < tokens.size(); t++) {
+            List<PageReference> prs = queryResults.get(tokens.get(t));
+            int documentFrequency = documentFrequencies.getOrDefault(tokens.get(t), prs.size());
+            double idf = RankCalculator.getIDF(totalDocuments, documentFrequency);
+            processToken(prs, idf, tokensDocIds[t], docIds, scores, pagesRanks);
+        }
+
+        return scores;
     }
 
     /**
      * Processes a single token's score
      *
-     * @param token:  the token (word) desired to process
-     * @param scores: Map object by reference, to update the total score of every
-     *                page (<pageId, score>)
+     * @param prs:        the page references of the token
+     * @param idf:        the IDF of the token
+     * @param prsDocIds:  the doc ids of the page references
+     * @param docIds:     the sorted candidate doc ids
+     * @param scores:     array by reference, to update the total score of every
+     *                    candidate page
+     * @param pagesRanks: the page rank of every candidate page
      */
     void processToken(
         List<PageReference> prs,
-        Map<String, Double> scores,
-        Map<String, Double> pagesRanks
+        double idf,
+        int[] prsDocIds,
+        int[] docIds,
+        double[] scores,
+        double[] pagesRanks
     ) {
-        double idf = RankCalculator.getIDF(totalDocuments, prs.size());
-        for (PageReference pr : prs) {
-            String pageId = pr.getPageId();
+        for (int i = 0; i < prs.size(); i++) {
+            PageReference pr = prs.get(i);
+            int slot = Arrays.binarySearch(docIds, prsDocIds[i]);
 
-            double pageRank = pagesRanks.getOrDefault(pageId, 0.0);
+            double pageRank = pagesRanks[slot];
 
             double tf = pr.getTf();
             double score = RankCalculator.calculateScore(tf, idf, pageRank);
@@ -79,67 +190,83 @@ public class Ranker {
 
             // cap the boosted score
             score = Math.min(baseScore * 10, score);
-            scores.merge(pageId, score, Double::sum);
+            scores[slot] += score;
         }
     }
 
     /**
-     * Creates the sorted pages IDs according to their score in the scores Map <page
-     * ID, score>
+     * Sorts the candidate pages according to their score
      *
-     * @param scores: Map of score corresponding to each page
-     * @return sorted array of page IDs ([String, ...])
+     * @param scores: the score of every candidate page
+     * @return the candidate slots sorted by descending score
      */
-    List<String> sortedPages(Map<String, Double> scores) {
-        List<String> result = new ArrayList<>(scores.keySet());
-        result.sort((page1, page2) -> Double.compare(scores.get(page2), scores.get(page1)));
+    int[] sortedPages(double[] scores) {
+        Integer[] slots = new Integer[scores.length];
+        for (int i = 0; i < slots.length; i++) slots[i] = i;
+        Arrays.sort(slots, (slot1, slot2) -> Double.compare(scores[slot2], scores[slot1]));
+
+        int[] result = new int[slots.length];
+        for (int i = 0; i < slots.length; i++) result[i] = slots[i];
         return result;
     }
 
-    Map<String, Double> getPagesRanks(Map<String, List<PageReference>> queryResults) {
-        Set<String> pageIds = new HashSet<>();
-        for (List<PageReference> prs : queryResults.values()) {
-            for (PageReference pr : prs) {
-                pageIds.add(pr.getPageId());
-            }
+    /**
+     * Selects the best candidate pages without sorting all of them
+     *
+     * @param scores: the score of every candidate page
+     * @param limit:  the number of pages to select
+     * @return the selected slots sorted by descending score, in the same order as sortedPages
+     */
+    int[] topPages(double[] scores, int limit) {
+        if (limit >= scores.length) return sortedPages(scores);
+
+        // Heap of the selected slots, the worst one (lowest score, then highest slot) on top
+        PriorityQueue<Integer> selected = new PriorityQueue<>(limit + 1, (slot1, slot2) -> {
+            int cmp = Double.compare(scores[slot1], scores[slot2]);
+            return cmp != 0 ? cmp : Integer.compare(slot2, slot1);
+        });
+        for (int slot = 0; slot < scores.length; slot++) {
+            selected.add(slot);
+            if (selected.size() > limit) selected.poll();
         }
 
-        return pageReferenceService.getPagesRanks(new ArrayList<>(pageIds));
+        int[] result = new int[selected.size()];
+        for (int i = result.length - 1; i >= 0; i--) result[i] = selected.poll();
+        return result;
     }
 
     /**
-     * * This function takes a map of token to page references and a list of ordered page IDs,
-     * @param tokenToPagesMap a map of token to page references
-     * @param orderedPageIds  a list of ordered page IDs
+     * * This function maps every candidate page to its first matched page reference and token,
+     * in the ranked order.
+     *
      * @return a map of page references to their corresponding token (the first matched token),
-     *         where the page references are ordered according to the orderedPageIds list.
+     *         where the page references are ordered according to sortedSlots.
      */
-
-    public static Map<PageReference, String> getOrderedPageReferences(
-        Map<String, List<PageReference>> tokenToPagesMap,
-        List<String> orderedPageIds
+    Map<PageReference, String> getOrderedPageReferences(
+        List<String> tokens,
+        Map<String, List<PageReference>> queryResults,
+        int[][] tokensDocIds,
+        int[] docIds,
+        int[] sortedSlots
     ) {
-        Map<PageReference, String> result = new LinkedHashMap<>();
+        PageReference[] firstPages = new PageReference[docIds.length];
+        String[] firstTokens = new String[docIds.length];
 
-        for (String pageId : orderedPageIds) {
-            boolean found = false;
-            for (Map.Entry<String, List<PageReference>> entry : tokenToPagesMap.entrySet()) {
-                String token = entry.getKey();
-                List<PageReference> pageRefs = entry.getValue();
-
-                for (PageReference pageRef : pageRefs) {
-                    if (pageRef.getPageId().equals(pageId)) {
-                        result.put(pageRef, token);
-                        found = true;
-                        break;
-                    }
-                }
-                if (found) {
-                    break;
+        for (int t = 0; t < tokens.size(); t++) {
+            List<PageReference> prs = queryResults.get(tokens.get(t));
+            for (int i = 0; i < prs.size(); i++) {
+                int slot = Arrays.binarySearch(docIds, tokensDocIds[t][i]);
+                if (firstPages[slot] == null) {
+                    firstPages[slot] = prs.get(i);
+                    firstTokens[slot] = tokens.get(t);
                 }
             }
         }
 
+        Map<PageReference, String> result = new LinkedHashMap<>();
+        for (int slot : sortedSlots) {
+            result.put(firstPages[slot], firstTokens[slot]);
+        }
         return result;
     }
 }
@@ -17,6 +17,20 @@ public class IndexerRunner implements CommandLineRunner {
     public void run(String... args) {
         System.out.println("Starting the indexer...");
         long start = System.currentTimeMillis();
+
+        // Parse arguments for the number of indexing workers, defaults to the number of cores
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                try {
+                    int numThreads = Integer.parseInt(arg.substring(10));
+                    indexer.setNumThreads(numThreads);
+                    System.out.println("Using " + numThreads + " threads for indexing");
+                } catch (NumberFormatException e) {
+                    System.out.println("Invalid thread count, using the number of cores");
+                }
+            }
+        }
+
         indexer.startIndexing();
         System.out.println(
             "Indexing took: " + (System.currentTimeMillis() - start) / 60000 + " minutes"
@@ -0,0 +1,84 @@
+package com.project.searchengine.server.model;
+
+import java.util.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * A block of the document store: the body texts of several pages concatenated and compressed
+ * together, so they compress better and take a single read.
+ *
+ * The text of pageIds[i] is text[offsets[i] .. offsets[i + 1]) of the decompressed block.
+ */
+@Document(collection = "document_blocks")
+public class DocumentBlock {
+
+    @Id
+    private String id;
+
+    @Indexed
+    private List<String> pageIds;
+
+    private List<Integer> offsets;
+    private byte[] data; // GZIP compressed UTF-8 text
+
+    @Indexed
+    private String batchId; // the indexer flush that wrote the block
+
+    public DocumentBlock() {}
+
+    public DocumentBlock(
+        String id,
+        List<String> pageIds,
+        List<Integer> offsets,
+        byte[] data,
+        String batchId
+    ) {
+        this.id = id;
+        this.pageIds = pageIds;
+        this.offsets = offsets;
+        this.data = data;
+        this.batchId = batchId;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getPageIds() {
+        return pageIds;
+    }
+
+    public void setPageIds(List<String> pageIds) {
+        this.pageIds = pageIds;
+    }
+
+    public List<Integer> getOffsets() {
+        return offsets;
+    }
+
+    public void setOffsets(List<Integer> offsets) {
+        this.offsets = offsets;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public void setData(byte[] data) {
+        this.data = data;
+    }
+}
@@ -8,6 +8,7 @@ public class InvertedIndex {
 
     private String word;
     private double idf;
+    private int df; // document frequency, maintained incrementally by the indexer
     private List<PageReference> pages;
 
     public InvertedIndex(String word) {
@@ -32,6 +33,14 @@ public class InvertedIndex {
         this.pages = pages;
     }
 
+    public int getDf() {
+        return df;
+    }
+
+    public void setDf(int df) {
+        this.df = df;
+    }
+
     public int getPageCount() {
         return this.pages.size();
     }
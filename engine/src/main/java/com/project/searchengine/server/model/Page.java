@@ -1,5 +1,6 @@
 package com.project.searchengine.server.model;
 
+import java.util.Map;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
@@ -13,10 +14,17 @@ public class Page {
     @Indexed(unique = true)
     private String url;
 
+    @Indexed
+    private Integer docId;
+
     private String title;
     private String content;
     private int pageTokenCount;
     private double rank;
+    private byte[] forwardIndex;
+    private String batchId; // the indexer flush that wrote the page
+    private byte[] contentHash; // hashedDocContent of the indexed document
+    private Map<String, Long> termSignatures; // term -> hash of the page posting of the term
 
     public Page() {}
 
@@ -45,6 +53,60 @@ public class Page {
         this.url = url;
     }
 
+    /**
+     * @return The dense doc id assigned by the indexer, null for pages indexed before doc ids
+     */
+    public Integer getDocId() {
+        return docId;
+    }
+
+    public void setDocId(Integer docId) {
+        this.docId = docId;
+    }
+
+    /**
+     * @return The encoded ForwardIndex of the body, null for pages indexed before it was stored
+     */
+    public byte[] getForwardIndex() {
+        return forwardIndex;
+    }
+
+    public void setForwardIndex(byte[] forwardIndex) {
+        this.forwardIndex = forwardIndex;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    /**
+     * @return The fingerprint bytes of the crawled document the page was indexed from, null for
+     * pages indexed before it was stored
+     */
+    public byte[] getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(byte[] contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * @return The terms of the page with a signature of their postings, to find the postings that
+     * changed when the page is reindexed. Null for pages indexed before they were stored
+     */
+    public Map<String, Long> getTermSignatures() {
+        return termSignatures;
+    }
+
+    public void setTermSignatures(Map<String, Long> termSignatures) {
+        this.termSignatures = termSignatures;
+    }
+
     public String getTitle() {
         return title;
     }
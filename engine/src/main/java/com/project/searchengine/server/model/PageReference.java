@@ -1,18 +1,30 @@
 package com.project.searchengine.server.model;
 
 import java.util.*;
+import org.springframework.data.annotation.PersistenceCreator;
 
 public class PageReference {
 
     private String pageId;
+    private int docId;
 
     private List<Integer> wordPositions;
     private Map<String, Integer> fieldWordCount; // field type -> word count
 
     private double tf;
 
+    @PersistenceCreator
     public PageReference(String pageId) {
+        this(pageId, -1);
+    }
+
+    /**
+     * @param pageId The page id.
+     * @param docId The dense doc id of the page, -1 if it has none (pages indexed before doc ids).
+     */
+    public PageReference(String pageId, int docId) {
         this.pageId = pageId;
+        this.docId = docId;
         this.wordPositions = new ArrayList<>();
         this.fieldWordCount = new HashMap<>();
         tf = 0.0;
@@ -26,6 +38,14 @@ public class PageReference {
         this.pageId = pageId;
     }
 
+    public int getDocId() {
+        return docId;
+    }
+
+    public void setDocId(int docId) {
+        this.docId = docId;
+    }
+
     public List<Integer> getWordPositions() {
         return wordPositions;
     }
@@ -65,6 +85,8 @@ public class PageReference {
             "pageId='" +
             pageId +
             '\'' +
+            ", docId=" +
+            docId +
             ", wordPositions=" +
             wordPositions +
             ", fieldWordCount=" +
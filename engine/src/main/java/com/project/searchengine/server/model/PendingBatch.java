@@ -0,0 +1,81 @@
+package com.project.searchengine.server.model;
+
+import java.util.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * Write-ahead record of an indexer flush that is not committed yet.
+ *
+ * It is saved before any page, text or posting of the batch is written and deleted once every
+ * write succeeded, so a record left behind means the batch must be rolled back.
+ */
+@Document(collection = "pending_batches")
+public class PendingBatch {
+
+    @Id
+    private String id;
+
+    private List<String> pageIds;
+    private List<String> urlDocumentIds;
+    private List<String> reindexedPageIds; // existing pages the batch reindexes
+    private String segmentName; // set once the postings are written to the segment store
+    private long startedAt;
+
+    public PendingBatch() {}
+
+    public PendingBatch(String id, List<String> pageIds, List<String> urlDocumentIds) {
+        this.id = id;
+        this.pageIds = pageIds;
+        this.urlDocumentIds = urlDocumentIds;
+        this.startedAt = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public List<String> getPageIds() {
+        return pageIds;
+    }
+
+    public void setPageIds(List<String> pageIds) {
+        this.pageIds = pageIds;
+    }
+
+    public List<String> getUrlDocumentIds() {
+        return urlDocumentIds;
+    }
+
+    public void setUrlDocumentIds(List<String> urlDocumentIds) {
+        this.urlDocumentIds = urlDocumentIds;
+    }
+
+    public List<String> getReindexedPageIds() {
+        return reindexedPageIds == null ? Collections.emptyList() : reindexedPageIds;
+    }
+
+    public void setReindexedPageIds(List<String> reindexedPageIds) {
+        this.reindexedPageIds = reindexedPageIds;
+    }
+
+    public String getSegmentName() {
+        return segmentName;
+    }
+
+    public void setSegmentName(String segmentName) {
+        this.segmentName = segmentName;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(long startedAt) {
+        this.startedAt = startedAt;
+    }
+}
@@ -22,7 +22,7 @@ public class UrlDocument {
     private boolean isCrawled;
     private boolean isIndexed;
     private byte[] document; // raw HTML content
-    private String hashedDocContent;
+    private byte[] hashedDocContent; // fingerprint bytes of the raw HTML content
     private List<String> linkedPages;
     private String lastCrawled;
     private double rank;
@@ -37,7 +37,7 @@ public class UrlDocument {
         long frequency,
         boolean isCrawled,
         byte[] document,
-        String hashedDocContent,
+        byte[] hashedDocContent,
         List<String> linkedPages,
         String lastCrawled
     ) {
@@ -100,11 +100,11 @@ public class UrlDocument {
         this.document = document;
     }
 
-    public String getHashedDocContent() {
+    public byte[] getHashedDocContent() {
         return hashedDocContent;
     }
 
-    public void setHashedDocContent(String hashedDocContent) {
+    public void setHashedDocContent(byte[] hashedDocContent) {
         this.hashedDocContent = hashedDocContent;
     }
 
@@ -142,7 +142,7 @@ public class UrlDocument {
             document +
             '\'' +
             ", hashedDocContent='" +
-            hashedDocContent +
+            (hashedDocContent != null ? HexFormat.of().formatHex(hashedDocContent) : null) +
             '\'' +
             ", linkedPages=" +
             linkedPages +
@@ -16,4 +16,7 @@ public interface PageRepository extends MongoRepository<Page, String> {
 
     @Query(value = "{ 'url': {$in:?0}}", fields = "{ 'rank' :1 }")
     List<Page> findRanksByUrls(List<String> ids);
+
+    @Query(value = "{ '_id': ?0 }", fields = "{ 'forwardIndex' :1 }")
+    Page findForwardIndexById(String id);
 }
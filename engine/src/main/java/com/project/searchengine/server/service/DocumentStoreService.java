@@ -0,0 +1,243 @@
+package com.project.searchengine.server.service;
+
+import com.project.searchengine.server.model.DocumentBlock;
+import com.project.searchengine.server.model.Page;
+import com.project.searchengine.utils.CompressionUtil;
+import java.util.*;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+/**
+ * Stores the body texts of the pages in compressed blocks instead of a plain string per page.
+ *
+ * The pages of a flush are packed in order into blocks of about docstore.block.size chars, each
+ * block compressed on its own with its page ids and the offset of every text. A text is found by
+ * its page id through the index on the block page ids. The last docstore.cache.blocks
+ * decompressed blocks are kept in an LRU by block id, so the texts of pages indexed together
+ * (often the pages of a same query) are decompressed once.
+ *
+ * The block of a page is looked up again on every read, only its id is returned: a reindexed
+ * page moves to a new block, detached from the previous one by the indexer, and a cached block
+ * never changes otherwise. So another process (the query server) never reads a stale text.
+ */
+@Service
+public class DocumentStoreService {
+
+    /**
+     * A decompressed block.
+     */
+    private static class DecodedBlock {
+
+        final String id;
+        final String batchId;
+        final List<String> pageIds;
+        final List<Integer> offsets;
+        final String text;
+
+        DecodedBlock(DocumentBlock block) {
+            this.id = block.getId();
+            this.batchId = block.getBatchId();
+            this.pageIds = block.getPageIds();
+            this.offsets = block.getOffsets();
+            // An empty text compresses to no data
+            String decompressed = CompressionUtil.decompress(block.getData());
+            this.text = decompressed == null ? "" : decompressed;
+        }
+
+        String getDocument(String pageId, int start, int end) {
+            int index = pageIds.indexOf(pageId);
+            if (index < 0) return null;
+            int documentStart = offsets.get(index);
+            int documentEnd = offsets.get(index + 1);
+            int length = documentEnd - documentStart;
+            int from = documentStart + Math.min(length, Math.max(0, start));
+            int to = Math.max(from, documentStart + Math.min(length, end));
+            return text.substring(from, to);
+        }
+    }
+
+    private final MongoTemplate mongoTemplate;
+    private final int blockSize;
+    private final Map<String, DecodedBlock> blocks;
+
+    public DocumentStoreService(
+        MongoTemplate mongoTemplate,
+        @Value("${docstore.block.size:32768}") int blockSize,
+        @Value("${docstore.cache.blocks:64}") int cacheBlocks
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.blockSize = blockSize;
+        this.blocks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DecodedBlock> eldest) {
+                return size() > cacheBlocks;
+            }
+        };
+    }
+
+    /**
+     * Moves the contents of the pages into compressed blocks. The content of a page is cleared
+     * once its block is saved, on failure the pages keep their contents.
+     *
+     * @param pages The pages to save, in the order they were indexed.
+     * @param batchId The indexer flush saving the pages, to roll its blocks back.
+     */
+    public void storeContents(List<Page> pages, String batchId) {
+        List<DocumentBlock> packed = pack(pages, batchId);
+        if (packed.isEmpty()) return;
+
+        long start = System.nanoTime();
+        try {
+            mongoTemplate.insert(packed, DocumentBlock.class);
+        } catch (Exception e) {
+            System.err.println("Error saving document blocks: " + e.getMessage());
+            return;
+        }
+
+        long textChars = 0;
+        long compressedBytes = 0;
+        for (Page page : pages) {
+            if (page.getContent() == null) continue;
+            textChars += page.getContent().length();
+            page.setContent(null);
+        }
+        for (DocumentBlock block : packed) {
+            if (block.getData() != null) compressedBytes += block.getData().length;
+        }
+        long duration = (System.nanoTime() - start) / 1_000_000;
+        System.out.println(
+            "Saving document blocks took: " +
+            duration +
+            " ms, saved " +
+            packed.size() +
+            " blocks, " +
+            compressedBytes +
+            " bytes for " +
+            textChars +
+            " chars"
+        );
+    }
+
+    /**
+     * @return The body text of a page, null if it is not in the store
+     */
+    public String getDocument(String pageId) {
+        return getRange(pageId, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns a range of the body text of a page, clamped to the text.
+     *
+     * @param pageId The page id.
+     * @param start The start of the range in the text.
+     * @param end The end (exclusive) of the range in the text.
+     * @return The chars of the range, null if the page is not in the store
+     */
+    public String getRange(String pageId, int start, int end) {
+        DecodedBlock block = getBlock(pageId);
+        return block == null ? null : block.getDocument(pageId, start, end);
+    }
+
+    /**
+     * Packs the contents of the pages into blocks of about blockSize chars, a text larger than
+     * a block gets a block of its own.
+     */
+    List<DocumentBlock> pack(List<Page> pages, String batchId) {
+        List<DocumentBlock> packed = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+        List<String> pageIds = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+
+        for (Page page : pages) {
+            String content = page.getContent();
+            if (content == null) continue;
+
+            offsets.add(text.length());
+            pageIds.add(page.getId());
+            text.append(content);
+
+            if (text.length() >= blockSize) {
+                packed.add(block(pageIds, offsets, text, batchId));
+                pageIds = new ArrayList<>();
+                offsets = new ArrayList<>();
+                text.setLength(0);
+            }
+        }
+        if (!pageIds.isEmpty()) {
+            packed.add(block(pageIds, offsets, text, batchId));
+        }
+        return packed;
+    }
+
+    private static DocumentBlock block(
+        List<String> pageIds,
+        List<Integer> offsets,
+        StringBuilder text,
+        String batchId
+    ) {
+        offsets.add(text.length());
+        byte[] data = CompressionUtil.compress(text.toString());
+        return new DocumentBlock(new ObjectId().toHexString(), pageIds, offsets, data, batchId);
+    }
+
+    /**
+     * Detaches reindexed pages from the blocks of their previous texts, so only the block of the
+     * new text is found. The page id is blanked rather than removed to keep the offsets aligned.
+     *
+     * @param pageIds The ids of the reindexed pages.
+     * @param batchId The indexer flush that saved their new texts.
+     */
+    public void detachDocuments(List<String> pageIds, String batchId) {
+        if (pageIds.isEmpty()) return;
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(
+            BulkOperations.BulkMode.UNORDERED,
+            DocumentBlock.class
+        );
+        for (String pageId : pageIds) {
+            Query query = new Query(Criteria.where("pageIds").is(pageId).and("batchId").ne(batchId));
+            bulkOps.updateMulti(query, new Update().set("pageIds.$", ""));
+        }
+        bulkOps.execute();
+    }
+
+    /**
+     * Removes the blocks written by an indexer flush that is rolled back.
+     *
+     * @param batchId The id of the flush.
+     */
+    public void deleteBatch(String batchId) {
+        mongoTemplate.remove(new Query(Criteria.where("batchId").is(batchId)), DocumentBlock.class);
+        synchronized (blocks) {
+            blocks.values().removeIf(block -> batchId.equals(block.batchId));
+        }
+    }
+
+    private DecodedBlock getBlock(String pageId) {
+        // Only the id of the current block of the page, through the index on the page ids
+        Query query = new Query(Criteria.where("pageIds").is(pageId));
+        query.fields().include("_id");
+        DocumentBlock current = mongoTemplate.findOne(query, DocumentBlock.class);
+        if (current == null) return null;
+
+        synchronized (blocks) {
+            DecodedBlock cached = blocks.get(current.getId());
+            if (cached != null) return cached;
+        }
+
+        DocumentBlock stored = mongoTemplate.findById(current.getId(), DocumentBlock.class);
+        if (stored == null) return null;
+
+        DecodedBlock block = new DecodedBlock(stored);
+        synchronized (blocks) {
+            blocks.put(block.id, block);
+        }
+        return block;
+    }
+}
@@ -24,6 +24,9 @@ public class InvertedIndexService {
     @Autowired
     private PageService pageService;
 
+    // Words saved before the df field existed get it once, before the first $inc on it
+    private volatile boolean dfBackfilled = false;
+
     /**
      * Gets the inverted index for a given word.
      *
@@ -38,57 +41,122 @@ public class InvertedIndexService {
     /**
      * Saves a list of inverted indices in bulk to the database.
      *
+     * Every word is a single upsert appending its pages with $push $each, so the whole batch is
+     * one unordered bulk write with no read of the existing words. The pages of a batch are new
+     * to these words (the postings a reindexed page already had go through updatePostingsInBulk),
+     * so they are appended without comparing them to the existing page references.
+     *
      * @param indexBuffer Map of word to InvertedIndex objects to be saved
+     * @throws RuntimeException If the bulk write fails, some words may have been saved
      */
     public void saveTokensInBulk(Map<String, InvertedIndex> indexBuffer) {
         if (!indexBuffer.isEmpty()) {
-            // 1- Query existing words from the DB
-            Set<String> allWords = indexBuffer.keySet();
-            List<InvertedIndex> existingIndices = invertedIndexRepository.findAllByWordIn(allWords);
-            Set<String> existingWordSet = new HashSet<>(
-                existingIndices.stream().map(InvertedIndex::getWord).toList()
-            );
-
-            // 2- Create bulk operations
+            backfillDf();
             BulkOperations bulkOps = mongoTemplate.bulkOps(
                 BulkOperations.BulkMode.UNORDERED,
                 InvertedIndex.class
             );
 
-            // 3- Insert or update the indices
             for (InvertedIndex index : indexBuffer.values()) {
-                String word = index.getWord();
-                Query query = new Query(Criteria.where("word").is(word));
-                Update update = new Update();
-                if (existingWordSet.contains(word)) {
-                    // Update existing word
-                    for (PageReference page : index.getPages()) {
-                        // Update the page reference
-                        update.addToSet("pages", page);
-                    }
-
-                    bulkOps.updateOne(query, update);
-                } else {
-                    // Insert new word
-                    bulkOps.insert(index);
-                }
+                Query query = new Query(Criteria.where("word").is(index.getWord()));
+                Update update = new Update()
+                    .push("pages")
+                    .each(index.getPages().toArray())
+                    .inc("df", index.getPages().size())
+                    .setOnInsert("idf", 0.0);
+
+                // The word itself is set from the query on insert
+                bulkOps.upsert(query, update);
             }
 
             try {
                 BulkWriteResult result = bulkOps.execute();
                 System.out.println(
                     "Inserted: " +
-                    result.getInsertedCount() +
+                    result.getUpserts().size() +
                     ", Updated: " +
                     result.getModifiedCount()
                 );
-            } catch (Exception e) {
+            } catch (RuntimeException e) {
+                // Failing the flush lets the indexer roll the whole batch back
                 System.err.println("Error saving tokens: " + e.getMessage());
+                throw e;
             }
             indexBuffer.clear();
         }
     }
 
+    /**
+     * Applies the posting changes of reindexed pages in one unordered bulk write. Their new terms
+     * are saved with saveTokensInBulk, here the postings of terms still on a page are replaced in
+     * place and the postings of terms no longer on it are pulled, decrementing the df.
+     *
+     * @param changed Map of word to the new page references of the pages whose posting changed
+     * @param removed Map of word to the ids of the pages that no longer contain it
+     * @throws RuntimeException If the bulk write fails, some words may have been updated
+     */
+    public void updatePostingsInBulk(
+        Map<String, InvertedIndex> changed,
+        Map<String, List<String>> removed
+    ) {
+        if (changed.isEmpty() && removed.isEmpty()) return;
+        backfillDf();
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(
+            BulkOperations.BulkMode.UNORDERED,
+            InvertedIndex.class
+        );
+
+        for (InvertedIndex index : changed.values()) {
+            for (PageReference page : index.getPages()) {
+                Query query = new Query(
+                    Criteria.where("word").is(index.getWord()).and("pages.pageId").is(page.getPageId())
+                );
+                bulkOps.updateOne(query, new Update().set("pages.$", page));
+            }
+        }
+
+        for (Map.Entry<String, List<String>> entry : removed.entrySet()) {
+            Query query = new Query(Criteria.where("word").is(entry.getKey()));
+            Update update = new Update()
+                .pull("pages", new Document("pageId", new Document("$in", entry.getValue())))
+                .inc("df", -entry.getValue().size());
+            bulkOps.updateOne(query, update);
+        }
+
+        try {
+            BulkWriteResult result = bulkOps.execute();
+            System.out.println("Updated postings of " + result.getModifiedCount() + " words");
+        } catch (RuntimeException e) {
+            System.err.println("Error updating postings: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Sets the df of the words saved before it was maintained to the size of their pages array.
+     * An $inc on a missing df would start it from this batch's count only, so this runs once
+     * before the first write that increments it.
+     */
+    private void backfillDf() {
+        if (dfBackfilled) return;
+
+        synchronized (this) {
+            if (dfBackfilled) return;
+
+            UpdateResult result = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(InvertedIndex.class))
+                .updateMany(
+                    new Document("df", new Document("$exists", false)),
+                    List.of(new Document("$set", new Document("df", new Document("$size", "$pages"))))
+                );
+            if (result.getModifiedCount() > 0) {
+                System.out.println("Backfilled the df of " + result.getModifiedCount() + " words");
+            }
+            dfBackfilled = true;
+        }
+    }
+
     /**
      * Retrieves the pages associated with a given token.
      *
@@ -104,6 +172,14 @@ public class InvertedIndexService {
         }
     }
 
+    /**
+     * Recomputes the IDF of every word from its document frequency, entirely on the database
+     * server with a pipeline update, so no postings are loaded in the application.
+     *
+     * The document frequency is maintained with $inc when tokens are saved, words saved before
+     * it existed get it from the size of their pages array (backfillDf sets it before their
+     * first $inc, this covers words not written since).
+     */
     public void updateIdf() {
         try {
             // Get the total number of pages from PageService
@@ -113,47 +189,111 @@ public class InvertedIndexService {
                 return;
             }
 
-            // Retrieve all InvertedIndex documents
-            List<InvertedIndex> indices = invertedIndexRepository.findAll();
-            if (indices.isEmpty()) {
-                System.out.println("No inverted indices found. Skipping IDF update.");
-                return;
-            }
-
-            // Initialize bulk operations
-            BulkOperations bulkOps = mongoTemplate.bulkOps(
-                BulkOperations.BulkMode.UNORDERED,
-                InvertedIndex.class
+            long start = System.nanoTime();
+            List<Document> pipeline = List.of(
+                new Document(
+                    "$set",
+                    new Document(
+                        "df",
+                        new Document("$ifNull", List.of("$df", new Document("$size", "$pages")))
+                    )
+                ),
+                // log10(totalPages / df), 0 for words without pages
+                new Document(
+                    "$set",
+                    new Document(
+                        "idf",
+                        new Document(
+                            "$cond",
+                            List.of(
+                                new Document("$gt", List.of("$df", 0)),
+                                new Document(
+                                    "$log10",
+                                    new Document("$divide", List.of((double) totalPages, "$df"))
+                                ),
+                                0.0
+                            )
+                        )
+                    )
+                )
             );
 
-            // Calculate and update IDF for each InvertedIndex
-            int updateCount = 0;
-            for (InvertedIndex index : indices) {
-                int pageCount = index.getPages() != null ? index.getPages().size() : 0;
-                double idf;
-                if (pageCount == 0) {
-                    idf = 0.0; // Handle zero document frequency
-                } else {
-                    idf = Math.log10((double) totalPages / pageCount); // log10(totalPages / size of pages)
-                }
-
-                // Create update query for the specific word
-                Query query = new Query(Criteria.where("word").is(index.getWord()));
-                Update update = new Update().set("idf", idf);
-
-                bulkOps.updateOne(query, update);
-                updateCount++;
-            }
+            UpdateResult result = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(InvertedIndex.class))
+                .updateMany(new Document(), pipeline);
 
-            // Execute bulk updates
-            if (updateCount > 0) {
-                BulkWriteResult result = bulkOps.execute();
-                System.out.println("Updated IDF for " + result.getModifiedCount() + " documents");
-            } else {
-                System.out.println("No documents to update for IDF.");
-            }
+            System.out.println(
+                "Updated IDF for " +
+                result.getModifiedCount() +
+                " documents in " +
+                (System.nanoTime() - start) / 1_000_000 +
+                " ms"
+            );
         } catch (Exception e) {
             System.err.println("Error updating IDF: " + e.getMessage());
         }
     }
+
+    /**
+     * Removes the postings of the given pages from every word, for a batch that is rolled back.
+     * The document frequency is reset to the number of remaining pages.
+     *
+     * The pages.pageId field is not indexed, so this is a scan of the whole collection. It only
+     * runs when recovering from a failed flush, and for the rare reindexed page whose previous
+     * text is lost; a flush purges reindexed pages from known words with the other removePages.
+     *
+     * @param pageIds The ids of the pages to remove.
+     */
+    public void removePages(List<String> pageIds) {
+        if (pageIds.isEmpty()) return;
+        removePages(pageIds, new Document("pages.pageId", new Document("$in", pageIds)));
+    }
+
+    /**
+     * Removes the postings of the given pages from the given words only, found through the index
+     * on word, for reindexed pages whose previous words are known but not their signatures.
+     * The document frequency is reset to the number of remaining pages.
+     *
+     * @param pageIds The ids of the pages to remove.
+     * @param words The words the pages may have postings in.
+     */
+    public void removePages(List<String> pageIds, Collection<String> words) {
+        if (pageIds.isEmpty() || words.isEmpty()) return;
+        removePages(
+            pageIds,
+            new Document("word", new Document("$in", new ArrayList<>(words))).append(
+                "pages.pageId",
+                new Document("$in", pageIds)
+            )
+        );
+    }
+
+    private void removePages(List<String> pageIds, Document filter) {
+        List<Document> pipeline = List.of(
+            new Document(
+                "$set",
+                new Document(
+                    "pages",
+                    new Document(
+                        "$filter",
+                        new Document("input", "$pages").append(
+                            "cond",
+                            new Document(
+                                "$not",
+                                List.of(new Document("$in", List.of("$$this.pageId", pageIds)))
+                            )
+                        )
+                    )
+                )
+            ),
+            new Document("$set", new Document("df", new Document("$size", "$pages")))
+        );
+
+        UpdateResult result = mongoTemplate
+            .getCollection(mongoTemplate.getCollectionName(InvertedIndex.class))
+            .updateMany(filter, pipeline);
+        System.out.println(
+            "Removed the postings of " + pageIds.size() + " pages from " + result.getModifiedCount() + " words"
+        );
+    }
 }
@@ -1,16 +1,15 @@
 package com.project.searchengine.server.service;
 
+import com.project.searchengine.indexer.Analyzer;
+import com.project.searchengine.indexer.ForwardIndex;
 import com.project.searchengine.server.model.Page;
 import com.project.searchengine.server.model.PageReference;
 import com.project.searchengine.server.repository.PageRepository;
 import java.util.*;
-import java.util.stream.Collectors;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
-import org.springframework.data.mongodb.core.query.Criteria;
-import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -22,21 +21,37 @@ public class PageReferenceService {
     @Autowired
     private PageRepository pageRepository;
 
-    public Map<String, Double> getPagesRanks(List<String> pageIds) {
-        Query query = Query.query(Criteria.where("_id").in(pageIds));
-        query.fields().include("rank");
-
-        List<Page> pages = mongoTemplate.find(query, Page.class);
+    @Autowired
+    private Analyzer analyzer;
 
-        return pages.stream().collect(Collectors.toMap(Page::getId, Page::getRank, (a, b) -> a));
-    }
+    @Autowired
+    private DocumentStoreService documentStoreService;
 
     public String getPageBodyContent(PageReference referencePage) {
         String pageId = referencePage.getPageId();
-        Page page = pageRepository.getPageById(pageId);
+        String content = documentStoreService.getDocument(pageId);
 
-        String content = page.getContent();
+        // Pages indexed before the document store keep their content
+        if (content == null) {
+            Page page = pageRepository.getPageById(pageId);
+            content = page.getContent();
+        }
 
         return content.toLowerCase();
     }
+
+    /**
+     * Loads the forward index of a page, only reading its encoded tokens from the database.
+     * Pages indexed before forward indexes were stored are tokenized from their content.
+     *
+     * @param referencePage The page to load.
+     * @return The forward index of the page body.
+     */
+    public ForwardIndex getPageForwardIndex(PageReference referencePage) {
+        Page page = pageRepository.findForwardIndexById(referencePage.getPageId());
+        if (page != null && page.getForwardIndex() != null) {
+            return new ForwardIndex(page.getForwardIndex());
+        }
+        return ForwardIndex.of(getPageBodyContent(referencePage), analyzer);
+    }
 }
@@ -5,6 +5,7 @@ import com.project.searchengine.server.model.Page;
 import com.project.searchengine.server.repository.PageRepository;
 import java.util.*;
 
+import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.*;
 import org.springframework.data.mongodb.core.query.Criteria;
@@ -15,6 +16,10 @@ import org.springframework.stereotype.Service;
 @Service
 public class PageService {
 
+    // The collection of the counter documents shared by the indexer and the query server
+    public static final String COUNTERS_COLLECTION = "counters";
+    private static final String RANK_GENERATION = "rankGeneration";
+
     @Autowired
     private PageRepository pageRepository;
 
@@ -56,6 +61,69 @@ public class PageService {
         return pageRepository.getPageById(id);
     }
 
+    /**
+     * Gets the hash of the crawled document each existing page was indexed from, in one query.
+     *
+     * @param pageIds Ids of the pages
+     * @return The existing pages with only their content hash, by id
+     */
+    public Map<String, Page> getContentHashes(Collection<String> pageIds) {
+        Map<String, Page> pages = new HashMap<>();
+        if (pageIds.isEmpty()) return pages;
+
+        Query query = new Query(Criteria.where("_id").in(pageIds));
+        query.fields().include("contentHash");
+        for (Page page : mongoTemplate.find(query, Page.class)) {
+            pages.put(page.getId(), page);
+        }
+        return pages;
+    }
+
+    /**
+     * Gets the term signatures of the postings pages were indexed with, in one query.
+     *
+     * @param pageIds Ids of the pages
+     * @return The signatures by page id, pages without signatures are left out
+     */
+    public Map<String, Map<String, Long>> getTermSignatures(Collection<String> pageIds) {
+        Map<String, Map<String, Long>> signatures = new HashMap<>();
+        if (pageIds.isEmpty()) return signatures;
+
+        Query query = new Query(Criteria.where("_id").in(pageIds));
+        query.fields().include("termSignatures");
+        for (Page page : mongoTemplate.find(query, Page.class)) {
+            if (page.getTermSignatures() != null) signatures.put(page.getId(), page.getTermSignatures());
+        }
+        return signatures;
+    }
+
+    /**
+     * Gets what is left of the texts pages were indexed from, in one query: their forward index,
+     * their title and, for pages indexed before the document store, their content.
+     *
+     * @param pageIds Ids of the pages
+     * @return The existing pages with only these fields, by id
+     */
+    public Map<String, Page> getIndexedTexts(Collection<String> pageIds) {
+        Map<String, Page> pages = new HashMap<>();
+        if (pageIds.isEmpty()) return pages;
+
+        Query query = new Query(Criteria.where("_id").in(pageIds));
+        query.fields().include("forwardIndex").include("title").include("content");
+        for (Page page : mongoTemplate.find(query, Page.class)) {
+            pages.put(page.getId(), page);
+        }
+        return pages;
+    }
+
+    /**
+     * @return The number of times the ranks were updated, 0 if they never were
+     */
+    public long getRankGeneration() {
+        Document generation = mongoTemplate.findById(RANK_GENERATION, Document.class, COUNTERS_COLLECTION);
+        return generation == null ? 0 : ((Number) generation.get("value")).longValue();
+    }
+
     /**
      * Bulk update the ranks of pages in the database.
      * This function uses MongoDB's bulk operations for efficiency.
@@ -76,6 +144,12 @@ public class PageService {
         }
 
         BulkWriteResult result = bulkOps.execute();
+        // Tells the query server to reload the ranks
+        mongoTemplate.upsert(
+            new Query(Criteria.where("_id").is(RANK_GENERATION)),
+            new Update().inc("value", 1),
+            COUNTERS_COLLECTION
+        );
         System.out.println(
                 "PageRank bulk update completed: " +
                         result.getModifiedCount() +
@@ -88,8 +162,11 @@ public class PageService {
      * Saves a list of pages in bulk to the database.
      *
      * @param pages List of Page objects to be saved
+     * @throws RuntimeException If the bulk write fails, some pages may have been saved
      */
     public void savePagesInBulk(List<Page> pages) {
+        // A batch of recrawled pages may have no new page
+        if (pages.isEmpty()) return;
         BulkOperations bulkOps = mongoTemplate.bulkOps(
                 BulkOperations.BulkMode.UNORDERED,
                 Page.class);
@@ -102,8 +179,72 @@ public class PageService {
         try {
             BulkWriteResult result = bulkOps.execute();
             System.out.println("Inserted Pages: " + result.getInsertedCount());
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
+            // Failing the flush lets the indexer roll the whole batch back
             System.err.println("Error saving pages: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * Replaces the indexed fields of reindexed pages in bulk, their URL and rank are kept.
+     *
+     * @param pages List of reindexed Page objects
+     * @throws RuntimeException If the bulk write fails, some pages may have been updated
+     */
+    public void updatePagesInBulk(List<Page> pages) {
+        if (pages.isEmpty()) return;
+        BulkOperations bulkOps = mongoTemplate.bulkOps(
+                BulkOperations.BulkMode.UNORDERED,
+                Page.class);
+
+        for (Page page : pages) {
+            org.bson.Document fields = new org.bson.Document();
+            mongoTemplate.getConverter().write(page, fields);
+            fields.remove("_id");
+            fields.remove("url");
+            fields.remove("rank");
+            fields.remove("_class");
+
+            Update update = Update.fromDocument(new org.bson.Document("$set", fields));
+            // The text moved to the document store
+            if (page.getContent() == null) update.unset("content");
+            bulkOps.updateOne(new Query(Criteria.where("_id").is(page.getId())), update);
+        }
+
+        try {
+            BulkWriteResult result = bulkOps.execute();
+            System.out.println("Updated Pages: " + result.getModifiedCount());
+        } catch (RuntimeException e) {
+            System.err.println("Error updating pages: " + e.getMessage());
+            throw e;
         }
     }
+
+    /**
+     * Deletes pages whatever batch wrote them, for reindexed pages of a rolled back batch that are
+     * then indexed again from scratch.
+     *
+     * @param pageIds The ids of the pages.
+     */
+    public void deletePages(List<String> pageIds) {
+        if (pageIds.isEmpty()) return;
+        long deleted = mongoTemplate.remove(new Query(Criteria.where("_id").in(pageIds)), Page.class)
+            .getDeletedCount();
+        System.out.println("Deleted " + deleted + " reindexed pages");
+    }
+
+    /**
+     * Deletes the pages written by an indexer batch that is rolled back. Pages with the same ids
+     * saved by another batch are kept.
+     *
+     * @param pageIds The ids of the pages of the batch.
+     * @param batchId The id of the batch.
+     */
+    public void deleteBatchPages(List<String> pageIds, String batchId) {
+        if (pageIds.isEmpty()) return;
+        Query query = new Query(Criteria.where("_id").in(pageIds).and("batchId").is(batchId));
+        long deleted = mongoTemplate.remove(query, Page.class).getDeletedCount();
+        System.out.println("Deleted " + deleted + " pages of batch " + batchId);
+    }
 }
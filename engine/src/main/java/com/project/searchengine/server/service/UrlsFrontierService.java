@@ -1,10 +1,15 @@
 package com.project.searchengine.server.service;
 
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import com.project.searchengine.server.model.UrlDocument;
 import com.project.searchengine.server.repository.UrlsFrontierRepository;
-import com.project.searchengine.utils.JsonParserUtil;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.bson.BsonType;
+import org.bson.RawBsonDocument;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.*;
 import org.springframework.data.mongodb.core.*;
@@ -25,14 +30,17 @@ public class UrlsFrontierService {
     }
 
     /**
-     * Retrieves the top 100 URLs sorted by frequency in descending order.
+     * Streams the URLs of the frontier with only their normalizedUrl, frequency and isCrawled
+     * fields, to load the frontier in memory.
      *
-     * @return List of up to 100 normalized URLs
+     * @param consumer Receives every URL document.
      */
-    public List<String> getTop100UrlsByFrequency() {
-        List<UrlDocument> topDocs =
-            urlsFrontierRepository.findTop100ByIsCrawledFalseOrderByFrequencyDesc();
-        return topDocs.stream().map(UrlDocument::getNormalizedUrl).collect(Collectors.toList());
+    public void forEachUrl(Consumer<UrlDocument> consumer) {
+        Query query = new Query();
+        query.fields().include("normalizedUrl").include("frequency").include("isCrawled");
+        try (Stream<UrlDocument> urls = mongoTemplate.stream(query, UrlDocument.class)) {
+            urls.forEach(consumer);
+        }
     }
 
     /**
@@ -55,24 +63,40 @@ public class UrlsFrontierService {
     }
 
     /**
-     * Upserts a URL: increments frequency by 1 if it exists; otherwise, creates a new document
-     * with frequency = 1.
+     * Writes a batch of changes of the in-memory frontier in one unordered bulk: the frequency of
+     * a URL is incremented with $inc, creating its document with the $setOnInsert default values
+     * if it is new, and a removed URL is deleted.
      *
-     * @param url The original URL to upsert
+     * @param changes The normalized URLs with their frequency increment, null for a removed URL
      */
-    public boolean upsertUrl(String url, int MAX_URLS) {
-        return urlsFrontierRepository.upsertUrl(url, MAX_URLS);
+    public void syncUrls(Map<String, Long> changes) {
+        if (changes.isEmpty()) return;
+        BulkOperations bulkOps = mongoTemplate.bulkOps(
+            BulkOperations.BulkMode.UNORDERED,
+            UrlDocument.class
+        );
+
+        for (Map.Entry<String, Long> change : changes.entrySet()) {
+            Query query = new Query(Criteria.where("normalizedUrl").is(change.getKey()));
+            if (change.getValue() == null) {
+                bulkOps.remove(query);
+            } else {
+                bulkOps.upsert(query, newUrlDefaults().inc("frequency", change.getValue()));
+            }
+        }
+        bulkOps.execute();
     }
 
     /**
-     * Initializes the frontier with a list of seed URLs.
-     *
-     * @param seedUrls List of seed URLs to insert
+     * @return An update setting the default values of a new URL document on insert
      */
-    public void initializeFrontier(List<String> seedUrls, int MAX_URLS) {
-        for (String url : seedUrls) {
-            upsertUrl(url, MAX_URLS);
-        }
+    private static Update newUrlDefaults() {
+        return new Update()
+            .setOnInsert("isCrawled", false)
+            .setOnInsert("isIndexed", false)
+            .setOnInsert("linkedPages", new ArrayList<>())
+            .setOnInsert("lastCrawled", "")
+            .setOnInsert("rank", 0.0);
     }
 
     /**
@@ -99,25 +123,24 @@ public class UrlsFrontierService {
     }
 
     /**
-     * Updates a document with the given normalizedUrl with the provided fields.
+     * Updates the document of a crawled URL with the provided fields. The document is created
+     * with the frequency of the given one if the frontier did not sync the URL yet.
+     * The frontier passes 0, its pending increments are added by the next sync.
      *
-     * @param normalizedUrl    The normalized URL of the document to update
-     * @param document         The new HTML content of the page
-     * @param hashedDocContent The new hashed content of the page
-     * @param linkedPages      The new list of linked URLs
-     * @param isCrawled        The new crawled status
-     * @param isIndexed        The new indexed status
+     * @param doc The crawled URL with its content, hash, linked pages, statuses and frequency
      */
     public void updateUrlDocument(UrlDocument doc) {
-        urlsFrontierRepository.updateUrlDocument(
-            doc.getNormalizedUrl(),
-            doc.getDocument(),
-            doc.getHashedDocContent(),
-            doc.getLinkedPages(),
-            doc.isCrawled(),
-            doc.isIndexed(),
-            doc.getLastCrawled()
-        );
+        Query query = new Query(Criteria.where("normalizedUrl").is(doc.getNormalizedUrl()));
+        Update update = new Update()
+            .set("document", doc.getDocument())
+            .set("hashedDocContent", doc.getHashedDocContent())
+            .set("linkedPages", doc.getLinkedPages())
+            .set("isCrawled", doc.isCrawled())
+            .set("isIndexed", doc.isIndexed())
+            .set("lastCrawled", doc.getLastCrawled())
+            .setOnInsert("frequency", doc.getFrequency())
+            .setOnInsert("rank", 0.0);
+        mongoTemplate.upsert(query, update, UrlDocument.class);
     }
 
     /**
@@ -149,6 +172,23 @@ public class UrlsFrontierService {
         return urlsFrontierRepository.findByIsIndexedFalseAndIsCrawledTrue(pageable).getContent();
     }
 
+    /**
+     * Get a list of URL documents that are not indexed yet, with an id greater than the given one,
+     * ordered by id. Used to page through the documents while earlier pages are still being indexed.
+     *
+     * @param lastId The id of the last document of the previous page, null for the first page
+     * @param limit The maximum number of documents to retrieve
+     * @return A list of URL documents that are not indexed yet
+     */
+    public List<UrlDocument> getNotIndexedDocumentsAfter(String lastId, int limit) {
+        Query query = new Query(Criteria.where("isIndexed").is(false).and("isCrawled").is(true));
+        if (lastId != null) {
+            query.addCriteria(Criteria.where("_id").gt(lastId));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(limit);
+        return mongoTemplate.find(query, UrlDocument.class);
+    }
+
     /**
      * Deletes a document with the given normalizedUrl from the database.
      *
@@ -159,13 +199,30 @@ public class UrlsFrontierService {
     }
 
     /**
-     * Retrieves all hashedDocContent values from the database.
+     * Streams all the hashedDocContent fingerprints from the database, read from the raw BSON of
+     * a projection without mapping the documents. Hashes stored as strings before fingerprints
+     * are skipped.
      *
-     * @return List of all hashedDocContent values
+     * @param consumer Receives the bytes of every fingerprint.
+     * @return The number of fingerprints read
      */
-    public List<String> findAllHashedDocContent() {
-        List<String> allHash = urlsFrontierRepository.findAllHashedDocContent();
-        return JsonParserUtil.parseSingleField(allHash, "hashedDocContent");
+    public long forEachHashedDocContent(Consumer<byte[]> consumer) {
+        long count = 0;
+        try (
+            MongoCursor<RawBsonDocument> cursor = mongoTemplate
+                .getCollection(mongoTemplate.getCollectionName(UrlDocument.class))
+                .withDocumentClass(RawBsonDocument.class)
+                .find(Filters.type("hashedDocContent", BsonType.BINARY))
+                .projection(Projections.fields(Projections.include("hashedDocContent"), Projections.excludeId()))
+                .batchSize(10_000)
+                .cursor()
+        ) {
+            while (cursor.hasNext()) {
+                consumer.accept(cursor.next().getBinary("hashedDocContent").getData());
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
@@ -187,8 +244,21 @@ public class UrlsFrontierService {
 
         try {
             bulkOps.execute();
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
+            // Failing the flush lets the indexer roll the whole batch back
             System.err.println("Error updating URL documents: " + e.getMessage());
+            throw e;
         }
     }
+
+    /**
+     * Marks URL documents as not indexed again, for an indexer batch that is rolled back.
+     *
+     * @param ids The ids of the URL documents.
+     */
+    public void resetIndexed(List<String> ids) {
+        if (ids.isEmpty()) return;
+        Query query = new Query(Criteria.where("_id").in(ids));
+        mongoTemplate.updateMulti(query, new Update().set("isIndexed", false), UrlDocument.class);
+    }
 }
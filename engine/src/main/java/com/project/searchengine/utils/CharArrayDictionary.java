@@ -0,0 +1,139 @@
+package com.project.searchengine.utils;
+
+import java.util.*;
+
+/**
+ * Assigns dense int ids to strings, and looks them up directly from a char buffer.
+ * Used in hot analysis paths so a token can be checked or interned without building a String.
+ *
+ * Open addressing hash table with linear probing, the strings are only created when added.
+ */
+public class CharArrayDictionary {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] table; // slot -> id + 1, 0 when empty
+    private String[] terms;
+    private int[] hashes;
+    private int size;
+
+    public CharArrayDictionary() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CharArrayDictionary(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(DEFAULT_CAPACITY, expectedSize) * 2 - 1) << 1;
+        this.table = new int[capacity];
+        this.terms = new String[capacity >> 1];
+        this.hashes = new int[capacity >> 1];
+    }
+
+    public CharArrayDictionary(Collection<String> terms) {
+        this(terms.size());
+        for (String term : terms) {
+            add(term);
+        }
+    }
+
+    /**
+     * @return The id of the chars, -1 if they were never added
+     */
+    public int get(char[] buffer, int offset, int length) {
+        int hash = hash(buffer, offset, length);
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (hashes[id] == hash && equals(terms[id], buffer, offset, length)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(char[] buffer, int offset, int length) {
+        return get(buffer, offset, length) >= 0;
+    }
+
+    /**
+     * Returns the id of the chars, adding them with the next id if they are new.
+     */
+    public int add(char[] buffer, int offset, int length) {
+        int id = get(buffer, offset, length);
+        return id >= 0 ? id : insert(new String(buffer, offset, length), hash(buffer, offset, length));
+    }
+
+    public int add(String term) {
+        char[] chars = term.toCharArray();
+        int id = get(chars, 0, chars.length);
+        return id >= 0 ? id : insert(term, hash(chars, 0, chars.length));
+    }
+
+    /**
+     * @return The string of an id
+     */
+    public String get(int id) {
+        if (id >= size) {
+            throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        }
+        return terms[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(table, 0);
+        Arrays.fill(terms, 0, size, null);
+        size = 0;
+    }
+
+    private int insert(String term, int hash) {
+        if ((size + 1) * 2 > table.length) {
+            rehash(table.length << 1);
+        }
+        if (size == terms.length) {
+            terms = Arrays.copyOf(terms, terms.length << 1);
+            hashes = Arrays.copyOf(hashes, hashes.length << 1);
+        }
+
+        int id = size++;
+        terms[id] = term;
+        hashes[id] = hash;
+        place(id);
+        return id;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        for (int id = 0; id < size; id++) {
+            place(id);
+        }
+    }
+
+    private void place(int id) {
+        int mask = table.length - 1;
+        int slot = hashes[id] & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id + 1;
+    }
+
+    private static int hash(char[] buffer, int offset, int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        // Spread the high bits, the table only uses the low ones
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equals(String term, char[] buffer, int offset, int length) {
+        if (term.length() != length) return false;
+        for (int i = 0; i < length; i++) {
+            if (term.charAt(i) != buffer[offset + i]) return false;
+        }
+        return true;
+    }
+}
@@ -1,6 +1,7 @@
 package com.project.searchengine.utils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -58,4 +59,20 @@ public class CompressionUtil {
             return null;
         }
     }
+
+    /**
+     * Opens a reader decompressing a GZIP byte array as it is read, so the
+     * document is never held as a whole string.
+     *
+     * @param compressedData the compressed data as a byte array
+     * @return a reader over the decompressed UTF-8 text
+     * @throws IOException if the data is not in the GZIP format
+     */
+    public static Reader decompressToReader(byte[] compressedData) throws IOException {
+        GZIPInputStream gzipInputStream = new GZIPInputStream(
+            new ByteArrayInputStream(compressedData),
+            8192
+        );
+        return new InputStreamReader(gzipInputStream, StandardCharsets.UTF_8);
+    }
 }
@@ -0,0 +1,100 @@
+package com.project.searchengine.utils;
+
+/**
+ * A 128-bit fingerprint of a string or document, held as two longs.
+ *
+ * It is stored as 16 bytes (a BSON binary) or written as 32 hex chars, half the size of a
+ * SHA-256 hex digest.
+ */
+public final class Fingerprint {
+
+    public static final int BYTES = 16;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final long high;
+    private final long low;
+
+    public Fingerprint(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    /**
+     * @return The 16 bytes of the fingerprint, big-endian
+     */
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * @param bytes The 16 bytes of a fingerprint, from toBytes.
+     * @return The fingerprint
+     */
+    public static Fingerprint fromBytes(byte[] bytes) {
+        if (bytes.length != BYTES) {
+            throw new IllegalArgumentException("A fingerprint has " + BYTES + " bytes: " + bytes.length);
+        }
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = (high << 8) | (bytes[i] & 0xFF);
+            low = (low << 8) | (bytes[8 + i] & 0xFF);
+        }
+        return new Fingerprint(high, low);
+    }
+
+    /**
+     * @return The 32 hex chars of the fingerprint
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[2 * BYTES];
+        for (int i = 0; i < 16; i++) {
+            chars[i] = HEX[(int) (high >>> (60 - 4 * i)) & 0xF];
+            chars[16 + i] = HEX[(int) (low >>> (60 - 4 * i)) & 0xF];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @param hex The 32 hex chars of a fingerprint, from toString.
+     * @return The fingerprint
+     */
+    public static Fingerprint fromString(String hex) {
+        if (hex.length() != 2 * BYTES) {
+            throw new IllegalArgumentException("A fingerprint has " + 2 * BYTES + " hex chars: " + hex);
+        }
+        return new Fingerprint(
+            Long.parseUnsignedLong(hex.substring(0, 16), 16),
+            Long.parseUnsignedLong(hex.substring(16), 16)
+        );
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof Fingerprint)) return false;
+        Fingerprint fingerprint = (Fingerprint) other;
+        return high == fingerprint.high && low == fingerprint.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // The bits are already uniformly distributed
+        return (int) low;
+    }
+}
@@ -0,0 +1,163 @@
+package com.project.searchengine.utils;
+
+import java.io.*;
+import java.nio.file.*;
+
+/**
+ * A set of 128-bit fingerprints in a primitive open-addressing table.
+ * Every slot is two longs of a single long[], so a fingerprint costs 16 bytes per slot instead of
+ * a hex String plus a hash set entry. Slots are probed linearly from the low bits of the
+ * fingerprint, which are already uniformly distributed.
+ *
+ * The set can be written to a snapshot file and read back without rehashing its entries.
+ * All the methods are synchronized, it is shared by the crawler threads.
+ */
+public class FingerprintSet {
+
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MIN_SLOTS = 16;
+
+    // (high, low) pairs, (0, 0) marks an empty slot
+    private long[] table;
+    private int size;
+    // The zero fingerprint cannot be stored in a slot
+    private boolean containsZero;
+
+    public FingerprintSet() {
+        this(0);
+    }
+
+    /**
+     * @param expectedSize The number of fingerprints the set is sized for.
+     */
+    public FingerprintSet(int expectedSize) {
+        this.table = new long[2 * slotsFor(expectedSize)];
+    }
+
+    /**
+     * @return The power of two number of slots holding the given size under a 2/3 load
+     */
+    private static int slotsFor(int size) {
+        int slots = MIN_SLOTS;
+        while (slots * 2L < size * 3L) slots <<= 1;
+        return slots;
+    }
+
+    /**
+     * Adds a fingerprint to the set.
+     *
+     * @return true if it was not in the set
+     */
+    public synchronized boolean add(Fingerprint fingerprint) {
+        return add(fingerprint.getHigh(), fingerprint.getLow());
+    }
+
+    private boolean add(long high, long low) {
+        if (high == 0 && low == 0) {
+            if (containsZero) return false;
+            containsZero = true;
+            size++;
+            return true;
+        }
+
+        int slot = findSlot(table, high, low);
+        if (table[2 * slot] == high && table[2 * slot + 1] == low) return false;
+
+        table[2 * slot] = high;
+        table[2 * slot + 1] = low;
+        size++;
+        if (size * 3L > table.length) grow();
+        return true;
+    }
+
+    public synchronized boolean contains(Fingerprint fingerprint) {
+        long high = fingerprint.getHigh();
+        long low = fingerprint.getLow();
+        if (high == 0 && low == 0) return containsZero;
+
+        int slot = findSlot(table, high, low);
+        return table[2 * slot] == high && table[2 * slot + 1] == low;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return The slot holding the fingerprint, or the empty slot where it belongs
+     */
+    private static int findSlot(long[] table, long high, long low) {
+        int mask = table.length / 2 - 1;
+        int slot = (int) low & mask;
+        while (true) {
+            long slotHigh = table[2 * slot];
+            long slotLow = table[2 * slot + 1];
+            if ((slotHigh == high && slotLow == low) || (slotHigh == 0 && slotLow == 0)) return slot;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private void grow() {
+        long[] grown = new long[table.length * 2];
+        for (int i = 0; i < table.length; i += 2) {
+            long high = table[i];
+            long low = table[i + 1];
+            if (high == 0 && low == 0) continue;
+            int slot = findSlot(grown, high, low);
+            grown[2 * slot] = high;
+            grown[2 * slot + 1] = low;
+        }
+        table = grown;
+    }
+
+    /**
+     * Writes the set to a snapshot file, replaced atomically.
+     *
+     * @param path The snapshot file.
+     */
+    public synchronized void writeSnapshot(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16)
+            )
+        ) {
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(size);
+            out.writeBoolean(containsZero);
+            out.writeInt(table.length);
+            for (long value : table) {
+                out.writeLong(value);
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a set from a snapshot file written by writeSnapshot.
+     *
+     * @param path The snapshot file.
+     * @return The set
+     */
+    public static FingerprintSet readSnapshot(Path path) throws IOException {
+        try (
+            DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16)
+            )
+        ) {
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported fingerprint snapshot version " + version + ": " + path);
+            }
+
+            FingerprintSet set = new FingerprintSet();
+            set.size = in.readInt();
+            set.containsZero = in.readBoolean();
+            set.table = new long[in.readInt()];
+            for (int i = 0; i < set.table.length; i++) {
+                set.table[i] = in.readLong();
+            }
+            return set;
+        }
+    }
+}
@@ -1,25 +1,135 @@
 package com.project.searchengine.utils;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
- * HashManager is a utility class for hashing strings using SHA-256.
- * It provides a method to hash an input string and return the hexadecimal representation of the hash.
+ * HashManager is a utility class for hashing strings.
+ *
+ * - fingerprint: a 128-bit MurmurHash3 (x64 variant), fast and non-cryptographic, for the
+ *   content hashes of the crawled documents and the compact page ids.
+ * - hash: the SHA-256 hex digest the page ids were made of before, computed with a digest
+ *   pooled per thread.
  */
 public class HashManager {
-    public static String hash(String input) {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
         try {
-            java.security.MessageDigest digest = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] hashBytes = digest.digest(input.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hashBytes) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            return hexString.toString();
-        } catch (java.security.NoSuchAlgorithmException e) {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
             throw new RuntimeException(e);
         }
+    });
+
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    /**
+     * @return The SHA-256 digest of the UTF-8 bytes of the input, as 64 hex chars
+     */
+    public static String hash(String input) {
+        MessageDigest digest = SHA_256.get();
+        byte[] hashBytes = digest.digest(input.getBytes(StandardCharsets.UTF_8));
+
+        char[] hexChars = new char[hashBytes.length * 2];
+        for (int i = 0; i < hashBytes.length; i++) {
+            hexChars[2 * i] = HEX[(hashBytes[i] >> 4) & 0xF];
+            hexChars[2 * i + 1] = HEX[hashBytes[i] & 0xF];
+        }
+        return new String(hexChars);
+    }
+
+    /**
+     * @return The 128-bit fingerprint of the UTF-8 bytes of the input
+     */
+    public static Fingerprint fingerprint(String input) {
+        return fingerprint(input.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The 128-bit fingerprint of the bytes
+     */
+    public static Fingerprint fingerprint(byte[] data) {
+        return murmur3(data, 0);
+    }
+
+    /**
+     * MurmurHash3_x64_128, the high long of the fingerprint is h1 and the low one h2.
+     */
+    static Fingerprint murmur3(byte[] data, long seed) {
+        int length = data.length;
+        int blocks = length / 16;
+        long h1 = seed;
+        long h2 = seed;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLongLittleEndian(data, 16 * i);
+            long k2 = getLongLittleEndian(data, 16 * i + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        // The last 0 to 15 bytes
+        int tail = 16 * blocks;
+        long k1 = 0;
+        long k2 = 0;
+        for (int i = length - tail - 1; i >= 8; i--) {
+            k2 ^= (long) (data[tail + i] & 0xFF) << (8 * (i - 8));
+        }
+        for (int i = Math.min(length - tail, 8) - 1; i >= 0; i--) {
+            k1 ^= (long) (data[tail + i] & 0xFF) << (8 * i);
+        }
+        if (length - tail > 8) h2 ^= mixK2(k2);
+        if (length - tail > 0) h1 ^= mixK1(k1);
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new Fingerprint(h1, h2);
+    }
+
+    private static long getLongLittleEndian(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        return k1 * C2;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        return k2 * C1;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
     }
 }
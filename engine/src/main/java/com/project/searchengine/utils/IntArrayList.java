@@ -0,0 +1,93 @@
+package com.project.searchengine.utils;
+
+import java.util.*;
+
+/**
+ * A growable array of primitive ints.
+ * Used in hot indexing paths to avoid boxing every value into a List<Integer>.
+ */
+public class IntArrayList {
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private int[] values;
+    private int size;
+
+    public IntArrayList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IntArrayList(int initialCapacity) {
+        this.values = new int[Math.max(1, initialCapacity)];
+        this.size = 0;
+    }
+
+    /**
+     * Appends a value to the end of the list.
+     *
+     * @param value The value to append.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length << 1);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        return values[index];
+    }
+
+    public void set(int index, int value) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Adds delta to the value at the given index.
+     *
+     * @param index The index of the value to update.
+     * @param delta The amount to add.
+     */
+    public void increment(int index, int delta) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        values[index] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * @return A boxed copy of the values in the range [from, to)
+     */
+    public List<Integer> toList(int from, int to) {
+        List<Integer> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            result.add(values[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return A copy of the values as a primitive array
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -0,0 +1,127 @@
+package com.project.searchengine.crawler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FrontierTableTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<String> urls(List<FrontierTable.Entry> entries) {
+        List<String> urls = new ArrayList<>();
+        entries.forEach(entry -> urls.add(entry.getUrl()));
+        return urls;
+    }
+
+    @Test
+    void add_shouldCountFrequenciesAndRejectNewUrlsWhenFull() {
+        FrontierTable table = new FrontierTable();
+        assertTrue(table.add("a", 2));
+        assertTrue(table.add("b", 2));
+        assertTrue(table.add("b", 2));
+        assertFalse(table.add("c", 2));
+        // A seen URL is still counted
+        assertTrue(table.add("a", 2));
+        assertTrue(table.add("a", 2));
+
+        assertEquals(2, table.size());
+        assertEquals(List.of("a", "b"), urls(table.claimTop(10)));
+        assertEquals(List.of(), table.claimTop(10));
+        assertEquals(3, table.getFrequency("a"));
+    }
+
+    @Test
+    void drainChanges_shouldReturnTheIncrementsAndRemovalsSinceTheLastSync() {
+        FrontierTable table = new FrontierTable();
+        table.load("crawled", 4, true);
+        table.add("a", 10);
+        table.add("crawled", 10);
+        table.add("b", 10);
+        table.remove("b");
+
+        Map<String, Long> changes = table.drainChanges(2);
+        assertEquals(List.of("a", "crawled"), new ArrayList<>(changes.keySet()));
+        // Loaded with frequency 4, counted once since
+        assertEquals(1L, changes.get("crawled"));
+        assertTrue(table.hasChanges());
+
+        changes = table.drainChanges(10);
+        assertTrue(changes.containsKey("b"));
+        assertNull(changes.get("b"));
+        assertFalse(table.hasChanges());
+        // The crawled URL is not ready
+        assertEquals(List.of("a"), urls(table.claimTop(10)));
+    }
+
+    @Test
+    void restoreChanges_shouldMergeTheFailedChangesWithTheNewOnes() {
+        FrontierTable table = new FrontierTable();
+        assertEquals(3, table.addAll(List.of("a", "a", "b"), 10));
+        table.add("c", 10);
+        table.remove("c");
+        Map<String, Long> failed = table.drainChanges(10);
+
+        table.add("a", 10);
+        table.remove("b");
+        table.restoreChanges(failed);
+
+        Map<String, Long> changes = table.drainChanges(10);
+        assertEquals(3L, changes.get("a"));
+        // Removed since, the failed increment is dropped
+        assertTrue(changes.containsKey("b"));
+        assertNull(changes.get("b"));
+        assertTrue(changes.containsKey("c"));
+        assertNull(changes.get("c"));
+    }
+
+    @Test
+    void add_shouldIgnoreARemovedUrlFoundAgain() {
+        FrontierTable table = new FrontierTable();
+        table.add("a", 2);
+        assertEquals(List.of("a"), urls(table.claimTop(10)));
+        table.remove("a");
+
+        assertFalse(table.add("a", 2));
+        assertEquals(0, table.addAll(List.of("a", "a"), 2));
+        assertEquals(List.of(), table.claimTop(10));
+        assertEquals(1, table.getFrequency("a"));
+
+        // The tombstone counts toward the maximum size
+        assertTrue(table.add("b", 2));
+        assertFalse(table.add("c", 2));
+        assertEquals(2, table.size());
+
+        Map<String, Long> changes = table.drainChanges(10);
+        assertNull(changes.get("a"));
+        assertEquals(1L, changes.get("b"));
+    }
+
+    @Test
+    void readSnapshot_shouldRestoreTheUrlsAndTheUnsyncedChanges() throws Exception {
+        FrontierTable table = new FrontierTable();
+        table.load("synced", 3, false);
+        table.load("crawled", 1, true);
+        table.load("removed", 1, false);
+        table.add("new", 10);
+        table.remove("removed");
+
+        Path path = tempDir.resolve("frontier.checkpoint");
+        table.writeSnapshot(path);
+        FrontierTable read = FrontierTable.readSnapshot(path);
+
+        // The tombstone still counts
+        assertEquals(4, read.size());
+        assertTrue(read.isRemoved("removed"));
+        assertEquals(3, read.getFrequency("synced"));
+        assertEquals(List.of("synced", "new"), urls(read.claimTop(10)));
+        Map<String, Long> changes = read.drainChanges(10);
+        assertEquals(Set.of("new", "removed"), changes.keySet());
+        assertEquals(1L, changes.get("new"));
+        assertNull(changes.get("removed"));
+    }
+}
@@ -0,0 +1,53 @@
+package com.project.searchengine.crawler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+class HostSchedulerTest {
+
+    @Test
+    void poll_shouldAlternateHostsAndWaitForTheirDelay() {
+        HostScheduler scheduler = new HostScheduler(10);
+        scheduler.add("https://wiki.org/a", 100);
+        scheduler.add("https://wiki.org/b", 100);
+        scheduler.add("https://blog.com/a", 1);
+
+        assertEquals("https://wiki.org/a", scheduler.poll(0));
+        // wiki.org is being fetched, the lower priority host goes next
+        assertEquals("https://blog.com/a", scheduler.poll(0));
+        assertNull(scheduler.poll(0));
+        assertEquals(-1, scheduler.millisUntilNext(0));
+
+        scheduler.finished("https://wiki.org/a", 1000);
+        assertEquals(1000, scheduler.millisUntilNext(0));
+        assertNull(scheduler.poll(999));
+        assertEquals("https://wiki.org/b", scheduler.poll(1000));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    void poll_shouldKeepTheDelayOfAHostWithoutQueuedUrls() {
+        HostScheduler scheduler = new HostScheduler(10);
+        scheduler.add("https://wiki.org/a", 1);
+        assertEquals("https://wiki.org/a", scheduler.poll(0));
+        scheduler.finished("https://wiki.org/a", 5000);
+
+        scheduler.add("https://wiki.org/b", 1);
+        assertNull(scheduler.poll(100));
+        assertEquals("https://wiki.org/b", scheduler.poll(5000));
+    }
+
+    @Test
+    void poll_shouldFillTheBackQueuesByPriority() {
+        HostScheduler scheduler = new HostScheduler(1);
+        scheduler.add("https://low.com/", 1);
+        scheduler.add("https://high.com/", 1000);
+
+        assertEquals("https://high.com/", scheduler.poll(0));
+        // The only back queue is held by high.com until its fetch is finished
+        assertNull(scheduler.poll(0));
+        scheduler.finished("https://high.com/", 0);
+        assertEquals("https://low.com/", scheduler.poll(0));
+    }
+}
@@ -1,10 +1,31 @@
 package com.project.searchengine.crawler;
 
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class RobotsHandlerTest {
 
+    private static final byte[] DISALLOW_PRIVATE =
+        "User-agent: *\nDisallow: /private\nCrawl-delay: 2\n".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void clearCache() {
+        RobotsHandler.clearSharedCache();
+    }
+
     @Test
     public void testAllowedUrl_ReturnsTrue() {
         RobotsHandler handler = new RobotsHandler();
@@ -20,4 +41,70 @@ public class RobotsHandlerTest {
         boolean result = handler.isUrlAllowed("https://www.facebook.com/private");
         assertFalse(result, "Facebook's private paths should be disallowed");
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentMisses_FetchOnce() throws Exception {
+        AtomicInteger fetches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        RobotsHandler handler = new RobotsHandler(url -> {
+            fetches.incrementAndGet();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return new RobotsHandler.RobotsTxt(200, DISALLOW_PRIVATE, "text/plain");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(executor.submit(() -> handler.isUrlAllowed("https://example.com/private/page")));
+        }
+        Thread.sleep(200);
+        release.countDown();
+        for (Future<Boolean> result : results) {
+            assertFalse(result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        assertEquals(1, fetches.get());
+        assertEquals(2000, handler.getCrawlDelay("https://example.com/"));
+    }
+
+    @Test
+    public void testFailedFetch_IsCachedAsAllowAll() {
+        AtomicInteger fetches = new AtomicInteger();
+        RobotsHandler handler = new RobotsHandler(url -> {
+            fetches.incrementAndGet();
+            throw new IOException("timeout");
+        });
+
+        assertTrue(handler.isUrlAllowed("https://example.com/private"));
+        assertTrue(handler.isUrlAllowed("https://example.com/other"));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void testSavedCache_IsLoadedWithoutFetching() throws Exception {
+        RobotsHandler handler = new RobotsHandler(url ->
+            url.startsWith("https://example.com")
+                ? new RobotsHandler.RobotsTxt(200, DISALLOW_PRIVATE, "text/plain")
+                : new RobotsHandler.RobotsTxt(503, new byte[0], null)
+        );
+        handler.isUrlAllowed("https://example.com/");
+        handler.isUrlAllowed("https://down.com/");
+
+        Path path = tempDir.resolve("robots.cache");
+        RobotsHandler.saveSharedCache(path);
+        RobotsHandler.clearSharedCache();
+        // The failed fetch is not saved
+        assertEquals(1, RobotsHandler.loadSharedCache(path));
+
+        RobotsHandler offline = new RobotsHandler(url -> {
+            throw new IOException("offline");
+        });
+        assertFalse(offline.isUrlAllowed("https://example.com/private"));
+        assertEquals(2000, offline.getCrawlDelay("https://example.com/"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.project.searchengine.crawler;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.server.model.UrlDocument;
+import com.project.searchengine.server.service.UrlsFrontierService;
+import java.util.*;
+import java.util.function.Consumer;
+import org.junit.jupiter.api.Test;
+
+class UrlsFrontierTest {
+
+    private static UrlDocument url(String normalizedUrl, long frequency, boolean crawled) {
+        return new UrlDocument(normalizedUrl, frequency, crawled, null, null, List.of(), null);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void nextUrl_shouldServeTheLoadedUrlsByFrequencyOnce() {
+        UrlsFrontierService service = mock(UrlsFrontierService.class);
+        doAnswer(invocation -> {
+            Consumer<UrlDocument> consumer = invocation.getArgument(0);
+            consumer.accept(url("https://a.com/", 1, false));
+            consumer.accept(url("https://b.com/", 5, false));
+            consumer.accept(url("https://c.com/", 9, true));
+            return null;
+        }).when(service).forEachUrl(any(Consumer.class));
+        UrlsFrontier frontier = new UrlsFrontier(service, "", "", 1000, 100);
+        frontier.loadFrontier();
+
+        assertFalse(frontier.shouldInitializeFrontier());
+        assertEquals("https://b.com/", frontier.nextUrl());
+        assertEquals("https://a.com/", frontier.nextUrl());
+        // c is crawled, a and b are claimed
+        assertNull(frontier.nextUrl());
+        frontier.closeFrontier();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void closeFrontier_shouldSyncTheDiscoveredUrls() {
+        UrlsFrontierService service = mock(UrlsFrontierService.class);
+        UrlsFrontier frontier = new UrlsFrontier(service, "", "", 1000, 100);
+        frontier.loadFrontier();
+
+        assertTrue(frontier.handleUrl("https://a.com/"));
+        assertTrue(frontier.handleUrl("https://a.com/"));
+        assertTrue(frontier.handleUrl("https://b.com/"));
+        frontier.removeUrl("https://b.com/");
+        assertFalse(frontier.hasReachedThreshold());
+        frontier.closeFrontier();
+
+        Map<String, Long> changes = new HashMap<>();
+        changes.put("https://a.com/", 2L);
+        changes.put("https://b.com/", null);
+        verify(service).syncUrls(changes);
+    }
+}
@@ -0,0 +1,161 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import opennlp.tools.stemmer.PorterStemmer;
+import opennlp.tools.tokenize.SimpleTokenizer;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class AnalyzerTest {
+
+    private static final String TEXT =
+        "The Quick brown foxes were JUMPING over 12 lazy dogs... (again!) -- e-mail: dora@example.com " +
+        "Running runners ran; café naïve résumé x y ok?? It's 2024 and the children's books are reading";
+
+    private final StopWordFilter stopWordFilter = new StopWordFilter();
+    private final Analyzer analyzer = new Analyzer(stopWordFilter);
+
+    /**
+     * The previous analysis: SimpleTokenizer over the lower cased text, then a stop word check,
+     * a regex and a new String from the stemmer for every token.
+     */
+    private List<String> previousAnalysis(String text, PorterStemmer stemmer) {
+        List<String> terms = new ArrayList<>();
+        String[] tokens = SimpleTokenizer.INSTANCE.tokenize(text.toLowerCase());
+        for (int position = 0; position < tokens.length; position++) {
+            String token = tokens[position];
+            if (stopWordFilter.isStopWord(token)) continue;
+            String stemmed = stemmer.stem(token.replaceAll("[^a-z]", ""));
+            if (stemmed.length() >= 2) terms.add(position + ":" + stemmed);
+        }
+        return terms;
+    }
+
+    private List<String> analysis(String text) {
+        List<String> terms = new ArrayList<>();
+        analyzer.analyze(text, (start, end, position, term, termLength) -> {
+            if (termLength > 0) terms.add(position + ":" + new String(term, 0, termLength));
+        });
+        return terms;
+    }
+
+    @Test
+    void analyze_shouldMatchThePreviousTokenizerPositionsAndTerms() {
+        assertEquals(previousAnalysis(TEXT, new PorterStemmer()), analysis(TEXT));
+    }
+
+    @Test
+    void tokenize_shouldSplitLikeSimpleTokenizer() {
+        String text = TEXT.toLowerCase();
+        assertArrayEquals(SimpleTokenizer.INSTANCE.tokenize(text), analyzer.tokenize(text));
+    }
+
+    @Test
+    void analyzeToken_shouldStemAndFilter() {
+        assertEquals("run", analyzer.analyzeToken("Running"));
+        assertNull(analyzer.analyzeToken("the"));
+        assertNull(analyzer.analyzeToken("2024"));
+        assertNull(analyzer.analyzeToken("x"));
+    }
+
+    @Test
+    void analyze_shouldServeRepeatedWordsFromTheCache() {
+        Analyzer cached = new Analyzer(stopWordFilter, 1024);
+        cached.analyze("running dogs", (start, end, position, term, termLength) -> {});
+        assertEquals(0, cached.getCache().getHits());
+        assertEquals(2, cached.getCache().getMisses());
+
+        cached.analyze("Running DOGS running the", (start, end, position, term, termLength) -> {});
+        assertEquals(3, cached.getCache().getHits());
+        assertEquals(3, cached.getCache().getMisses());
+        assertEquals("run", cached.analyzeToken("RUNNING"));
+    }
+
+    @Test
+    void analyze_shouldGiveTheSameTermsWhenTheCacheEvicts() {
+        Analyzer tiny = new Analyzer(stopWordFilter, 2);
+        List<String> expected = analysis(TEXT);
+        for (int i = 0; i < 3; i++) {
+            List<String> terms = new ArrayList<>();
+            tiny.analyze(TEXT, (start, end, position, term, termLength) -> {
+                if (termLength > 0) terms.add(position + ":" + new String(term, 0, termLength));
+            });
+            assertEquals(expected, terms);
+        }
+    }
+
+    @Test
+    void analyze_shouldBeSafeToShareBetweenThreads() throws Exception {
+        Analyzer shared = new Analyzer(stopWordFilter, 16);
+        List<String> expected = analysis(TEXT);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int task = 0; task < 8; task++) {
+                results.add(
+                    executor.submit(() -> {
+                        for (int i = 0; i < 200; i++) {
+                            List<String> terms = new ArrayList<>();
+                            shared.analyze(TEXT, (start, end, position, term, termLength) -> {
+                                if (termLength > 0) {
+                                    terms.add(position + ":" + new String(term, 0, termLength));
+                                }
+                            });
+                            if (!expected.equals(terms)) return false;
+                        }
+                        return true;
+                    })
+                );
+            }
+            for (Future<Boolean> result : results) {
+                assertTrue(result.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark_shouldPrintTokensPerSecond() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            builder.append(TEXT).append(' ');
+        }
+        String text = builder.toString();
+        PorterStemmer stemmer = new PorterStemmer();
+        int[] sink = new int[1];
+
+        // Warm up both paths before timing them
+        for (int i = 0; i < 3; i++) {
+            previousAnalysis(text, stemmer);
+            analyzer.analyze(text, (start, end, position, term, termLength) -> sink[0] += termLength);
+        }
+
+        long start = System.nanoTime();
+        int tokens = SimpleTokenizer.INSTANCE.tokenize(text.toLowerCase()).length;
+        previousAnalysis(text, stemmer);
+        long previousNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int analyzedTokens = analyzer.analyze(text, (s, e, position, term, termLength) ->
+            sink[0] += termLength
+        );
+        long analyzerNanos = System.nanoTime() - start;
+
+        System.out.println(
+            "Analyzed " +
+            tokens +
+            " tokens: previous path " +
+            (tokens * 1_000_000_000L / previousNanos) +
+            " tokens/s, analyzer " +
+            (tokens * 1_000_000_000L / analyzerNanos) +
+            " tokens/s"
+        );
+        System.out.println(analyzer.getCache());
+        assertEquals(tokens, analyzedTokens);
+    }
+}
@@ -0,0 +1,179 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.server.model.Page;
+import com.project.searchengine.server.service.PageService;
+import java.util.*;
+import java.util.concurrent.*;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DocIdDictionaryTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final PageService pageService = mock(PageService.class);
+    private final List<Page> storedPages = new ArrayList<>();
+    private int counter = 0;
+    // Holds the next rank reload in its query until released
+    private CountDownLatch rankQueryStarted = null;
+    private final CountDownLatch releaseRankQuery = new CountDownLatch(1);
+
+    private DocIdDictionary dictionary() {
+        when(mongoTemplate.stream(any(Query.class), eq(Page.class))).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            if (rankQueryStarted != null && !query.getFieldsObject().containsKey("url")) {
+                rankQueryStarted.countDown();
+                releaseRankQuery.await(10, TimeUnit.SECONDS);
+            }
+            Document docId = (Document) query.getQueryObject().get("docId");
+            return new ArrayList<>(storedPages).stream().filter(page -> matches(docId, page.getDocId()));
+        });
+        when(
+            mongoTemplate.findAndModify(
+                any(Query.class),
+                any(Update.class),
+                any(FindAndModifyOptions.class),
+                eq(Document.class),
+                eq(PageService.COUNTERS_COLLECTION)
+            )
+        ).thenAnswer(invocation -> {
+            counter += DocIdDictionary.ID_BLOCK_SIZE;
+            return new Document("value", counter);
+        });
+
+        DocIdDictionary dictionary = new DocIdDictionary();
+        ReflectionTestUtils.setField(dictionary, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(dictionary, "pageService", pageService);
+        return dictionary;
+    }
+
+    private static boolean matches(Document condition, int docId) {
+        if (condition == null || condition.containsKey("$exists")) return true;
+        if (condition.containsKey("$gt")) return docId > (Integer) condition.get("$gt");
+        return ((Collection<?>) condition.get("$in")).contains(docId);
+    }
+
+    private static void expireRefreshInterval(DocIdDictionary dictionary) {
+        ReflectionTestUtils.setField(dictionary, "lastRefresh", System.nanoTime() - 2_000_000_000L);
+    }
+
+    private static Page page(String id, int docId) {
+        Page page = new Page(id, "https://example.com/" + id, id, null, 0);
+        page.setDocId(docId);
+        return page;
+    }
+
+    @Test
+    void assign_shouldTakeDocIdsFromTheReservedBlocks() {
+        // Another indexer run reserved the first block
+        counter = DocIdDictionary.ID_BLOCK_SIZE;
+        DocIdDictionary dictionary = dictionary();
+
+        int first = dictionary.assign("a", "https://example.com/a");
+        int second = dictionary.assign("b", "https://example.com/b");
+
+        assertEquals(DocIdDictionary.ID_BLOCK_SIZE, first);
+        assertEquals(first + 1, second);
+        assertEquals(first, dictionary.assign("a", "https://example.com/a"));
+        assertEquals("b", dictionary.getPageId(second));
+        verify(mongoTemplate, times(1)).findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Document.class),
+            eq(PageService.COUNTERS_COLLECTION)
+        );
+    }
+
+    @Test
+    void getDocId_shouldNeverAssignDocIds() {
+        storedPages.add(page("a", 0));
+        DocIdDictionary dictionary = dictionary();
+
+        assertEquals(0, dictionary.getDocId("a"));
+        assertEquals(DocIdDictionary.NO_DOC_ID, dictionary.getDocId("unknown"));
+        assertEquals(1, dictionary.size());
+        verify(mongoTemplate, never()).bulkOps(any(BulkOperations.BulkMode.class), eq(Page.class));
+        verify(mongoTemplate, never()).findAndModify(
+            any(Query.class),
+            any(Update.class),
+            any(FindAndModifyOptions.class),
+            eq(Document.class),
+            anyString()
+        );
+    }
+
+    @Test
+    void refresh_shouldLoadTheDocIdsCommittedBelowTheHighestLoadedOne() {
+        storedPages.add(page("a", 0));
+        storedPages.add(page("c", 2));
+        DocIdDictionary dictionary = dictionary();
+        assertEquals(3, dictionary.size());
+        assertNull(dictionary.getUrl(1));
+
+        // The flush holding doc id 1 commits after the one holding doc id 2
+        storedPages.add(page("b", 1));
+        storedPages.add(page("d", 3));
+        expireRefreshInterval(dictionary);
+
+        assertEquals("https://example.com/b", dictionary.getUrl(1));
+        assertEquals(1, dictionary.getDocId("b"));
+        assertEquals("d", dictionary.getPageId(3));
+    }
+
+    @Test
+    void getRanks_shouldReloadTheRanksOfANewRankGeneration() {
+        Page page = page("a", 0);
+        page.setRank(0.1);
+        storedPages.add(page);
+        DocIdDictionary dictionary = dictionary();
+        assertEquals(0.1, dictionary.getRanks(new int[] { 0 })[0], 1e-9);
+
+        // PageRank ran since the ranks were loaded
+        page.setRank(0.7);
+        when(pageService.getRankGeneration()).thenReturn(1L);
+        ReflectionTestUtils.setField(dictionary, "lastRankRefresh", System.nanoTime() - 20_000_000_000L);
+
+        assertEquals(0.7, dictionary.getRanks(new int[] { 0 })[0], 1e-9);
+    }
+
+    @Test
+    void getRanks_shouldNotBlockLookupsWhileReloadingTheRanks() throws Exception {
+        Page page = page("a", 0);
+        page.setRank(0.1);
+        storedPages.add(page);
+        DocIdDictionary dictionary = dictionary();
+        dictionary.size();
+
+        page.setRank(0.7);
+        when(pageService.getRankGeneration()).thenReturn(1L);
+        ReflectionTestUtils.setField(dictionary, "lastRankRefresh", System.nanoTime() - 20_000_000_000L);
+        rankQueryStarted = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<double[]> reload = executor.submit(() -> dictionary.getRanks(new int[] { 0 }));
+            assertTrue(rankQueryStarted.await(10, TimeUnit.SECONDS));
+
+            // The reload is streaming the pages, lookups and assignments still go through
+            assertEquals("a", dictionary.getPageId(0));
+            assertEquals(0.1, dictionary.getRanks(new int[] { 0 })[0], 1e-9);
+            int docId = dictionary.assign("b", "https://example.com/b");
+            assertEquals(docId, dictionary.getDocId("b"));
+
+            releaseRankQuery.countDown();
+            assertEquals(0.7, reload.get(10, TimeUnit.SECONDS)[0], 1e-9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
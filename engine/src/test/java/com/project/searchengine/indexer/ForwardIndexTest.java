@@ -0,0 +1,68 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class ForwardIndexTest {
+
+    private static final String TEXT =
+        "The Quick brown foxes were JUMPING over 12 lazy dogs... (again!) -- e-mail: dora@example.com " +
+        "Running runners ran; café naïve résumé x y ok?? It's 2024 and the children's books are reading";
+
+    private final Analyzer analyzer = new Analyzer(new StopWordFilter());
+
+    private String longText() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append(TEXT).append(" paragraph ").append(i).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Test
+    void getToken_shouldMatchTheLowerCasedTokenPositions() {
+        String text = longText();
+        ForwardIndex forwardIndex = ForwardIndex.of(text, analyzer);
+        String[] tokens = analyzer.tokenize(text.toLowerCase());
+
+        assertEquals(tokens.length, forwardIndex.size());
+        assertTrue(forwardIndex.size() > 2 * ForwardIndex.BLOCK_SIZE);
+        // Read from the end first, blocks are decoded in any order
+        for (int position = tokens.length - 1; position >= 0; position--) {
+            assertEquals(tokens[position], forwardIndex.getToken(position));
+        }
+        assertNull(forwardIndex.getToken(-1));
+        assertNull(forwardIndex.getToken(tokens.length));
+    }
+
+    @Test
+    void getStartAndEnd_shouldGiveTheTokenOffsetsInTheText() {
+        String text = longText();
+        ForwardIndex forwardIndex = ForwardIndex.of(text, analyzer);
+
+        for (int position = 0; position < forwardIndex.size(); position++) {
+            String surface = text.substring(forwardIndex.getStart(position), forwardIndex.getEnd(position));
+            assertEquals(surface.toLowerCase(), forwardIndex.getToken(position));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> forwardIndex.getStart(forwardIndex.size()));
+    }
+
+    @Test
+    void encoder_shouldBeReusableAcrossPages() {
+        ForwardIndex.Encoder encoder = new ForwardIndex.Encoder();
+        String text = longText();
+        analyzer.analyze(text, (start, end, position, term, termLength) -> encoder.addToken(text, start, end));
+        byte[] first = encoder.finish();
+
+        encoder.reset();
+        String other = "Another page";
+        analyzer.analyze(other, (start, end, position, term, termLength) -> encoder.addToken(other, start, end));
+        ForwardIndex second = new ForwardIndex(encoder.finish());
+
+        assertEquals(2, second.size());
+        assertEquals("another", second.getToken(0));
+        assertEquals("page", second.getToken(1));
+        assertTrue(first.length < text.length() / 2);
+    }
+}
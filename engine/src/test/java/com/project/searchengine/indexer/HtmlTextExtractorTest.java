@@ -0,0 +1,148 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.utils.CompressionUtil;
+import java.io.Reader;
+import java.util.*;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class HtmlTextExtractorTest {
+
+    private static final String PAGE =
+        "<!DOCTYPE html>\n" +
+        "<html lang=\"en\">\n" +
+        "<head>\n" +
+        "  <meta charset=\"utf-8\">\n" +
+        "  <title>Search &amp; Rescue &#8211; Home</title>\n" +
+        "  <style>body { color: red; } h1 > a { margin: 0 }</style>\n" +
+        "  <script type=\"text/javascript\">if (a < b && c > d) { document.write('<p>no</p>'); }</script>\n" +
+        "</head>\n" +
+        "<body class='main' data-x=\"a > b\">\n" +
+        "  <!-- navigation -- comment > with markup <h1>ignored</h1> -->\n" +
+        "  <div id=\"nav\"><a href=\"/\">Home</a><a href=\"/about\">About&nbsp;us</a></div>\n" +
+        "  <h1>Running <em>dogs</em></h1>\n" +
+        "  <p>The quick<b>brown</b> fox&#x27;s tail, 3 &lt; 4 &copy; 2024.<br>New line\n" +
+        "     spread   over   lines</p>\n" +
+        "  <h2 class=\"sub\">Second header</h2>\n" +
+        "  <ul><li>one</li><li>two</li></ul>\n" +
+        "  <table><tr><td>cell</td><td>other</td></tr></table>\n" +
+        "  <p>AT&T and &unknown; entity, a < b</p>\n" +
+        "  <script>var html = '</scr' + 'ipt>';</script>\n" +
+        "</body>\n" +
+        "</html>";
+
+    @Test
+    void extract_shouldMatchJsoupText() {
+        Document jsoupDocument = Jsoup.parse(PAGE);
+        HtmlTextExtractor.ExtractedText extracted = HtmlTextExtractor.extract(PAGE);
+
+        assertEquals(jsoupDocument.body().text(), extracted.getText().toString());
+        assertEquals(jsoupDocument.title(), extracted.getTitle());
+        assertEquals(jsoupHeaders(jsoupDocument), headers(extracted));
+    }
+
+    @Test
+    void extract_shouldReadTheDecompressedStream() throws Exception {
+        HtmlTextExtractor.ExtractedText extracted;
+        try (Reader reader = CompressionUtil.decompressToReader(CompressionUtil.compress(PAGE))) {
+            extracted = HtmlTextExtractor.extract(reader);
+        }
+        HtmlTextExtractor.ExtractedText expected = HtmlTextExtractor.extract(PAGE);
+
+        assertEquals(expected.getText().toString(), extracted.getText().toString());
+        assertEquals(expected.getTitle(), extracted.getTitle());
+        assertEquals(headers(expected), headers(extracted));
+    }
+
+    @Test
+    void extract_shouldHandleDocumentsWithoutHeadOrBody() {
+        HtmlTextExtractor.ExtractedText extracted = HtmlTextExtractor.extract(
+            "<title>Only</title>Plain <i>text</i> &amp; an unfinished &amp"
+        );
+
+        assertEquals("Plain text & an unfinished &", extracted.getText().toString());
+        assertEquals("Only", extracted.getTitle());
+        assertEquals(List.of("title:Only"), headers(extracted));
+        assertEquals("", HtmlTextExtractor.extract("<p>no title</p>").getTitle());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark_shouldPrintDocumentsPerSecond() {
+        StringBuilder builder = new StringBuilder(PAGE.replace("</body>", ""));
+        for (int i = 0; i < 50; i++) {
+            builder.append("<div><p>Paragraph ").append(i).append(" with <a href=\"/x\">a link</a>");
+            builder.append(" and some &quot;quoted&quot; text</p></div>\n");
+        }
+        String page = builder.append("</body></html>").toString();
+        int documents = 2000;
+        int[] sink = new int[1];
+
+        // Warm up both paths before timing them
+        for (int i = 0; i < 500; i++) {
+            sink[0] += jsoupPath(page);
+            sink[0] += extractorPath(page);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < documents; i++) {
+            sink[0] += jsoupPath(page);
+        }
+        long jsoupNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < documents; i++) {
+            sink[0] += extractorPath(page);
+        }
+        long extractorNanos = System.nanoTime() - start;
+
+        System.out.println(
+            "Extracted " +
+            documents +
+            " documents of " +
+            page.length() +
+            " chars: Jsoup " +
+            (documents * 1_000_000_000L / jsoupNanos) +
+            " docs/s, streaming extractor " +
+            (documents * 1_000_000_000L / extractorNanos) +
+            " docs/s"
+        );
+        assertTrue(sink[0] > 0);
+    }
+
+    /**
+     * What the indexer used to do per document: a DOM, the body text twice and a selector.
+     */
+    private int jsoupPath(String page) {
+        Document document = Jsoup.parse(page);
+        int length = document.body().text().length();
+        length += document.select("h1, h2, title").size();
+        return length + document.body().text().length() + document.title().length();
+    }
+
+    private int extractorPath(String page) {
+        HtmlTextExtractor.ExtractedText extracted = HtmlTextExtractor.extract(page);
+        return extracted.getText().length() + extracted.getHeaders().size();
+    }
+
+    private List<String> jsoupHeaders(Document document) {
+        List<String> headers = new ArrayList<>();
+        for (Element header : document.select("h1, h2, title")) {
+            headers.add(header.tagName() + ":" + header.text());
+        }
+        return headers;
+    }
+
+    private List<String> headers(HtmlTextExtractor.ExtractedText extracted) {
+        List<String> headers = new ArrayList<>();
+        for (HtmlTextExtractor.Header header : extracted.getHeaders()) {
+            headers.add(header.getTagName() + ":" + header.getText());
+        }
+        return headers;
+    }
+}
@@ -0,0 +1,108 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.indexer.storage.SegmentStore;
+import com.project.searchengine.server.model.*;
+import com.project.searchengine.server.service.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+@ExtendWith(MockitoExtension.class)
+class IndexCommitLogTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private PageService pageService;
+
+    @Mock
+    private InvertedIndexService invertedIndexService;
+
+    @Mock
+    private UrlsFrontierService urlsFrontierService;
+
+    @Mock
+    private DocumentStoreService documentStoreService;
+
+    @Mock
+    private SegmentStore segmentStore;
+
+    @InjectMocks
+    private IndexCommitLog indexCommitLog;
+
+    private static UrlDocument urlDocument(String id) {
+        UrlDocument urlDocument = new UrlDocument();
+        urlDocument.setId(id);
+        return urlDocument;
+    }
+
+    @Test
+    void begin_shouldLogTheBatchAndTagItsPages() {
+        List<Page> pages = List.of(new Page("p1", "u1", "", "", 0), new Page("p2", "u2", "", "", 0));
+
+        String batchId = indexCommitLog.begin(pages, List.of(urlDocument("d1")), "_7");
+
+        ArgumentCaptor<PendingBatch> logged = ArgumentCaptor.forClass(PendingBatch.class);
+        verify(mongoTemplate).insert(logged.capture());
+        assertEquals(batchId, logged.getValue().getId());
+        assertEquals(List.of("p1", "p2"), logged.getValue().getPageIds());
+        assertEquals(List.of("d1"), logged.getValue().getUrlDocumentIds());
+        assertEquals("_7", logged.getValue().getSegmentName());
+        assertTrue(pages.stream().allMatch(page -> batchId.equals(page.getBatchId())));
+    }
+
+    @Test
+    void recover_shouldRollBackEveryPendingBatchInReverseOrder() {
+        PendingBatch inWords = new PendingBatch("b1", List.of("p1"), List.of("d1"));
+        PendingBatch inSegment = new PendingBatch("b2", List.of("p2"), List.of("d2"));
+        inSegment.setSegmentName("_3");
+        when(mongoTemplate.findAll(PendingBatch.class)).thenReturn(List.of(inWords, inSegment));
+
+        assertEquals(2, indexCommitLog.recover());
+
+        InOrder order = inOrder(
+            urlsFrontierService,
+            invertedIndexService,
+            pageService,
+            documentStoreService,
+            mongoTemplate
+        );
+        order.verify(urlsFrontierService).resetIndexed(List.of("d1"));
+        order.verify(invertedIndexService).removePages(List.of("p1"));
+        order.verify(pageService).deleteBatchPages(List.of("p1"), "b1");
+        order.verify(documentStoreService).deleteBatch("b1");
+        order.verify(mongoTemplate).remove(any(Query.class), eq(PendingBatch.class));
+
+        // A batch written to the segment store deletes its segment instead of editing the words
+        verify(segmentStore).deleteSegment("_3");
+        verify(invertedIndexService, never()).removePages(List.of("p2"));
+        verify(pageService).deleteBatchPages(List.of("p2"), "b2");
+        verify(mongoTemplate, times(2)).remove(any(Query.class), eq(PendingBatch.class));
+    }
+
+    @Test
+    void rollback_shouldRemoveTheReindexedPagesEntirely() {
+        PendingBatch batch = new PendingBatch("b1", List.of("p1"), List.of("d1", "d2"));
+        batch.setReindexedPageIds(List.of("p2"));
+        when(mongoTemplate.findById("b1", PendingBatch.class)).thenReturn(batch);
+
+        indexCommitLog.rollback("b1");
+
+        // Their previous postings are gone, so they are indexed again as new pages
+        verify(invertedIndexService).removePages(List.of("p1", "p2"));
+        verify(pageService).deleteBatchPages(List.of("p1"), "b1");
+        verify(pageService).deletePages(List.of("p2"));
+    }
+}
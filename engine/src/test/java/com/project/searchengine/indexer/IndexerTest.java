@@ -0,0 +1,147 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.indexer.storage.SegmentStore;
+import com.project.searchengine.server.model.*;
+import com.project.searchengine.server.service.*;
+import com.project.searchengine.utils.CompressionUtil;
+import com.project.searchengine.utils.HashManager;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+@ExtendWith(MockitoExtension.class)
+class IndexerTest {
+
+    @Mock
+    private Tokenizer tokenizer;
+
+    @Mock
+    private PageService pageService;
+
+    @Mock
+    private SegmentStore segmentStore;
+
+    @Mock
+    private DocIdDictionary docIdDictionary;
+
+    @InjectMocks
+    private Indexer indexer;
+
+    private static UrlDocument urlDocument(String url, String hash) {
+        UrlDocument urlDocument = new UrlDocument();
+        urlDocument.setId(url);
+        urlDocument.setNormalizedUrl(url);
+        urlDocument.setHashedDocContent(HashManager.fingerprint(hash).toBytes());
+        urlDocument.setDocument(CompressionUtil.compress("<html><body>Dora the explorer</body></html>"));
+        return urlDocument;
+    }
+
+    private static Page indexedPage(String url, String hash) {
+        Page page = new Page(HashManager.hash(url), url, "", null, 0);
+        page.setContentHash(HashManager.fingerprint(hash).toBytes());
+        return page;
+    }
+
+    @Test
+    void indexBatch_shouldLookUpTheIndexedPagesOfTheWholeBatchAtOnce() {
+        String newUrl = "https://example.com/new";
+        String unchangedUrl = "https://example.com/unchanged";
+        String changedUrl = "https://example.com/changed";
+        Page unchanged = indexedPage(unchangedUrl, "same");
+        Page changed = indexedPage(changedUrl, "old");
+        when(pageService.getContentHashes(anyCollection())).thenReturn(
+            Map.of(unchanged.getId(), unchanged, changed.getId(), changed)
+        );
+        when(pageService.getTermSignatures(List.of(changed.getId()))).thenReturn(
+            Map.of(changed.getId(), Map.of("dora", 0L))
+        );
+
+        IndexedBatch batch = indexer.indexBatch(
+            List.of(
+                urlDocument(newUrl, "new"),
+                urlDocument(unchangedUrl, "same"),
+                urlDocument(changedUrl, "new")
+            ),
+            new PostingsBuilder()
+        );
+
+        // A single query for the hashes, and one for the signatures of the changed page only
+        verify(pageService, times(1)).getContentHashes(anyCollection());
+        verify(pageService, times(1)).getTermSignatures(anyCollection());
+
+        assertEquals(List.of(HashManager.hash(newUrl)), batch.getSavedPages().stream().map(Page::getId).toList());
+        assertEquals(List.of(changed.getId()), batch.getReindexedPages().stream().map(Page::getId).toList());
+        assertEquals(Set.of(changed.getId()), batch.getPreviousSignatures().keySet());
+        assertEquals(3, batch.getUpdatedUrlDocuments().size());
+        assertTrue(batch.getUpdatedUrlDocuments().stream().allMatch(UrlDocument::isIndexed));
+    }
+
+    @Test
+    void indexBatch_shouldPurgePagesWithoutSignaturesFromTheWordsOfTheirPreviousText() {
+        Analyzer analyzer = new Analyzer(new StopWordFilter());
+        ReflectionTestUtils.setField(indexer, "analyzer", analyzer);
+        String changedUrl = "https://example.com/changed";
+        String lostUrl = "https://example.com/lost";
+        Page changed = indexedPage(changedUrl, "old");
+        Page lost = indexedPage(lostUrl, "old");
+        when(pageService.getContentHashes(anyCollection())).thenReturn(
+            Map.of(changed.getId(), changed, lost.getId(), lost)
+        );
+        Page previousText = new Page(changed.getId(), changedUrl, "Boots", null, 0);
+        ForwardIndex.Encoder encoder = new ForwardIndex.Encoder();
+        String text = "Swiper the fox";
+        analyzer.analyze(text, (start, end, position, term, termLength) -> encoder.addToken(text, start, end));
+        previousText.setForwardIndex(encoder.finish());
+        when(pageService.getIndexedTexts(anyCollection())).thenReturn(Map.of(changed.getId(), previousText));
+
+        IndexedBatch batch = indexer.indexBatch(
+            List.of(urlDocument(changedUrl, "new"), urlDocument(lostUrl, "new")),
+            new PostingsBuilder()
+        );
+
+        assertEquals(List.of(changed.getId()), batch.getPurgedPageIds());
+        assertEquals(
+            Set.of(analyzer.analyzeToken("swiper"), analyzer.analyzeToken("fox"), analyzer.analyzeToken("boots")),
+            batch.getPurgedWords()
+        );
+        // Without its previous text, the page is removed from every word
+        assertEquals(List.of(lost.getId()), batch.getScannedPageIds());
+    }
+
+    @Test
+    void indexBatch_shouldGiveCompactIdsToNewPagesOnly() {
+        ReflectionTestUtils.setField(indexer, "compactPageIds", true);
+        String newUrl = "https://example.com/new";
+        String changedUrl = "https://example.com/changed";
+        Page changed = indexedPage(changedUrl, "old");
+        when(pageService.getContentHashes(anyCollection())).thenReturn(Map.of(changed.getId(), changed));
+
+        IndexedBatch batch = indexer.indexBatch(
+            List.of(urlDocument(newUrl, "new"), urlDocument(changedUrl, "new")),
+            new PostingsBuilder()
+        );
+
+        // Both id forms are looked up in the same query
+        verify(pageService).getContentHashes(
+            List.of(
+                HashManager.fingerprint(newUrl).toString(),
+                HashManager.fingerprint(changedUrl).toString(),
+                HashManager.hash(newUrl),
+                HashManager.hash(changedUrl)
+            )
+        );
+        String newPageId = batch.getSavedPages().get(0).getId();
+        assertEquals(HashManager.fingerprint(newUrl).toString(), newPageId);
+        assertEquals(32, newPageId.length());
+        // The indexed page keeps its SHA-256 id
+        assertEquals(changed.getId(), batch.getReindexedPages().get(0).getId());
+    }
+}
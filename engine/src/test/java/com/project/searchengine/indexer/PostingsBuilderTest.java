@@ -0,0 +1,107 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.server.model.InvertedIndex;
+import com.project.searchengine.server.model.PageReference;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class PostingsBuilderTest {
+
+    @Test
+    void toInvertedIndex_shouldGroupPositionsPerPage() {
+        PostingsBuilder builder = new PostingsBuilder();
+
+        int first = builder.addDocument("page1");
+        builder.addPosition("dora", first, 0);
+        builder.addPosition("map", first, 1);
+        builder.addPosition("dora", first, 4);
+        builder.addFieldOccurrence("dora", first, "title");
+        builder.addFieldOccurrence("dora", first, "h1");
+        builder.addFieldOccurrence("dora", first, "h1");
+
+        int second = builder.addDocument("page2");
+        builder.addPosition("dora", second, 2);
+
+        Map<String, InvertedIndex> index = builder.toInvertedIndex();
+
+        assertEquals(2, index.size());
+        List<PageReference> pages = index.get("dora").getPages();
+        assertEquals(2, pages.size());
+
+        PageReference page1 = pages.get(0);
+        assertEquals("page1", page1.getPageId());
+        assertEquals(List.of(0, 4), page1.getWordPositions());
+        assertEquals(1, page1.getFieldWordCount().get("title"));
+        assertEquals(2, page1.getFieldWordCount().get("h1"));
+        assertEquals(2.0 / 3, page1.getTf(), 1e-9);
+
+        PageReference page2 = pages.get(1);
+        assertEquals(List.of(2), page2.getWordPositions());
+        assertTrue(page2.getFieldWordCount().isEmpty());
+        assertEquals(1.0, page2.getTf(), 1e-9);
+
+        assertEquals(3, builder.getPageTokenCount("page1"));
+        assertEquals(0, builder.getPageTokenCount("missing"));
+    }
+
+    @Test
+    void addFieldOccurrence_shouldIgnoreTermsMissingFromBody() {
+        PostingsBuilder builder = new PostingsBuilder();
+
+        int doc = builder.addDocument("page1");
+        builder.addPosition("dora", doc, 0);
+        builder.addFieldOccurrence("boots", doc, "title");
+
+        Map<String, InvertedIndex> index = builder.toInvertedIndex();
+
+        assertFalse(index.containsKey("boots"));
+    }
+
+    @Test
+    void toInvertedIndex_shouldCarryDocIds() {
+        PostingsBuilder builder = new PostingsBuilder();
+
+        int doc = builder.addDocument("page1", 42);
+        // The tokenizer registers the page again without its doc id
+        assertEquals(doc, builder.addDocument("page1"));
+        builder.addPosition("dora", doc, 0);
+
+        PageReference page = builder.toInvertedIndex().get("dora").getPages().get(0);
+
+        assertEquals(42, page.getDocId());
+    }
+
+    @Test
+    void clear_shouldResetTheBatch() {
+        PostingsBuilder builder = new PostingsBuilder();
+
+        int doc = builder.addDocument("page1");
+        builder.addPosition("dora", doc, 0);
+        builder.clear();
+
+        assertEquals(0, builder.termCount());
+        assertEquals(0, builder.documentCount());
+        assertTrue(builder.toInvertedIndex().isEmpty());
+    }
+
+    @Test
+    void getEstimatedBytes_shouldGrowWithThePostingsAndResetOnClear() {
+        PostingsBuilder builder = new PostingsBuilder();
+        assertEquals(0, builder.getEstimatedBytes());
+
+        int doc = builder.addDocument("page1");
+        builder.addPosition("dora", doc, 0);
+        long oneTerm = builder.getEstimatedBytes();
+        builder.addPosition("dora", doc, 1);
+        long onePosition = builder.getEstimatedBytes() - oneTerm;
+        builder.addPosition("map", doc, 2);
+
+        assertEquals(Integer.BYTES, onePosition);
+        assertTrue(builder.getEstimatedBytes() - oneTerm - onePosition > onePosition);
+
+        builder.clear();
+        assertEquals(0, builder.getEstimatedBytes());
+    }
+}
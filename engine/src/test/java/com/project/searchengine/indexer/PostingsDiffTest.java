@@ -0,0 +1,120 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.server.model.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+public class PostingsDiffTest {
+
+    private static Page page(String id) {
+        return new Page(id, "https://example.com/" + id, id, "", 0);
+    }
+
+    /**
+     * Indexes the given words of each page, one page per argument as "pageId:word word ...".
+     */
+    private static Map<String, InvertedIndex> index(String... pages) {
+        PostingsBuilder builder = new PostingsBuilder();
+        for (String page : pages) {
+            String[] parts = page.split(":");
+            int doc = builder.addDocument(parts[0]);
+            String[] words = parts[1].split(" ");
+            for (int position = 0; position < words.length; position++) {
+                builder.addPosition(words[position], doc, position);
+            }
+        }
+        return builder.toInvertedIndex();
+    }
+
+    @Test
+    void apply_shouldSignEveryTermOfThePages() {
+        IndexedBatch batch = new IndexedBatch();
+        Page page = page("page1");
+        batch.getSavedPages().add(page);
+        batch.setIndexBuffer(index("page1:dora map dora"));
+
+        PostingsDiff.apply(batch);
+
+        assertEquals(Set.of("dora", "map"), page.getTermSignatures().keySet());
+        assertEquals(
+            PostingsDiff.signature(batch.getIndexBuffer().get("dora").getPages().get(0)),
+            page.getTermSignatures().get("dora")
+        );
+        // New pages are appended as they are
+        assertEquals(2, batch.getIndexBuffer().size());
+        assertTrue(batch.getChangedPostings().isEmpty());
+        assertTrue(batch.getRemovedPostings().isEmpty());
+    }
+
+    @Test
+    void apply_shouldKeepOnlyThePostingsAReindexedPageChanges() {
+        // The page was indexed as "dora map boots swiper", then recrawled
+        IndexedBatch previous = new IndexedBatch();
+        Page indexed = page("page1");
+        previous.getSavedPages().add(indexed);
+        previous.setIndexBuffer(index("page1:dora map boots swiper"));
+        PostingsDiff.apply(previous);
+
+        IndexedBatch batch = new IndexedBatch();
+        Page reindexed = page("page1");
+        batch.getReindexedPages().add(reindexed);
+        batch.getPreviousSignatures().put("page1", indexed.getTermSignatures());
+        batch.getSavedPages().add(page("page2"));
+        batch.setIndexBuffer(index("page1:dora map swiper backpack", "page2:map"));
+
+        PostingsDiff.apply(batch);
+
+        // dora and map are unchanged, swiper moved, backpack is added and boots removed
+        assertEquals(Set.of("swiper"), batch.getChangedPostings().keySet());
+        assertEquals(List.of(2), batch.getChangedPostings().get("swiper").getPages().get(0).getWordPositions());
+        assertEquals(List.of(3), batch.getIndexBuffer().get("backpack").getPages().get(0).getWordPositions());
+        assertFalse(batch.getIndexBuffer().containsKey("dora"));
+        assertEquals(
+            List.of("page2"),
+            batch.getIndexBuffer().get("map").getPages().stream().map(PageReference::getPageId).toList()
+        );
+        assertEquals(Map.of("boots", List.of("page1")), batch.getRemovedPostings());
+        assertEquals(Set.of("dora", "map", "swiper", "backpack"), reindexed.getTermSignatures().keySet());
+    }
+
+    @Test
+    void apply_shouldRemoveTheTermsAReindexedPageLost() {
+        IndexedBatch previous = new IndexedBatch();
+        Page indexed = page("page1");
+        previous.getSavedPages().add(indexed);
+        previous.setIndexBuffer(index("page1:dora map"));
+        PostingsDiff.apply(previous);
+
+        IndexedBatch batch = new IndexedBatch();
+        batch.getReindexedPages().add(page("page1"));
+        batch.getPreviousSignatures().put("page1", indexed.getTermSignatures());
+        batch.setIndexBuffer(index("page1:dora"));
+
+        PostingsDiff.apply(batch);
+
+        assertEquals(Map.of("map", List.of("page1")), batch.getRemovedPostings());
+        // dora kept its position, its tf changing with the page length does not rewrite it
+        assertTrue(batch.getChangedPostings().isEmpty());
+        assertTrue(batch.getIndexBuffer().isEmpty());
+    }
+
+    @Test
+    void signature_shouldDependOnTheOccurrencesOnly() {
+        PageReference posting = new PageReference("page1");
+        posting.setWordPositions(new ArrayList<>(List.of(3, 8)));
+        posting.setTf(0.2);
+        long signature = PostingsDiff.signature(posting);
+
+        posting.setTf(0.1);
+        assertEquals(signature, PostingsDiff.signature(posting));
+
+        posting.setWordPositions(new ArrayList<>(List.of(3, 9)));
+        assertNotEquals(signature, PostingsDiff.signature(posting));
+
+        posting.setWordPositions(new ArrayList<>(List.of(3, 8)));
+        posting.getFieldWordCount().put("title", 1);
+        assertNotEquals(signature, PostingsDiff.signature(posting));
+    }
+}
@@ -0,0 +1,62 @@
+package com.project.searchengine.indexer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.server.model.PageReference;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class PostingsRunTest {
+
+    @TempDir
+    Path directory;
+
+    private static PostingsBuilder buffer(String pageId, int docId, String... words) {
+        PostingsBuilder builder = new PostingsBuilder();
+        int doc = builder.addDocument(pageId, docId);
+        for (int position = 0; position < words.length; position++) {
+            builder.addPosition(words[position], doc, position);
+        }
+        return builder;
+    }
+
+    @Test
+    void merge_shouldReadTheRunsBackInTermOrder() throws Exception {
+        PostingsBuilder first = buffer("page1", 1, "swiper", "dora", "map", "dora");
+        first.addFieldOccurrence("dora", 0, "title");
+        PostingsBuilder second = buffer("page2", 2, "dora", "boots");
+
+        List<String> spilled = new ArrayList<>();
+        Path firstRun = PostingsRun.write(directory, first, (word, pages) -> spilled.add(word));
+        Path secondRun = PostingsRun.write(directory, second, null);
+        assertEquals(List.of("dora", "map", "swiper"), spilled);
+
+        Map<String, List<PageReference>> merged = new LinkedHashMap<>();
+        PostingsRun.merge(List.of(firstRun, secondRun), merged::put);
+
+        assertEquals(List.of("boots", "dora", "map", "swiper"), new ArrayList<>(merged.keySet()));
+        List<PageReference> dora = merged.get("dora");
+        assertEquals(2, dora.size());
+        assertEquals("page1", dora.get(0).getPageId());
+        assertEquals(1, dora.get(0).getDocId());
+        assertEquals(List.of(1, 3), dora.get(0).getWordPositions());
+        assertEquals(Map.of("title", 1), dora.get(0).getFieldWordCount());
+        assertEquals(0.5, dora.get(0).getTf(), 1e-9);
+        assertEquals("page2", dora.get(1).getPageId());
+        assertEquals(List.of(0), dora.get(1).getWordPositions());
+    }
+
+    @Test
+    void deleteStaleRuns_shouldOnlyDeleteRuns() throws Exception {
+        PostingsRun.write(directory, buffer("page1", 1, "dora"), null);
+        Path other = Files.createFile(directory.resolve("segments"));
+
+        PostingsRun.deleteStaleRuns(directory);
+
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(other), files.toList());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package com.project.searchengine.indexer.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+public class PostingsCodecTest {
+
+    private static final int[] NO_FIELDS = { 0, 0, 0 };
+
+    /**
+     * Encodes docs 0, step, 2 * step ... where doc d has (d % 5) + 1 positions d, d + 3, d + 6 ...
+     */
+    private static PostingsCodec.Decoder encode(int count, int step) throws IOException {
+        PostingsCodec.Encoder encoder = new PostingsCodec.Encoder();
+        int[] positions = new int[5];
+        for (int i = 0; i < count; i++) {
+            int doc = i * step;
+            int freq = (doc % 5) + 1;
+            for (int j = 0; j < freq; j++) {
+                positions[j] = doc + j * 3;
+            }
+            encoder.addPosting(doc, doc / 1000.0, new int[] { doc % 2, 0, doc % 3 }, positions, freq);
+        }
+
+        ByteArrayOutputStream docs = new ByteArrayOutputStream();
+        ByteArrayOutputStream positionsOut = new ByteArrayOutputStream();
+        encoder.finish(docs, positionsOut);
+        return new PostingsCodec.Decoder(
+            ByteBuffer.wrap(docs.toByteArray()),
+            ByteBuffer.wrap(positionsOut.toByteArray()),
+            encoder.getDocFreq()
+        );
+    }
+
+    @Test
+    void vInt_shouldRoundTrip() throws IOException {
+        int[] values = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int value : values) {
+            PostingsCodec.writeVInt(out, value);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+        for (int value : values) {
+            assertEquals(value, PostingsCodec.readVInt(in));
+        }
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void decoder_shouldRoundTripPostingsAcrossBlocks() throws IOException {
+        int count = PostingsCodec.BLOCK_SIZE * 3 + 17;
+        PostingsCodec.Decoder decoder = encode(count, 7);
+
+        assertEquals(count, decoder.getDocFreq());
+        for (int i = 0; i < count; i++) {
+            int doc = i * 7;
+            assertEquals(doc, decoder.nextDoc());
+            assertEquals((doc % 5) + 1, decoder.freq());
+            assertEquals((float) (doc / 1000.0), decoder.tf(), 1e-6);
+            assertArrayEquals(new int[] { doc % 2, 0, doc % 3 }, decoder.fieldCounts());
+
+            int[] positions = decoder.positions();
+            for (int j = 0; j < positions.length; j++) {
+                assertEquals(doc + j * 3, positions[j]);
+            }
+        }
+        assertEquals(PostingsCodec.NO_MORE_DOCS, decoder.nextDoc());
+    }
+
+    @Test
+    void decoder_shouldSkipPositionsThatAreNotRead() throws IOException {
+        PostingsCodec.Decoder decoder = encode(PostingsCodec.BLOCK_SIZE + 10, 1);
+
+        // Only read the positions of every tenth doc
+        int doc;
+        while ((doc = decoder.nextDoc()) != PostingsCodec.NO_MORE_DOCS) {
+            if (doc % 10 == 0) {
+                assertEquals(doc, decoder.positions()[0]);
+            }
+        }
+    }
+
+    @Test
+    void advance_shouldSkipBlocks() throws IOException {
+        PostingsCodec.Decoder decoder = encode(PostingsCodec.BLOCK_SIZE * 4, 2);
+
+        assertEquals(10, decoder.advance(9));
+        assertEquals(10, decoder.positions()[0]);
+        assertEquals(12, decoder.nextDoc());
+
+        // Lands in the third block, positions must follow the skip
+        int target = PostingsCodec.BLOCK_SIZE * 2 * 2 + 5;
+        assertEquals(target + 1, decoder.advance(target));
+        assertEquals(target + 1, decoder.positions()[0]);
+        assertEquals(target + 3, decoder.nextDoc());
+
+        assertEquals(PostingsCodec.NO_MORE_DOCS, decoder.advance(PostingsCodec.BLOCK_SIZE * 8));
+        assertEquals(PostingsCodec.NO_MORE_DOCS, decoder.nextDoc());
+    }
+
+    @Test
+    void encoder_shouldRejectUnsortedDocs() throws IOException {
+        PostingsCodec.Encoder encoder = new PostingsCodec.Encoder();
+        encoder.addPosting(5, 0.1, NO_FIELDS, new int[0], 0);
+
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> encoder.addPosting(5, 0.1, NO_FIELDS, new int[0], 0)
+        );
+    }
+
+    @Test
+    void encoder_shouldEncodeManyPostingsCompactly() throws IOException {
+        int count = 200_000;
+        Random random = new Random(42);
+        int[] docs = new int[count];
+        for (int i = 1; i < count; i++) {
+            docs[i] = docs[i - 1] + 1 + random.nextInt(20);
+        }
+
+        PostingsCodec.Encoder encoder = new PostingsCodec.Encoder();
+        int[] positions = new int[4];
+        for (int doc : docs) {
+            for (int j = 0; j < positions.length; j++) {
+                positions[j] = j * 40 + random.nextInt(40);
+            }
+            encoder.addPosting(doc, 0.01, NO_FIELDS, positions, positions.length);
+        }
+        ByteArrayOutputStream docsOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream positionsOut = new ByteArrayOutputStream();
+        encoder.finish(docsOut, positionsOut);
+
+        PostingsCodec.Decoder decoder = new PostingsCodec.Decoder(
+            ByteBuffer.wrap(docsOut.toByteArray()),
+            ByteBuffer.wrap(positionsOut.toByteArray()),
+            count
+        );
+        int decoded = 0;
+        while (decoder.nextDoc() != PostingsCodec.NO_MORE_DOCS) {
+            decoder.positions();
+            decoded++;
+        }
+
+        // A 64 char page id alone is larger than a whole encoded posting
+        int bytesPerPosting = (docsOut.size() + positionsOut.size()) / count;
+        assertEquals(count, decoded);
+        assertTrue(bytesPerPosting < 20);
+    }
+
+    @Test
+    @Tag("benchmark")
+    void benchmark_shouldPrintPostingsPerSecond() throws IOException {
+        int count = 200_000;
+        Random random = new Random(42);
+        int[] docs = new int[count];
+        for (int i = 1; i < count; i++) {
+            docs[i] = docs[i - 1] + 1 + random.nextInt(20);
+        }
+        int[][] positions = new int[count][4];
+        for (int[] docPositions : positions) {
+            for (int j = 0; j < docPositions.length; j++) {
+                docPositions[j] = j * 40 + random.nextInt(40);
+            }
+        }
+
+        // Warm up before timing the last round
+        long encodeNanos = 0;
+        long decodeNanos = 0;
+        int size = 0;
+        for (int round = 0; round < 4; round++) {
+            long start = System.nanoTime();
+            PostingsCodec.Encoder encoder = new PostingsCodec.Encoder();
+            for (int i = 0; i < count; i++) {
+                encoder.addPosting(docs[i], 0.01, NO_FIELDS, positions[i], positions[i].length);
+            }
+            ByteArrayOutputStream docsOut = new ByteArrayOutputStream();
+            ByteArrayOutputStream positionsOut = new ByteArrayOutputStream();
+            encoder.finish(docsOut, positionsOut);
+            encodeNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            PostingsCodec.Decoder decoder = new PostingsCodec.Decoder(
+                ByteBuffer.wrap(docsOut.toByteArray()),
+                ByteBuffer.wrap(positionsOut.toByteArray()),
+                count
+            );
+            int decoded = 0;
+            while (decoder.nextDoc() != PostingsCodec.NO_MORE_DOCS) {
+                decoder.positions();
+                decoded++;
+            }
+            decodeNanos = System.nanoTime() - start;
+
+            assertEquals(count, decoded);
+            size = docsOut.size() + positionsOut.size();
+        }
+
+        System.out.println(
+            "Encoded " +
+            count +
+            " postings in " +
+            size / count +
+            " bytes each, encode " +
+            (count * 1_000_000_000L / encodeNanos) +
+            " postings/s, decode " +
+            (count * 1_000_000_000L / decodeNanos) +
+            " postings/s"
+        );
+    }
+}
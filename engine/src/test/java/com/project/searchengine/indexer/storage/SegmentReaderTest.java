@@ -0,0 +1,68 @@
+package com.project.searchengine.indexer.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.server.model.PageReference;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SegmentReaderTest {
+
+    @TempDir
+    Path directory;
+
+    private SegmentReader write(List<String> terms) throws Exception {
+        try (SegmentWriter writer = new SegmentWriter(directory, "_1", Map.of("page1", 0, "page2", 1))) {
+            for (String term : terms) {
+                PageReference page1 = new PageReference("page1", 0);
+                page1.addWordPosition(term.length());
+                PageReference page2 = new PageReference("page2", 1);
+                page2.addWordPosition(1);
+                page2.addfieldWordCount("title", 2);
+                writer.addTerm(term, List.of(page2, page1));
+            }
+            writer.finish();
+        }
+        return new SegmentReader(directory, "_1");
+    }
+
+    @Test
+    void findTerm_shouldBinarySearchTheMappedDictionary() throws Exception {
+        // Sorted in String order, with multi byte chars
+        List<String> terms = new ArrayList<>(List.of("a", "ab", "abc", "b", "café", "caf", "zz", "中文"));
+        Collections.sort(terms);
+        SegmentReader reader = write(terms);
+
+        assertEquals(terms.size(), reader.getTermsCount());
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            assertEquals(ordinal, reader.findTerm(terms.get(ordinal)));
+            assertEquals(terms.get(ordinal), reader.getTerm(ordinal));
+        }
+        assertEquals(-1, reader.findTerm(""));
+        assertEquals(-1, reader.findTerm("aa"));
+        assertEquals(-1, reader.findTerm("zzz"));
+        assertNull(reader.postings("missing"));
+        reader.close();
+    }
+
+    @Test
+    void getPostings_shouldDecodeFromTheMappedFiles() throws Exception {
+        SegmentReader reader = write(List.of("boots", "dora"));
+
+        List<PageReference> pages = reader.getPostings("dora");
+
+        assertEquals(2, reader.getDocFreq("dora"));
+        assertEquals(2, pages.size());
+        assertEquals("page1", pages.get(0).getPageId());
+        assertEquals(List.of(4), pages.get(0).getWordPositions());
+        assertEquals(1, pages.get(1).getDocId());
+        assertEquals(2, pages.get(1).getFieldWordCount().get("title"));
+
+        PostingsCodec.Decoder decoder = reader.postings("boots");
+        assertEquals(1, decoder.advance(1));
+        assertArrayEquals(new int[] { 1 }, decoder.positions());
+        reader.close();
+    }
+}
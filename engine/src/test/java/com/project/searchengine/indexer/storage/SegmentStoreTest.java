@@ -0,0 +1,228 @@
+package com.project.searchengine.indexer.storage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.project.searchengine.server.model.InvertedIndex;
+import com.project.searchengine.server.model.PageReference;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SegmentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private static Map<String, InvertedIndex> batch(String pageId, String... words) {
+        Map<String, InvertedIndex> indexBuffer = new HashMap<>();
+        for (int position = 0; position < words.length; position++) {
+            PageReference page = indexBuffer
+                .computeIfAbsent(words[position], InvertedIndex::new)
+                .getPages()
+                .stream()
+                .findFirst()
+                .orElse(null);
+            if (page == null) {
+                page = new PageReference(pageId);
+                page.setTf(0.5);
+                indexBuffer.get(words[position]).addPage(page);
+            }
+            page.addWordPosition(position);
+        }
+        return indexBuffer;
+    }
+
+    @Test
+    void getTokenPages_shouldReadPostingsAcrossSegments() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        store.writeSegment(batch("page1", "dora", "map", "dora"));
+        store.writeSegment(batch("page2", "boots", "dora"));
+
+        List<PageReference> pages = store.getTokenPages("dora");
+
+        assertEquals(2, pages.size());
+        assertEquals("page1", pages.get(0).getPageId());
+        assertEquals(List.of(0, 2), pages.get(0).getWordPositions());
+        assertEquals(0.5, pages.get(0).getTf(), 1e-9);
+        assertEquals(List.of(1), pages.get(1).getWordPositions());
+        assertTrue(store.getTokenPages("swiper").isEmpty());
+        store.close();
+    }
+
+    @Test
+    void getTokenPages_shouldKeepDocIds() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        Map<String, InvertedIndex> indexBuffer = batch("page2", "dora");
+        indexBuffer.get("dora").getPages().get(0).setDocId(7);
+        PageReference page1 = new PageReference("page1", 3);
+        page1.addWordPosition(5);
+        indexBuffer.get("dora").addPage(page1);
+        store.writeSegment(indexBuffer);
+
+        List<PageReference> pages = store.getTokenPages("dora");
+
+        // Postings are ordered by doc id
+        assertEquals("page1", pages.get(0).getPageId());
+        assertEquals(3, pages.get(0).getDocId());
+        assertEquals(7, pages.get(1).getDocId());
+        store.close();
+    }
+
+    @Test
+    void writeSegment_shouldMergeFullTierAndSurviveReopen() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        for (int i = 0; i < 10; i++) {
+            store.releaseSegment(store.writeSegment(batch("page" + i, "dora", "word" + i)));
+        }
+        // Waits for the background merges to finish
+        store.close();
+
+        SegmentStore reopened = new SegmentStore(true, directory.toString());
+
+        assertEquals(1, reopened.getSegmentsCount());
+        assertEquals(10, reopened.getTokenPages("dora").size());
+        assertEquals("page7", reopened.getTokenPages("word7").get(0).getPageId());
+        reopened.close();
+    }
+
+    @Test
+    void deleteSegment_shouldRemoveAnUnreleasedSegmentThatWasNotMerged() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        for (int i = 0; i < 9; i++) {
+            store.releaseSegment(store.writeSegment(batch("page" + i, "dora", "word" + i)));
+        }
+        String pending = store.writeSegment(batch("page9", "dora", "word9"));
+        store.close();
+
+        // The tier is full but the unreleased segment is held out of merges
+        SegmentStore reopened = new SegmentStore(true, directory.toString());
+        assertEquals(10, reopened.getSegmentsCount());
+        assertTrue(reopened.deleteSegment(pending));
+        assertFalse(reopened.deleteSegment(pending));
+        reopened.close();
+
+        SegmentStore afterDelete = new SegmentStore(true, directory.toString());
+        assertEquals(9, afterDelete.getTokenPages("dora").size());
+        assertTrue(afterDelete.getTokenPages("word9").isEmpty());
+        afterDelete.close();
+    }
+
+    @Test
+    void deletePages_shouldHidePreviousPostingsAcrossReopen() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        store.releaseSegment(store.writeSegment(batch("page1", "dora", "map")));
+        store.releaseSegment(store.writeSegment(batch("page2", "dora")));
+
+        // page1 is reindexed: its previous postings are deleted before the new ones are written
+        assertEquals(1, store.deletePages(List.of("page1")));
+        assertEquals(0, store.deletePages(List.of("page1", "missing")));
+        store.releaseSegment(store.writeSegment(batch("page1", "boots")));
+        store.close();
+
+        SegmentStore reopened = new SegmentStore(true, directory.toString());
+        assertEquals(List.of("page2"), reopened.getTokenPages("dora").stream().map(PageReference::getPageId).toList());
+        assertTrue(reopened.getTokenPages("map").isEmpty());
+        assertEquals("page1", reopened.getTokenPages("boots").get(0).getPageId());
+        reopened.close();
+    }
+
+    @Test
+    void refresh_shouldSeeThePagesReindexedByAnotherProcess() {
+        SegmentStore indexer = new SegmentStore(true, directory.toString());
+        indexer.releaseSegment(indexer.writeSegment(batch("page1", "dora", "map")));
+        indexer.releaseSegment(indexer.writeSegment(batch("page2", "dora")));
+
+        SegmentStore query = new SegmentStore(true, directory.toString());
+        assertEquals(2, query.getTokenPages("dora").size());
+
+        // page1 is reindexed by the indexer while the query server has its segments open
+        indexer.deletePages(List.of("page1"));
+        indexer.releaseSegment(indexer.writeSegment(batch("page1", "dora", "boots")));
+        query.refresh();
+
+        List<String> pageIds = query.getTokenPages("dora").stream().map(PageReference::getPageId).sorted().toList();
+        assertEquals(List.of("page1", "page2"), pageIds);
+        assertTrue(query.getTokenPages("map").isEmpty());
+        assertEquals("page1", query.getTokenPages("boots").get(0).getPageId());
+        query.close();
+        indexer.close();
+    }
+
+    @Test
+    void open_shouldNotRemoveTheFilesOfASegmentBeingWritten() {
+        SegmentStore indexer = new SegmentStore(true, directory.toString());
+        String name = indexer.reserveSegmentName();
+        PageReference page = new PageReference("page1", 0);
+        page.addWordPosition(0);
+
+        indexer.writeSegment(name, Map.of("page1", 0), writer -> {
+            writer.addTerm("dora", List.of(page));
+            // A query server starts while the indexer flushes
+            SegmentStore query = new SegmentStore(true, directory.toString());
+            assertThrows(IllegalStateException.class, () -> query.deletePages(List.of("page1")));
+            query.close();
+            writer.addTerm("map", List.of(page));
+        });
+        indexer.releaseSegment(name);
+
+        assertEquals("page1", indexer.getTokenPages("map").get(0).getPageId());
+        indexer.close();
+    }
+
+    @Test
+    void deletePages_shouldDropDeletedPostingsWhenMerging() {
+        SegmentStore store = new SegmentStore(true, directory.toString());
+        for (int i = 0; i < 9; i++) {
+            store.releaseSegment(store.writeSegment(batch("page" + i, "dora", "word" + i)));
+        }
+        store.deletePages(List.of("page0", "page4"));
+        store.releaseSegment(store.writeSegment(batch("page9", "dora", "word9")));
+        // Waits for the background merges to finish
+        store.close();
+
+        SegmentStore reopened = new SegmentStore(true, directory.toString());
+        assertEquals(1, reopened.getSegmentsCount());
+        assertEquals(8, reopened.getTokenPages("dora").size());
+        assertTrue(reopened.getTokenPages("word0").isEmpty());
+        assertTrue(reopened.getTokenPages("word4").isEmpty());
+        reopened.close();
+    }
+
+    @Test
+    void writeSegment_shouldSplitPagesAcrossShardsByDocId() {
+        SegmentStore store = new SegmentStore(true, directory.toString(), 4);
+        Map<String, InvertedIndex> indexBuffer = new HashMap<>();
+        for (int docId = 0; docId < 40; docId++) {
+            PageReference page = new PageReference("page" + docId, docId);
+            page.addWordPosition(0);
+            indexBuffer.computeIfAbsent("dora", InvertedIndex::new).addPage(page);
+        }
+        String name = store.writeSegment(indexBuffer);
+
+        assertEquals(4, store.getShardsCount());
+        int total = 0;
+        for (int shard = 0; shard < 4; shard++) {
+            List<PageReference> shardPages = store.getTokenPages(shard, "dora");
+            assertFalse(shardPages.isEmpty());
+            for (PageReference page : shardPages) {
+                assertEquals(shard, SegmentStore.shardOf(page.getDocId(), 4));
+            }
+            total += shardPages.size();
+        }
+        assertEquals(40, total);
+        assertEquals(40, store.getTokenPages("dora").size());
+
+        // The segment of a rolled back batch is removed from every shard
+        assertTrue(store.deleteSegment(name));
+        assertTrue(store.getTokenPages("dora").isEmpty());
+        store.close();
+    }
+
+    @Test
+    void open_shouldRejectAnotherShardsCount() {
+        new SegmentStore(true, directory.toString(), 2).close();
+
+        assertThrows(IllegalStateException.class, () -> new SegmentStore(true, directory.toString(), 3));
+    }
+}
@@ -1,3 +1,84 @@
 package com.project.searchengine.ranker;
 
-class RankerTest {}
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.indexer.DocIdDictionary;
+import com.project.searchengine.server.model.PageReference;
+import com.project.searchengine.server.service.PageService;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+class RankerTest {
+
+    private static PageReference page(String pageId, int docId, double tf) {
+        PageReference page = new PageReference(pageId, docId);
+        page.setTf(tf);
+        page.addfieldWordCount("h1", 1);
+        return page;
+    }
+
+    private static Ranker ranker(DocIdDictionary docIdDictionary) {
+        PageService pageService = mock(PageService.class);
+        when(pageService.getTotalDocuments()).thenReturn(100L);
+        when(docIdDictionary.getRanks(any())).thenAnswer(invocation ->
+            new double[((int[]) invocation.getArgument(0)).length]
+        );
+        return new Ranker(pageService, docIdDictionary);
+    }
+
+    @Test
+    void rank_shouldSumTokenScoresPerDocId() {
+        Ranker ranker = ranker(mock(DocIdDictionary.class));
+        Map<String, List<PageReference>> queryResults = new LinkedHashMap<>();
+        queryResults.put("dora", List.of(page("a", 0, 0.1), page("b", 1, 0.2)));
+        queryResults.put("map", List.of(page("a", 0, 0.3)));
+
+        Map<PageReference, String> ranked = ranker.rank(queryResults);
+
+        List<PageReference> pages = new ArrayList<>(ranked.keySet());
+        assertEquals(2, pages.size());
+        // a: 0.1 + 0.3, b: 0.2
+        assertEquals("a", pages.get(0).getPageId());
+        assertEquals("dora", ranked.get(pages.get(0)));
+        assertEquals("b", pages.get(1).getPageId());
+    }
+
+    @Test
+    void rank_shouldResolveMissingDocIdsThroughTheDictionary() {
+        DocIdDictionary docIdDictionary = mock(DocIdDictionary.class);
+        when(docIdDictionary.getDocId("a")).thenReturn(0);
+        when(docIdDictionary.getDocId("unknown")).thenReturn(DocIdDictionary.NO_DOC_ID);
+        Ranker ranker = ranker(docIdDictionary);
+
+        Map<String, List<PageReference>> queryResults = new LinkedHashMap<>();
+        queryResults.put("dora", List.of(page("a", -1, 0.1), page("unknown", -1, 0.05)));
+        queryResults.put("map", List.of(page("a", 0, 0.3)));
+
+        Map<PageReference, String> ranked = ranker.rank(queryResults);
+
+        List<PageReference> pages = new ArrayList<>(ranked.keySet());
+        assertEquals(2, pages.size());
+        assertEquals("a", pages.get(0).getPageId());
+        assertEquals("unknown", pages.get(1).getPageId());
+    }
+
+    @Test
+    void rankTop_shouldKeepTheBestPagesScoredWithTheGivenFrequencies() {
+        Ranker ranker = ranker(mock(DocIdDictionary.class));
+        Map<String, List<PageReference>> queryResults = new HashMap<>();
+        queryResults.put("dora", List.of(page("a", 0, 0.1), page("b", 1, 0.3), page("c", 2, 0.2)));
+
+        List<RankedPage> top = ranker.rankTop(queryResults, Map.of("dora", 10), 2);
+
+        assertEquals(2, top.size());
+        assertEquals("b", top.get(0).getPage().getPageId());
+        assertEquals("c", top.get(1).getPage().getPageId());
+        assertEquals("dora", top.get(0).getToken());
+        // The IDF comes from the 10 pages of the whole index, not the 3 of the shard
+        double idf = RankCalculator.getIDF(100, 10);
+        // Base score plus the h1 boost
+        assertEquals(RankCalculator.calculateScore(0.3, idf, 0) + 0.3 * idf, top.get(0).getScore(), 1e-9);
+    }
+}
@@ -0,0 +1,113 @@
+package com.project.searchengine.server.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.project.searchengine.server.model.DocumentBlock;
+import com.project.searchengine.server.model.Page;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+class DocumentStoreServiceTest {
+
+    private final List<DocumentBlock> savedBlocks = new ArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private MongoTemplate mongoTemplate() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.insert(anyCollection(), eq(DocumentBlock.class))).thenAnswer(invocation -> {
+            savedBlocks.addAll((Collection<DocumentBlock>) invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(mongoTemplate.findOne(any(Query.class), eq(DocumentBlock.class))).thenAnswer(invocation -> {
+            Object pageId = ((Query) invocation.getArgument(0)).getQueryObject().get("pageIds");
+            return savedBlocks
+                .stream()
+                .filter(block -> block.getPageIds().contains(pageId))
+                .findFirst()
+                .orElse(null);
+        });
+        when(mongoTemplate.findById(any(), eq(DocumentBlock.class))).thenAnswer(invocation ->
+            savedBlocks
+                .stream()
+                .filter(block -> block.getId().equals(invocation.getArgument(0)))
+                .findFirst()
+                .orElse(null)
+        );
+        return mongoTemplate;
+    }
+
+    private static Page page(String id, String content) {
+        return new Page(id, "https://example.com/" + id, id, content, 0);
+    }
+
+    @Test
+    void storeContents_shouldPackPagesIntoBlocksAndClearTheirContent() {
+        DocumentStoreService store = new DocumentStoreService(mongoTemplate(), 20, 4);
+        List<Page> pages = List.of(
+            page("a", "First page text."),
+            page("b", "Second"),
+            page("c", "A third page longer than a block"),
+            page("d", "")
+        );
+
+        store.storeContents(pages, "batch");
+
+        assertEquals(3, savedBlocks.size());
+        assertEquals(List.of("a", "b"), savedBlocks.get(0).getPageIds());
+        assertEquals(List.of(0, 16, 22), savedBlocks.get(0).getOffsets());
+        assertTrue(pages.stream().allMatch(page -> page.getContent() == null));
+
+        assertEquals("First page text.", store.getDocument("a"));
+        assertEquals("Second", store.getDocument("b"));
+        assertEquals("A third page longer than a block", store.getDocument("c"));
+        assertEquals("", store.getDocument("d"));
+        assertNull(store.getDocument("missing"));
+    }
+
+    @Test
+    void getRange_shouldClampTheRangeToTheDocument() {
+        DocumentStoreService store = new DocumentStoreService(mongoTemplate(), 1024, 4);
+        store.storeContents(List.of(page("a", "Dora the explorer"), page("b", "Map and backpack")), "batch");
+
+        assertEquals("the", store.getRange("a", 5, 8));
+        assertEquals("explorer", store.getRange("a", 9, 100));
+        assertEquals("Map", store.getRange("b", -5, 3));
+        assertEquals("", store.getRange("b", 50, 60));
+    }
+
+    @Test
+    void getDocument_shouldReadABlockOnceWhileItIsCached() {
+        MongoTemplate mongoTemplate = mongoTemplate();
+        DocumentStoreService store = new DocumentStoreService(mongoTemplate, 10, 1);
+        store.storeContents(List.of(page("a", "aaaa"), page("b", "bbbbbbbb"), page("c", "cccccccccc")), "batch");
+
+        store.getDocument("a");
+        store.getDocument("b");
+        verify(mongoTemplate, times(1)).findById(any(), eq(DocumentBlock.class));
+
+        // A single cached block: reading c evicts the block of a and b
+        store.getDocument("c");
+        store.getDocument("a");
+        verify(mongoTemplate, times(3)).findById(any(), eq(DocumentBlock.class));
+    }
+
+    @Test
+    void getDocument_shouldReadTheNewTextOfAPageReindexedByAnotherProcess() {
+        MongoTemplate mongoTemplate = mongoTemplate();
+        DocumentStoreService query = new DocumentStoreService(mongoTemplate, 1024, 4);
+        query.storeContents(List.of(page("a", "Old text"), page("b", "Other page")), "batch1");
+        assertEquals("Old text", query.getDocument("a"));
+
+        // The indexer stores the new text and detaches the page from its previous block
+        DocumentStoreService indexer = new DocumentStoreService(mongoTemplate, 1024, 4);
+        indexer.storeContents(List.of(page("a", "New text")), "batch2");
+        savedBlocks.get(0).getPageIds().set(0, "");
+
+        assertEquals("New text", query.getDocument("a"));
+        assertEquals("Other page", query.getDocument("b"));
+    }
+}
@@ -0,0 +1,92 @@
+package com.project.searchengine.server.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.result.UpdateResult;
+import com.project.searchengine.server.model.InvertedIndex;
+import com.project.searchengine.server.model.PageReference;
+import java.util.*;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class InvertedIndexServiceTest {
+
+    // The words collection, word to its stored document
+    private final Map<String, Document> words = new HashMap<>();
+
+    @SuppressWarnings("unchecked")
+    private InvertedIndexService service() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        when(mongoTemplate.getCollectionName(InvertedIndex.class)).thenReturn("words");
+        when(mongoTemplate.getCollection("words")).thenReturn(collection);
+
+        // The backfill pipeline: words without a df get the size of their pages
+        when(collection.updateMany(any(Bson.class), anyList())).thenAnswer(invocation -> {
+            long modified = 0;
+            for (Document word : words.values()) {
+                if (!word.containsKey("df")) {
+                    word.put("df", word.getList("pages", Object.class).size());
+                    modified++;
+                }
+            }
+            return UpdateResult.acknowledged(modified, modified, null);
+        });
+
+        // An upsert applies its $push $each and $inc like the server would
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(any(BulkOperations.BulkMode.class), eq(InvertedIndex.class))).thenReturn(
+            bulkOps
+        );
+        when(bulkOps.upsert(any(Query.class), any(Update.class))).thenAnswer(invocation -> {
+            String key = ((Query) invocation.getArgument(0)).getQueryObject().getString("word");
+            Document update = ((Update) invocation.getArgument(1)).getUpdateObject();
+            Document word = words.computeIfAbsent(key, k -> new Document("word", k).append("pages", new ArrayList<>()));
+            Update.Modifiers each = (Update.Modifiers) ((Document) update.get("$push")).get("pages");
+            for (Update.Modifier modifier : each.getModifiers()) {
+                word.getList("pages", Object.class).addAll(Arrays.asList((Object[]) modifier.getValue()));
+            }
+            int inc = ((Document) update.get("$inc")).getInteger("df");
+            word.put("df", word.getInteger("df", 0) + inc);
+            return bulkOps;
+        });
+        when(bulkOps.execute()).thenReturn(BulkWriteResult.acknowledged(0, 0, 0, 0, List.of(), List.of()));
+
+        InvertedIndexService service = new InvertedIndexService();
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        return service;
+    }
+
+    private static Map<String, InvertedIndex> batch(String word, String... pageIds) {
+        InvertedIndex index = new InvertedIndex(word);
+        for (String pageId : pageIds) index.getPages().add(new PageReference(pageId));
+        return new HashMap<>(Map.of(word, index));
+    }
+
+    @Test
+    void saveTokensInBulk_shouldCountThePagesOfLegacyWordsWithoutDf() {
+        // Saved before the df was maintained
+        words.put(
+            "dora",
+            new Document("word", "dora").append("pages", new ArrayList<>(List.of("a", "b", "c")))
+        );
+        InvertedIndexService service = service();
+
+        service.saveTokensInBulk(batch("dora", "d"));
+        service.saveTokensInBulk(batch("dora", "e", "f"));
+        service.saveTokensInBulk(batch("boots", "a"));
+
+        assertEquals(6, words.get("dora").getInteger("df"));
+        assertEquals(1, words.get("boots").getInteger("df"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.project.searchengine.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FingerprintSetTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void add_shouldRejectDuplicatesWhileGrowing() {
+        FingerprintSet set = new FingerprintSet();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(set.add(HashManager.fingerprint("page" + i)));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertFalse(set.add(HashManager.fingerprint("page" + i)));
+        }
+
+        assertEquals(10_000, set.size());
+        assertTrue(set.contains(HashManager.fingerprint("page42")));
+        assertFalse(set.contains(HashManager.fingerprint("page10000")));
+    }
+
+    @Test
+    void add_shouldHoldTheZeroFingerprint() {
+        FingerprintSet set = new FingerprintSet();
+
+        assertFalse(set.contains(new Fingerprint(0, 0)));
+        assertTrue(set.add(new Fingerprint(0, 0)));
+        assertFalse(set.add(new Fingerprint(0, 0)));
+        // Same low bits, probed past each other
+        assertTrue(set.add(new Fingerprint(1, 0)));
+        assertTrue(set.add(new Fingerprint(2, 0)));
+
+        assertEquals(3, set.size());
+        assertTrue(set.contains(new Fingerprint(2, 0)));
+    }
+
+    @Test
+    void readSnapshot_shouldRestoreTheSet() throws Exception {
+        FingerprintSet set = new FingerprintSet();
+        for (int i = 0; i < 100; i++) {
+            set.add(HashManager.fingerprint("page" + i));
+        }
+        set.add(new Fingerprint(0, 0));
+        Path snapshot = directory.resolve("hashed-docs.snapshot");
+        set.writeSnapshot(snapshot);
+
+        FingerprintSet restored = FingerprintSet.readSnapshot(snapshot);
+
+        assertEquals(101, restored.size());
+        assertTrue(restored.contains(HashManager.fingerprint("page7")));
+        assertTrue(restored.contains(new Fingerprint(0, 0)));
+        assertFalse(restored.add(HashManager.fingerprint("page99")));
+        assertTrue(restored.add(HashManager.fingerprint("page100")));
+    }
+}
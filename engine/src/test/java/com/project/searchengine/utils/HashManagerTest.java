@@ -0,0 +1,45 @@
+package com.project.searchengine.utils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Test;
+
+class HashManagerTest {
+
+    @Test
+    void fingerprint_shouldMatchMurmur3ReferenceValues() {
+        assertEquals(new Fingerprint(0, 0), HashManager.fingerprint(""));
+        assertEquals(
+            new Fingerprint(0x629942693e10f867L, 0x92db0b82baeb5347L),
+            HashManager.fingerprint("hell")
+        );
+        assertEquals(
+            new Fingerprint(0xe34bbc7bbc071b6cL, 0x7a433ca9c49a9347L),
+            HashManager.fingerprint("The quick brown fox jumps over the lazy dog")
+        );
+        assertEquals(
+            new Fingerprint(0xa78ddff5adae8d10L, 0x128900ef20900135L),
+            HashManager.murmur3("hello".getBytes(StandardCharsets.UTF_8), 1)
+        );
+    }
+
+    @Test
+    void fingerprint_shouldRoundTripThroughBytesAndHex() {
+        Fingerprint fingerprint = HashManager.fingerprint("https://example.com/page");
+
+        assertEquals(Fingerprint.BYTES, fingerprint.toBytes().length);
+        assertEquals(fingerprint, Fingerprint.fromBytes(fingerprint.toBytes()));
+        assertEquals(32, fingerprint.toString().length());
+        assertEquals(fingerprint, Fingerprint.fromString(fingerprint.toString()));
+        assertEquals("0123456789abcdeffedcba9876543210", new Fingerprint(0x0123456789abcdefL, 0xfedcba9876543210L).toString());
+    }
+
+    @Test
+    void hash_shouldKeepTheSha256HexDigest() {
+        assertEquals(
+            "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            HashManager.hash("abc")
+        );
+    }
+}